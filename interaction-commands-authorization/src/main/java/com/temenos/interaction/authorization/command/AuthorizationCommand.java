@@ -39,7 +39,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
-import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response.Status;
 
 import org.odata4j.expression.EntitySimpleProperty;
@@ -54,6 +53,7 @@ import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.command.InteractionException;
 import com.temenos.interaction.odataext.odataparser.ODataParser;
 import com.temenos.interaction.odataext.odataparser.ODataParser.UnsupportedQueryOperationException;
+import com.temenos.interaction.odataext.odataparser.ParsedQueryOptions;
 import com.temenos.interaction.odataext.odataparser.data.AccessProfile;
 import com.temenos.interaction.odataext.odataparser.data.FieldName;
 import com.temenos.interaction.odataext.odataparser.data.RowFilters;
@@ -81,6 +81,7 @@ public class AuthorizationCommand extends AbstractAuthorizationCommand implement
 			LOGGER.info("    Key " + theKey + " = Value " + ctx.getQueryParameters().getFirst(theKey));
 		}
 
+		// Parsed once for this request, and shared with the commands that follow
 		EntityQueryInfo queryInfo = ODataParser.getEntityQueryInfo(ctx);
 
 		// Add authorization to context
@@ -123,8 +124,6 @@ public class AuthorizationCommand extends AbstractAuthorizationCommand implement
 
 	private boolean addRowFilter(InteractionContext ctx, RowFilters newFilter, RowFilters oldFilter)
 			throws UnsupportedQueryOperationException {
-		MultivaluedMap<String, String> queryParams = ctx.getQueryParameters();
-
 		// Final list contains both sets of filters
 		if (null != oldFilter) {
 			// TODO Some additional work may be required to combine filters on
@@ -135,12 +134,9 @@ public class AuthorizationCommand extends AbstractAuthorizationCommand implement
 		} 
 
 		// By the time we get here the target 'and' terms will be in newList.
-		if (oldFilter.isEmpty()) {
-			// No filtering, i.e. return everything. Delete any existing filter.
-			queryParams.remove(ODataParser.FILTER_KEY);
-		} else {
-			queryParams.putSingle(ODataParser.FILTER_KEY, ODataParser.toFilters(oldFilter));
-		}
+		// No filtering, i.e. return everything, deletes any existing filter.
+		// The combined filter is kept so the producer does not parse it again.
+		ParsedQueryOptions.setFilter(ctx, oldFilter);
 
 		// Return the entries specified by the filter.
 		return true;
@@ -148,8 +144,6 @@ public class AuthorizationCommand extends AbstractAuthorizationCommand implement
 
 	private void addColFilter(InteractionContext ctx, Set<FieldName> authSet, List<EntitySimpleProperty> oldSelect) {
 
-		MultivaluedMap<String, String> queryParams = ctx.getQueryParameters();
-
 		// Get any existing select
 		Set<FieldName> oldSet = ODataParser.parseSelect(oldSelect);
 
@@ -160,7 +154,7 @@ public class AuthorizationCommand extends AbstractAuthorizationCommand implement
 		} else {
 			if (oldSet.isEmpty()) {
 				// Empty oldlist means just return authorization list
-				queryParams.putSingle(ODataParser.SELECT_KEY, ODataParser.toSelect(authSet));
+				ParsedQueryOptions.setSelect(ctx, authSet);
 			} else {
 
 				// If we get here both sets contain entries. Final list is
@@ -175,7 +169,7 @@ public class AuthorizationCommand extends AbstractAuthorizationCommand implement
 
 				// By the time we get here the target select list will be
 				// in oldSet. Write the target list ... which may be empty
-				queryParams.putSingle(ODataParser.SELECT_KEY, ODataParser.toSelect(oldSet));
+				ParsedQueryOptions.setSelect(ctx, oldSet);
 			}
 		}
 	}
@@ -63,6 +63,9 @@ public class GETMetadataCommand implements InteractionCommand {
 		} else {
 			MetaDataResource<EdmDataServices> mdr = 
 					CommandHelper.createMetaDataResource(metadataOData4j.getMetadata());
+			// the document only changes with the metadata version, so clients can make conditional requests;
+			// the tag is weak as the same document is sent both gzip compressed and uncompressed
+			mdr.setEntityTag("W/\"" + Long.toHexString(metadataOData4j.getMetadataVersion()) + "\"");
 			ctx.setResource(mdr);
 		}
 		return Result.SUCCESS;
@@ -82,6 +82,21 @@ public class TestGETMetadataCommand {
 		assertTrue(ctx.getResource() instanceof MetaDataResource);
 	}
 	
+	@Test
+	public void testMetadataEntityTag() {
+		MetadataOData4j metadataOData4j = getMetadataOData4j(mock(Metadata.class));
+		GETMetadataCommand command = new GETMetadataCommand("Metadata", metadataOData4j);
+		InteractionContext ctx = createInteractionContext();
+		command.execute(ctx);
+		String etag = ctx.getResource().getEntityTag();
+		assertEquals("W/\"" + Long.toHexString(metadataOData4j.getMetadataVersion()) + "\"", etag);
+
+		// unchanged metadata has the same tag
+		InteractionContext nextCtx = createInteractionContext();
+		command.execute(nextCtx);
+		assertEquals(etag, nextCtx.getResource().getEntityTag());
+	}
+
 	private MetadataOData4j getMetadataOData4j(Metadata metadata) {
 		MetadataOData4j metadataOdata4j = 
 						new	MetadataOData4j(metadata, 
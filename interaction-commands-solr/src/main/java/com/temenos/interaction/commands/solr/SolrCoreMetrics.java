@@ -0,0 +1,90 @@
+package com.temenos.interaction.commands.solr;
+
+/*
+ * #%L
+ * interaction-commands-solr
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and error counts of the requests made to one Solr core.
+ */
+public class SolrCoreMetrics {
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	/**
+	 * Record a request to the core.
+	 * 
+	 * @param latencyNanos
+	 * 		How long the request took.
+	 * @param failed
+	 * 		Whether the request failed.
+	 */
+	public void record(long latencyNanos, boolean failed) {
+		requestCount.incrementAndGet();
+		if (failed) {
+			errorCount.incrementAndGet();
+		}
+		totalLatencyNanos.addAndGet(latencyNanos);
+		long max = maxLatencyNanos.get();
+		while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	public long getTotalLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get());
+	}
+
+	public long getMaxLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+	}
+
+	/**
+	 * @return the mean latency of the requests, in milliseconds, or 0 if there
+	 * 		were none.
+	 */
+	public double getAverageLatencyMillis() {
+		long requests = requestCount.get();
+		if (requests == 0) {
+			return 0;
+		}
+		return totalLatencyNanos.get() / (requests * 1000000.0);
+	}
+
+	@Override
+	public String toString() {
+		return "requests=" + getRequestCount() + ", errors=" + getErrorCount()
+				+ ", averageLatencyMillis=" + getAverageLatencyMillis() + ", maxLatencyMillis=" + getMaxLatencyMillis();
+	}
+}
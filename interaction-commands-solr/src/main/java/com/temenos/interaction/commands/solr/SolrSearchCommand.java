@@ -6,6 +6,9 @@ package com.temenos.interaction.commands.solr;
  *      'core'      Name of the core to search. Defaults to the entity1 core.
  *      'q'         SOLR query term to search for.
  *      'feldname'  Name of field to search. Defaults to 'text' i.e. all fields (See schema.xml for details).
+ *      '$skiptoken' Solr cursor mark of the page to return, '*' for the first page. The feed links to the
+ *                  next page. Needs Solr 4.7 or later, and the unique key of the core. Cores whose unique
+ *                  key is not known are paged by offset instead.
  * 
  */
 
@@ -30,23 +33,31 @@ package com.temenos.interaction.commands.solr;
  * #L%
  */
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrQuery.ORDER;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,46 +66,148 @@ import com.temenos.interaction.commands.solr.data.SolrConstants;
 import com.temenos.interaction.core.command.InteractionCommand;
 import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.command.InteractionException;
+import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityProperties;
+import com.temenos.interaction.core.resource.CollectionResource;
 import com.temenos.interaction.odataext.odataparser.ODataParser;
 import com.temenos.interaction.odataext.odataparser.data.FieldName;
 import com.temenos.interaction.odataext.odataparser.data.RowFilter;
 
-public class SolrSearchCommand extends AbstractSolrCommand implements InteractionCommand {
+public class SolrSearchCommand extends AbstractSolrCommand implements InteractionCommand, Closeable {
 
 	private final static Logger logger = LoggerFactory.getLogger(SolrSearchCommand.class);
 
 	private static final String TEXT = "text";
 	private static final String COLON = ":";
 	private static final String STAR = "*";
+	// the unique key of a core that has none, or does not serve its schema
+	private static final String NO_UNIQUE_KEY = "";
+
+	private volatile SolrServerRegistry serverRegistry;
+	// whether this command creates the registry, and so closes it
+	private boolean ownsServerRegistry;
+	private String uniqueKeyField;
+	private Map<String, String> uniqueKeyFields = Collections.emptyMap();
+	// the unique keys read from the schema of the servers searched
+	private final Map<SolrServer, String> schemaUniqueKeyFields = Collections
+			.synchronizedMap(new WeakHashMap<SolrServer, String>());
 
 	/**
 	 * Instantiates a new select command.
 	 * 
-	 * For production we pass in, and connect to, the URL of an external server
-	 * for each search request.
-	 * 
-	 * In future we may introduce connection pooling.
+	 * For production we pass in the URL of an external server. The servers of
+	 * its cores are kept, with a pool of connections, until the command is
+	 * closed.
 	 */
 	public SolrSearchCommand(String solrRootURL) {
+		this(solrRootURL, new SolrServerRegistry());
+		this.ownsServerRegistry = true;
+	}
+
+	/**
+	 * Instantiates a new select command searching the servers of a registry,
+	 * to share the registry between commands or configure its connections.
+	 * The registry is left open when the command is closed.
+	 */
+	public SolrSearchCommand(String solrRootURL, SolrServerRegistry serverRegistry) {
 		this.solrRootURL = solrRootURL;
+		this.serverRegistry = serverRegistry;
 	}
 
-	protected SolrSearchCommand() {}
+	/**
+	 * Instantiates a command with no root URL, for subclasses and tests that
+	 * set the URL or search a given server. The command creates a registry of
+	 * its own the first time it searches by URL.
+	 */
+	protected SolrSearchCommand() {
+		this.ownsServerRegistry = true;
+	}
 
 	@Override
 	public Result execute(InteractionContext ctx) throws InteractionException {
+		String coreURL;
 		try {
-			URL coreURL = new URL(solrRootURL + "/" +  getCompanyId(ctx) + "_" + getCoreName(ctx));
+			coreURL = new URL(solrRootURL + "/" +  getCompanyId(ctx) + "_" + getCoreName(ctx)).toString();
 			// URL coreURL = new URL(solrRootURL + "/" + coreName);
-			logger.info("Connecting to external Solr server " + coreURL + ".");
-			return execute(ctx, new HttpSolrServer(coreURL.toString()));
 		} catch (MalformedURLException e) {
 			logger.error("Malformed URL when connecting to Solr Server. " + e);
 			throw new InteractionException(Status.BAD_REQUEST, "Malformed URL when connecting to Solr Server", e);
 		}
+		SolrServerRegistry serverRegistry = getOrCreateServerRegistry();
+		SolrServer solrServer = serverRegistry.getServer(coreURL);
+		long start = System.nanoTime();
+		Result res = null;
+		try {
+			res = execute(ctx, solrServer);
+			return res;
+		} finally {
+			serverRegistry.recordRequest(coreURL, System.nanoTime() - start, res != Result.SUCCESS);
+		}
+	}
+
+	/**
+	 * @return the registry of the Solr servers searched, with their metrics,
+	 * or null when the command has not created its registry yet.
+	 */
+	public SolrServerRegistry getServerRegistry() {
+		return serverRegistry;
+	}
+
+	private SolrServerRegistry getOrCreateServerRegistry() {
+		SolrServerRegistry registry = serverRegistry;
+		if (registry == null) {
+			synchronized (this) {
+				registry = serverRegistry;
+				if (registry == null) {
+					registry = new SolrServerRegistry();
+					serverRegistry = registry;
+				}
+			}
+		}
+		return registry;
+	}
+
+	/**
+	 * Set the unique key field of the cores searched, used to page through
+	 * them with a cursor. When neither this nor the key of the core is set,
+	 * the key is read from the schema of the core.
+	 */
+	public void setUniqueKeyField(String uniqueKeyField) {
+		this.uniqueKeyField = uniqueKeyField;
+	}
+
+	public String getUniqueKeyField() {
+		return uniqueKeyField;
+	}
+
+	/**
+	 * Set the unique key fields of the cores searched, keyed by core name
+	 * without the company id, for cores whose key differs from the unique key
+	 * field of the command.
+	 */
+	public void setUniqueKeyFields(Map<String, String> uniqueKeyFields) {
+		this.uniqueKeyFields = uniqueKeyFields;
 	}
 
+	public Map<String, String> getUniqueKeyFields() {
+		return uniqueKeyFields;
+	}
+
+	/**
+	 * Closes the Solr servers of this command, call when the command bean is
+	 * destroyed.
+	 */
+	@Override
+	public void close() {
+		SolrServerRegistry registry = serverRegistry;
+		if (ownsServerRegistry && registry != null) {
+			registry.close();
+		}
+	}
+
+	/**
+	 * Search a Solr server. The server is left open, it belongs to the caller.
+	 */
 	protected Result execute(InteractionContext ctx, SolrServer solrServer) throws InteractionException {
 		logQueryParameters(ctx.getQueryParameters());
 
@@ -111,10 +224,20 @@ public class SolrSearchCommand extends AbstractSolrCommand implements Interactio
 		// Run the query
 		Result res = Result.FAILURE;
 		try {
-		    QueryResponse rsp = solrServer.query(query);
-			// SolrDocumentList list = rsp.getResults();
+			String skipToken = ctx.getQueryParameters().getFirst(SolrConstants.SOLR_SKIP_TOKEN_KEY);
+			if (skipToken != null) {
+				String keyField = getUniqueKeyField(getCoreName(ctx), solrServer);
+				if (keyField != null) {
+					ctx.setResource(queryPage(getEntityName(ctx), solrServer, query, skipToken, keyField));
+				} else {
+					ctx.setResource(queryOffsetPage(getEntityName(ctx), solrServer, query, skipToken));
+				}
+			} else {
+			    QueryResponse rsp = solrServer.query(query);
+				// SolrDocumentList list = rsp.getResults();
 
-			ctx.setResource(buildCollectionResource(getEntityName(ctx), rsp.getResults()));
+				ctx.setResource(buildCollectionResource(getEntityName(ctx), rsp.getResults()));
+			}
 	
 			// Indicate that database level filtering was successful.
 			ctx.setAttribute(AuthorizationAttributes.FILTER_DONE_ATTRIBUTE, Boolean.TRUE);
@@ -127,11 +250,109 @@ public class SolrSearchCommand extends AbstractSolrCommand implements Interactio
 			logger.error("An unexpected error occurred while querying Solr " + e);
 		}
 
-		solrServer.shutdown();
-
 		return res;
 	}
 
+	/*
+	 * Query one page of results with a Solr cursor, for deep paging without
+	 * the cost of large offsets. The page holds at most the rows of the query,
+	 * and the next cursor mark is the $skiptoken of the next page.
+	 */
+	private CollectionResource<Entity> queryPage(String entityName, SolrServer solrServer, SolrQuery query,
+			String cursorMark, String keyField) throws SolrServerException {
+		if (cursorMark.isEmpty()) {
+			cursorMark = SolrConstants.SOLR_CURSOR_MARK_START;
+		}
+		query.set(SolrConstants.SOLR_CURSOR_MARK_KEY, cursorMark);
+		// A cursor needs a sort ending on the unique key, keep the relevance order before it
+		query.addSort("score", ORDER.desc);
+		query.addSort(keyField, ORDER.asc);
+
+		QueryResponse rsp = solrServer.query(query);
+		CollectionResource<Entity> page = buildCollectionResource(entityName, rsp.getResults());
+
+		// Once all the documents are read the cursor stays on the same mark
+		String nextCursorMark = rsp.getNextCursorMark();
+		if (nextCursorMark != null && !cursorMark.equals(nextCursorMark)) {
+			page.setSkipToken(nextCursorMark);
+		}
+		return page;
+	}
+
+	/*
+	 * Query one page of results from an offset, for cores that cannot be paged
+	 * with a cursor as their unique key is not known. The $skiptoken is the
+	 * offset of the page, '*' for the first page.
+	 */
+	private CollectionResource<Entity> queryOffsetPage(String entityName, SolrServer solrServer, SolrQuery query,
+			String skipToken) throws SolrServerException, InteractionException {
+		int offset = 0;
+		if (!skipToken.isEmpty() && !skipToken.equals(SolrConstants.SOLR_CURSOR_MARK_START)) {
+			try {
+				offset = Integer.parseInt(skipToken);
+			} catch (NumberFormatException e) {
+				offset = -1;
+			}
+			if (offset < 0) {
+				throw new InteractionException(Status.BAD_REQUEST, "Invalid " + SolrConstants.SOLR_SKIP_TOKEN_KEY + " " + skipToken);
+			}
+		}
+		query.setStart(offset);
+
+		QueryResponse rsp = solrServer.query(query);
+		SolrDocumentList docs = rsp.getResults();
+		CollectionResource<Entity> page = buildCollectionResource(entityName, docs);
+
+		long next = offset + docs.size();
+		if (!docs.isEmpty() && next < docs.getNumFound()) {
+			page.setSkipToken(Long.toString(next));
+		}
+		return page;
+	}
+
+	/*
+	 * The unique key field of a core, as configured or else as read from the
+	 * schema of its server. Null when the key is not known.
+	 */
+	private String getUniqueKeyField(String coreName, SolrServer solrServer) {
+		String keyField = uniqueKeyFields.get(coreName);
+		if (keyField == null) {
+			keyField = uniqueKeyField;
+		}
+		if (keyField == null) {
+			keyField = schemaUniqueKeyFields.get(solrServer);
+			if (keyField == null) {
+				keyField = readUniqueKeyField(solrServer);
+				if (keyField != null) {
+					schemaUniqueKeyFields.put(solrServer, keyField);
+				}
+			}
+		}
+		return keyField == null || keyField.isEmpty() ? null : keyField;
+	}
+
+	/*
+	 * Read the unique key field from the schema of a server. Null when the
+	 * server could not be reached, so the key is read again by the next page.
+	 */
+	private String readUniqueKeyField(SolrServer solrServer) {
+		QueryRequest request = new QueryRequest();
+		request.setPath(SolrConstants.SOLR_SCHEMA_UNIQUE_KEY_PATH);
+		try {
+			NamedList<Object> rsp = solrServer.request(request);
+			Object keyField = rsp != null ? rsp.get(SolrConstants.SOLR_UNIQUE_KEY) : null;
+			return keyField != null ? keyField.toString() : NO_UNIQUE_KEY;
+		} catch (SolrException e) {
+			logger.warn("Could not read the unique key of the Solr core, paging by offset. " + e);
+			return NO_UNIQUE_KEY;
+		} catch (SolrServerException e) {
+			logger.error("An unexpected error occurred while reading the Solr schema " + e);
+		} catch (IOException e) {
+			logger.error("An unexpected error occurred while reading the Solr schema " + e);
+		}
+		return null;
+	}
+
 	private void logQueryParameters(MultivaluedMap<String, String> queryParams) {
 		Iterator<String> it = queryParams.keySet().iterator();
 		logger.info("SolrSearch command parameters:");
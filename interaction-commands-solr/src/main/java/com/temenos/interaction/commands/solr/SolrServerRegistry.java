@@ -0,0 +1,171 @@
+package com.temenos.interaction.commands.solr;
+
+/*
+ * #%L
+ * interaction-commands-solr
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.client.HttpClient;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Solr servers of the cores searched, keyed by core URL, sharing one pool
+ * of HTTP connections.
+ * 
+ * A server is created the first time its core is searched and kept until the
+ * registry is closed, so searches reuse open connections rather than setting
+ * up a client and a TCP connection for each request.
+ */
+public class SolrServerRegistry implements Closeable {
+
+	private final static Logger logger = LoggerFactory.getLogger(SolrServerRegistry.class);
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 128;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 32;
+	public static final int DEFAULT_CONNECTION_TIMEOUT = 5000;
+	public static final int DEFAULT_SO_TIMEOUT = 30000;
+
+	private final ConcurrentMap<String, SolrServer> servers = new ConcurrentHashMap<String, SolrServer>();
+	private final ConcurrentMap<String, SolrCoreMetrics> metrics = new ConcurrentHashMap<String, SolrCoreMetrics>();
+	private final HttpClient httpClient;
+	private volatile boolean closed;
+
+	public SolrServerRegistry() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_CONNECTION_TIMEOUT, DEFAULT_SO_TIMEOUT);
+	}
+
+	/**
+	 * @param maxConnections
+	 * 		The most connections open to all the Solr servers.
+	 * @param maxConnectionsPerHost
+	 * 		The most connections open to one Solr server.
+	 * @param connectionTimeout
+	 * 		How long to wait for a connection to be established, in milliseconds.
+	 * @param soTimeout
+	 * 		How long to wait for a response, in milliseconds.
+	 */
+	public SolrServerRegistry(int maxConnections, int maxConnectionsPerHost, int connectionTimeout, int soTimeout) {
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set(HttpClientUtil.PROP_MAX_CONNECTIONS, maxConnections);
+		params.set(HttpClientUtil.PROP_MAX_CONNECTIONS_PER_HOST, maxConnectionsPerHost);
+		params.set(HttpClientUtil.PROP_CONNECTION_TIMEOUT, connectionTimeout);
+		params.set(HttpClientUtil.PROP_SO_TIMEOUT, soTimeout);
+		params.set(HttpClientUtil.PROP_FOLLOW_REDIRECTS, false);
+		this.httpClient = HttpClientUtil.createClient(params);
+	}
+
+	/**
+	 * Get the server of a core, creating it the first time the core is used.
+	 * 
+	 * @param coreURL
+	 * 		The URL of the core.
+	 */
+	public SolrServer getServer(String coreURL) {
+		if (closed) {
+			throw new IllegalStateException("Solr server registry is closed");
+		}
+		SolrServer server = servers.get(coreURL);
+		if (server == null) {
+			SolrServer newServer = createServer(coreURL);
+			server = servers.putIfAbsent(coreURL, newServer);
+			if (server == null) {
+				logger.info("Connecting to external Solr server " + coreURL + ".");
+				server = newServer;
+			} else {
+				// another request created the server first
+				newServer.shutdown();
+			}
+		}
+		return server;
+	}
+
+	/**
+	 * Create the server of a core. Override to search an embedded or stub
+	 * server instead.
+	 * 
+	 * @param coreURL
+	 * 		The URL of the core.
+	 */
+	protected SolrServer createServer(String coreURL) {
+		return new HttpSolrServer(coreURL, httpClient);
+	}
+
+	/**
+	 * Record a request made to a core.
+	 * 
+	 * @param coreURL
+	 * 		The URL of the core.
+	 * @param latencyNanos
+	 * 		How long the request took.
+	 * @param failed
+	 * 		Whether the request failed.
+	 */
+	public void recordRequest(String coreURL, long latencyNanos, boolean failed) {
+		getMetrics(coreURL).record(latencyNanos, failed);
+	}
+
+	/**
+	 * Get the metrics of the requests made to a core.
+	 * 
+	 * @param coreURL
+	 * 		The URL of the core.
+	 */
+	public SolrCoreMetrics getMetrics(String coreURL) {
+		SolrCoreMetrics coreMetrics = metrics.get(coreURL);
+		if (coreMetrics == null) {
+			SolrCoreMetrics newMetrics = new SolrCoreMetrics();
+			coreMetrics = metrics.putIfAbsent(coreURL, newMetrics);
+			if (coreMetrics == null) {
+				coreMetrics = newMetrics;
+			}
+		}
+		return coreMetrics;
+	}
+
+	/**
+	 * @return the metrics of every core searched, keyed by core URL.
+	 */
+	public Map<String, SolrCoreMetrics> getMetrics() {
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	/**
+	 * Shut down the servers and close the pooled connections.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (SolrServer server : servers.values()) {
+			server.shutdown();
+		}
+		servers.clear();
+		httpClient.getConnectionManager().shutdown();
+	}
+}
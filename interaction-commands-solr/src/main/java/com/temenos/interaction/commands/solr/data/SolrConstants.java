@@ -21,6 +21,8 @@ package com.temenos.interaction.commands.solr.data;
  * #L%
  */
 
+import org.apache.solr.common.params.CursorMarkParams;
+
 /**
  * Constants used in Solr Commands
  *
@@ -36,4 +38,15 @@ public class SolrConstants {
     public static final String SOLR_SHARDS_TOLERANT_KEY = "shards.tolerant";
     public static final String SOLR_QUERY_KEY = "q";
     public static final String SOLR_COMPANY_NAME_KEY = "companyid";
+
+    // Deep paging with a cursor, the cursor mark is passed as the OData
+    // $skiptoken, '*' for the first page.
+    public static final String SOLR_SKIP_TOKEN_KEY = "$skiptoken";
+    public static final String SOLR_CURSOR_MARK_KEY = CursorMarkParams.CURSOR_MARK_PARAM;
+    public static final String SOLR_NEXT_CURSOR_MARK_KEY = CursorMarkParams.CURSOR_MARK_NEXT;
+    public static final String SOLR_CURSOR_MARK_START = CursorMarkParams.CURSOR_MARK_START;
+
+    // The unique key field of a core, which cursors sort on, read from its schema.
+    public static final String SOLR_SCHEMA_UNIQUE_KEY_PATH = "/schema/uniquekey";
+    public static final String SOLR_UNIQUE_KEY = "uniqueKey";
 }
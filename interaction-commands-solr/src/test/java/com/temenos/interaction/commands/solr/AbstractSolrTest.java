@@ -57,16 +57,18 @@ public class AbstractSolrTest {
 	protected SolrServer entity1SolrServer;
 	protected SolrServer entity2SolrServer;
 	
+	// The cores of the company, each in the instance directory of its name
 	private String getSolrHome() {
-		return "solr";
+		return "solr/" + COMPANY_NAME;
 	}
 
-	private String getSolrSchemaFile(String solr_core) {
-		return "solr/" + solr_core + "/conf/schema.xml";
+	// Relative to the conf directory of the core
+	private String getSolrSchemaFile() {
+		return "schema.xml";
 	}
 
-	private String getSolrConfigFile(String solr_core) {
-		return "solr/" + solr_core + "/conf/solrconfig.xml";
+	private String getSolrConfigFile() {
+		return "solrconfig.xml";
 	}
 
 	@Before
@@ -74,18 +76,18 @@ public class AbstractSolrTest {
 		System.setProperty("solr.solr.home", getSolrHome());
 
 		// Just initialise the core used for sharding without any data
-		TestHarness shardingTestHarness = initSolrCore(COMPANY_NAME + "/" + SOLR_CORE_FOR_SHARD);
+		TestHarness shardingTestHarness = initSolrCore(SOLR_CORE_FOR_SHARD);
         shardCoreSolrServer = new EmbeddedSolrServer(shardingTestHarness.getCoreContainer(), shardingTestHarness.getCore()
                 .getName());
 	
 		// Populate Entity1 Solr core
-		TestHarness entity1TestHarness = initSolrCore(COMPANY_NAME + "/" + ENTITY1_TYPE);
+		TestHarness entity1TestHarness = initSolrCore(ENTITY1_TYPE);
 		entity1SolrServer = new EmbeddedSolrServer(entity1TestHarness.getCoreContainer(), entity1TestHarness.getCore()
 				.getName());
 		initEntity1TestData();
 
 		// Populate Entity2 Solr core
-		TestHarness entity2TestHarness = initSolrCore(COMPANY_NAME + "/" + ENTITY2_TYPE);
+		TestHarness entity2TestHarness = initSolrCore(ENTITY2_TYPE);
 		entity2SolrServer = new EmbeddedSolrServer(entity2TestHarness.getCoreContainer(), entity2TestHarness.getCore()
 				.getName());
 		
@@ -101,9 +103,9 @@ public class AbstractSolrTest {
 		// Clear any junk from the index.
 		clearDataDir(dataDir);
 
-		SolrConfig solrConfig = TestHarness.createConfig(getSolrHome(), solrCore, getSolrConfigFile(solrCore));
+		SolrConfig solrConfig = TestHarness.createConfig(getSolrHome(), solrCore, getSolrConfigFile());
 
-		TestHarness h = new TestHarness(dataDir.getAbsolutePath(), solrConfig, getSolrSchemaFile(solrCore));
+		TestHarness h = new TestHarness(solrCore, dataDir.getAbsolutePath(), solrConfig, getSolrSchemaFile());
 		return h;
 	}
 
@@ -0,0 +1,219 @@
+package com.temenos.interaction.commands.solr;
+
+/*
+ * #%L
+ * interaction-commands-solr
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.temenos.interaction.commands.solr.data.SolrConstants;
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionCommand.Result;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.command.InteractionException;
+import com.temenos.interaction.core.entity.Entity;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.resource.CollectionResource;
+import com.temenos.interaction.core.resource.EntityResource;
+
+/**
+ * Test deep paging with a Solr cursor, or by offset when the unique key of the
+ * core is not known, against a stub server.
+ */
+public class SolrSearchCommandCursorTest {
+
+	private SolrSearchCommand command;
+	private InteractionContext ctx;
+	private MultivaluedMap<String, String> queryParams;
+	private SolrServer solrServer;
+	// the params of the last query
+	private SolrParams queried;
+
+	@Before
+	public void setup() {
+		command = new SolrSearchCommand();
+		queryParams = new MultivaluedMapImpl<String>();
+		MultivaluedMap<String, String> pathParams = new MultivaluedMapImpl<String>();
+		pathParams.add(SolrConstants.SOLR_COMPANY_NAME_KEY, "TestBank");
+		ResourceState currentState = mock(ResourceState.class);
+		when(currentState.getEntityName()).thenReturn("Customer");
+		ctx = spy(new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), pathParams, queryParams,
+				mock(ResourceState.class), mock(Metadata.class)));
+		when(ctx.getCurrentState()).thenReturn(currentState);
+		solrServer = mock(SolrServer.class);
+	}
+
+	private void stubUniqueKey(String uniqueKey) throws Exception {
+		NamedList<Object> response = new NamedList<Object>();
+		response.add(SolrConstants.SOLR_UNIQUE_KEY, uniqueKey);
+		when(solrServer.request(any(SolrRequest.class))).thenReturn(response);
+	}
+
+	private void stubPage(final String nextCursorMark, final String... ids) throws Exception {
+		when(solrServer.query(any(SolrParams.class))).thenAnswer(new Answer<QueryResponse>() {
+			@Override
+			public QueryResponse answer(InvocationOnMock invocation) throws Throwable {
+				queried = (SolrParams) invocation.getArguments()[0];
+				SolrDocumentList docs = new SolrDocumentList();
+				docs.setNumFound(10);
+				for (String id : ids) {
+					SolrDocument doc = new SolrDocument();
+					doc.addField("id", id);
+					docs.add(doc);
+				}
+				NamedList<Object> response = new NamedList<Object>();
+				response.add("response", docs);
+				if (nextCursorMark != null) {
+					response.add(SolrConstants.SOLR_NEXT_CURSOR_MARK_KEY, nextCursorMark);
+				}
+				return new QueryResponse(response, solrServer);
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> pageIds() {
+		List<String> ids = new ArrayList<String>();
+		for (EntityResource<Entity> er : ((CollectionResource<Entity>) ctx.getResource()).getEntities()) {
+			ids.add((String) er.getEntity().getProperties().getProperty("id").getValue());
+		}
+		return ids;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testFirstPage() throws Exception {
+		stubUniqueKey("id");
+		stubPage("AoE2", "1", "2");
+		queryParams.add(SolrConstants.SOLR_SKIP_TOKEN_KEY, SolrConstants.SOLR_CURSOR_MARK_START);
+		queryParams.add("$top", "2");
+
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		assertEquals("*", queried.get(SolrConstants.SOLR_CURSOR_MARK_KEY));
+		assertEquals("score desc,id asc", queried.get("sort"));
+		assertEquals("2", queried.get("rows"));
+		assertEquals(2, pageIds().size());
+		assertEquals("1", pageIds().get(0));
+		assertEquals("AoE2", ((CollectionResource<Entity>) ctx.getResource()).getSkipToken());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLastPage() throws Exception {
+		// the cursor does not move once all the documents are read
+		stubUniqueKey("id");
+		stubPage("AoE2", "3");
+		queryParams.add(SolrConstants.SOLR_SKIP_TOKEN_KEY, "AoE2");
+
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		assertEquals("AoE2", queried.get(SolrConstants.SOLR_CURSOR_MARK_KEY));
+		assertEquals(1, pageIds().size());
+		assertNull(((CollectionResource<Entity>) ctx.getResource()).getSkipToken());
+	}
+
+	@Test
+	public void testUniqueKeyReadOnce() throws Exception {
+		stubUniqueKey("mnemonic");
+		stubPage("AoE2", "1");
+		queryParams.add(SolrConstants.SOLR_SKIP_TOKEN_KEY, SolrConstants.SOLR_CURSOR_MARK_START);
+
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		assertEquals("score desc,mnemonic asc", queried.get("sort"));
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		verify(solrServer, times(1)).request(any(SolrRequest.class));
+	}
+
+	@Test
+	public void testConfiguredUniqueKey() throws Exception {
+		stubPage("AoE2", "1");
+		queryParams.add(SolrConstants.SOLR_SKIP_TOKEN_KEY, SolrConstants.SOLR_CURSOR_MARK_START);
+		command.setUniqueKeyField("id");
+		command.setUniqueKeyFields(Collections.singletonMap("Customer", "mnemonic"));
+
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		assertEquals("score desc,mnemonic asc", queried.get("sort"));
+
+		// other cores have the key of the command
+		queryParams.add(SolrConstants.SOLR_CORE_KEY, "Account");
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		assertEquals("score desc,id asc", queried.get("sort"));
+		verify(solrServer, times(0)).request(any(SolrRequest.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testOffsetPagingWithoutUniqueKey() throws Exception {
+		when(solrServer.request(any(SolrRequest.class))).thenThrow(new SolrException(ErrorCode.NOT_FOUND, "Not Found"));
+		stubPage(null, "1", "2");
+		queryParams.add(SolrConstants.SOLR_SKIP_TOKEN_KEY, SolrConstants.SOLR_CURSOR_MARK_START);
+		queryParams.add("$top", "2");
+
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		assertNull(queried.get(SolrConstants.SOLR_CURSOR_MARK_KEY));
+		assertNull(queried.get("sort"));
+		assertEquals("0", queried.get("start"));
+		assertEquals("2", ((CollectionResource<Entity>) ctx.getResource()).getSkipToken());
+
+		// the last of the 10 documents found
+		stubPage(null, "9", "10");
+		queryParams.putSingle(SolrConstants.SOLR_SKIP_TOKEN_KEY, "8");
+		assertEquals(Result.SUCCESS, command.execute(ctx, solrServer));
+		assertEquals("8", queried.get("start"));
+		assertEquals(2, pageIds().size());
+		assertNull(((CollectionResource<Entity>) ctx.getResource()).getSkipToken());
+	}
+
+	@Test(expected = InteractionException.class)
+	public void testInvalidOffset() throws Exception {
+		stubPage(null, "1");
+		queryParams.add(SolrConstants.SOLR_SKIP_TOKEN_KEY, "AoE2");
+		command.execute(ctx, solrServer);
+	}
+}
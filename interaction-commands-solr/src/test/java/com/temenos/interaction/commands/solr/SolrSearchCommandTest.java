@@ -33,6 +33,9 @@ package com.temenos.interaction.commands.solr;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
@@ -178,6 +181,34 @@ public class SolrSearchCommandTest extends AbstractSolrTest {
 		assertEquals(1, cr.getEntities().size());
 	}
 
+	/**
+	 * Test paging through Entity2, one entity a page. The embedded server does
+	 * not serve the schema of the core and the core has no unique key, so the
+	 * pages are read by offset.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testEntity2Paging() throws InteractionException {
+		when(currentState.getEntityName()).thenReturn(ENTITY2_TYPE);
+
+		queryParams.add("q", "mnemonic:JOHN*");
+		queryParams.add("$top", "1");
+		queryParams.add(SolrConstants.SOLR_SKIP_TOKEN_KEY, SolrConstants.SOLR_CURSOR_MARK_START);
+		pathParams.add("companyid", COMPANY_NAME);
+		assertEquals(Result.SUCCESS, command.execute(ctx, entity2SolrServer));
+		CollectionResource<Entity> cr = (CollectionResource<Entity>) ctx.getResource();
+		assertEquals(1, cr.getEntities().size());
+		assertEquals("1111", cr.getEntities().iterator().next().getEntity().getProperties().getProperty("id").getValue());
+		assertNotNull(cr.getSkipToken());
+
+		queryParams.putSingle(SolrConstants.SOLR_SKIP_TOKEN_KEY, cr.getSkipToken());
+		assertEquals(Result.SUCCESS, command.execute(ctx, entity2SolrServer));
+		cr = (CollectionResource<Entity>) ctx.getResource();
+		assertEquals(1, cr.getEntities().size());
+		assertEquals("2222", cr.getEntities().iterator().next().getEntity().getProperties().getProperty("id").getValue());
+		assertNull(cr.getSkipToken());
+	}
+
 	/**
 	 * Test select for partial match with wildcard at start. Should work.
 	 */
@@ -392,6 +423,76 @@ public class SolrSearchCommandTest extends AbstractSolrTest {
 		assertEquals(SolrSearchCommand.MAX_ENTITIES_RETURNED, cr.getEntities().size());
 	}
 	
+	/**
+	 * Test searches through the server registry reuse the server of the core
+	 * and record its metrics.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSearchThroughServerRegistry() throws InteractionException {
+		final String coreURL = "http://localhost:8983/solr/" + COMPANY_NAME + "_" + ENTITY1_TYPE;
+		SolrServerRegistry registry = new SolrServerRegistry() {
+			@Override
+			protected SolrServer createServer(String url) {
+				assertEquals(coreURL, url);
+				return entity1SolrServer;
+			}
+		};
+		SolrSearchCommand registryCommand = new SolrSearchCommand("http://localhost:8983/solr", registry);
+		when(currentState.getEntityName()).thenReturn(ENTITY1_TYPE);
+		pathParams.add("companyid", COMPANY_NAME);
+		queryParams.add("q", "A Jones");
+
+		assertEquals(Result.SUCCESS, registryCommand.execute(ctx));
+		assertEquals(1, ((CollectionResource<Entity>) ctx.getResource()).getEntities().size());
+		assertEquals(Result.SUCCESS, registryCommand.execute(ctx));
+		assertSame(entity1SolrServer, registry.getServer(coreURL));
+
+		SolrCoreMetrics metrics = registry.getMetrics(coreURL);
+		assertEquals(2, metrics.getRequestCount());
+		assertEquals(0, metrics.getErrorCount());
+
+		// the registry was given to the command, so is left open
+		registryCommand.close();
+		assertSame(entity1SolrServer, registry.getServer(coreURL));
+		registry.close();
+	}
+
+	/**
+	 * Test a command built without a URL only creates a registry of its own
+	 * when it first searches by URL, and closes it.
+	 */
+	@Test
+	public void testDefaultServerRegistry() throws InteractionException {
+		SolrSearchCommand defaultCommand = new SolrSearchCommand();
+		assertNull(defaultCommand.getServerRegistry());
+		// searching a given server needs no registry
+		when(currentState.getEntityName()).thenReturn(ENTITY1_TYPE);
+		pathParams.add("companyid", COMPANY_NAME);
+		queryParams.add("q", "A Jones");
+		assertEquals(Result.SUCCESS, defaultCommand.execute(ctx, entity1SolrServer));
+		assertNull(defaultCommand.getServerRegistry());
+		// closing a command without a registry does nothing
+		defaultCommand.close();
+
+		defaultCommand = new SolrSearchCommand();
+		defaultCommand.solrRootURL = "http://localhost:1/solr";
+		try {
+			defaultCommand.execute(ctx);
+		} catch (Exception e) {
+			// nothing listens on the URL
+		}
+		SolrServerRegistry registry = defaultCommand.getServerRegistry();
+		assertNotNull(registry);
+		defaultCommand.close();
+		try {
+			registry.getServer("http://localhost:8983/solr/" + COMPANY_NAME + "_" + ENTITY1_TYPE);
+			fail("registry should be closed");
+		} catch (IllegalStateException e) {
+			// closed with the command
+		}
+	}
+
 	@Ignore ("This test is currently ignored because distributed search is not supported by Embedded Solr. See https://issues.apache.org/jira/browse/SOLR-1858 for more details")
 	@Test
 	public void testSolrSharding() {
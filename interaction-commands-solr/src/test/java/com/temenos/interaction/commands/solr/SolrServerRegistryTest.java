@@ -0,0 +1,100 @@
+package com.temenos.interaction.commands.solr;
+
+/*
+ * #%L
+ * interaction-commands-solr
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SolrServerRegistryTest {
+
+	private static final String CORE1_URL = "http://localhost:8983/solr/TestBank_core1";
+	private static final String CORE2_URL = "http://localhost:8983/solr/TestBank_core2";
+
+	private SolrServerRegistry registry;
+	private int createdCount;
+
+	@Before
+	public void setUp() {
+		registry = new SolrServerRegistry(10, 2, 1000, 1000) {
+			@Override
+			protected SolrServer createServer(String coreURL) {
+				createdCount++;
+				return mock(SolrServer.class);
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		registry.close();
+	}
+
+	@Test
+	public void testServerPerCore() {
+		SolrServer core1 = registry.getServer(CORE1_URL);
+		assertSame(core1, registry.getServer(CORE1_URL));
+		assertNotSame(core1, registry.getServer(CORE2_URL));
+		assertEquals(2, createdCount);
+	}
+
+	@Test
+	public void testMetrics() {
+		registry.recordRequest(CORE1_URL, TimeUnit.MILLISECONDS.toNanos(10), false);
+		registry.recordRequest(CORE1_URL, TimeUnit.MILLISECONDS.toNanos(30), true);
+		registry.recordRequest(CORE2_URL, TimeUnit.MILLISECONDS.toNanos(5), false);
+
+		SolrCoreMetrics core1 = registry.getMetrics(CORE1_URL);
+		assertEquals(2, core1.getRequestCount());
+		assertEquals(1, core1.getErrorCount());
+		assertEquals(40, core1.getTotalLatencyMillis());
+		assertEquals(30, core1.getMaxLatencyMillis());
+		assertEquals(20.0, core1.getAverageLatencyMillis(), 0.001);
+		assertEquals(1, registry.getMetrics(CORE2_URL).getRequestCount());
+		assertEquals(2, registry.getMetrics().size());
+	}
+
+	@Test
+	public void testClose() {
+		SolrServer core1 = registry.getServer(CORE1_URL);
+		SolrServer core2 = registry.getServer(CORE2_URL);
+		registry.close();
+		verify(core1).shutdown();
+		verify(core2).shutdown();
+		try {
+			registry.getServer(CORE1_URL);
+			fail("IllegalStateException should be thrown");
+		} catch (IllegalStateException e) {
+			// closed
+		}
+	}
+}
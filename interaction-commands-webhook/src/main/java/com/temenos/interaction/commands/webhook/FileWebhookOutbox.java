@@ -0,0 +1,196 @@
+package com.temenos.interaction.commands.webhook;
+
+/*
+ * #%L
+ * interaction-commands-webhook
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An outbox journalled to a file. Each event added is appended as a line,
+ * and each event removed as another line, so the file is only ever appended
+ * to while events flow. The events still pending are read back when the
+ * file is opened, and the file is rewritten with just those once enough
+ * events have been removed.
+ * 
+ * Lines are flushed to the operating system as they are written, they
+ * survive the JVM stopping but are not forced to disk.
+ */
+public class FileWebhookOutbox implements WebhookOutbox {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileWebhookOutbox.class);
+
+	public static final int DEFAULT_COMPACT_THRESHOLD = 1000;
+
+	private static final String ADDED = "+";
+	private static final String REMOVED = "-";
+	private static final String SEPARATOR = " ";
+
+	private final File file;
+	private final int compactThreshold;
+	private final Map<Long, WebhookEvent> pending = new LinkedHashMap<Long, WebhookEvent>();
+	private Writer journal;
+	private long nextId = 1;
+	// the removals written since the file was last rewritten
+	private int removedCount;
+
+	public FileWebhookOutbox(File file) throws IOException {
+		this(file, DEFAULT_COMPACT_THRESHOLD);
+	}
+
+	/**
+	 * @param file
+	 * 		The journal, created if it does not exist.
+	 * @param compactThreshold
+	 * 		The number of removed events after which the journal is rewritten.
+	 */
+	public FileWebhookOutbox(File file, int compactThreshold) throws IOException {
+		this.file = file;
+		this.compactThreshold = compactThreshold;
+		if (file.exists()) {
+			read();
+		}
+		compact();
+	}
+
+	@Override
+	public synchronized WebhookEvent add(String url, String formData) {
+		WebhookEvent event = new WebhookEvent(nextId++, url, formData);
+		write(ADDED + SEPARATOR + event.getId() + SEPARATOR + encode(url) + SEPARATOR + encode(formData));
+		pending.put(event.getId(), event);
+		return event;
+	}
+
+	@Override
+	public synchronized void remove(WebhookEvent event) {
+		if (pending.remove(event.getId()) != null) {
+			write(REMOVED + SEPARATOR + event.getId());
+			if (++removedCount >= compactThreshold) {
+				try {
+					compact();
+				} catch (IOException e) {
+					LOGGER.error("Failed to rewrite webhook outbox " + file, e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized List<WebhookEvent> getPending() {
+		return new ArrayList<WebhookEvent>(pending.values());
+	}
+
+	@Override
+	public synchronized void close() {
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				LOGGER.warn("Failed to close webhook outbox " + file, e);
+			}
+			journal = null;
+		}
+	}
+
+	private void write(String line) {
+		if (journal == null) {
+			throw new IllegalStateException("Webhook outbox " + file + " is closed");
+		}
+		try {
+			journal.write(line);
+			journal.write('\n');
+			journal.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to write webhook outbox " + file, e);
+		}
+	}
+
+	private void read() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(SEPARATOR, -1);
+				try {
+					long id = Long.parseLong(fields[1]);
+					if (ADDED.equals(fields[0])) {
+						pending.put(id, new WebhookEvent(id, decode(fields[2]), decode(fields[3])));
+					} else {
+						pending.remove(id);
+					}
+					nextId = Math.max(nextId, id + 1);
+				} catch (RuntimeException e) {
+					// a line cut short by the process stopping
+					LOGGER.warn("Skipping unreadable line in webhook outbox " + file + ": " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/*
+	 * Write the pending events to a new file, and continue the journal there.
+	 */
+	private void compact() throws IOException {
+		File compacted = new File(file.getPath() + ".tmp");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(compacted), StandardCharsets.UTF_8);
+		try {
+			for (WebhookEvent event : pending.values()) {
+				writer.write(ADDED + SEPARATOR + event.getId() + SEPARATOR + encode(event.getUrl()) + SEPARATOR
+						+ encode(event.getFormData()) + '\n');
+			}
+		} finally {
+			writer.close();
+		}
+		close();
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Failed to replace webhook outbox " + file);
+		}
+		if (!compacted.renameTo(file)) {
+			throw new IOException("Failed to replace webhook outbox " + file);
+		}
+		journal = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+		removedCount = 0;
+	}
+
+	private static String encode(String value) {
+		return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String decode(String value) {
+		return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+	}
+}
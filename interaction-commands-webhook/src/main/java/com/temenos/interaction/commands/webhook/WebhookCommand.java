@@ -22,14 +22,12 @@ package com.temenos.interaction.commands.webhook;
  */
 
 
+import java.io.Closeable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.odata4j.core.OEntity;
 import org.odata4j.core.OProperty;
 import org.slf4j.Logger;
@@ -44,22 +42,37 @@ import com.temenos.interaction.core.resource.EntityResource;
 /**
  * The Webhook command receives an Entity from the InteractionContext and POSTs
  * that entity to the configured URL with application/x-www-form-urlencoded Content-Type.
+ * The POST is made in the background by a {@link WebhookDispatcher}.
  * @author aphethean
  *
  */
-public class WebhookCommand implements InteractionCommand {
+public class WebhookCommand implements InteractionCommand, Closeable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(WebhookCommand.class);
 
 	private String url = null;
+	private WebhookDispatcher dispatcher;
+	// whether this command created the dispatcher, and so closes it
+	private boolean ownsDispatcher;
 	
 	// TODO we should be able to pass the url from the RIM
 	public WebhookCommand(String url) {
+		this(url, url != null && url.length() > 0 ? new WebhookDispatcher() : null);
+		this.ownsDispatcher = true;
+	}
+
+	/**
+	 * Instantiates a webhook command sending its events through a dispatcher,
+	 * to share the dispatcher between commands or keep events in an outbox.
+	 * The dispatcher is left open when the command is closed.
+	 */
+	public WebhookCommand(String url, WebhookDispatcher dispatcher) {
 		this.url = url;
+		this.dispatcher = dispatcher;
 	}
 	
 	/**
 	 * @precondition url has been supplied
-	 * @postcondition Result.Success if {@link InteractionContext#getResource()} is successfully POSTed to url
+	 * @postcondition Result.Success if {@link InteractionContext#getResource()} is queued to be POSTed to url
 	 */
 	@SuppressWarnings("unchecked")
 	@Override
@@ -77,17 +90,8 @@ public class WebhookCommand implements InteractionCommand {
 				properties = transform(entity);
 			}
 			String formData = getFormData(properties);
-			try {
-			    LOGGER.info("POST " + url + " [" + formData + "]");
-				HttpClient client = new HttpClient();
-				PostMethod postMethod = new PostMethod(url);
-				postMethod.setRequestEntity(new StringRequestEntity(formData,
-				                                                    "application/x-www-form-urlencoded",
-				                                                    "UTF-8"));
-				client.executeMethod(postMethod);
-				LOGGER.info("Status [" + postMethod.getStatusCode() + "]");
-			} catch (Exception e) {
-			    LOGGER.error("Error POST " + url + " [" + formData + "]", e);
+		    LOGGER.info("POST " + url + " [" + formData + "]");
+			if (!dispatcher.dispatch(url, formData)) {
 				return Result.FAILURE;
 			}
 		} else {
@@ -96,6 +100,25 @@ public class WebhookCommand implements InteractionCommand {
 		return Result.SUCCESS;
 	}
 
+	/**
+	 * @return the dispatcher POSTing the events, with its metrics, or null if
+	 * 		no url was supplied.
+	 */
+	public WebhookDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * Stops the dispatcher of this command, call when the command bean is
+	 * destroyed.
+	 */
+	@Override
+	public void close() {
+		if (ownsDispatcher && dispatcher != null) {
+			dispatcher.close();
+		}
+	}
+
 	protected Map<String, Object> transform(OEntity entity) {
 		assert(entity != null);
 		Map<String, Object> map = new HashMap<String, Object>();
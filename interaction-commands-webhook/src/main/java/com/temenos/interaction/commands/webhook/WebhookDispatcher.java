@@ -0,0 +1,392 @@
+package com.temenos.interaction.commands.webhook;
+
+/*
+ * #%L
+ * interaction-commands-webhook
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers webhook events in the background, so a slow or failing webhook
+ * does not hold up the interaction that raised the event.
+ * 
+ * Events wait on a bounded queue, an event is dropped if the queue is full.
+ * A pool of workers takes up to a batch of events off the queue at a time
+ * and POSTs them over a shared pool of kept-alive connections. Delivery is
+ * tried again, with exponential backoff, after an I/O error or a 5xx
+ * status, and a retry that finds the queue full waits longer rather than
+ * being dropped. Given a {@link WebhookOutbox} the events are kept until they
+ * are delivered, and those left pending when the dispatcher stopped are
+ * queued again when it starts, as the queue makes room for them.
+ */
+public class WebhookDispatcher implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	public static final int DEFAULT_WORKERS = 2;
+	public static final int DEFAULT_BATCH_SIZE = 50;
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+	public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 500;
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+	public static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+	// the longest backoff is the initial backoff doubled this many times
+	private static final int MAX_BACKOFF_DOUBLINGS = 10;
+
+	private final BlockingQueue<WebhookEvent> queue;
+	// the events of the outbox waiting for room on the queue, oldest first
+	private final Queue<WebhookEvent> backlog = new ConcurrentLinkedQueue<WebhookEvent>();
+	private final WebhookOutbox outbox;
+	private final MultiThreadedHttpConnectionManager connectionManager;
+	private final HttpClient client;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService retries;
+	private final WebhookMetrics metrics = new WebhookMetrics();
+	private final AtomicLong nextId = new AtomicLong(1);
+	// the events queued, being sent or waiting to be sent again
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+	private volatile boolean closed;
+
+	public WebhookDispatcher() {
+		this(DEFAULT_QUEUE_CAPACITY, DEFAULT_WORKERS, null);
+	}
+
+	/**
+	 * @param queueCapacity
+	 * 		The most events waiting to be sent.
+	 * @param workerCount
+	 * 		The number of threads sending events.
+	 * @param outbox
+	 * 		Where events are kept until they are delivered, or null to keep
+	 * 		them in memory only.
+	 */
+	public WebhookDispatcher(int queueCapacity, int workerCount, WebhookOutbox outbox) {
+		this.queue = new ArrayBlockingQueue<WebhookEvent>(queueCapacity);
+		this.outbox = outbox;
+
+		connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setMaxTotalConnections(DEFAULT_MAX_CONNECTIONS);
+		params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS);
+		params.setConnectionTimeout(DEFAULT_TIMEOUT_MILLIS);
+		params.setSoTimeout(DEFAULT_TIMEOUT_MILLIS);
+		client = new HttpClient(connectionManager);
+
+		workers = Executors.newFixedThreadPool(workerCount, new DaemonThreadFactory("webhook-worker-"));
+		for (int i = 0; i < workerCount; i++) {
+			workers.execute(new Worker());
+		}
+		retries = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("webhook-retry-"));
+
+		if (outbox != null) {
+			List<WebhookEvent> pending = outbox.getPending();
+			for (WebhookEvent event : pending) {
+				if (backlog.isEmpty() && offer(event)) {
+					metrics.queued();
+				} else {
+					pendingCount.incrementAndGet();
+					backlog.add(event);
+				}
+			}
+			if (!backlog.isEmpty()) {
+				LOGGER.warn("Webhook queue full, " + backlog.size() + " of " + pending.size() + " pending events queued later");
+				scheduleBacklog();
+			}
+		}
+	}
+
+	/**
+	 * Queue an event to POST to a webhook.
+	 * 
+	 * @return false if the event was dropped as the queue is full, or the
+	 * 		dispatcher is closed
+	 */
+	public boolean dispatch(String url, String formData) {
+		if (closed) {
+			LOGGER.warn("Webhook dispatcher closed, dropping POST " + url);
+			metrics.dropped();
+			return false;
+		}
+		WebhookEvent event = outbox != null ? outbox.add(url, formData)
+				: new WebhookEvent(nextId.getAndIncrement(), url, formData);
+		if (!offer(event)) {
+			LOGGER.warn("Webhook queue full, dropping " + event);
+			metrics.dropped();
+			if (outbox != null) {
+				outbox.remove(event);
+			}
+			return false;
+		}
+		metrics.queued();
+		return true;
+	}
+
+	/**
+	 * Wait for the events dispatched so far to be delivered or given up on.
+	 * 
+	 * @return false if events were still pending when the time ran out
+	 */
+	public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (pendingCount.get() > 0) {
+			if (System.nanoTime() >= deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of events waiting on the queue
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the number of events queued, being sent or waiting to be sent
+	 * 		again
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	public WebhookMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param batchSize
+	 * 		The most events a worker takes off the queue at a time.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param maxAttempts
+	 * 		The number of times delivery of an event is tried before it is
+	 * 		given up on.
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * @param retryBackoffMillis
+	 * 		The wait before the first retry, doubled for each retry after it.
+	 */
+	public void setRetryBackoffMillis(long retryBackoffMillis) {
+		this.retryBackoffMillis = retryBackoffMillis;
+	}
+
+	/**
+	 * Stop delivering events and close the connections. Events not yet
+	 * delivered are lost, unless they are kept in an outbox.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		workers.shutdownNow();
+		retries.shutdownNow();
+		try {
+			workers.awaitTermination(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		connectionManager.shutdown();
+		if (outbox != null) {
+			outbox.close();
+		}
+	}
+
+	private boolean offer(WebhookEvent event) {
+		event.setQueuedNanos(System.nanoTime());
+		pendingCount.incrementAndGet();
+		if (!queue.offer(event)) {
+			pendingCount.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private void send(WebhookEvent event) {
+		event.attempted();
+		int status;
+		PostMethod postMethod = null;
+		try {
+			postMethod = new PostMethod(event.getUrl());
+			postMethod.setRequestEntity(new StringRequestEntity(event.getFormData(), CONTENT_TYPE, "UTF-8"));
+			status = client.executeMethod(postMethod);
+			LOGGER.info("Status [" + status + "] " + event);
+		} catch (IOException e) {
+			LOGGER.warn("Error " + event, e);
+			status = 0;
+		} catch (RuntimeException e) {
+			// an invalid url, sending again will not help
+			LOGGER.error("Error " + event, e);
+			status = 400;
+		} finally {
+			if (postMethod != null) {
+				postMethod.releaseConnection();
+			}
+		}
+
+		if (status >= 200 && status < 300) {
+			metrics.delivered(System.nanoTime() - event.getQueuedNanos());
+			done(event);
+		} else if ((status == 0 || status >= 500) && event.getAttempts() < maxAttempts) {
+			retry(event);
+		} else {
+			LOGGER.error("Giving up after " + event.getAttempts() + " attempts " + event);
+			metrics.failed();
+			done(event);
+		}
+	}
+
+	private void retry(WebhookEvent event) {
+		metrics.retried();
+		scheduleOffer(event, retryBackoffMillis << Math.min(event.getAttempts() - 1, MAX_BACKOFF_DOUBLINGS));
+	}
+
+	/*
+	 * Queue the event again after the backoff, backing off further while the
+	 * queue is full.
+	 */
+	private void scheduleOffer(final WebhookEvent event, final long backoff) {
+		try {
+			retries.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (!queue.offer(event)) {
+						LOGGER.warn("Webhook queue full, queueing " + event + " later");
+						scheduleOffer(event, Math.min(backoff * 2, retryBackoffMillis << MAX_BACKOFF_DOUBLINGS));
+					}
+				}
+			}, backoff, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// closed, an outbox still has the event
+			pendingCount.decrementAndGet();
+		}
+	}
+
+	/*
+	 * Move the events of the backlog to the queue as it makes room for them.
+	 */
+	private void scheduleBacklog() {
+		try {
+			retries.schedule(new Runnable() {
+				@Override
+				public void run() {
+					WebhookEvent event;
+					while ((event = backlog.peek()) != null) {
+						event.setQueuedNanos(System.nanoTime());
+						if (!queue.offer(event)) {
+							scheduleBacklog();
+							return;
+						}
+						backlog.poll();
+						metrics.queued();
+					}
+				}
+			}, retryBackoffMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// closed, the outbox still has the events
+			pendingCount.addAndGet(-backlog.size());
+			backlog.clear();
+		}
+	}
+
+	private void done(WebhookEvent event) {
+		if (outbox != null) {
+			outbox.remove(event);
+		}
+		pendingCount.decrementAndGet();
+	}
+
+	private class Worker implements Runnable {
+		@Override
+		public void run() {
+			List<WebhookEvent> batch = new ArrayList<WebhookEvent>();
+			try {
+				while (!closed) {
+					batch.add(queue.take());
+					queue.drainTo(batch, batchSize - 1);
+					for (WebhookEvent event : batch) {
+						try {
+							send(event);
+						} catch (RuntimeException e) {
+							// keep the worker going
+							LOGGER.error("Failed to send " + event, e);
+						}
+					}
+					batch.clear();
+				}
+			} catch (InterruptedException e) {
+				// closed
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.temenos.interaction.commands.webhook;
+
+/*
+ * #%L
+ * interaction-commands-webhook
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+/**
+ * An entity to POST to a webhook, as form data.
+ */
+public class WebhookEvent {
+	private final long id;
+	private final String url;
+	private final String formData;
+	private volatile int attempts;
+	private volatile long queuedNanos;
+
+	public WebhookEvent(long id, String url, String formData) {
+		this.id = id;
+		this.url = url;
+		this.formData = formData;
+	}
+
+	/**
+	 * @return the id of this event in its outbox
+	 */
+	public long getId() {
+		return id;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getFormData() {
+		return formData;
+	}
+
+	/**
+	 * @return the number of times delivery has been tried
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	void attempted() {
+		attempts++;
+	}
+
+	long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	void setQueuedNanos(long queuedNanos) {
+		this.queuedNanos = queuedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "POST " + url + " [" + formData + "]";
+	}
+}
@@ -0,0 +1,126 @@
+package com.temenos.interaction.commands.webhook;
+
+/*
+ * #%L
+ * interaction-commands-webhook
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivery counts and latency of a {@link WebhookDispatcher}. The latency of
+ * an event is from when it was queued to when it was delivered, including
+ * any retries.
+ */
+public class WebhookMetrics {
+
+	private final AtomicLong queuedCount = new AtomicLong();
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong retryCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	void queued() {
+		queuedCount.incrementAndGet();
+	}
+
+	void delivered(long latencyNanos) {
+		deliveredCount.incrementAndGet();
+		totalLatencyNanos.addAndGet(latencyNanos);
+		long max = maxLatencyNanos.get();
+		while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	void retried() {
+		retryCount.incrementAndGet();
+	}
+
+	void failed() {
+		failedCount.incrementAndGet();
+	}
+
+	void dropped() {
+		droppedCount.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of events accepted for delivery
+	 */
+	public long getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	public long getDeliveredCount() {
+		return deliveredCount.get();
+	}
+
+	/**
+	 * @return the number of times delivery was tried again after a failure
+	 */
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	/**
+	 * @return the number of events given up on, after they were rejected or
+	 * 		ran out of attempts
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return the number of events not sent because the queue was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getTotalLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get());
+	}
+
+	public long getMaxLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+	}
+
+	/**
+	 * @return the mean latency of the delivered events, in milliseconds, or 0
+	 * 		if there were none.
+	 */
+	public double getAverageLatencyMillis() {
+		long delivered = deliveredCount.get();
+		if (delivered == 0) {
+			return 0;
+		}
+		return totalLatencyNanos.get() / (delivered * 1000000.0);
+	}
+
+	@Override
+	public String toString() {
+		return "queued=" + getQueuedCount() + ", delivered=" + getDeliveredCount() + ", retries=" + getRetryCount()
+				+ ", failed=" + getFailedCount() + ", dropped=" + getDroppedCount()
+				+ ", averageLatencyMillis=" + getAverageLatencyMillis() + ", maxLatencyMillis=" + getMaxLatencyMillis();
+	}
+}
@@ -0,0 +1,52 @@
+package com.temenos.interaction.commands.webhook;
+
+/*
+ * #%L
+ * interaction-commands-webhook
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Keeps webhook events until they are delivered, so events accepted before
+ * a restart are still sent after it.
+ */
+public interface WebhookOutbox extends Closeable {
+
+	/**
+	 * Store a new event.
+	 * 
+	 * @return the event, with the id given to it by this outbox
+	 */
+	public WebhookEvent add(String url, String formData);
+
+	/**
+	 * Forget an event once it is delivered, or given up on.
+	 */
+	public void remove(WebhookEvent event);
+
+	/**
+	 * @return the events added and not yet removed, oldest first
+	 */
+	public List<WebhookEvent> getPending();
+
+	@Override
+	public void close();
+}
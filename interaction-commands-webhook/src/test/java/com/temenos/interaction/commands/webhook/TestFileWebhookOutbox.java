@@ -0,0 +1,96 @@
+package com.temenos.interaction.commands.webhook;
+
+/*
+ * #%L
+ * interaction-commands-webhook
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFileWebhookOutbox {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPendingAfterReopen() throws Exception {
+		File file = new File(folder.getRoot(), "outbox");
+		FileWebhookOutbox outbox = new FileWebhookOutbox(file);
+		WebhookEvent first = outbox.add("http://localhost/hook", "name=Bob Dodge&note=line\nbreak");
+		WebhookEvent second = outbox.add("http://localhost/hook", "");
+		outbox.add("http://localhost/other", "id=3");
+		outbox.remove(first);
+		assertEquals(2, outbox.getPending().size());
+		outbox.close();
+
+		outbox = new FileWebhookOutbox(file);
+		List<WebhookEvent> pending = outbox.getPending();
+		assertEquals(2, pending.size());
+		assertEquals(second.getId(), pending.get(0).getId());
+		assertEquals("", pending.get(0).getFormData());
+		assertEquals("http://localhost/other", pending.get(1).getUrl());
+		assertEquals("id=3", pending.get(1).getFormData());
+		// ids are not reused
+		assertTrue(outbox.add("http://localhost/hook", "id=4").getId() > pending.get(1).getId());
+		outbox.close();
+	}
+
+	@Test
+	public void testCompacted() throws Exception {
+		File file = new File(folder.getRoot(), "outbox");
+		FileWebhookOutbox outbox = new FileWebhookOutbox(file, 2);
+		for (int i = 0; i < 10; i++) {
+			outbox.remove(outbox.add("http://localhost/hook", "id=" + i));
+		}
+		WebhookEvent kept = outbox.add("http://localhost/hook", "id=kept");
+		outbox.close();
+
+		// only the pending event is left
+		assertEquals(1, FileUtils.readLines(file).size());
+		outbox = new FileWebhookOutbox(file);
+		assertEquals(kept.getId(), outbox.getPending().get(0).getId());
+		outbox.close();
+	}
+
+	@Test
+	public void testUnreadableLineSkipped() throws Exception {
+		File file = new File(folder.getRoot(), "outbox");
+		FileWebhookOutbox outbox = new FileWebhookOutbox(file);
+		outbox.add("http://localhost/hook", "id=1");
+		outbox.close();
+		// a line cut short by the process stopping
+		FileWriter writer = new FileWriter(file, true);
+		writer.write("+ 2 aHR0");
+		writer.close();
+
+		outbox = new FileWebhookOutbox(file);
+		assertEquals(1, outbox.getPending().size());
+		outbox.close();
+	}
+}
@@ -23,9 +23,11 @@ package com.temenos.interaction.commands.webhook;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
@@ -76,7 +78,7 @@ public class TestWebhookCommand {
 
 	@SuppressWarnings("unchecked")
 	@Test
-	public void testSimpleEntity() {
+	public void testSimpleEntity() throws Exception {
 		// use this neat little http server to capture our webhook post data
 		MockHttpServer httpServer = new MockHttpServer(34567);
 		httpServer.startServer();
@@ -95,6 +97,9 @@ public class TestWebhookCommand {
 		InteractionContext ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), pathParams, queryParams, mock(ResourceState.class), mock(Metadata.class));
 		ctx.setResource(before);
 		c.execute(ctx);
+		// the POST is made in the background
+		assertTrue(c.getDispatcher().flush(5, TimeUnit.SECONDS));
+		c.close();
 
 		assertEquals("POST", httpServer.getRequestMethod());
 		assertEquals("email=test@test.com&first_name=Bob&last_name=Dodge", 
@@ -0,0 +1,272 @@
+package com.temenos.interaction.commands.webhook;
+
+/*
+ * #%L
+ * interaction-commands-webhook
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestWebhookDispatcher {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private String url;
+	private WebhookDispatcher dispatcher;
+	// the bodies of the requests the server received
+	private List<String> received = new CopyOnWriteArrayList<String>();
+	// the client address of each connection the server accepted
+	private Set<InetSocketAddress> connections = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+	// the statuses to respond with, then 200
+	private Queue<Integer> statuses = new ConcurrentLinkedQueue<Integer>();
+	private CountDownLatch firstRequest = new CountDownLatch(1);
+	private CountDownLatch respond = new CountDownLatch(0);
+	// the requests with this body wait for the latch before responding
+	private volatile String heldBody;
+	private CountDownLatch held = new CountDownLatch(1);
+	private CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/hook", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				connections.add(exchange.getRemoteAddress());
+				String body = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+				received.add(body);
+				firstRequest.countDown();
+				try {
+					respond.await();
+					if (body.equals(heldBody)) {
+						held.countDown();
+						release.await();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				Integer status = statuses.poll();
+				exchange.sendResponseHeaders(status != null ? status : 200, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/hook";
+	}
+
+	@After
+	public void tearDown() {
+		respond = new CountDownLatch(0);
+		release.countDown();
+		if (dispatcher != null) {
+			dispatcher.close();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	public void testDelivered() throws Exception {
+		dispatcher = new WebhookDispatcher(100, 2, null);
+		for (int i = 0; i < 20; i++) {
+			assertTrue(dispatcher.dispatch(url, "id=" + i));
+		}
+		assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+
+		assertEquals(20, received.size());
+		assertTrue(received.contains("id=19"));
+		// the connections are kept alive between events
+		assertTrue(connections.size() <= 2);
+		assertEquals(20, dispatcher.getMetrics().getQueuedCount());
+		assertEquals(20, dispatcher.getMetrics().getDeliveredCount());
+		assertEquals(0, dispatcher.getMetrics().getFailedCount());
+		assertEquals(0, dispatcher.getQueueDepth());
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	@Test
+	public void testRetriedAfterServerError() throws Exception {
+		statuses.add(500);
+		statuses.add(503);
+		dispatcher = new WebhookDispatcher(10, 1, null);
+		dispatcher.setRetryBackoffMillis(10);
+		dispatcher.dispatch(url, "id=1");
+		assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+
+		assertEquals(3, received.size());
+		assertEquals(2, dispatcher.getMetrics().getRetryCount());
+		assertEquals(1, dispatcher.getMetrics().getDeliveredCount());
+		assertTrue(dispatcher.getMetrics().getMaxLatencyMillis() >= 30);
+	}
+
+	@Test
+	public void testGivesUpAfterMaxAttempts() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			statuses.add(500);
+		}
+		dispatcher = new WebhookDispatcher(10, 1, null);
+		dispatcher.setRetryBackoffMillis(1);
+		dispatcher.setMaxAttempts(3);
+		dispatcher.dispatch(url, "id=1");
+		assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+
+		assertEquals(3, received.size());
+		assertEquals(1, dispatcher.getMetrics().getFailedCount());
+		assertEquals(0, dispatcher.getMetrics().getDeliveredCount());
+	}
+
+	@Test
+	public void testClientErrorNotRetried() throws Exception {
+		statuses.add(404);
+		dispatcher = new WebhookDispatcher(10, 1, null);
+		dispatcher.dispatch(url, "id=1");
+		assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+
+		assertEquals(1, received.size());
+		assertEquals(0, dispatcher.getMetrics().getRetryCount());
+		assertEquals(1, dispatcher.getMetrics().getFailedCount());
+	}
+
+	@Test
+	public void testDroppedWhenQueueFull() throws Exception {
+		respond = new CountDownLatch(1);
+		dispatcher = new WebhookDispatcher(2, 1, null);
+		assertTrue(dispatcher.dispatch(url, "id=1"));
+		// the only worker is waiting on the server
+		assertTrue(firstRequest.await(5, TimeUnit.SECONDS));
+		assertTrue(dispatcher.dispatch(url, "id=2"));
+		assertTrue(dispatcher.dispatch(url, "id=3"));
+		assertFalse(dispatcher.dispatch(url, "id=4"));
+		assertEquals(2, dispatcher.getQueueDepth());
+		assertEquals(3, dispatcher.getPendingCount());
+		assertEquals(1, dispatcher.getMetrics().getDroppedCount());
+
+		respond.countDown();
+		assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+		assertEquals(3, dispatcher.getMetrics().getDeliveredCount());
+		assertFalse(received.contains("id=4"));
+	}
+
+	@Test
+	public void testOutboxReplayedOnStart() throws Exception {
+		File file = new File(folder.getRoot(), "outbox");
+		FileWebhookOutbox outbox = new FileWebhookOutbox(file);
+		outbox.add(url, "id=1");
+		outbox.add(url, "id=2");
+		outbox.close();
+
+		dispatcher = new WebhookDispatcher(10, 1, new FileWebhookOutbox(file));
+		assertTrue(dispatcher.dispatch(url, "id=3"));
+		assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+		dispatcher.close();
+
+		assertEquals(3, received.size());
+		assertEquals("id=1", received.get(0));
+		assertTrue(new FileWebhookOutbox(file).getPending().isEmpty());
+	}
+
+	@Test
+	public void testOutboxLargerThanQueue() throws Exception {
+		File file = new File(folder.getRoot(), "outbox");
+		FileWebhookOutbox outbox = new FileWebhookOutbox(file);
+		for (int i = 0; i < 10; i++) {
+			outbox.add(url, "id=" + i);
+		}
+		outbox.close();
+
+		// the events that do not fit are queued as the queue makes room
+		dispatcher = new WebhookDispatcher(2, 1, new FileWebhookOutbox(file));
+		assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+		dispatcher.close();
+
+		assertEquals(10, received.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals("id=" + i, received.get(i));
+		}
+		assertEquals(10, dispatcher.getMetrics().getQueuedCount());
+		assertTrue(new FileWebhookOutbox(file).getPending().isEmpty());
+	}
+
+	@Test
+	public void testRetryKeptWhenQueueFull() throws Exception {
+		statuses.add(500);
+		heldBody = "id=2";
+		File file = new File(folder.getRoot(), "outbox");
+		dispatcher = new WebhookDispatcher(1, 1, new FileWebhookOutbox(file));
+		dispatcher.setRetryBackoffMillis(300);
+		assertTrue(dispatcher.dispatch(url, "id=1"));
+		assertTrue(firstRequest.await(5, TimeUnit.SECONDS));
+		assertTrue(dispatcher.dispatch(url, "id=2"));
+		// the only worker is waiting on the server, the retry of id=1 finds
+		// the queue full
+		assertTrue(held.await(5, TimeUnit.SECONDS));
+		assertTrue(dispatcher.dispatch(url, "id=3"));
+		Thread.sleep(1000);
+		assertEquals(0, dispatcher.getMetrics().getDroppedCount());
+		assertEquals(3, dispatcher.getPendingCount());
+
+		release.countDown();
+		assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+		dispatcher.close();
+		assertEquals(3, dispatcher.getMetrics().getDeliveredCount());
+		assertEquals(4, received.size());
+		assertEquals(2, Collections.frequency(received, "id=1"));
+		assertTrue(new FileWebhookOutbox(file).getPending().isEmpty());
+	}
+
+	@Test
+	public void testFailedEventsRemovedFromOutbox() throws Exception {
+		statuses.add(400);
+		File file = new File(folder.getRoot(), "outbox");
+		dispatcher = new WebhookDispatcher(10, 1, new FileWebhookOutbox(file));
+		dispatcher.dispatch(url, "id=1");
+		assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+		dispatcher.close();
+
+		assertEquals(1, dispatcher.getMetrics().getFailedCount());
+		assertTrue(new FileWebhookOutbox(file).getPending().isEmpty());
+	}
+}
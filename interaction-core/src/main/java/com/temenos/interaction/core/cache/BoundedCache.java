@@ -0,0 +1,132 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import javax.ws.rs.core.Response;
+
+/**
+ * A response cache bounded by entry count and, optionally, by weight, that
+ * drops expired responses without waiting for them to be requested again.
+ * See {@link BoundedStore} for the eviction and expiry policy.
+ */
+public class BoundedCache implements Cache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	/**
+	 * Calculates the weight of a cached response, for example an estimate of
+	 * its size in bytes.
+	 */
+	public interface Weigher extends BoundedStore.Weigher<Response.ResponseBuilder> {
+	}
+
+	private final BoundedStore<Response.ResponseBuilder> store;
+
+	public BoundedCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public BoundedCache(int maximumSize) {
+		store = new BoundedStore<Response.ResponseBuilder>(maximumSize);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of entries
+	 * @param maximumWeight the maximum total weight of the entries
+	 * @param weigher the weigher of an entry
+	 */
+	public BoundedCache(int maximumSize, long maximumWeight, Weigher weigher) {
+		store = new BoundedStore<Response.ResponseBuilder>(maximumSize, maximumWeight, weigher);
+	}
+
+	/** Insert a value into the cache, replacing any previous value.
+	 *  @param maxAge the entry will be invalid after this many seconds
+	 */
+	@Override
+	public void put(Object key, Response.ResponseBuilder value, int maxAge) {
+		store.put(key, value, maxAge);
+	}
+
+	// logic without live time exposed for testing
+	void put(Object key, Response.ResponseBuilder value, int maxAge, long now) {
+		store.put(key, value, maxAge, now);
+	}
+
+	/** Retrieve a value from the cache
+	 *  @return the value if present and valid
+	 */
+	@Override
+	public Response.ResponseBuilder get(Object key) {
+		return store.get(key);
+	}
+
+	Response.ResponseBuilder get(Object key, long now) {
+		return store.get(key, now);
+	}
+
+	/**
+	 * Drop the expired entries now, rather than on the next cache access.
+	 */
+	public void cleanUp() {
+		store.cleanUp();
+	}
+
+	void cleanUp(long now) {
+		store.cleanUp(now);
+	}
+
+	/**
+	 * @return the number of entries, including expired ones not dropped yet
+	 */
+	public int size() {
+		return store.size();
+	}
+
+	/**
+	 * @return the total weight of the entries
+	 */
+	public long weight() {
+		return store.weight();
+	}
+
+	public long getHitCount() {
+		return store.getHitCount();
+	}
+
+	public long getMissCount() {
+		return store.getMissCount();
+	}
+
+	/**
+	 * @return the number of entries evicted to stay within the maximum size or weight
+	 */
+	public long getEvictionCount() {
+		return store.getEvictionCount();
+	}
+
+	/**
+	 * @return the number of entries dropped because they expired
+	 */
+	public long getExpirationCount() {
+		return store.getExpirationCount();
+	}
+}
@@ -0,0 +1,373 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A map of expiring values bounded by entry count and, optionally, by weight.
+ * This is the storage behind {@link BoundedCache}.
+ *
+ * Lookups go straight to a ConcurrentHashMap. The eviction policy is kept
+ * apart under a single lock that writers take and readers only try to take,
+ * so a read never blocks on it. The policy follows W-TinyLFU: new entries
+ * enter a small LRU window and, when they leave it, are only admitted to the
+ * main LRU space if a frequency sketch has seen them more often than the
+ * entry they would replace. A scan of one-off keys therefore does not flush
+ * the popular entries.
+ *
+ * Entries are also grouped by the second in which they expire, and these
+ * buckets are swept whenever the policy lock is held, so expired values are
+ * dropped even if their key is never requested again.
+ */
+public class BoundedStore<V> {
+	private static final Logger logger = LoggerFactory.getLogger(BoundedStore.class);
+
+	private static final long TICK = 1000;
+
+	/**
+	 * Calculates the weight of a value, for example an estimate of its size in
+	 * bytes.
+	 */
+	public interface Weigher<V> {
+		int weigh(String key, V value);
+	}
+
+	private static final Weigher<Object> SINGLETON_WEIGHER = new Weigher<Object>() {
+		@Override
+		public int weigh(String key, Object value) {
+			return 1;
+		}
+	};
+
+	private final int maximumSize;
+	private final long maximumWeight;
+	private final Weigher<? super V> weigher;
+	private final int windowSize;
+
+	private final ConcurrentMap<String, Entry<V>> data = new ConcurrentHashMap<String, Entry<V>>();
+	private final FrequencySketch sketch;
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	// guarded by evictionLock, both in least recently used order
+	private final LinkedHashMap<String, Entry<V>> window = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+	private final LinkedHashMap<String, Entry<V>> main = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+	private final TreeMap<Long, Set<Entry<V>>> expiryBuckets = new TreeMap<Long, Set<Entry<V>>>();
+	private long weight;
+
+	// statistics
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong expirationCount = new AtomicLong();
+
+	public BoundedStore(int maximumSize) {
+		this(maximumSize, Long.MAX_VALUE, SINGLETON_WEIGHER);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of entries
+	 * @param maximumWeight the maximum total weight of the entries
+	 * @param weigher the weigher of an entry
+	 */
+	public BoundedStore(int maximumSize, long maximumWeight, Weigher<? super V> weigher) {
+		if (maximumSize <= 0 || maximumWeight <= 0) {
+			throw new IllegalArgumentException("The maximum size and weight must be positive");
+		}
+		this.maximumSize = maximumSize;
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		this.windowSize = Math.max(1, maximumSize / 100);
+		this.sketch = new FrequencySketch(maximumSize);
+		logger.debug("Bounded store initialized with maximum size " + maximumSize + " and maximum weight " + maximumWeight);
+	}
+
+	private boolean checkKey(Object key) {
+		if ( key == null ) {
+			logger.warn( "Attempt to cache null key" );
+			return false;
+		}
+		return true;
+	}
+
+	/** Insert a value into the cache, replacing any previous value.
+	 *  @param maxAge the entry will be invalid after this many seconds
+	 */
+	public void put(Object key, V value, int maxAge) {
+		put(key, value, maxAge, System.currentTimeMillis());
+	}
+
+	// logic without live time exposed for testing
+	void put(Object key, V value, int maxAge, long now) {
+		if ( !checkKey( key ) || maxAge <= 0 )
+			return;
+
+		String stringKey = key.toString();
+		int entryWeight = weigher.weigh(stringKey, value);
+		if (entryWeight < 0 || entryWeight > maximumWeight) {
+			logger.debug("Not caching [" + stringKey + "] weighing " + entryWeight);
+			return;
+		}
+		sketch.increment(stringKey);
+		Entry<V> entry = new Entry<V>(stringKey, value, now + 1000L * maxAge, entryWeight);
+		Entry<V> old = data.put(stringKey, entry);
+
+		evictionLock.lock();
+		try {
+			if (old != null) {
+				unlink(old);
+			}
+			// a concurrent put of the same key may already have replaced this entry
+			if (data.get(stringKey) == entry) {
+				link(entry);
+				evict();
+			}
+			expire(now);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/** Retrieve a value from the cache
+	 *  @return the value if present and valid
+	 */
+	public V get(Object key) {
+		return get(key, System.currentTimeMillis());
+	}
+
+	V get(Object key, long now) {
+		if ( !checkKey( key ) )
+			return null;
+
+		String stringKey = key.toString();
+		sketch.increment(stringKey);
+		Entry<V> entry = data.get(stringKey);
+		V result = null;
+		if (entry != null && entry.expires > now) {
+			result = entry.value;
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+		}
+		// the policy is only updated when that does not mean waiting for a writer
+		if (entry != null && evictionLock.tryLock()) {
+			try {
+				if (result != null) {
+					touch(entry);
+				}
+				expire(now);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drop the expired entries now, rather than on the next cache access.
+	 */
+	public void cleanUp() {
+		cleanUp(System.currentTimeMillis());
+	}
+
+	void cleanUp(long now) {
+		evictionLock.lock();
+		try {
+			expire(now);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of entries, including expired ones not dropped yet
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * @return the total weight of the entries
+	 */
+	public long weight() {
+		evictionLock.lock();
+		try {
+			return weight;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return the number of entries evicted to stay within the maximum size or weight
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return the number of entries dropped because they expired
+	 */
+	public long getExpirationCount() {
+		return expirationCount.get();
+	}
+
+	/* The methods below are only called with the eviction lock held */
+
+	private void link(Entry<V> entry) {
+		entry.linked = true;
+		entry.inWindow = true;
+		window.put(entry.key, entry);
+		weight += entry.weight;
+		Long bucket = (entry.expires + TICK - 1) / TICK;
+		Set<Entry<V>> entries = expiryBuckets.get(bucket);
+		if (entries == null) {
+			entries = new HashSet<Entry<V>>();
+			expiryBuckets.put(bucket, entries);
+		}
+		entries.add(entry);
+	}
+
+	private void unlink(Entry<V> entry) {
+		if (!entry.linked) {
+			return;
+		}
+		entry.linked = false;
+		LinkedHashMap<String, Entry<V>> queue = entry.inWindow ? window : main;
+		if (queue.get(entry.key) == entry) {
+			queue.remove(entry.key);
+		}
+		weight -= entry.weight;
+		Long bucket = (entry.expires + TICK - 1) / TICK;
+		Set<Entry<V>> entries = expiryBuckets.get(bucket);
+		if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+			expiryBuckets.remove(bucket);
+		}
+	}
+
+	private void touch(Entry<V> entry) {
+		if (entry.linked) {
+			// moves the entry to the most recently used end
+			(entry.inWindow ? window : main).get(entry.key);
+		}
+	}
+
+	private void remove(Entry<V> entry) {
+		unlink(entry);
+		data.remove(entry.key, entry);
+	}
+
+	private boolean isOverflowing(int extraEntries) {
+		return window.size() + main.size() + extraEntries > maximumSize || weight > maximumWeight;
+	}
+
+	private void evict() {
+		// entries leaving the window compete with the least recently used entries of the main space
+		while (window.size() > windowSize) {
+			Entry<V> candidate = eldest(window);
+			window.remove(candidate.key);
+			candidate.inWindow = false;
+			while (candidate != null && isOverflowing(1) && !main.isEmpty()) {
+				Entry<V> victim = eldest(main);
+				if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+					evict(victim);
+				} else {
+					// not linked to any queue at this point, put it back to unlink it
+					main.put(candidate.key, candidate);
+					evict(candidate);
+					candidate = null;
+				}
+			}
+			if (candidate != null) {
+				main.put(candidate.key, candidate);
+			}
+		}
+		while (isOverflowing(0)) {
+			evict(eldest(main.isEmpty() ? window : main));
+		}
+	}
+
+	private void evict(Entry<V> entry) {
+		remove(entry);
+		evictionCount.incrementAndGet();
+		logger.debug("Evicted [" + entry.key + "] from cache");
+	}
+
+	private void expire(long now) {
+		while (!expiryBuckets.isEmpty() && expiryBuckets.firstKey() * TICK <= now) {
+			Set<Entry<V>> entries = expiryBuckets.pollFirstEntry().getValue();
+			for (Entry<V> entry : entries) {
+				// the bucket has already been removed, unlinking does not touch it
+				entry.linked = false;
+				LinkedHashMap<String, Entry<V>> queue = entry.inWindow ? window : main;
+				if (queue.get(entry.key) == entry) {
+					queue.remove(entry.key);
+				}
+				weight -= entry.weight;
+				data.remove(entry.key, entry);
+				expirationCount.incrementAndGet();
+				logger.debug("cached value for [" + entry.key + "] expired " + entry.expires);
+			}
+		}
+	}
+
+	private static <V> Entry<V> eldest(LinkedHashMap<String, Entry<V>> queue) {
+		Iterator<Entry<V>> entries = queue.values().iterator();
+		return entries.next();
+	}
+
+	private static class Entry<V> {
+		final String key;
+		final V value;
+		final long expires;
+		final int weight;
+		// guarded by the eviction lock
+		boolean linked;
+		boolean inWindow;
+
+		Entry(String key, V value, long expires, int weight) {
+			this.key = key;
+			this.value = value;
+			this.expires = expires;
+			this.weight = weight;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A count-min sketch estimating how often a key has been seen recently, as used
+ * by TinyLFU admission. Counters saturate at 15 and are all halved once the
+ * number of increments reaches ten times the width of the sketch, so that old
+ * popularity fades away.
+ *
+ * Increments are lock free; an increment racing with a reset may be lost,
+ * which only makes the estimate slightly less accurate.
+ */
+final class FrequencySketch {
+	private static final int DEPTH = 4;
+	private static final int MAXIMUM_COUNT = 15;
+	private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+	private final AtomicIntegerArray table;
+	private final int width;
+	private final int sampleSize;
+	private final AtomicInteger additions = new AtomicInteger();
+
+	FrequencySketch(int expectedSize) {
+		int size = 16;
+		while (size < expectedSize && size < (1 << 24)) {
+			size <<= 1;
+		}
+		width = size;
+		sampleSize = 10 * width;
+		table = new AtomicIntegerArray(DEPTH * width);
+	}
+
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = indexOf(hash, i);
+			for (;;) {
+				int count = table.get(index);
+				if (count >= MAXIMUM_COUNT) {
+					break;
+				}
+				if (table.compareAndSet(index, count, count + 1)) {
+					added = true;
+					break;
+				}
+			}
+		}
+		if (added) {
+			int count = additions.incrementAndGet();
+			if (count >= sampleSize && additions.compareAndSet(count, count / 2)) {
+				reset();
+			}
+		}
+	}
+
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAXIMUM_COUNT;
+		for (int i = 0; i < DEPTH; i++) {
+			frequency = Math.min(frequency, table.get(indexOf(hash, i)));
+		}
+		return frequency;
+	}
+
+	private void reset() {
+		for (int i = 0; i < table.length(); i++) {
+			for (;;) {
+				int count = table.get(i);
+				if (count == 0 || table.compareAndSet(i, count, count >>> 1)) {
+					break;
+				}
+			}
+		}
+	}
+
+	private int indexOf(int hash, int row) {
+		int h = hash * SEEDS[row];
+		h ^= h >>> 16;
+		return row * width + (h & (width - 1));
+	}
+
+	private static int spread(int h) {
+		h ^= h >>> 17;
+		h *= 0xED5AD4BB;
+		h ^= h >>> 11;
+		return h;
+	}
+}
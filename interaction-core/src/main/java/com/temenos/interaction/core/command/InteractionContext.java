@@ -285,6 +285,15 @@ public class InteractionContext {
     	return attributes.get(name);
     }
 
+	/**
+	 * Give this context its own copy of the attributes it shares with the
+	 * context it was copied from, so attributes set on one are not seen by
+	 * the other.
+	 */
+	public void detachAttributes() {
+		attributes = new HashMap<String, Object>(attributes);
+	}
+
 	/**
 	 * Retrieve a copy of all attributes from this interaction context.
 	 * @return
@@ -22,7 +22,6 @@ package com.temenos.interaction.core.entity;
  */
 
 
-import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
@@ -32,20 +31,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
-
-import org.joda.time.LocalDateTime;
-import org.joda.time.LocalTime;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.temenos.interaction.core.entity.vocabulary.Term;
 import com.temenos.interaction.core.entity.vocabulary.TermFactory;
 import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
 import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexGroup;
-import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexType;
-import com.temenos.interaction.core.entity.vocabulary.terms.TermIdField;
-import com.temenos.interaction.core.entity.vocabulary.terms.TermListType;
-import com.temenos.interaction.core.entity.vocabulary.terms.TermMandatory;
 import com.temenos.interaction.core.entity.vocabulary.terms.TermRestriction;
 import com.temenos.interaction.core.entity.vocabulary.terms.TermRestriction.Restriction;
 import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
@@ -54,7 +45,6 @@ import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
  * Metadata class holding vocabularies used to describe an entity.  
  */
 public class EntityMetadata  {
-	private final static Logger logger = LoggerFactory.getLogger(EntityMetadata.class);
 
 	private TermFactory termFactory = new TermFactory();
 	private String entityName;					//Entity name
@@ -66,6 +56,9 @@ public class EntityMetadata  {
 	// Map of fully qualified property name to simple property name
 	private Map<String, String> propertyNames = new HashMap<String, String>();
 
+	// Map of fully qualified property name to compiled property vocabulary
+	private Map<String, EntityPropertyDescriptor> propertyDescriptors = new ConcurrentHashMap<String, EntityPropertyDescriptor>();
+
 	public EntityMetadata(String entityName) {
 		this.entityName = entityName;
 	}
@@ -167,6 +160,28 @@ public class EntityMetadata  {
 		
 		propertyVocabularies.put(fullyQualifiedPropertyName, vocabulary);
 		propertyNames.put(fullyQualifiedPropertyName, propertyName);
+		propertyDescriptors.put(fullyQualifiedPropertyName, new EntityPropertyDescriptor(fullyQualifiedPropertyName, vocabulary));
+	}
+	
+	/**
+	 * Gets the compiled vocabulary of the specified entity property, to look
+	 * up several of its terms at once.
+	 * @param propertyName Property name
+	 * @return The property descriptor, with the default terms if the property
+	 * has no vocabulary
+	 */
+	public EntityPropertyDescriptor getPropertyDescriptor(String propertyName) {
+		Vocabulary voc = propertyVocabularies.get(propertyName);
+		if (voc == null) {
+			return new EntityPropertyDescriptor(propertyName, null);
+		}
+		EntityPropertyDescriptor descriptor = propertyDescriptors.get(propertyName);
+		if (descriptor == null || !descriptor.isCompiledFrom(voc)) {
+			// the vocabulary has been changed since it was set
+			descriptor = new EntityPropertyDescriptor(propertyName, voc);
+			propertyDescriptors.put(propertyName, descriptor);
+		}
+		return descriptor;
 	}
 	
 	/**
@@ -176,13 +191,7 @@ public class EntityMetadata  {
 	 */
 	public boolean isPropertyComplex( String propertyName )
 	{
-		boolean complexType = false;
-		Vocabulary voc = propertyVocabularies.get(propertyName);
-		if(voc != null) {
-			TermComplexType term = (TermComplexType) voc.getTerm(TermComplexType.TERM_NAME);
-			complexType = term != null && term.isComplexType();
-		}
-		return complexType;
+		return getPropertyDescriptor(propertyName).isComplex();
 	}
 	
 	/**
@@ -191,13 +200,7 @@ public class EntityMetadata  {
 	 * @return Whether the property is a List type or not
 	 */
 	public boolean isPropertyList( String propertyName ) {
-		boolean isList = false;
-		Vocabulary voc = propertyVocabularies.get(propertyName);
-		if(voc != null) {
-			TermListType term = (TermListType) voc.getTerm(TermListType.TERM_NAME);
-			isList = term != null && term.isListType();
-		}
-		return isList;
+		return getPropertyDescriptor(propertyName).isList();
 	}
 	
 	
@@ -208,22 +211,7 @@ public class EntityMetadata  {
 	 */
 	public String getPropertyComplexGroup( String propertyName )
 	{
-		String complexGroup = "";
-		Vocabulary voc = propertyVocabularies.get(propertyName);
-		if(voc != null) {
-			TermComplexGroup term = (TermComplexGroup) voc.getTerm(TermComplexGroup.TERM_NAME);
-			complexGroup = (term != null ? term.getComplexGroup() : "");
-		}
-		return complexGroup;
-	}
-	
-	private TermValueType getTermValueType (String propertyName) {
-		TermValueType term = null;
-		Vocabulary voc = propertyVocabularies.get(propertyName);
-		if(voc != null) {
-			term = (TermValueType) voc.getTerm(TermValueType.TERM_NAME);
-		}
-		return term;
+		return getPropertyDescriptor(propertyName).getComplexGroup();
 	}
 	
 	/**
@@ -233,10 +221,7 @@ public class EntityMetadata  {
 	 */
 	public boolean isPropertyText( String propertyName )
 	{
-		boolean textValue = true;
-		TermValueType term = getTermValueType(propertyName);
-		textValue = term == null || term.isText();
-		return textValue;
+		return getPropertyDescriptor(propertyName).isText();
 	}
 	
 	/**
@@ -246,12 +231,7 @@ public class EntityMetadata  {
 	 */
 	public boolean isPropertyNumber( String propertyName )
 	{
-		boolean numberValue = false;
-		TermValueType term = getTermValueType(propertyName);
-		if(term != null) {
-			numberValue = term.isNumber();
-		}
-		return numberValue;
+		return getPropertyDescriptor(propertyName).isNumber();
 	}
 	
 	/**
@@ -261,12 +241,7 @@ public class EntityMetadata  {
      */
     public boolean isPropertyDate( String propertyName )
     {
-		boolean dateType = false;
-		TermValueType term = getTermValueType(propertyName);
-		if(term != null) {
-			dateType = term.isDate();
-		}
-		return dateType;
+		return getPropertyDescriptor(propertyName).isDate();
 	}
     
     /**
@@ -276,12 +251,7 @@ public class EntityMetadata  {
      */
     public boolean isPropertyTimestamp( String propertyName )
     {
-        boolean timestampType = false;
-        TermValueType term = getTermValueType(propertyName);
-        if(term != null) {
-            timestampType = term.isTimestamp();
-        }
-        return timestampType;
+        return getPropertyDescriptor(propertyName).isTimestamp();
     }
     
     /**
@@ -291,12 +261,7 @@ public class EntityMetadata  {
      */
     public boolean isPropertyTime( String propertyName )
     {
-        boolean timeType = false;
-        TermValueType term = getTermValueType(propertyName);
-        if(term != null) {
-            timeType = term.isTime();
-        }
-        return timeType;
+        return getPropertyDescriptor(propertyName).isTime();
     }
     
     /**
@@ -306,12 +271,7 @@ public class EntityMetadata  {
      */
     public boolean isPropertyBoolean( String propertyName )
     {   
-        boolean booelanType = false;
-        TermValueType term = getTermValueType(propertyName);
-        if(term != null) {
-            booelanType = term.isBoolean();
-        }
-        return booelanType;
+        return getPropertyDescriptor(propertyName).isBoolean();
     }
 	
 	/**
@@ -337,48 +297,7 @@ public class EntityMetadata  {
 	 */
 	public String getPropertyValueAsString(String propertyName, Object propertyValue)
 	{
-		String value = "";
-		String termValueType = getTermValue(propertyName, TermValueType.TERM_NAME);
-		if(propertyValue == null) {
-			value = "";
-		} else if (propertyValue instanceof String) {
-			return propertyValue.toString();
-		}
-		else if(termValueType.equals(TermValueType.TEXT) ||
-				termValueType.equals(TermValueType.RECURRENCE) ||
-				termValueType.equals(TermValueType.ENCRYPTED_TEXT) ||				
-				termValueType.equals(TermValueType.INTEGER_NUMBER) ||
-				termValueType.equals(TermValueType.NUMBER) ||
-				termValueType.equals(TermValueType.BOOLEAN)) {
-			value = String.valueOf(propertyValue);
-		}
-		else if(termValueType.equals(TermValueType.TIMESTAMP) ||
-				termValueType.equals(TermValueType.DATE) ||
-				termValueType.equals(TermValueType.TIME)) {
-			
-			if (propertyValue instanceof LocalDateTime) {
-				value = DateFormat.getDateTimeInstance().format(((LocalDateTime) propertyValue).toDateTime().toDate());
-			} else if (propertyValue instanceof LocalTime) {
-				value = ((LocalTime) propertyValue).toString();
-			} else {
-				value = DateFormat.getDateTimeInstance().format((Date) propertyValue);
-			}
-		}
-		else if(termValueType.equals(TermValueType.ENUMERATION)) {
-			if(propertyValue instanceof String[]) {
-				String[] enumValues = (String[]) propertyValue;
-				for(String item : enumValues) {
-					value += value.isEmpty() ? item : "," + item;
-				}
-			}
-			else {
-				value = String.valueOf(propertyValue);
-			}
-		}
-		else {
-			logger.warn("Unable to return a text representation for field " + propertyName + " of type " + termValueType);
-		}		
-		return value;
+		return getPropertyDescriptor(propertyName).formatValue(propertyValue);
 	}
 	
 	/**
@@ -424,7 +343,7 @@ public class EntityMetadata  {
 	public List<String> getIdFields() {
 		List<String> idFields = new ArrayList<String>();
 		for(String propertyName : getPropertyVocabularyKeySet()) {
-			if(getTermValue(propertyName, TermIdField.TERM_NAME).equals("true")) {
+			if(getPropertyDescriptor(propertyName).isIdField()) {
 				idFields.add(propertyName);
 			}
 		}
@@ -484,8 +403,7 @@ public class EntityMetadata  {
 	 * @return
 	 */
 	public boolean isPropertyNullable(String fullyQualifiedPropertyName) {
-		return !(getTermValue(fullyQualifiedPropertyName, TermMandatory.TERM_NAME).equals("true") || 
-				getTermValue(fullyQualifiedPropertyName, TermIdField.TERM_NAME).equals("true"));
+		return getPropertyDescriptor(fullyQualifiedPropertyName).isNullable();
 	}
 	
 	/**
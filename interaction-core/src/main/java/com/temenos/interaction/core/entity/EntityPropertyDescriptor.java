@@ -0,0 +1,275 @@
+package com.temenos.interaction.core.entity;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.entity.vocabulary.Term;
+import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexGroup;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexType;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermIdField;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermListType;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermMandatory;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
+
+/**
+ * The vocabulary terms of an entity property that are needed for every value
+ * written, compiled once from the property vocabulary so serialising a row
+ * does not look up and compare terms for each of its properties.
+ * 
+ * A descriptor is immutable, {@link EntityMetadata} compiles a new one if the
+ * vocabulary changes.
+ */
+public final class EntityPropertyDescriptor {
+	private final static Logger logger = LoggerFactory.getLogger(EntityPropertyDescriptor.class);
+
+	/**
+	 * The value types of {@link TermValueType}.
+	 */
+	public enum ValueType {
+		TEXT, NUMBER, INTEGER_NUMBER, TIMESTAMP, DATE, TIME, BOOLEAN, RECURRENCE, ENCRYPTED_TEXT, IMAGE, ENUMERATION,
+		/** A term value this version does not know */
+		OTHER;
+
+		/**
+		 * @param termValue value of a {@link TermValueType} term
+		 * @return the value type, {@link #OTHER} if the term value is not known
+		 */
+		public static ValueType fromTermValue(String termValue) {
+			for (ValueType valueType : values()) {
+				if (valueType != OTHER && valueType.name().equals(termValue)) {
+					return valueType;
+				}
+			}
+			return OTHER;
+		}
+	}
+
+	// DateFormat is not thread safe, each thread formats with its own
+	private final static ThreadLocal<DateTimeFormat> dateTimeFormat = new ThreadLocal<DateTimeFormat>();
+
+	private final String name;
+	private final Vocabulary vocabulary;
+	private final int vocabularyModificationCount;
+	private final String termValueType;
+	private final ValueType valueType;
+	private final boolean complex;
+	private final boolean list;
+	private final String complexGroup;
+	private final boolean idField;
+	private final boolean mandatory;
+
+	/**
+	 * @param name fully qualified property name
+	 * @param vocabulary property vocabulary, or null if the property has none
+	 */
+	EntityPropertyDescriptor(String name, Vocabulary vocabulary) {
+		this.name = name;
+		this.vocabulary = vocabulary;
+		this.vocabularyModificationCount = vocabulary != null ? vocabulary.getModificationCount() : 0;
+		String termValueType = getTermValue(vocabulary, TermValueType.TERM_NAME);
+		this.termValueType = termValueType != null ? termValueType : TermValueType.TEXT;
+		this.valueType = ValueType.fromTermValue(this.termValueType);
+		this.complex = "true".equals(getTermValue(vocabulary, TermComplexType.TERM_NAME));
+		this.list = "true".equals(getTermValue(vocabulary, TermListType.TERM_NAME));
+		String complexGroup = getTermValue(vocabulary, TermComplexGroup.TERM_NAME);
+		this.complexGroup = complexGroup != null ? complexGroup : "";
+		this.idField = "true".equals(getTermValue(vocabulary, TermIdField.TERM_NAME));
+		this.mandatory = "true".equals(getTermValue(vocabulary, TermMandatory.TERM_NAME));
+	}
+
+	private static String getTermValue(Vocabulary vocabulary, String termName) {
+		Term term = vocabulary != null ? vocabulary.getTerm(termName) : null;
+		return term != null ? term.getValue() : null;
+	}
+
+	/**
+	 * @return whether this descriptor was compiled from the current terms of
+	 * 		this vocabulary
+	 */
+	boolean isCompiledFrom(Vocabulary vocabulary) {
+		return this.vocabulary == vocabulary 
+				&& (vocabulary == null || vocabulary.getModificationCount() == vocabularyModificationCount);
+	}
+
+	/**
+	 * @return fully qualified property name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public ValueType getValueType() {
+		return valueType;
+	}
+
+	/**
+	 * @return the value of the {@link TermValueType} term, or its default
+	 */
+	public String getTermValueType() {
+		return termValueType;
+	}
+
+	public boolean isText() {
+		return valueType == ValueType.TEXT;
+	}
+
+	public boolean isNumber() {
+		return valueType == ValueType.NUMBER || valueType == ValueType.INTEGER_NUMBER;
+	}
+
+	public boolean isDate() {
+		return valueType == ValueType.DATE;
+	}
+
+	public boolean isTimestamp() {
+		return valueType == ValueType.TIMESTAMP;
+	}
+
+	public boolean isTime() {
+		return valueType == ValueType.TIME;
+	}
+
+	public boolean isBoolean() {
+		return valueType == ValueType.BOOLEAN;
+	}
+
+	public boolean isComplex() {
+		return complex;
+	}
+
+	public boolean isList() {
+		return list;
+	}
+
+	/**
+	 * @return the fully qualified name of the complex group of this property,
+	 * 		or an empty string
+	 */
+	public String getComplexGroup() {
+		return complexGroup;
+	}
+
+	public boolean isIdField() {
+		return idField;
+	}
+
+	public boolean isMandatory() {
+		return mandatory;
+	}
+
+	/**
+	 * @return whether the property is neither mandatory nor an id field
+	 */
+	public boolean isNullable() {
+		return !(mandatory || idField);
+	}
+
+	/**
+	 * Converts a value of this property in to a string
+	 * @param propertyValue Property value
+	 * @return The property value as a string
+	 */
+	public String formatValue(Object propertyValue) {
+		String value = "";
+		if (propertyValue == null) {
+			value = "";
+		} else if (propertyValue instanceof String) {
+			return propertyValue.toString();
+		} else {
+			switch (valueType) {
+			case TEXT:
+			case RECURRENCE:
+			case ENCRYPTED_TEXT:
+			case INTEGER_NUMBER:
+			case NUMBER:
+			case BOOLEAN:
+				value = String.valueOf(propertyValue);
+				break;
+			case TIMESTAMP:
+			case DATE:
+			case TIME:
+				if (propertyValue instanceof LocalDateTime) {
+					value = formatDateTime(((LocalDateTime) propertyValue).toDateTime().toDate());
+				} else if (propertyValue instanceof LocalTime) {
+					value = ((LocalTime) propertyValue).toString();
+				} else {
+					value = formatDateTime((Date) propertyValue);
+				}
+				break;
+			case ENUMERATION:
+				if (propertyValue instanceof String[]) {
+					StringBuilder enumValues = new StringBuilder();
+					for (String item : (String[]) propertyValue) {
+						if (enumValues.length() > 0) {
+							enumValues.append(',');
+						}
+						enumValues.append(item);
+					}
+					value = enumValues.toString();
+				} else {
+					value = String.valueOf(propertyValue);
+				}
+				break;
+			default:
+				logger.warn("Unable to return a text representation for field " + name + " of type " + termValueType);
+			}
+		}
+		return value;
+	}
+
+	/*
+	 * Format with the default date time format of the default locale and
+	 * time zone, as DateFormat.getDateTimeInstance() would.
+	 */
+	private static String formatDateTime(Date date) {
+		DateTimeFormat format = dateTimeFormat.get();
+		Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		TimeZone timeZone = TimeZone.getDefault();
+		if (format == null || !format.locale.equals(locale) || !format.timeZone.equals(timeZone)) {
+			format = new DateTimeFormat(locale, timeZone);
+			dateTimeFormat.set(format);
+		}
+		return format.format.format(date);
+	}
+
+	private static class DateTimeFormat {
+		private final Locale locale;
+		private final TimeZone timeZone;
+		private final DateFormat format;
+
+		DateTimeFormat(Locale locale, TimeZone timeZone) {
+			this.locale = locale;
+			this.timeZone = timeZone;
+			this.format = DateFormat.getDateTimeInstance();
+		}
+	}
+}
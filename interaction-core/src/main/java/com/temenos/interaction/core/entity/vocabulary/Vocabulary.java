@@ -32,6 +32,8 @@ import java.util.Map;
 public class Vocabulary {
 	//Map of <Term name, Term>
 	private Map<String, Term> terms = new HashMap<String, Term>();
+	// incremented each time a term is set
+	private volatile int modificationCount = 0;
 	
 	/**
 	 * Returns the specified Term
@@ -48,6 +50,16 @@ public class Vocabulary {
 	 */
 	public void setTerm(Term term) {
 		terms.put(term.getName(), term);
+		modificationCount++;
+	}
+
+	/**
+	 * Returns the number of times a term has been set, so anything derived
+	 * from this vocabulary can tell whether it has changed since.
+	 * @return modification count
+	 */
+	public int getModificationCount() {
+		return modificationCount;
 	}
 
 	/**
@@ -0,0 +1,158 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The readable JavaBean properties of a class, with a {@link MethodHandle}
+ * for each getter. The class is introspected and its getters looked up once,
+ * rather than for each bean read, and a getter is called without the access
+ * checks and argument array of {@link Method#invoke(Object, Object...)}.
+ * 
+ * Accessors are kept per class in a {@link ClassValue}, so they do not keep
+ * the class loader of an entity class alive.
+ */
+public final class BeanPropertyAccessors {
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final ClassValue<BeanPropertyAccessors> ACCESSORS = new ClassValue<BeanPropertyAccessors>() {
+		@Override
+		protected BeanPropertyAccessors computeValue(Class<?> type) {
+			return new BeanPropertyAccessors(type);
+		}
+	};
+
+	// by property name, in the order of the property descriptors
+	private final Map<String, Getter> properties = new LinkedHashMap<String, Getter>();
+	// by method name
+	private final Map<String, Getter> getters = new HashMap<String, Getter>();
+	private final List<String> propertyNames;
+
+	private BeanPropertyAccessors(Class<?> type) {
+		PropertyDescriptor[] propertyDescs;
+		try {
+			propertyDescs = Introspector.getBeanInfo(type).getPropertyDescriptors();
+		} catch (IntrospectionException e) {
+			throw new IllegalArgumentException("Failed to introspect bean class " + type.getName(), e);
+		}
+		for (PropertyDescriptor propertyDesc : propertyDescs) {
+			Method readMethod = propertyDesc.getReadMethod();
+			if (readMethod != null) {
+				Getter getter = new Getter(readMethod);
+				properties.put(propertyDesc.getName(), getter);
+				getters.put(readMethod.getName(), getter);
+			}
+		}
+		propertyNames = Collections.unmodifiableList(new ArrayList<String>(properties.keySet()));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the class cannot be introspected
+	 */
+	public static BeanPropertyAccessors forClass(Class<?> type) {
+		return ACCESSORS.get(type);
+	}
+
+	/**
+	 * @return the names of the properties with a getter, in the order
+	 * 		{@link Introspector} describes them
+	 */
+	public List<String> getPropertyNames() {
+		return propertyNames;
+	}
+
+	public boolean hasProperty(String propertyName) {
+		return properties.containsKey(propertyName);
+	}
+
+	/**
+	 * Read a property of a bean of this class.
+	 * 
+	 * @throws IllegalArgumentException if the property has no getter
+	 * @throws InvocationTargetException if the getter threw an exception
+	 */
+	public Object getProperty(Object bean, String propertyName) throws IllegalAccessException, InvocationTargetException {
+		Getter getter = properties.get(propertyName);
+		if (getter == null) {
+			throw new IllegalArgumentException("No getter for property [" + propertyName + "] of " + bean.getClass().getName());
+		}
+		return getter.get(bean);
+	}
+
+	/**
+	 * Call a getter of a bean of this class by its method name, for a getter
+	 * named after a field rather than a bean property.
+	 * 
+	 * @throws NoSuchMethodException if there is no getter of this name
+	 * @throws InvocationTargetException if the getter threw an exception
+	 */
+	public Object invokeGetter(Object bean, String methodName)
+			throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+		Getter getter = getters.get(methodName);
+		if (getter == null) {
+			// not a bean property, as it returns void or is not public
+			return bean.getClass().getMethod(methodName).invoke(bean);
+		}
+		return getter.get(bean);
+	}
+
+	private static class Getter {
+		private final Method method;
+		private final MethodHandle handle;
+
+		Getter(Method method) {
+			this.method = method;
+			MethodHandle handle = null;
+			try {
+				handle = MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+			} catch (IllegalAccessException e) {
+				// the class is not public, invoke it as before for the same error
+			}
+			this.handle = handle;
+		}
+
+		Object get(Object bean) throws IllegalAccessException, InvocationTargetException {
+			if (handle == null) {
+				return method.invoke(bean);
+			}
+			try {
+				return handle.invokeExact(bean);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+	}
+}
@@ -22,12 +22,7 @@ package com.temenos.interaction.core.hypermedia;
  */
 
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,7 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Implements transformations from regular Java beans (POJOs)
+ * Implements transformations from regular Java beans (POJOs), reading their
+ * properties through {@link BeanPropertyAccessors}
  * @see {@link Transformer}
  * @author aphethean
  */
@@ -65,21 +61,15 @@ public class BeanTransformer implements Transformer {
 		Map<String, Object> map = new HashMap<String, Object>();
 		
 		try {
-			BeanInfo beanInfo = Introspector.getBeanInfo(entity.getClass());
-			for (PropertyDescriptor propertyDesc : beanInfo.getPropertyDescriptors()) {
-			    String propertyName = propertyDesc.getName();
+			BeanPropertyAccessors accessors = BeanPropertyAccessors.forClass(entity.getClass());
+			for (String propertyName : accessors.getPropertyNames()) {
 			    if (!ReservedProperty.contains(propertyName)) {
-			    	Method readMethod = propertyDesc.getReadMethod();
-			    	if (readMethod != null) {
-			    		Object value = readMethod.invoke(entity);
-			    		map.put(propertyName, value);
-			    	}
+			    	Object value = accessors.getProperty(entity, propertyName);
+			    	map.put(propertyName, value);
 			    }
 			}
 		} catch (IllegalArgumentException e) {
 			logger.error("Error accessing bean property", e);
-		} catch (IntrospectionException e) {
-			logger.error("Error accessing bean property", e);
 		} catch (IllegalAccessException e) {
 			logger.error("Error accessing bean property", e);
 		} catch (InvocationTargetException e) {
@@ -92,21 +92,32 @@ public class HypermediaTemplateHelper {
 	 * @return
 	 */
 	public static String templateReplace(String template, Map<String, Object> properties) {
+		return templateReplace(template, template != null ? getPathTemplateParameters(template) : null, properties);
+	}
+
+	/**
+	 * As {@link #templateReplace(String, Map)}, given the tokens of the template
+	 * from {@link #getPathTemplateParameters(String)}, so a template used for
+	 * many replacements is only parsed once.
+	 * @param template
+	 * @param tokens
+	 * @param properties
+	 * @return
+	 */
+	public static String templateReplace(String template, String[] tokens, Map<String, Object> properties) {
 		String result = template;
 		Map<String, Object> normalizedProperties = null;
 		try {
 			if (template != null) {
-				Matcher m = TEMPLATE_PATTERN.matcher(template);
-				while(m.find()) {
-					String param = m.group(1);
+				for (String param : tokens) {
 					if(null == normalizedProperties) {
 						normalizedProperties = HypermediaTemplateHelper.normalizeProperties(properties);
 					}
 					if (normalizedProperties.containsKey(param)) {
 						// replace template tokens
-					    String value = Matcher.quoteReplacement(normalizedProperties.get(param).toString());
+					    String value = normalizedProperties.get(param).toString();
 					    result = resolveWildCardMatches(result, value);
-					    result = result.replaceAll(Pattern.quote("{"+param+"}"), value);
+					    result = replace(result, "{" + param + "}", value);
 					}
 				}
 			}
@@ -116,6 +127,25 @@ public class HypermediaTemplateHelper {
 		return result;
 	}
 
+	/*
+	 * Replace each occurrence of a token with a value, without the regular
+	 * expression String.replace compiles.
+	 */
+	private static String replace(String text, String token, String value) {
+		int index = text.indexOf(token);
+		if (index < 0) {
+			return text;
+		}
+		StringBuilder result = new StringBuilder(text.length() + value.length());
+		int start = 0;
+		do {
+			result.append(text, start, index).append(value);
+			start = index + token.length();
+			index = text.indexOf(token, start);
+		} while (index >= 0);
+		return result.append(text, start, text.length()).toString();
+	}
+
 	/**
      * This is used to replace wild card variable values, while doing template
      * replace for value "id eq {ArrOd}". If variable value contains "...",
@@ -54,6 +54,8 @@ public class LinkGeneratorImpl implements LinkGenerator {
     private static final Logger logger = LoggerFactory.getLogger(LinkGeneratorImpl.class);
     private static final String NEW_REL_SUFFIX = "/new";
     private static final String POPULATE_REL_SUFFIX = "/populate";
+    // the base uri of the last request on this thread, cloned for each link
+    private static final ThreadLocal<BaseUri> BASE_URI = new ThreadLocal<BaseUri>();
     private ResourceStateMachine resourceStateMachine;
     private Transition transition;
     private InteractionContext interactionContext;
@@ -100,7 +102,7 @@ public class LinkGeneratorImpl implements LinkGenerator {
                 return null;
             }
 
-            UriBuilder linkTemplate = UriBuilder.fromUri(RequestContext.getRequestContext().getBasePath());
+            UriBuilder linkTemplate = newBaseUriBuilder();
 
             if (targetState instanceof DynamicResourceState) {
                 return createLinkForDynamicResource(linkTemplate, linkProperties, targetState, entity);
@@ -118,10 +120,23 @@ public class LinkGeneratorImpl implements LinkGenerator {
         }
     }
 
-    private void configureLink(UriBuilder linkTemplate, Map<String, Object> transitionProperties, String targetResourcePath) {
+    /*
+     * A builder for the base uri of the request. The base uri is parsed once
+     * per thread, and cloned for each link.
+     */
+    private UriBuilder newBaseUriBuilder() {
+        String basePath = RequestContext.getRequestContext().getBasePath();
+        BaseUri baseUri = BASE_URI.get();
+        if (baseUri == null || !baseUri.path.equals(basePath)) {
+            baseUri = new BaseUri(basePath, UriBuilder.fromUri(basePath));
+            BASE_URI.set(baseUri);
+        }
+        return baseUri.builder.clone();
+    }
+
+    private void configureLink(UriBuilder linkTemplate, Map<String, Object> transitionProperties, LinkTemplate template) {
         // Pass uri parameters as query parameters if they are not
         // replaceable in the path, and replace any token.
-        Map<String, String> uriParameters = transition.getCommand().getUriParameters();
         MultivaluedMap<String, String> outQueryParams = new MultivaluedMapImpl<String, String>();
         if (interactionContext != null) {
             MultivaluedMap<String, String> outQueryParamsTemp = interactionContext.getOutQueryParameters();
@@ -136,17 +151,7 @@ public class LinkGeneratorImpl implements LinkGenerator {
             }
         }
         
-        if (uriParameters != null) {
-            for (String key : uriParameters.keySet()) {
-                String value = uriParameters.get(key);
-                if (!targetResourcePath.contains("{" + key + "}")) {
-                    String paramValue = HypermediaTemplateHelper.templateReplace(value, transitionProperties);
-                    if (paramValue != null) {
-                        outQueryParams.putSingle(key, paramValue);
-                    }
-                }
-            }
-        }
+        template.addQueryParameters(outQueryParams, transitionProperties);
         
         for (Map.Entry<String, List<String>> param : outQueryParams.entrySet()) {
             for(String paramValue: param.getValue()) {
@@ -199,7 +204,7 @@ public class LinkGeneratorImpl implements LinkGenerator {
         }
 
         String targetPath = targetState.getPath();
-        configureLink(linkTemplate, linkPropertiesMap, targetPath);
+        configureLink(linkTemplate, linkPropertiesMap, new LinkTemplate(targetPath, transition.getCommand().getUriParameters()));
         linkTemplate.path(targetPath);
         String rel = getTargetRelValue(targetState);
 
@@ -238,22 +243,12 @@ public class LinkGeneratorImpl implements LinkGenerator {
     }
 
     private Link createLinkForResource(UriBuilder linkTemplate, LinkProperties linkProperties, ResourceState targetState, MultivaluedMap<String, String> queryParameters, Object entity) {
-        Map<String, Object> encodedLinkPropertiesMap = new HashMap<String, Object>();
-        for (String key : linkProperties.getTransitionProperties().keySet()) {
-        	Object value = linkProperties.getTransitionProperties().get(key);
-        	if (value != null) {
-            	try {
-    				String encodedValue = URLEncoder.encode(value.toString(), "UTF-8");
-    				encodedLinkPropertiesMap.put(key, encodedValue);
-    			} catch (UnsupportedEncodingException e) {
-    				logger.error("ERROR unable to encode " + key, e);
-    			}
-        	}
-        }
+        LinkTemplate template = transition.getLinkTemplate();
+        Map<String, Object> encodedLinkPropertiesMap = encodeProperties(linkProperties.getTransitionProperties(), template, queryParameters);
 
         String targetPath = targetState.getPath();
         linkTemplate.path(targetPath);
-        configureLink(linkTemplate, encodedLinkPropertiesMap, targetPath);
+        configureLink(linkTemplate, encodedLinkPropertiesMap, template);
         String rel = getTargetRelValue(targetState);
 
         // Pass any query parameters
@@ -273,6 +268,48 @@ public class LinkGeneratorImpl implements LinkGenerator {
         return buildLink(transition, linkProperties, entity, rel, href, transition.getCommand().getMethod());
     }
 
+    /*
+     * Encode the transition properties the link refers to, in the path and
+     * query parameters of the target or in the base uri. The other
+     * properties are not needed to build the href.
+     */
+    private Map<String, Object> encodeProperties(Map<String, Object> transitionProperties, LinkTemplate template, MultivaluedMap<String, String> queryParameters) {
+        Map<String, Object> encodedProperties = new HashMap<String, Object>();
+        for (String key : template.getProperties()) {
+            encodeProperty(transitionProperties, key, encodedProperties);
+        }
+        String basePath = RequestContext.getRequestContext().getBasePath();
+        if (basePath.indexOf('{') >= 0) {
+            encodeTemplateProperties(transitionProperties, basePath, encodedProperties);
+        }
+        if (queryParameters != null && allQueryParameters) {
+            for (String param : queryParameters.keySet()) {
+                String value = queryParameters.getFirst(param);
+                if (value != null && value.indexOf('{') >= 0) {
+                    encodeTemplateProperties(transitionProperties, value, encodedProperties);
+                }
+            }
+        }
+        return encodedProperties;
+    }
+
+    private void encodeTemplateProperties(Map<String, Object> transitionProperties, String template, Map<String, Object> encodedProperties) {
+        for (String key : new LinkTemplate(template, null).getProperties()) {
+            encodeProperty(transitionProperties, key, encodedProperties);
+        }
+    }
+
+    private void encodeProperty(Map<String, Object> transitionProperties, String key, Map<String, Object> encodedProperties) {
+        Object value = transitionProperties.get(key);
+        if (value != null && !encodedProperties.containsKey(key)) {
+            try {
+                encodedProperties.put(key, URLEncoder.encode(value.toString(), "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                logger.error("ERROR unable to encode " + key, e);
+            }
+        }
+    }
+
     private Link buildLink(Transition resolvedTransition, LinkProperties linkProperties, Object entity, String rel, URI href, String method) {
         Link link;
         if (linkProperties.getTransitionProperties().containsKey("profileOEntity") && "self".equals(rel) && entity instanceof OEntity) {
@@ -310,4 +347,14 @@ public class LinkGeneratorImpl implements LinkGenerator {
         return updatedtransition;
     }
 
+    private static class BaseUri {
+        private final String path;
+        private final UriBuilder builder;
+
+        BaseUri(String path, UriBuilder builder) {
+            this.path = path;
+            this.builder = builder;
+        }
+    }
+
 }
@@ -0,0 +1,116 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * The parts of the links for a transition that only depend on the transition,
+ * worked out once rather than for each link.
+ * 
+ * The uri parameters that are not replaced in the target path are passed as
+ * query parameters, their value templates are parsed here. The properties
+ * the target path and these templates refer to are the only properties a
+ * link needs to be encoded.
+ */
+final class LinkTemplate {
+	private final String targetPath;
+	private final Map<String, String> uriParameters;
+	// the uri parameters passed as query parameters
+	private final List<String> queryParameterNames = new ArrayList<String>();
+	private final List<String> queryParameterTemplates = new ArrayList<String>();
+	private final List<String[]> queryParameterTokens = new ArrayList<String[]>();
+	private final Set<String> properties = new HashSet<String>();
+
+	LinkTemplate(String targetPath, Map<String, String> uriParameters) {
+		this.targetPath = targetPath;
+		this.uriParameters = uriParameters;
+		if (targetPath != null) {
+			addProperties(targetPath);
+			if (uriParameters != null) {
+				for (Map.Entry<String, String> uriParameter : uriParameters.entrySet()) {
+					String key = uriParameter.getKey();
+					if (!targetPath.contains("{" + key + "}")) {
+						String template = uriParameter.getValue();
+						queryParameterNames.add(key);
+						queryParameterTemplates.add(template);
+						queryParameterTokens.add(template != null ? addProperties(template) : null);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return whether this template was compiled from this target path and
+	 * 		uri parameters
+	 */
+	boolean isCompiledFrom(String targetPath, Map<String, String> uriParameters) {
+		return this.uriParameters == uriParameters
+				&& (this.targetPath == null ? targetPath == null : this.targetPath.equals(targetPath));
+	}
+
+	/**
+	 * @return the names of the properties the target path and uri parameters
+	 * 		refer to
+	 */
+	Set<String> getProperties() {
+		return Collections.unmodifiableSet(properties);
+	}
+
+	/**
+	 * Add the uri parameters that are passed as query parameters, with their
+	 * templates replaced by the transition properties.
+	 */
+	void addQueryParameters(MultivaluedMap<String, String> queryParams, Map<String, Object> transitionProperties) {
+		for (int i = 0; i < queryParameterNames.size(); i++) {
+			String paramValue = HypermediaTemplateHelper.templateReplace(queryParameterTemplates.get(i),
+					queryParameterTokens.get(i), transitionProperties);
+			if (paramValue != null) {
+				queryParams.putSingle(queryParameterNames.get(i), paramValue);
+			}
+		}
+	}
+
+	/**
+	 * Add the names of the properties a template refers to, as both the
+	 * template token and the UriBuilder variable name.
+	 * 
+	 * @return the template tokens
+	 */
+	private String[] addProperties(String template) {
+		String[] tokens = HypermediaTemplateHelper.getPathTemplateParameters(template);
+		for (String token : tokens) {
+			properties.add(token);
+			int regex = token.indexOf(':');
+			properties.add((regex < 0 ? token : token.substring(0, regex)).trim());
+		}
+		return tokens;
+	}
+}
@@ -21,13 +21,11 @@ package com.temenos.interaction.core.hypermedia;
  * #L%
  */
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -42,6 +40,7 @@ import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.Response.Status.Family;
 
 import com.temenos.interaction.core.hypermedia.expression.Expression;
+import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpressionMemo;
 import com.temenos.interaction.core.hypermedia.transition.TransitionPropertiesBuilder;
 import com.temenos.interaction.core.workflow.*;
 import com.temenos.interaction.core.workflow.WorkflowCommandBuilderProvider.WorkflowType;
@@ -51,7 +50,6 @@ import org.odata4j.core.OEntityKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.temenos.interaction.core.MapWithReadWriteLock;
 import com.temenos.interaction.core.MultivaluedMapImpl;
 import com.temenos.interaction.core.cache.Cache;
 import com.temenos.interaction.core.command.CommandController;
@@ -94,14 +92,10 @@ public class ResourceStateMachine {
 	ResourceLocatorProvider resourceLocatorProvider;
 	ResourceParameterResolverProvider parameterResolverProvider;
 	WorkflowCommandBuilderProvider workflowCommandBuilderProvider;
+	ResourceRequestHandler embeddedResourceRequestHandler;
 
-	// optimised access
-	private Map<String, Transition> transitionsById = new MapWithReadWriteLock<String, Transition>();
-	private Map<String, Transition> transitionsByRel = new MapWithReadWriteLock<String, Transition>();
-	private Map<String, Set<String>> interactionsByPath = new MapWithReadWriteLock<String, Set<String>>();
-	private Map<String, Set<String>> interactionsByState = new MapWithReadWriteLock<String, Set<String>>();
-    private Map<String, Set<String>> resourceStateNamesByPath = new MapWithReadWriteLock<String, Set<String>>();
-	private Map<String, ResourceState> resourceStatesByName = new MapWithReadWriteLock<String, ResourceState>();
+	// optimised access, replaced as a whole whenever states are (un)registered
+	private volatile RoutingSnapshot routes = RoutingSnapshot.EMPTY;
 
 	public ResourceStateMachine(ResourceState initialState) {
 		this(initialState, null, null, null);
@@ -136,6 +130,19 @@ public class ResourceStateMachine {
 		responseCache = cache;
 	}
 
+	public ResourceRequestHandler getEmbeddedResourceRequestHandler() {
+		return embeddedResourceRequestHandler;
+	}
+
+	/**
+	 * Set the handler used to fetch the embedded resources of every state,
+	 * instead of the handler of the resource interaction model, e.g. a
+	 * {@link com.temenos.interaction.core.rim.ParallelResourceRequestHandler}.
+	 */
+	public void setEmbeddedResourceRequestHandler(ResourceRequestHandler embeddedResourceRequestHandler) {
+		this.embeddedResourceRequestHandler = embeddedResourceRequestHandler;
+	}
+
 	// TODO support Event
 	public InteractionCommand determineAction(Event event, String resourcePath) {
 		List<Action> actions = new ArrayList<Action>();
@@ -271,10 +278,10 @@ public class ResourceStateMachine {
      * Starting from the given state / method pair, fully initialises the machine's
      * internal state graph. Already registered states will not be processed, as well
 	 * as its children states.
-     * 
+     *
      * This method serves as a replacement for all the collect*By* methods, which
      * purpose was to initialise the optimised access maps.
-     * 
+     *
      * @precondition The pair state / method to start with should NOT be already registered,
 	 * 				  as well as none of its children, and the state should not be null
      * @invariant Given state not null
@@ -287,20 +294,26 @@ public class ResourceStateMachine {
      *            method
      */
     public synchronized void registerAllStartingFromState(ResourceState state, String method) {
+		RoutingSnapshot.Editor editor = routes.edit();
+		registerAllStartingFromState(editor, state, method);
+		routes = editor.publish();
+    }
+
+    private void registerAllStartingFromState(RoutingSnapshot.Editor editor, ResourceState state, String method) {
 
 		checkAndResolve(state);
         if (state == null) return;
-        populateAccessMaps(state, method);
+        populateAccessMaps(editor, state, method);
 
 		// don't register any further if the current state was already processed
-		if(resourceStatesByName.containsKey(state.getName())) return;
+		if(editor.resourceStatesByName.containsKey(state.getName())) return;
 
-		resourceStatesByName.put(state.getName(), state);
+		editor.resourceStatesByName.put(state.getName(), state);
 
         // Register all target resources from this resource
         for (Transition tmpTransition : state.getTransitions()) {
             if(tmpTransition.getTarget() != null) {
-               	registerAllStartingFromState(tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
+               	registerAllStartingFromState(editor, tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
             }
         }
     }
@@ -309,7 +322,7 @@ public class ResourceStateMachine {
      * Registers the given state / method pair, and any states required to
      * process the given state, with the resource state machine's internal state
      * graph
-	 *  
+	 *
 	 * @precondition The pair state / method to register, where the state should not be null
      * @invariant Given state not null
      * @postcondition All target states from the given state with a transition that is either
@@ -324,21 +337,27 @@ public class ResourceStateMachine {
      *            as multiple states can share the same path
 	 */
 	public synchronized void register(ResourceState state, String method) {
+		RoutingSnapshot.Editor editor = routes.edit();
+		register(editor, state, method);
+		routes = editor.publish();
+	}
+
+	private void register(RoutingSnapshot.Editor editor, ResourceState state, String method) {
 
 		checkAndResolve(state);
         if (state == null) return;
-		populateAccessMaps(state, method);
+		populateAccessMaps(editor, state, method);
 
 		// don't register any further if the current state was already processed
-		if(resourceStatesByName.containsKey(state.getName())) return;
+		if(editor.resourceStatesByName.containsKey(state.getName())) return;
 
-		resourceStatesByName.put(state.getName(), state);
+		editor.resourceStatesByName.put(state.getName(), state);
 
 		// Register any embedded / foreach resources linked to this resource
         for (Transition tmpTransition : state.getTransitions()) {
             if(tmpTransition.getTarget() != null) {
                 if (tmpTransition.isAnyOfTypes(Transition.EMBEDDED, Transition.FOR_EACH, Transition.FOR_EACH_EMBEDDED)) {
-                    register(tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
+                    register(editor, tmpTransition.getTarget(), tmpTransition.getCommand().getMethod());
                 }
             }
         }
@@ -348,49 +367,39 @@ public class ResourceStateMachine {
 	 * Maps should be populated for a state / method pair, even if the state was already
 	 * processed, since we can reach a state by different methods.
 	 */
-	private void populateAccessMaps(ResourceState state, String method) {
-        collectTransitionsByIdForState(state);
-        collectTransitionsByRelForState(state);
-        collectInteractionsByPathForState(state, method);
-        collectInteractionsByStateForState(state, method);
-        collectResourceStatesByPathForState(state);
+	private void populateAccessMaps(RoutingSnapshot.Editor editor, ResourceState state, String method) {
+        collectTransitionsByIdForState(editor, state);
+        collectTransitionsByRelForState(editor, state);
+        collectInteractionsByPathForState(editor, state, method);
+        collectInteractionsByStateForState(editor, state, method);
+        collectResourceStatesByPathForState(editor, state);
 	}
 
 	/**
 	 * @param state
 	 */
-	private void collectResourceStatesByPathForState(ResourceState state) {
-		Set<String> resourceStateNames = resourceStateNamesByPath.get(state.getResourcePath());
-		if (resourceStateNames == null) {
-		    resourceStateNames = new HashSet<String>();
-		    resourceStateNamesByPath.put(state.getResourcePath(), resourceStateNames);
-		}
-
-		resourceStateNames.add(state.getName());
+	private void collectResourceStatesByPathForState(RoutingSnapshot.Editor editor, ResourceState state) {
+		editor.add(editor.resourceStateNamesByPath, state.getResourcePath(), state.getName());
 	}
 
 	/**
 	 * @param state
 	 * @param method
 	 */
-	private void collectInteractionsByStateForState(ResourceState state, String method) {
-		Set<String> stateInteractions = interactionsByState.get(state.getName());
-		if (stateInteractions == null) {
-			stateInteractions = new HashSet<String>();
-			interactionsByState.put(state.getName(), stateInteractions);
-		}
+	private void collectInteractionsByStateForState(RoutingSnapshot.Editor editor, ResourceState state, String method) {
+		editor.ensure(editor.interactionsByState, state.getName());
 
 		if (!state.isPseudoState()) {
 			if (method != null) {
-				stateInteractions.add(method);
+				editor.add(editor.interactionsByState, state.getName(), method);
 			} else {
-				stateInteractions.add(HttpMethod.GET);
+				editor.add(editor.interactionsByState, state.getName(), HttpMethod.GET);
 			}
 		}
 		if (state.getActions() != null) {
 			for (Action action : state.getActions()) {
 				if (action.getMethod() != null) {
-					stateInteractions.add(action.getMethod());
+					editor.add(editor.interactionsByState, state.getName(), action.getMethod());
 				}
 			}
 		}
@@ -400,15 +409,10 @@ public class ResourceStateMachine {
 			for (Transition t : transitions) {
 				TransitionCommandSpec command = t.getCommand();
 
-				Set<String> tmpStateInteractions = interactionsByState.get(next.getName());
-
-				if (tmpStateInteractions == null) {
-					tmpStateInteractions = new HashSet<String>();
-                    interactionsByState.put(next.getName(), tmpStateInteractions);
-				}
+				editor.ensure(editor.interactionsByState, next.getName());
 
 				if (command.getMethod() != null && !command.isAutoTransition())
-                    tmpStateInteractions.add(command.getMethod());
+					editor.add(editor.interactionsByState, next.getName(), command.getMethod());
 			}
 		}
 	}
@@ -417,24 +421,18 @@ public class ResourceStateMachine {
 	 * @param state
 	 * @param method
 	 */
-	private void collectInteractionsByPathForState(ResourceState state, String method) {
-		Set<String> pathInteractions = interactionsByPath.get(state.getPath());
-		if (pathInteractions == null) {
-			pathInteractions = new HashSet<String>();
-			interactionsByPath.put(state.getPath(), pathInteractions);
-		}
-
+	private void collectInteractionsByPathForState(RoutingSnapshot.Editor editor, ResourceState state, String method) {
 		if (method != null) {
-			pathInteractions.add(method);
+			editor.add(editor.interactionsByPath, state.getPath(), method);
 		} else {
-			pathInteractions.add(HttpMethod.GET);
+			editor.add(editor.interactionsByPath, state.getPath(), HttpMethod.GET);
 		}
 	}
 
 	/**
 	 * @param state
 	 */
-	private void collectTransitionsByRelForState(ResourceState state) {
+	private void collectTransitionsByRelForState(RoutingSnapshot.Editor editor, ResourceState state) {
 		for (Transition transition : state.getTransitions()) {
 			if (transition == null) {
 				LOGGER.debug("collectTransitionsByRel : null transition detected");
@@ -443,7 +441,7 @@ public class ResourceStateMachine {
 			} else if (transition.getTarget().getRel() == null) {
 				LOGGER.debug("collectTransitionsByRel : null relation detected");
 			} else {
-				transitionsByRel.put(transition.getTarget().getRel(), transition);
+				editor.transitionsByRel.put(transition.getTarget().getRel(), transition);
 			}
 		}
 	}
@@ -451,9 +449,9 @@ public class ResourceStateMachine {
 	/**
 	 * @param state
 	 */
-	private void collectTransitionsByIdForState(ResourceState state) {
+	private void collectTransitionsByIdForState(RoutingSnapshot.Editor editor, ResourceState state) {
 		for (Transition transition : state.getTransitions()) {
-			transitionsById.put(transition.getId(), transition);
+			editor.transitionsById.put(transition.getId(), transition);
 		}
 	}
 
@@ -476,42 +474,40 @@ public class ResourceStateMachine {
 
 	     if(state == null) return;
 
+		RoutingSnapshot.Editor editor = routes.edit();
+
 		// don't do anything if the state is not registered
-		if(!resourceStatesByName.containsKey(state.getName())) return;
+		if(!editor.resourceStatesByName.containsKey(state.getName())) return;
 
         for (Transition transition : state.getTransitions()) {
 
 			// remove transitions originating in state for this method only
             if(transition.getCommand().getMethod() == method)
-                transitionsById.remove(transition.getId());
+                editor.transitionsById.remove(transition.getId());
 
 	        // remove transitions originating in state for this method only
             if (transition.getTarget() != null) {
                 if(transition.getCommand().getMethod() == method)
-                    transitionsByRel.remove(transition.getTarget().getRel());
+                    editor.transitionsByRel.remove(transition.getTarget().getRel());
             }
         }
 
         // Process interactions by path
-        final Set<String> pathInteractions = interactionsByPath.get(state.getPath());
-        if (pathInteractions != null)
-            pathInteractions.remove(method);
+        editor.remove(editor.interactionsByPath, state.getPath(), method);
 
 		// Process interactions by state
-        final Set<String> stateInteractions = interactionsByState.get(state.getName());
-        if (stateInteractions != null)
-            stateInteractions.remove(method);
+        editor.remove(editor.interactionsByState, state.getName(), method);
 
 		// only remove resources by path and by name if there are no methods associated with it
+        final Set<String> stateInteractions = editor.interactionsByState.get(state.getName());
 		if(stateInteractions != null)
 			if(stateInteractions.isEmpty()) {
 		        // Process resource states by path
-		        final Set<String> pathStateNames = resourceStateNamesByPath.get(state.getResourcePath());
-		        if (pathStateNames != null) {
-		            pathStateNames.remove(state.getName());
-		        }
-		        resourceStatesByName.remove(state.getName());
+		        editor.remove(editor.resourceStateNamesByPath, state.getResourcePath(), state.getName());
+		        editor.resourceStatesByName.remove(state.getName());
             }
+
+		routes = editor.publish();
 	}
 
 	public void setParameterResolverProvider(ResourceParameterResolverProvider parameterResolverProvider) {
@@ -530,8 +526,8 @@ public class ResourceStateMachine {
 		return transformer;
 	}
 
-    public synchronized Collection<ResourceState> getStates() {
-		return Collections.unmodifiableCollection(resourceStatesByName.values());
+    public Collection<ResourceState> getStates() {
+		return Collections.unmodifiableCollection(routes.resourceStatesByName.values());
 	}
 
 	/**
@@ -541,7 +537,7 @@ public class ResourceStateMachine {
 	 * @return
 	 */
 	public Map<String, Set<String>> getInteractionByPath() {
-		return interactionsByPath;
+		return routes.interactionsByPath;
 	}
 
 	/**
@@ -551,7 +547,7 @@ public class ResourceStateMachine {
 	 * @return
 	 */
 	public Map<String, Set<String>> getInteractionByState() {
-		return interactionsByState;
+		return routes.interactionsByState;
 	}
 
 	/**
@@ -605,10 +601,10 @@ public class ResourceStateMachine {
 	 */
 	public Set<ResourceState> getResourceStatesForPathRegex(Pattern pattern) {
 		Set<ResourceState> matchingStates = new HashSet<ResourceState>();
-		for (String path : resourceStateNamesByPath.keySet()) {
-            Matcher m = pattern.matcher(path);
+		for (Entry<String, Set<ResourceState>> entry : getResourceStatesByPath().entrySet()) {
+            Matcher m = pattern.matcher(entry.getKey());
             if (m.matches()) {
-                matchingStates.addAll(getResourceStatesForPath(path));
+                matchingStates.addAll(entry.getValue());
             }
         }
 		return matchingStates;
@@ -622,16 +618,7 @@ public class ResourceStateMachine {
 	 * @invariant initial state not null
 	 */
 	public Map<String, Set<ResourceState>> getResourceStatesByPath() {
-        Map<String, Set<ResourceState>> stateMap = new HashMap<String, Set<ResourceState>>();
-        for (Entry<String, Set<String>> entry : resourceStateNamesByPath.entrySet()) {
-            Set<ResourceState> resourceStateSet = new LinkedHashSet<ResourceState>();
-            for(String resourceStateName : entry.getValue()) {
-                ResourceState state = resourceStatesByName.get(resourceStateName);
-                if(state != null) resourceStateSet.add(state);
-            }
-            stateMap.put(entry.getKey(), resourceStateSet);
-        }
-        return stateMap;
+        return routes.resourceStatesByPath;
 	}
 
 	/**
@@ -643,17 +630,21 @@ public class ResourceStateMachine {
 	 */
 	public Map<String, Set<ResourceState>> getResourceStatesByPath(ResourceState begin) {
 		assert (begin != null);
-		
-		collectResourceStatesByPath(resourceStateNamesByPath, begin);
+
+		synchronized (this) {
+			RoutingSnapshot.Editor editor = routes.edit();
+			collectResourceStatesByPath(editor, begin);
+			routes = editor.publish();
+		}
 		return getResourceStatesByPath();
 	}
 
-	private void collectResourceStatesByPath(Map<String, Set<String>> result, ResourceState begin) {
+	private void collectResourceStatesByPath(RoutingSnapshot.Editor editor, ResourceState begin) {
 		List<ResourceState> states = new ArrayList<ResourceState>();
-		collectResourceStatesByPath(result, states, begin);
+		collectResourceStatesByPath(editor, states, begin);
 	}
 
-	private void collectResourceStatesByPath(Map<String, Set<String>> result, Collection<ResourceState> states,
+	private void collectResourceStatesByPath(RoutingSnapshot.Editor editor, Collection<ResourceState> states,
 			ResourceState currentState) {
 
 		if (currentState == null) {
@@ -667,27 +658,21 @@ public class ResourceStateMachine {
 
 		states.add(currentState);
 		// add current state to results
-		Set<String> thisStateSet = result.get(currentState.getResourcePath());
-		if (thisStateSet == null)
-			thisStateSet = new HashSet<String>();
-		thisStateSet.add(currentState.getName());
-		result.put(currentState.getResourcePath(), thisStateSet);
+		editor.add(editor.resourceStateNamesByPath, currentState.getResourcePath(), currentState.getName());
 		for (ResourceState next : currentState.getAllTargets()) {
 			if (next != null && next != currentState) {
 				String path = next.getResourcePath();
-				if (result.get(path) != null) {
-					if (!result.get(path).contains(next.getName())) {
-						LOGGER.debug("Adding to existing ResourceState[{}] set ({}): {}", path, result.get(path), next);
-						result.get(path).add(next.getName());
+				Set<String> pathStateNames = editor.resourceStateNamesByPath.get(path);
+				if (pathStateNames != null) {
+					if (!pathStateNames.contains(next.getName())) {
+						LOGGER.debug("Adding to existing ResourceState[{}] set ({}): {}", path, pathStateNames, next);
 					}
 				} else {
 					LOGGER.debug("Putting a ResourceState[{}]: {}", path, next);
-					Set<String> set = new HashSet<String>();
-					set.add(next.getName());
-					result.put(path, set);
 				}
+				editor.add(editor.resourceStateNamesByPath, path, next.getName());
 			}
-			collectResourceStatesByPath(result, states, next);
+			collectResourceStatesByPath(editor, states, next);
 		}
 	}
 
@@ -710,7 +695,7 @@ public class ResourceStateMachine {
 	 * @return
 	 */
 	public Map<String, ResourceState> getResourceStateByName() {
-		return resourceStatesByName;
+		return routes.resourceStatesByName;
 	}
 
 	/**
@@ -787,6 +772,20 @@ public class ResourceStateMachine {
 	 */
 	public Collection<Link> injectLinks(HTTPHypermediaRIM rimHander, InteractionContext ctx,
 			RESTResource resourceEntity, Transition selfTransition, HttpHeaders headers, Metadata metadata) {
+		// conditional links to the same resource are evaluated with one GET
+		ResourceGETExpressionMemo memo = ResourceGETExpressionMemo.forContext(ctx);
+		memo.open();
+		try {
+			return injectLinksWithMemo(rimHander, ctx, resourceEntity, selfTransition, headers, metadata);
+		} finally {
+			memo.close();
+			LOGGER.debug("Evaluated conditional links with {} GET requests, {} answered from memo",
+					memo.getRequestCount(), memo.getMemoHitCount());
+		}
+	}
+
+	private Collection<Link> injectLinksWithMemo(HTTPHypermediaRIM rimHander, InteractionContext ctx,
+			RESTResource resourceEntity, Transition selfTransition, HttpHeaders headers, Metadata metadata) {
 		// Add path and query parameters to the list of resource properties
 		MultivaluedMap<String, String> resourceProperties = new MultivaluedMapImpl<String>();
 		resourceProperties.putAll(ctx.getPathParameters());
@@ -884,8 +883,7 @@ public class ResourceStateMachine {
     				                String fieldName = entityMetadata.getIdFields().get(0);
                                     String methodName = "get" + fieldName.substring(0, 1).toUpperCase()
                                             + fieldName.substring(1);
-                                    Method method = tmpObj.getClass().getMethod(methodName);
-                                    ids.add(method.invoke(tmpObj).toString());
+                                    ids.add(BeanPropertyAccessors.forClass(tmpObj.getClass()).invokeGetter(tmpObj, methodName).toString());
                                 } catch (Exception e) {
                                     LOGGER.warn("Failed to add record id while trying to embed current collection resource", e);
                                 }
@@ -927,7 +925,8 @@ public class ResourceStateMachine {
 	 */
 	public Map<Transition, RESTResource> embedResources(HTTPHypermediaRIM rimHandler, HttpHeaders headers,
 			InteractionContext ctx, RESTResource resource) {
-		ResourceRequestHandler resourceRequestHandler = rimHandler.getResourceRequestHandler();
+		ResourceRequestHandler resourceRequestHandler = embeddedResourceRequestHandler != null ? embeddedResourceRequestHandler
+				: rimHandler.getResourceRequestHandler();
 		assert (resourceRequestHandler != null);
 		try {
 			ResourceRequestConfig.Builder configBuilder = new ResourceRequestConfig.Builder();
@@ -1034,11 +1033,11 @@ public class ResourceStateMachine {
 	}
 
 	public Map<String, Transition> getTransitionsById() {
-		return transitionsById;
+		return routes.transitionsById;
 	}
 
 	public Map<String, Transition> getTransitionsByRel() {
-		return transitionsByRel;
+		return routes.transitionsByRel;
 	}
 
 	/**
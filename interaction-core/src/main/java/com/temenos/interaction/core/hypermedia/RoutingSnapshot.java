@@ -0,0 +1,248 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Immutable set of the optimised access maps used by the
+ * {@link ResourceStateMachine} to route requests.
+ *
+ * A snapshot is never modified once published; readers obtain every map
+ * through a single volatile read of the snapshot and need no locking.
+ * Writers take an {@link Editor}, apply their changes to it and publish the
+ * resulting snapshot. Maps and sets are only copied when they are actually
+ * changed, so re-registering an already known state does not copy anything.
+ */
+final class RoutingSnapshot {
+
+	static final RoutingSnapshot EMPTY = new RoutingSnapshot(
+			Collections.<String, Transition>emptyMap(),
+			Collections.<String, Transition>emptyMap(),
+			Collections.<String, Set<String>>emptyMap(),
+			Collections.<String, Set<String>>emptyMap(),
+			Collections.<String, Set<String>>emptyMap(),
+			Collections.<String, ResourceState>emptyMap(),
+			Collections.<String, Set<ResourceState>>emptyMap());
+
+	final Map<String, Transition> transitionsById;
+	final Map<String, Transition> transitionsByRel;
+	final Map<String, Set<String>> interactionsByPath;
+	final Map<String, Set<String>> interactionsByState;
+	final Map<String, Set<String>> resourceStateNamesByPath;
+	final Map<String, ResourceState> resourceStatesByName;
+	// derived from resourceStateNamesByPath and resourceStatesByName
+	final Map<String, Set<ResourceState>> resourceStatesByPath;
+
+	private RoutingSnapshot(Map<String, Transition> transitionsById,
+			Map<String, Transition> transitionsByRel,
+			Map<String, Set<String>> interactionsByPath,
+			Map<String, Set<String>> interactionsByState,
+			Map<String, Set<String>> resourceStateNamesByPath,
+			Map<String, ResourceState> resourceStatesByName,
+			Map<String, Set<ResourceState>> resourceStatesByPath) {
+		this.transitionsById = transitionsById;
+		this.transitionsByRel = transitionsByRel;
+		this.interactionsByPath = interactionsByPath;
+		this.interactionsByState = interactionsByState;
+		this.resourceStateNamesByPath = resourceStateNamesByPath;
+		this.resourceStatesByName = resourceStatesByName;
+		this.resourceStatesByPath = resourceStatesByPath;
+	}
+
+	Editor edit() {
+		return new Editor(this);
+	}
+
+	/**
+	 * A private, single threaded working copy of a snapshot.
+	 */
+	static final class Editor {
+		private final RoutingSnapshot base;
+		// sets created by this editor, these can be modified in place
+		private final Set<Set<String>> owned = Collections.newSetFromMap(new IdentityHashMap<Set<String>, Boolean>());
+
+		final Table<String, Transition> transitionsById;
+		final Table<String, Transition> transitionsByRel;
+		final Table<String, Set<String>> interactionsByPath;
+		final Table<String, Set<String>> interactionsByState;
+		final Table<String, Set<String>> resourceStateNamesByPath;
+		final Table<String, ResourceState> resourceStatesByName;
+
+		private Editor(RoutingSnapshot base) {
+			this.base = base;
+			this.transitionsById = new Table<String, Transition>(base.transitionsById);
+			this.transitionsByRel = new Table<String, Transition>(base.transitionsByRel);
+			this.interactionsByPath = new Table<String, Set<String>>(base.interactionsByPath);
+			this.interactionsByState = new Table<String, Set<String>>(base.interactionsByState);
+			this.resourceStateNamesByPath = new Table<String, Set<String>>(base.resourceStateNamesByPath);
+			this.resourceStatesByName = new Table<String, ResourceState>(base.resourceStatesByName);
+		}
+
+		/**
+		 * Make sure a (possibly empty) set is mapped to the given key.
+		 */
+		void ensure(Table<String, Set<String>> table, String key) {
+			if (table.get(key) == null) {
+				mutableSet(table, key);
+			}
+		}
+
+		void add(Table<String, Set<String>> table, String key, String value) {
+			Set<String> values = table.get(key);
+			if (values == null || !values.contains(value)) {
+				mutableSet(table, key).add(value);
+			}
+		}
+
+		void remove(Table<String, Set<String>> table, String key, String value) {
+			Set<String> values = table.get(key);
+			if (values != null && values.contains(value)) {
+				mutableSet(table, key).remove(value);
+			}
+		}
+
+		private Set<String> mutableSet(Table<String, Set<String>> table, String key) {
+			Set<String> values = table.get(key);
+			if (values == null || !owned.contains(values)) {
+				values = values == null ? new HashSet<String>() : new HashSet<String>(values);
+				owned.add(values);
+				table.put(key, values);
+			}
+			return values;
+		}
+
+		boolean isModified() {
+			return transitionsById.isModified() || transitionsByRel.isModified()
+					|| interactionsByPath.isModified() || interactionsByState.isModified()
+					|| resourceStateNamesByPath.isModified() || resourceStatesByName.isModified();
+		}
+
+		/**
+		 * @return the snapshot this editor was created from if nothing has
+		 *         changed, otherwise a new immutable snapshot
+		 */
+		RoutingSnapshot publish() {
+			if (!isModified()) {
+				return base;
+			}
+			Map<String, Set<String>> namesByPath = sealSets(resourceStateNamesByPath);
+			Map<String, ResourceState> statesByName = resourceStatesByName.result();
+			Map<String, Set<ResourceState>> statesByPath = base.resourceStatesByPath;
+			if (resourceStateNamesByPath.isModified() || resourceStatesByName.isModified()) {
+				statesByPath = buildResourceStatesByPath(namesByPath, statesByName);
+			}
+			return new RoutingSnapshot(transitionsById.result(), transitionsByRel.result(),
+					sealSets(interactionsByPath), sealSets(interactionsByState),
+					namesByPath, statesByName, statesByPath);
+		}
+
+		private Map<String, Set<String>> sealSets(Table<String, Set<String>> table) {
+			if (table.isModified()) {
+				for (Entry<String, Set<String>> entry : table.writable().entrySet()) {
+					if (owned.contains(entry.getValue())) {
+						entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+					}
+				}
+			}
+			return table.result();
+		}
+
+		private static Map<String, Set<ResourceState>> buildResourceStatesByPath(Map<String, Set<String>> namesByPath,
+				Map<String, ResourceState> statesByName) {
+			Map<String, Set<ResourceState>> stateMap = new HashMap<String, Set<ResourceState>>();
+			for (Entry<String, Set<String>> entry : namesByPath.entrySet()) {
+				Set<ResourceState> resourceStateSet = new LinkedHashSet<ResourceState>();
+				for (String resourceStateName : entry.getValue()) {
+					ResourceState state = statesByName.get(resourceStateName);
+					if (state != null)
+						resourceStateSet.add(state);
+				}
+				stateMap.put(entry.getKey(), Collections.unmodifiableSet(resourceStateSet));
+			}
+			return Collections.unmodifiableMap(stateMap);
+		}
+	}
+
+	/**
+	 * A map that is copied the first time it is changed.
+	 */
+	static final class Table<K, V> {
+		private final Map<K, V> base;
+		private Map<K, V> copy;
+
+		private Table(Map<K, V> base) {
+			this.base = base;
+		}
+
+		V get(K key) {
+			return current().get(key);
+		}
+
+		boolean containsKey(K key) {
+			return current().containsKey(key);
+		}
+
+		Set<K> keySet() {
+			return current().keySet();
+		}
+
+		void put(K key, V value) {
+			Map<K, V> current = current();
+			if (current.get(key) != value || !current.containsKey(key)) {
+				writable().put(key, value);
+			}
+		}
+
+		void remove(K key) {
+			if (current().containsKey(key)) {
+				writable().remove(key);
+			}
+		}
+
+		boolean isModified() {
+			return copy != null;
+		}
+
+		private Map<K, V> current() {
+			return copy != null ? copy : base;
+		}
+
+		private Map<K, V> writable() {
+			if (copy == null) {
+				copy = new HashMap<K, V>(base);
+			}
+			return copy;
+		}
+
+		private Map<K, V> result() {
+			return copy != null ? Collections.unmodifiableMap(copy) : base;
+		}
+	}
+}
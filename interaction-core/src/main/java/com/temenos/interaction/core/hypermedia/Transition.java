@@ -79,6 +79,7 @@ public class Transition {
 	
 	// optional field which causes this transition
 	private String sourceField;
+	private volatile LinkTemplate linkTemplate;
 	
 	public String getLinkId() {
 		return linkId;
@@ -108,6 +109,20 @@ public class Transition {
 		return command;
 	}
 
+	/*
+	 * The template of the links to the target, compiled again if the target
+	 * has changed.
+	 */
+	LinkTemplate getLinkTemplate() {
+		LinkTemplate template = linkTemplate;
+		String targetPath = target != null ? target.getPath() : null;
+		if (template == null || !template.isCompiledFrom(targetPath, command.getUriParameters())) {
+			template = new LinkTemplate(targetPath, command.getUriParameters());
+			linkTemplate = template;
+		}
+		return template;
+	}
+
 	public String getLabel() {
 		return label;
 	}
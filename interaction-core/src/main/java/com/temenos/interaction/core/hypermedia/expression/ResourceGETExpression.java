@@ -30,6 +30,7 @@ import java.util.Set;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response.Status;
 
+import com.temenos.interaction.core.MultivaluedMapImpl;
 import com.temenos.interaction.core.command.CommandHelper;
 import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.core.hypermedia.HypermediaTemplateHelper;
@@ -106,6 +107,31 @@ public class ResourceGETExpression implements Expression {
 		}
         //Create a new interaction context for this state
         MultivaluedMap<String, String> pathParameters = getPathParametersForTargetState(hypermediaEngine, ctx, ourTransition);
+		MultivaluedMap<String, String> requestParameters = getRequestParameters(hypermediaEngine, ctx, resource, ourTransition, pathParameters);
+		ResourceGETExpressionMemo memo = ResourceGETExpressionMemo.forContext(ctx);
+		Integer status = memo.getStatus(target, requestParameters);
+		if (status == null) {
+			status = getStatus(rimHandler, ctx, resource, ourTransition, target, pathParameters);
+			memo.putStatus(target, requestParameters, status);
+		}
+
+		//Ignore the resource and its links, just interested in the result status
+		if (Status.OK.getStatusCode() == status 
+				&& getFunction().equals(Function.OK)) {
+			return true;
+		}
+		if (Status.OK.getStatusCode() != status 
+				&& getFunction().equals(Function.NOT_FOUND)) {
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * GET the target resource, for the status of the result.
+	 */
+	private int getStatus(HTTPHypermediaRIM rimHandler, InteractionContext ctx, EntityResource<?> resource,
+			Transition ourTransition, ResourceState target, MultivaluedMap<String, String> pathParameters) {
     	InteractionContext newCtx = new InteractionContext(ctx, null, pathParameters, null, target);
 		EntityResource<?> entityResourceCopy = CommandHelper.createEntityResource(resolveEntityResource(resource, ctx.getResource()));
 		newCtx.setResource(entityResourceCopy);
@@ -119,17 +145,7 @@ public class ResourceGETExpression implements Expression {
 		Map<Transition, ResourceRequestResult> results = new SequentialResourceRequestHandler().getResources(rimHandler, null, newCtx, entityResourceCopy, config);
 		assert(results.values() != null && results.values().size() == 1);
 		ResourceRequestResult result = results.values().iterator().next();
-		
-		//Ignore the resource and its links, just interested in the result status
-		if (Status.OK.getStatusCode() == result.getStatus() 
-				&& getFunction().equals(Function.OK)) {
-			return true;
-		}
-		if (Status.OK.getStatusCode() != result.getStatus() 
-				&& getFunction().equals(Function.NOT_FOUND)) {
-			return true;
-		}
-		return false;
+		return result.getStatus();
 	}
 
 	@Override
@@ -156,6 +172,30 @@ public class ResourceGETExpression implements Expression {
 		return null;
 	}
 	
+	/*
+	 * The path parameters of the GET made for an expression, which also adds
+	 * the transition properties of the entity it is evaluated for (see
+	 * SequentialResourceRequestHandler). Items of a collection with different
+	 * properties are told apart in the memo.
+	 */
+	private MultivaluedMap<String, String> getRequestParameters(ResourceStateMachine hypermediaEngine, InteractionContext ctx, EntityResource<?> resource, Transition transition, MultivaluedMap<String, String> pathParameters) {
+		EntityResource<?> entityResource = resolveEntityResource(resource, ctx.getResource());
+		if (entityResource == null || entityResource.getEntity() == null) {
+			return pathParameters;
+		}
+		MultivaluedMap<String, String> requestParameters = new MultivaluedMapImpl<String>();
+		if (pathParameters != null) {
+			requestParameters.putAll(pathParameters);
+		}
+		Map<String, Object> transitionProperties = hypermediaEngine.getTransitionProperties(transition, entityResource.getEntity(), pathParameters, ctx.getQueryParameters());
+		for (Map.Entry<String, Object> property : transitionProperties.entrySet()) {
+			if (property.getValue() != null) {
+				requestParameters.add(property.getKey(), property.getValue().toString());
+			}
+		}
+		return requestParameters;
+	}
+
 	/*
 	 * Obtain path parameters to use when accessing
 	 * a resource state on an expression.  
@@ -0,0 +1,142 @@
+package com.temenos.interaction.core.hypermedia.expression;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+
+/**
+ * Counts the GET requests made to evaluate {@link ResourceGETExpression}s
+ * for a response, and remembers their status while links are injected.
+ * 
+ * The same conditional link is evaluated for each entity of a collection,
+ * often against the same target resource. While the memo is open each
+ * distinct target state and request parameters, the path parameters with the
+ * transition properties of the entity, is only requested once. The status of
+ * the first request is reused for the rest. Statuses are
+ * forgotten when the memo is closed, so commands run afterwards see the
+ * current state of their resources.
+ * 
+ * The memo is an attribute of the {@link InteractionContext}, which the
+ * contexts of sub requests share.
+ */
+public class ResourceGETExpressionMemo {
+	public static final String ATTRIBUTE = "ResourceGETExpressionMemo";
+
+	private final Map<String, Integer> statuses = new ConcurrentHashMap<String, Integer>();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger memoHitCount = new AtomicInteger();
+	private int depth;
+
+	/**
+	 * @return the memo of this request, added to the context if it has none.
+	 */
+	public static ResourceGETExpressionMemo forContext(InteractionContext ctx) {
+		ResourceGETExpressionMemo memo = getMemo(ctx);
+		if (memo == null) {
+			memo = new ResourceGETExpressionMemo();
+			ctx.setAttribute(ATTRIBUTE, memo);
+		}
+		return memo;
+	}
+
+	/**
+	 * @return the memo of this request, or null if no expression has been
+	 * 		evaluated.
+	 */
+	public static ResourceGETExpressionMemo getMemo(InteractionContext ctx) {
+		return (ResourceGETExpressionMemo) ctx.getAttribute(ATTRIBUTE);
+	}
+
+	/**
+	 * Start remembering statuses, until the matching {@link #close()}.
+	 */
+	public synchronized void open() {
+		depth++;
+	}
+
+	public synchronized void close() {
+		if (depth > 0 && --depth == 0) {
+			statuses.clear();
+		}
+	}
+
+	public synchronized boolean isOpen() {
+		return depth > 0;
+	}
+
+	/**
+	 * @return the remembered status of a GET of this state, or null if it
+	 * 		has not been requested or the memo is closed.
+	 */
+	Integer getStatus(ResourceState target, MultivaluedMap<String, String> pathParameters) {
+		if (!isOpen()) {
+			return null;
+		}
+		Integer status = statuses.get(key(target, pathParameters));
+		if (status != null) {
+			memoHitCount.incrementAndGet();
+		}
+		return status;
+	}
+
+	/**
+	 * Record the status of a GET made for an expression.
+	 */
+	void putStatus(ResourceState target, MultivaluedMap<String, String> pathParameters, int status) {
+		requestCount.incrementAndGet();
+		if (isOpen()) {
+			statuses.put(key(target, pathParameters), status);
+		}
+	}
+
+	/**
+	 * @return the number of GET requests made to evaluate expressions
+	 */
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of expressions evaluated with a remembered status,
+	 * 		rather than a GET request
+	 */
+	public int getMemoHitCount() {
+		return memoHitCount.get();
+	}
+
+	private static String key(ResourceState target, MultivaluedMap<String, String> pathParameters) {
+		Map<String, List<String>> sorted = new TreeMap<String, List<String>>();
+		if (pathParameters != null) {
+			sorted.putAll(pathParameters);
+		}
+		return target.getId() + sorted;
+	}
+}
@@ -49,6 +49,10 @@ public class SimpleLogicalExpressionEvaluator implements Expression {
 		}
 	}
 	
+	public List<Expression> getExpressions() {
+		return expressions;
+	}
+
 	@Override
 	public boolean evaluate(HTTPHypermediaRIM rimHandler, InteractionContext ctx, EntityResource<?> resource) {
 		for (Expression e : expressions) {
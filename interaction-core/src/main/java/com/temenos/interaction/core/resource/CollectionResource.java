@@ -56,6 +56,8 @@ public class CollectionResource<T> implements RESTResource {
     private String entityTag = null;
 	@XmlTransient
 	private Integer inlineCount;
+	@XmlTransient
+	private String skipToken;
 	
 	public CollectionResource() {}
 
@@ -159,4 +161,24 @@ public class CollectionResource<T> implements RESTResource {
 	public Integer getInlineCount() {
 		return this.inlineCount;
 	}
+
+	/**
+	 * Sets the skip token of the next page of the collection, when the
+	 * collection is returned a page at a time.
+	 * 
+	 * @param skipToken
+	 *            the $skiptoken of the next page
+	 */
+	public void setSkipToken(String skipToken) {
+		this.skipToken = skipToken;
+	}
+
+	/**
+	 * Returns the skip token of the next page of the collection.
+	 * 
+	 * @return skip token or null if this is the last page
+	 */
+	public String getSkipToken() {
+		return this.skipToken;
+	}
 }
@@ -0,0 +1,261 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response.Status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.core.web.RequestContext;
+
+/**
+ * <p>Get the resources of all the transitions at the same time on a bounded
+ * pool of threads, so that embedding several resources takes as long as the
+ * slowest of them rather than the sum of them.</p>
+ *
+ * <p>The {@link RequestContext} of the calling thread is made available to each
+ * request. Requests that have not completed when the deadline is reached are
+ * cancelled and reported as {@link Status#SERVICE_UNAVAILABLE}. When the queue
+ * of the pool is full the calling thread gets the resource itself.</p>
+ *
+ * <p>The resources embedded by a resource that is itself being got on the pool
+ * are got one after another by that thread. Waiting on the pool from one of its
+ * own threads would deadlock it once all its threads wait for requests that are
+ * still queued.</p>
+ *
+ * <p>Each request has its own copy of the attributes of the context, so the
+ * commands of one request do not see the attributes set by another. Once all
+ * the requests have completed the attributes they added are added to the
+ * context, in the order of the transitions. Attributes the context already had
+ * are kept, as are the attributes of requests that timed out.</p>
+ */
+public class ParallelResourceRequestHandler extends SequentialResourceRequestHandler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelResourceRequestHandler.class);
+
+	public static final int DEFAULT_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+	public static final long DEFAULT_TIMEOUT = 30000;
+
+	// set while a request of this handler is running on the thread
+	private final ThreadLocal<Boolean> nested = new ThreadLocal<Boolean>();
+
+	private final ExecutorService executor;
+	private final long timeout;
+	private volatile Set<String> states;
+
+	public ParallelResourceRequestHandler() {
+		this(DEFAULT_THREADS, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param threads the maximum number of resources fetched at the same time
+	 * @param timeout the time in milliseconds allowed to get all the resources of a request, 0 for no limit
+	 */
+	public ParallelResourceRequestHandler(int threads, long timeout) {
+		this(createExecutor(threads), timeout);
+	}
+
+	/**
+	 * @param executor executes the requests, it should run a rejected task in the calling thread
+	 * @param timeout the time in milliseconds allowed to get all the resources of a request, 0 for no limit
+	 */
+	public ParallelResourceRequestHandler(ExecutorService executor, long timeout) {
+		assert(executor != null);
+		this.executor = executor;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Only get the resources of these states in parallel, the resources of other
+	 * states are got one after another.
+	 * @param stateNames the names of the states, or null for all states
+	 */
+	public void setStates(Collection<String> stateNames) {
+		states = stateNames != null ? new HashSet<String>(stateNames) : null;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Stop the threads of this handler.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public Map<Transition, ResourceRequestResult> getResources(final HTTPHypermediaRIM rimHandler, final HttpHeaders headers, final InteractionContext ctx, final EntityResource<?> resource, final Object entity, final ResourceRequestConfig config) {
+		assert(config != null);
+		assert(config.getTransitions() != null);
+		if (config.getTransitions().size() < 2 || !isParallel(ctx)) {
+			return super.getResources(rimHandler, headers, ctx, resource, entity, config);
+		}
+		long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+		final RequestContext requestContext = RequestContext.getRequestContext();
+		Map<String, Object> attributes = ctx.getAttributes();
+		Map<Transition, InteractionContext> contexts = new LinkedHashMap<Transition, InteractionContext>();
+		Map<Transition, Future<ResourceRequestResult>> futures = new LinkedHashMap<Transition, Future<ResourceRequestResult>>();
+		for (final Transition t : config.getTransitions()) {
+			if (futures.containsKey(t)) {
+				continue;
+			}
+			// the transitions are shared, so not changed by the requests
+			resolveTarget(rimHandler, t);
+			final InteractionContext requestCtx = new InteractionContext(ctx, null, null, null, null);
+			requestCtx.detachAttributes();
+			contexts.put(t, requestCtx);
+			futures.put(t, executor.submit(new Callable<ResourceRequestResult>() {
+				@Override
+				public ResourceRequestResult call() throws Exception {
+					RequestContext previous = RequestContext.getRequestContext();
+					RequestContext.setRequestContext(requestContext);
+					Boolean previousNested = nested.get();
+					nested.set(Boolean.TRUE);
+					try {
+						return getResource(rimHandler, headers, requestCtx, resource, entity, config, t);
+					} finally {
+						if (previousNested != null) {
+							nested.set(previousNested);
+						} else {
+							nested.remove();
+						}
+						if (previous != null) {
+							RequestContext.setRequestContext(previous);
+						} else {
+							RequestContext.clearRequestContext();
+						}
+					}
+				}
+			}));
+		}
+
+		Map<Transition, ResourceRequestResult> resources = new HashMap<Transition, ResourceRequestResult>();
+		try {
+			for (Map.Entry<Transition, Future<ResourceRequestResult>> future : futures.entrySet()) {
+				resources.put(future.getKey(), await(future.getKey(), future.getValue(), deadline));
+				if (future.getValue().isCancelled()) {
+					contexts.remove(future.getKey());
+				}
+			}
+			mergeAttributes(ctx, attributes, contexts.values());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for (Transition t : futures.keySet()) {
+				if (!resources.containsKey(t)) {
+					futures.get(t).cancel(true);
+					resources.put(t, new ResourceRequestResult(Status.SERVICE_UNAVAILABLE.getStatusCode(), null));
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			for (Future<ResourceRequestResult> future : futures.values()) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+		return resources;
+	}
+
+	private ResourceRequestResult await(Transition t, Future<ResourceRequestResult> future, long deadline) throws InterruptedException {
+		try {
+			if (deadline == 0) {
+				return future.get();
+			}
+			return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			LOGGER.warn("Timed out after {}ms getting resource for transition [{}]", timeout, t.getId());
+			return new ResourceRequestResult(Status.SERVICE_UNAVAILABLE.getStatusCode(), null);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/*
+	 * Add the attributes the requests added to their contexts, later requests
+	 * replacing earlier ones as they would one after another.
+	 */
+	private static void mergeAttributes(InteractionContext ctx, Map<String, Object> attributes, Collection<InteractionContext> requestContexts) {
+		for (InteractionContext requestCtx : requestContexts) {
+			for (Map.Entry<String, Object> attribute : requestCtx.getAttributes().entrySet()) {
+				if (!attributes.containsKey(attribute.getKey())) {
+					ctx.setAttribute(attribute.getKey(), attribute.getValue());
+				}
+			}
+		}
+	}
+
+	private boolean isParallel(InteractionContext ctx) {
+		if (nested.get() != null) {
+			return false;
+		}
+		Set<String> stateNames = states;
+		return stateNames == null
+				|| (ctx.getCurrentState() != null && stateNames.contains(ctx.getCurrentState().getName()));
+	}
+
+	private static ExecutorService createExecutor(int threads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_SIZE), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "iris-embedded-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
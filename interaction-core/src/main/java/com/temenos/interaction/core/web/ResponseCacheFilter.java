@@ -0,0 +1,540 @@
+package com.temenos.interaction.core.web;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.cache.BoundedStore;
+
+/**
+ * Caches the encoded bytes of GET responses, so that a cache hit is written
+ * straight to the output stream without running a command or a
+ * MessageBodyWriter again.
+ *
+ * A response is cached when it is a 200 with a positive Cache-Control max-age,
+ * as set by the HTTPHypermediaRIM for resource states with a maxAge, unless it
+ * is private, sets a cookie or varies on headers other than Accept,
+ * Accept-Language and Accept-Encoding. The key is the request URL with those
+ * three request headers, so each negotiated representation is cached apart.
+ * A conditional request matching the cached ETag gets a 304.
+ *
+ * Resources may be filtered for each user, so as a shared cache (RFC 7234
+ * section 3.2) a request with an Authorization header or a user principal is
+ * only stored, or served from the cache, when the response is public or has
+ * an s-maxage. A request with Cache-Control or Pragma no-cache is not served
+ * from the cache, its response replaces the cached one.
+ *
+ * Use this instead of ResourceStateMachine.setCache rather than as well as it.
+ * The init parameters are maximumSize (entries), maximumBytes and
+ * maximumEntryBytes; larger responses are passed through uncached.
+ */
+public class ResponseCacheFilter implements Filter {
+	private static final Logger logger = LoggerFactory.getLogger(ResponseCacheFilter.class);
+
+	public static final String MAXIMUM_SIZE = "maximumSize";
+	public static final String MAXIMUM_BYTES = "maximumBytes";
+	public static final String MAXIMUM_ENTRY_BYTES = "maximumEntryBytes";
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+	private static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+	private static final int DEFAULT_MAXIMUM_ENTRY_BYTES = 1024 * 1024;
+
+	private static final List<String> KEY_HEADERS = Arrays.asList("Accept", "Accept-Language", "Accept-Encoding");
+	private static final Set<String> VARY_HEADERS = new HashSet<String>(Arrays.asList("accept", "accept-language", "accept-encoding"));
+	private static final Set<String> UNCACHED_HEADERS = new HashSet<String>(Arrays.asList("content-length", "content-type", "date", "transfer-encoding", "connection"));
+	private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age\\s*=\\s*\"?(\\d+)");
+	private static final Pattern S_MAXAGE = Pattern.compile("(?:^|[,\\s])s-maxage\\s*=\\s*\"?(\\d+)");
+	private static final Pattern NOT_SHARED = Pattern.compile("(?i)private|no-store|no-cache");
+	private static final Pattern PUBLIC = Pattern.compile("(?i)(?:^|[,\\s])public(?:$|[,\\s])");
+	private static final Pattern NO_CACHE = Pattern.compile("(?i)no-cache");
+
+	private static final BoundedStore.Weigher<CachedResponse> BYTES_WEIGHER = new BoundedStore.Weigher<CachedResponse>() {
+		@Override
+		public int weigh(String key, CachedResponse value) {
+			return key.length() + value.body.length;
+		}
+	};
+
+	private BoundedStore<CachedResponse> store;
+	private int maximumEntryBytes;
+
+	public ResponseCacheFilter() {
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_BYTES, DEFAULT_MAXIMUM_ENTRY_BYTES);
+	}
+
+	public ResponseCacheFilter(int maximumSize, long maximumBytes, int maximumEntryBytes) {
+		configure(maximumSize, maximumBytes, maximumEntryBytes);
+	}
+
+	private void configure(int maximumSize, long maximumBytes, int maximumEntryBytes) {
+		this.store = new BoundedStore<CachedResponse>(maximumSize, maximumBytes, BYTES_WEIGHER);
+		this.maximumEntryBytes = maximumEntryBytes;
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		String maximumSize = filterConfig.getInitParameter(MAXIMUM_SIZE);
+		String maximumBytes = filterConfig.getInitParameter(MAXIMUM_BYTES);
+		String maximumEntryBytes = filterConfig.getInitParameter(MAXIMUM_ENTRY_BYTES);
+		if (maximumSize != null || maximumBytes != null || maximumEntryBytes != null) {
+			try {
+				configure(maximumSize != null ? Integer.parseInt(maximumSize) : DEFAULT_MAXIMUM_SIZE,
+						maximumBytes != null ? Long.parseLong(maximumBytes) : DEFAULT_MAXIMUM_BYTES,
+						maximumEntryBytes != null ? Integer.parseInt(maximumEntryBytes) : DEFAULT_MAXIMUM_ENTRY_BYTES);
+			} catch (IllegalArgumentException e) {
+				throw new ServletException("Invalid response cache configuration", e);
+			}
+		}
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+			ServletException {
+		if (!(request instanceof HttpServletRequest) || !"GET".equals(((HttpServletRequest) request).getMethod())) {
+			chain.doFilter(request, response);
+			return;
+		}
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+		String key = cacheKey(httpRequest);
+		boolean authenticated = isAuthenticated(httpRequest);
+
+		if (!isNoCache(httpRequest)) {
+			CachedResponse cached = store.get(key);
+			if (cached != null && (!authenticated || cached.shared)) {
+				logger.debug("Writing cached response for [" + key + "]");
+				cached.writeTo(httpRequest, httpResponse);
+				return;
+			}
+		}
+
+		CapturingResponse capturing = new CapturingResponse(httpResponse, maximumEntryBytes);
+		chain.doFilter(request, capturing);
+		byte[] body = capturing.getCaptured();
+		if (body != null && capturing.getCapturedStatus() == HttpServletResponse.SC_OK) {
+			int maxAge = cacheableMaxAge(capturing);
+			boolean shared = isShared(capturing);
+			if (maxAge > 0 && (!authenticated || shared)) {
+				store.put(key, new CachedResponse(capturing.getContentType(), cacheableHeaders(capturing), body, shared), maxAge);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	public long getHitCount() {
+		return store.getHitCount();
+	}
+
+	public long getMissCount() {
+		return store.getMissCount();
+	}
+
+	public long getEvictionCount() {
+		return store.getEvictionCount();
+	}
+
+	/**
+	 * @return the number of cached responses
+	 */
+	public int size() {
+		return store.size();
+	}
+
+	private static String cacheKey(HttpServletRequest request) {
+		StringBuilder key = new StringBuilder(request.getRequestURL());
+		if (request.getQueryString() != null) {
+			key.append('?').append(request.getQueryString());
+		}
+		for (String header : KEY_HEADERS) {
+			key.append('\n');
+			String value = request.getHeader(header);
+			if (value != null) {
+				key.append(value);
+			}
+		}
+		return key.toString();
+	}
+
+	private static boolean isAuthenticated(HttpServletRequest request) {
+		return request.getHeader("Authorization") != null || request.getUserPrincipal() != null;
+	}
+
+	private static boolean isNoCache(HttpServletRequest request) {
+		String cacheControl = request.getHeader("Cache-Control");
+		String pragma = request.getHeader("Pragma");
+		return (cacheControl != null && NO_CACHE.matcher(cacheControl).find())
+				|| (pragma != null && NO_CACHE.matcher(pragma).find());
+	}
+
+	/*
+	 * Whether the response may be given to other users than the one who asked
+	 * for it, RFC 7234 section 3.2.
+	 */
+	private static boolean isShared(CapturingResponse response) {
+		for (String cacheControl : response.getCapturedHeaders("Cache-Control")) {
+			if (PUBLIC.matcher(cacheControl).find() || S_MAXAGE.matcher(cacheControl).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int cacheableMaxAge(CapturingResponse response) {
+		if (!response.getCapturedHeaders("Set-Cookie").isEmpty()) {
+			return 0;
+		}
+		for (String vary : response.getCapturedHeaders("Vary")) {
+			for (String header : vary.split(",")) {
+				if (!VARY_HEADERS.contains(header.trim().toLowerCase())) {
+					return 0;
+				}
+			}
+		}
+		int maxAge = 0;
+		int sharedMaxAge = -1;
+		for (String cacheControl : response.getCapturedHeaders("Cache-Control")) {
+			if (NOT_SHARED.matcher(cacheControl).find()) {
+				return 0;
+			}
+			try {
+				Matcher matcher = MAX_AGE.matcher(cacheControl);
+				if (matcher.find()) {
+					maxAge = Integer.parseInt(matcher.group(1));
+				}
+				matcher = S_MAXAGE.matcher(cacheControl);
+				if (matcher.find()) {
+					sharedMaxAge = Integer.parseInt(matcher.group(1));
+				}
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+		// s-maxage overrides max-age for a shared cache
+		return sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+	}
+
+	private static Map<String, List<String>> cacheableHeaders(CapturingResponse response) {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> header : response.headers.entrySet()) {
+			if (!UNCACHED_HEADERS.contains(header.getKey().toLowerCase())) {
+				headers.put(header.getKey(), Collections.unmodifiableList(new ArrayList<String>(header.getValue())));
+			}
+		}
+		return Collections.unmodifiableMap(headers);
+	}
+
+	/**
+	 * The parts of a response needed to replay it.
+	 */
+	private static class CachedResponse {
+		final String contentType;
+		final Map<String, List<String>> headers;
+		final byte[] body;
+		final String etag;
+		// may be served to authenticated requests
+		final boolean shared;
+
+		CachedResponse(String contentType, Map<String, List<String>> headers, byte[] body, boolean shared) {
+			this.contentType = contentType;
+			this.headers = headers;
+			this.body = body;
+			this.shared = shared;
+			String etag = null;
+			for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+				if ("ETag".equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+					etag = header.getValue().get(0);
+				}
+			}
+			this.etag = etag;
+		}
+
+		void writeTo(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+				for (String value : header.getValue()) {
+					response.addHeader(header.getKey(), value);
+				}
+			}
+			if (etag != null && matches(request.getHeader("If-None-Match"))) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			response.setStatus(HttpServletResponse.SC_OK);
+			if (contentType != null) {
+				response.setContentType(contentType);
+			}
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+		}
+
+		private boolean matches(String ifNoneMatch) {
+			if (ifNoneMatch == null) {
+				return false;
+			}
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = StringUtils.removeStart(candidate.trim(), "W/");
+				if ("*".equals(candidate) || candidate.equals(StringUtils.removeStart(etag, "W/"))) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Passes the response through while keeping a copy of the status, headers
+	 * and body, up to a limit. The headers are recorded here rather than read
+	 * back from the response, which the Servlet 2.5 API cannot do.
+	 */
+	private static class CapturingResponse extends HttpServletResponseWrapper {
+		private final int limit;
+		private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		private int status = SC_OK;
+		private ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		private ServletOutputStream output;
+		private PrintWriter writer;
+
+		CapturingResponse(HttpServletResponse response, int limit) {
+			super(response);
+			this.limit = limit;
+		}
+
+		int getCapturedStatus() {
+			return status;
+		}
+
+		List<String> getCapturedHeaders(String name) {
+			List<String> values = headers.get(name);
+			return values != null ? values : Collections.<String>emptyList();
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			super.setStatus(sc);
+			status = sc;
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void setStatus(int sc, String sm) {
+			super.setStatus(sc, sm);
+			status = sc;
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			super.sendError(sc);
+			status = sc;
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			super.sendError(sc, msg);
+			status = sc;
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			super.sendRedirect(location);
+			status = SC_FOUND;
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			super.setHeader(name, value);
+			headers.remove(name);
+			addHeaderValue(name, value);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			super.addHeader(name, value);
+			addHeaderValue(name, value);
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			super.setIntHeader(name, value);
+			headers.remove(name);
+			addHeaderValue(name, String.valueOf(value));
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			super.addIntHeader(name, value);
+			addHeaderValue(name, String.valueOf(value));
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			super.setDateHeader(name, date);
+			// dates would be stale when replayed
+			headers.remove(name);
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			super.addCookie(cookie);
+			addHeaderValue("Set-Cookie", cookie.getName());
+		}
+
+		private void addHeaderValue(String name, String value) {
+			List<String> values = headers.get(name);
+			if (values == null) {
+				values = new ArrayList<String>(1);
+				headers.put(name, values);
+			}
+			values.add(value);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (writer != null) {
+				throw new IllegalStateException("getWriter() has already been called");
+			}
+			if (output == null) {
+				output = new CapturingOutputStream(super.getOutputStream());
+			}
+			return output;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				if (output != null) {
+					throw new IllegalStateException("getOutputStream() has already been called");
+				}
+				writer = new PrintWriter(new OutputStreamWriter(new CapturingOutputStream(super.getOutputStream()),
+						getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			super.flushBuffer();
+		}
+
+		@Override
+		public void resetBuffer() {
+			super.resetBuffer();
+			if (captured != null) {
+				captured.reset();
+			}
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			headers.clear();
+			status = SC_OK;
+			if (captured != null) {
+				captured.reset();
+			}
+		}
+
+		/**
+		 * @return the body, or null if it was larger than the limit
+		 */
+		byte[] getCaptured() {
+			if (writer != null) {
+				writer.flush();
+			}
+			return captured != null ? captured.toByteArray() : null;
+		}
+
+		private void capture(byte[] bytes, int offset, int length) {
+			if (captured != null) {
+				if (captured.size() + length > limit) {
+					captured = null;
+				} else {
+					captured.write(bytes, offset, length);
+				}
+			}
+		}
+
+		private class CapturingOutputStream extends ServletOutputStream {
+			private final ServletOutputStream out;
+
+			CapturingOutputStream(ServletOutputStream out) {
+				this.out = out;
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				capture(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				capture(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.temenos.interaction.core.cache;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.junit.Test;
+
+public class TestBoundedCache {
+
+	private static final long NOW = 1000000L;
+
+	@Test
+	public void testPutAndGet() {
+		BoundedCache cache = new BoundedCache(10);
+		ResponseBuilder response = mock(ResponseBuilder.class);
+		cache.put("/test", response, 10, NOW);
+		assertSame(response, cache.get("/test", NOW));
+		assertNull(cache.get("/other", NOW));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testPutReplaces() {
+		BoundedCache cache = new BoundedCache(10);
+		ResponseBuilder first = mock(ResponseBuilder.class);
+		ResponseBuilder second = mock(ResponseBuilder.class);
+		cache.put("/test", first, 10, NOW);
+		cache.put("/test", second, 20, NOW);
+		assertSame(second, cache.get("/test", NOW + 15000));
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.weight());
+	}
+
+	@Test
+	public void testNullKeyAndNoMaxAge() {
+		BoundedCache cache = new BoundedCache(10);
+		cache.put(null, mock(ResponseBuilder.class), 10);
+		cache.put("/test", mock(ResponseBuilder.class), 0);
+		assertNull(cache.get(null));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpiredEntryIsNotReturned() {
+		BoundedCache cache = new BoundedCache(10);
+		cache.put("/test", mock(ResponseBuilder.class), 10, NOW);
+		assertNotNull(cache.get("/test", NOW + 9999));
+		assertNull(cache.get("/test", NOW + 10000));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getExpirationCount());
+	}
+
+	@Test
+	public void testExpiredEntriesAreDroppedWithoutBeingRead() {
+		BoundedCache cache = new BoundedCache(100);
+		for (int i = 0; i < 50; i++) {
+			cache.put("/oneoff/" + i, mock(ResponseBuilder.class), 10, NOW);
+		}
+		assertEquals(50, cache.size());
+		// any write sweeps the expired entries
+		cache.put("/other", mock(ResponseBuilder.class), 10, NOW + 11000);
+		assertEquals(1, cache.size());
+		assertEquals(50, cache.getExpirationCount());
+
+		cache.cleanUp(NOW + 22000);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.weight());
+	}
+
+	@Test
+	public void testMaximumSize() {
+		BoundedCache cache = new BoundedCache(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("/entity/" + i, mock(ResponseBuilder.class), 60, NOW);
+			assertTrue(cache.size() <= 100);
+		}
+		assertEquals(100, cache.size());
+		assertEquals(900, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testMaximumWeight() {
+		BoundedCache cache = new BoundedCache(100, 10, new BoundedCache.Weigher() {
+			@Override
+			public int weigh(String key, ResponseBuilder value) {
+				return key.length();
+			}
+		});
+		cache.put("/aaaa", mock(ResponseBuilder.class), 60, NOW);
+		cache.put("/bbbb", mock(ResponseBuilder.class), 60, NOW);
+		assertEquals(10, cache.weight());
+		cache.put("/c", mock(ResponseBuilder.class), 60, NOW);
+		assertTrue(cache.weight() <= 10);
+		assertEquals(1, cache.getEvictionCount());
+		// too heavy to ever fit
+		cache.put("/ddddddddddd", mock(ResponseBuilder.class), 60, NOW);
+		assertNull(cache.get("/ddddddddddd", NOW));
+	}
+
+	@Test
+	public void testFrequentlyUsedEntriesSurviveAScan() {
+		BoundedCache cache = new BoundedCache(100);
+		List<ResponseBuilder> popular = new ArrayList<ResponseBuilder>();
+		for (int i = 0; i < 50; i++) {
+			ResponseBuilder response = mock(ResponseBuilder.class);
+			popular.add(response);
+			cache.put("/popular/" + i, response, 600, NOW);
+		}
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 50; i++) {
+				assertNotNull(cache.get("/popular/" + i, NOW));
+			}
+		}
+		// the popular entries keep being read while the one-off entries are written
+		for (int i = 0; i < 10000; i++) {
+			cache.put("/oneoff/" + i, mock(ResponseBuilder.class), 600, NOW);
+			if (i % 100 == 0) {
+				for (int j = 0; j < 50; j++) {
+					cache.get("/popular/" + j, NOW);
+				}
+			}
+		}
+		for (int i = 0; i < 50; i++) {
+			assertSame(popular.get(i), cache.get("/popular/" + i, NOW));
+		}
+		assertEquals(100, cache.size());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final BoundedCache cache = new BoundedCache(200);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 20000; i++) {
+							String key = "/entity/" + ((i * 31 + seed) % 500);
+							if (cache.get(key) == null) {
+								cache.put(key, mock(ResponseBuilder.class), 60);
+							}
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure.get());
+		assertTrue(cache.size() <= 200);
+		assertEquals(cache.size(), cache.weight());
+		assertEquals(8 * 20000, cache.getHitCount() + cache.getMissCount());
+	}
+}
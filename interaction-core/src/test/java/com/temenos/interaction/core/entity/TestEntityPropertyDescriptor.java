@@ -0,0 +1,195 @@
+package com.temenos.interaction.core.entity;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.temenos.interaction.core.entity.EntityPropertyDescriptor.ValueType;
+import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermComplexType;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermIdField;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermListType;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermMandatory;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
+
+public class TestEntityPropertyDescriptor {
+	private static final String[] VALUE_TYPES = { TermValueType.TEXT, TermValueType.NUMBER, TermValueType.INTEGER_NUMBER, 
+		TermValueType.DATE, TermValueType.BOOLEAN, TermValueType.ENUMERATION };
+	private static final int COLUMNS = 200;
+
+	private EntityMetadata entityMetadata;
+
+	@Before
+	public void setUp() {
+		// a wide record, like the T24 applications
+		entityMetadata = new EntityMetadata("Wide");
+		for (int i = 0; i < COLUMNS; i++) {
+			Vocabulary voc = new Vocabulary();
+			voc.setTerm(new TermValueType(VALUE_TYPES[i % VALUE_TYPES.length]));
+			if (i == 0) {
+				voc.setTerm(new TermIdField(true));
+			}
+			entityMetadata.setPropertyVocabulary("column" + i, voc);
+		}
+	}
+
+	private Object value(int column, int row) {
+		String valueType = VALUE_TYPES[column % VALUE_TYPES.length];
+		if (valueType.equals(TermValueType.NUMBER)) {
+			return row + 0.5;
+		} else if (valueType.equals(TermValueType.INTEGER_NUMBER)) {
+			return (long) row;
+		} else if (valueType.equals(TermValueType.DATE)) {
+			return new Date(row * 86400000L);
+		} else if (valueType.equals(TermValueType.BOOLEAN)) {
+			return row % 2 == 0;
+		} else if (valueType.equals(TermValueType.ENUMERATION)) {
+			return new String[] { "A" + row, "B" + row };
+		}
+		return "text" + row;
+	}
+
+	private String expected(int column, int row) {
+		String valueType = VALUE_TYPES[column % VALUE_TYPES.length];
+		if (valueType.equals(TermValueType.DATE)) {
+			return DateFormat.getDateTimeInstance().format(new Date(row * 86400000L));
+		} else if (valueType.equals(TermValueType.ENUMERATION)) {
+			return "A" + row + ",B" + row;
+		}
+		return String.valueOf(value(column, row));
+	}
+
+	@Test
+	public void testCompiledOnce() {
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor("column1");
+		assertSame(descriptor, entityMetadata.getPropertyDescriptor("column1"));
+		assertEquals("column1", descriptor.getName());
+		assertEquals(ValueType.NUMBER, descriptor.getValueType());
+		assertTrue(descriptor.isNumber());
+		assertFalse(descriptor.isText());
+		assertTrue(descriptor.isNullable());
+		assertFalse(entityMetadata.getPropertyDescriptor("column0").isNullable());
+		assertTrue(entityMetadata.getPropertyDescriptor("column0").isIdField());
+	}
+
+	@Test
+	public void testRecompiledWhenVocabularyChanges() {
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor("column1");
+		entityMetadata.getPropertyVocabulary("column1").setTerm(new TermMandatory(true));
+		EntityPropertyDescriptor recompiled = entityMetadata.getPropertyDescriptor("column1");
+		assertNotSame(descriptor, recompiled);
+		assertTrue(recompiled.isMandatory());
+		assertFalse(entityMetadata.isPropertyNullable("column1"));
+
+		Vocabulary voc = new Vocabulary();
+		voc.setTerm(new TermComplexType(true));
+		voc.setTerm(new TermListType(true));
+		entityMetadata.setPropertyVocabulary("column1", voc);
+		assertTrue(entityMetadata.getPropertyDescriptor("column1").isComplex());
+		assertTrue(entityMetadata.isPropertyList("column1"));
+		assertTrue(entityMetadata.isPropertyText("column1"));
+	}
+
+	@Test
+	public void testPropertyWithoutVocabulary() {
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor("missing");
+		assertEquals(ValueType.TEXT, descriptor.getValueType());
+		assertEquals(TermValueType.TEXT, descriptor.getTermValueType());
+		assertTrue(descriptor.isNullable());
+		assertFalse(descriptor.isComplex());
+		assertEquals("", descriptor.getComplexGroup());
+		assertEquals("1", descriptor.formatValue(1));
+	}
+
+	@Test
+	public void testUnknownValueType() {
+		Vocabulary voc = new Vocabulary();
+		voc.setTerm(new TermValueType("GEOGRAPHY"));
+		entityMetadata.setPropertyVocabulary("location", voc);
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor("location");
+		assertEquals(ValueType.OTHER, descriptor.getValueType());
+		assertEquals("GEOGRAPHY", descriptor.getTermValueType());
+		assertFalse(descriptor.isText());
+		assertEquals("", descriptor.formatValue(1));
+		assertEquals("as is", descriptor.formatValue("as is"));
+	}
+
+	@Test
+	public void testFormatWideRecords() {
+		List<EntityPropertyDescriptor> descriptors = new ArrayList<EntityPropertyDescriptor>();
+		for (int column = 0; column < COLUMNS; column++) {
+			descriptors.add(entityMetadata.getPropertyDescriptor("column" + column));
+		}
+		for (int row = 0; row < 100; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				String name = "column" + column;
+				assertSame(descriptors.get(column), entityMetadata.getPropertyDescriptor(name));
+				assertEquals(expected(column, row), entityMetadata.getPropertyValueAsString(name, value(column, row)));
+			}
+		}
+		assertEquals(1, entityMetadata.getIdFields().size());
+	}
+
+	@Test
+	public void testFormatDatesConcurrently() throws Exception {
+		final EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor("column3");
+		assertTrue(descriptor.isDate());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						for (int row = 0; row < 1000; row++) {
+							if (!expected(3, row).equals(descriptor.formatValue(value(3, row)))) {
+								return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.temenos.interaction.core.hypermedia;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestBeanPropertyAccessors {
+
+	public static class FailingBean {
+		public String getName() {
+			throw new IllegalStateException("no name");
+		}
+	}
+
+	@Test
+	public void testAccessorsCachedPerClass() {
+		assertSame(BeanPropertyAccessors.forClass(TestBean.class), BeanPropertyAccessors.forClass(TestBean.class));
+	}
+
+	@Test
+	public void testGetProperty() throws Exception {
+		BeanPropertyAccessors accessors = BeanPropertyAccessors.forClass(TestBean.class);
+		assertEquals(Arrays.asList("class", "intField", "stringField"), accessors.getPropertyNames());
+		assertTrue(accessors.hasProperty("stringField"));
+		assertFalse(accessors.hasProperty("missing"));
+
+		TestBean bean = new TestBean("A", 1);
+		assertEquals("A", accessors.getProperty(bean, "stringField"));
+		assertEquals(1, accessors.getProperty(bean, "intField"));
+		assertEquals(TestBean.class, accessors.getProperty(bean, "class"));
+		assertEquals("B", accessors.getProperty(new TestBean("B", 2), "stringField"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetUnknownProperty() throws Exception {
+		BeanPropertyAccessors.forClass(TestBean.class).getProperty(new TestBean("A", 1), "missing");
+	}
+
+	@Test
+	public void testInvokeGetter() throws Exception {
+		BeanPropertyAccessors accessors = BeanPropertyAccessors.forClass(TestBean.class);
+		assertEquals("A", accessors.invokeGetter(new TestBean("A", 1), "getStringField"));
+		assertEquals(TestBean.class, accessors.invokeGetter(new TestBean("A", 1), "getClass"));
+	}
+
+	@Test(expected = NoSuchMethodException.class)
+	public void testInvokeMissingGetter() throws Exception {
+		BeanPropertyAccessors.forClass(TestBean.class).invokeGetter(new TestBean("A", 1), "getMissing");
+	}
+
+	@Test
+	public void testGetterException() throws Exception {
+		try {
+			BeanPropertyAccessors.forClass(FailingBean.class).getProperty(new FailingBean(), "name");
+			fail("getter should throw");
+		} catch (InvocationTargetException e) {
+			assertEquals(IllegalStateException.class, e.getCause().getClass());
+			assertEquals("no name", e.getCause().getMessage());
+		}
+	}
+}
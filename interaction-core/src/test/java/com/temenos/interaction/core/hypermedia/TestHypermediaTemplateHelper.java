@@ -128,6 +128,13 @@ public class TestHypermediaTemplateHelper {
 				HypermediaTemplateHelper.templateReplace("http://127.0.0.1:9081/hothouse-iris/Hothouse.svc/{companyid}/$metadata", properties));
 	}
 
+	@Test
+	public void testRepeatedTokenTemplateReplace() {
+		Map<String,Object> properties = new HashMap<String,Object>();
+		properties.put("id", "a$1\\b");
+		assertEquals("a$1\\b/flights/a$1\\b", HypermediaTemplateHelper.templateReplace("{id}/flights/{id}", properties));
+	}
+
 	@Test
 	public void testPartialTemplateReplace() {
 		Map<String,Object> properties = new HashMap<String,Object>();
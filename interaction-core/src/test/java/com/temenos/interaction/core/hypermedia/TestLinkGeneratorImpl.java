@@ -230,6 +230,52 @@ public class TestLinkGeneratorImpl {
         assertEquals("/baseuri/test?$filter=123", links.iterator().next().getHref());
     }
 
+    @Test
+    public void testCreateLinkHrefAllQueryParametersTokensReplaceUsingEntity() {
+        ResourceStateMachine engine = new ResourceStateMachine(mock(ResourceState.class), new BeanTransformer());
+        Transition t = new Transition.Builder().source(mock(ResourceState.class)).target(mockTarget("/test")).build();
+        MultivaluedMap<String, String> queryParameters = new MultivaluedMapImpl<String>();
+        queryParameters.add("$filter", "{noteId}");
+        LinkGenerator linkGenerator = new LinkGeneratorImpl(engine, t, null).setAllQueryParameters(true);
+        Collection<Link> links = linkGenerator.createLink(new MultivaluedMapImpl<String>(), queryParameters, new TestNote("123"));
+        assertEquals("/baseuri/test?$filter=123", links.iterator().next().getHref());
+    }
+
+    @Test
+    public void testCreateLinkHrefEncodedPathParameter() {
+        ResourceStateMachine engine = new ResourceStateMachine(mock(ResourceState.class), new BeanTransformer());
+        Transition t = new Transition.Builder().source(mock(ResourceState.class)).target(mockTarget("/test/{noteId}")).build();
+        LinkGenerator linkGenerator = new LinkGeneratorImpl(engine, t, null);
+        Collection<Link> links = linkGenerator.createLink(null, null, new TestNote("1 2/3"));
+        assertEquals("/baseuri/test/1+2%2F3", links.iterator().next().getHref());
+    }
+
+    @Test
+    public void testCreateLinkHrefBaseUriChanged() {
+        ResourceStateMachine engine = new ResourceStateMachine(mock(ResourceState.class), new BeanTransformer());
+        Transition t = new Transition.Builder().source(mock(ResourceState.class)).target(mockTarget("/test/{noteId}")).build();
+        LinkGenerator linkGenerator = new LinkGeneratorImpl(engine, t, null);
+        assertEquals("/baseuri/test/1", linkGenerator.createLink(null, null, new TestNote("1")).iterator().next().getHref());
+        RequestContext.setRequestContext(new RequestContext("/other", "/requesturi", null));
+        assertEquals("/other/test/2", linkGenerator.createLink(null, null, new TestNote("2")).iterator().next().getHref());
+    }
+
+    @Test
+    public void testLinkTemplateCompiledOnce() {
+        Map<String, String> uriParameters = new HashMap<String, String>();
+        uriParameters.put("noteId", "{noteId}");
+        uriParameters.put("test", "{name}-{noteId}");
+        Transition t = new Transition.Builder().source(mock(ResourceState.class)).target(mockTarget("/test/{noteId}")).uriParameters(uriParameters).build();
+        LinkTemplate template = t.getLinkTemplate();
+        assertSame(template, t.getLinkTemplate());
+        assertEquals(2, template.getProperties().size());
+        assertTrue(template.getProperties().contains("name"));
+
+        // compiled again for a new target
+        t.setTarget(mockTarget("/other"));
+        assertNotSame(template, t.getLinkTemplate());
+    }
+
     @Test
     public void testCreateLinkForCollectionEntity() {
         Link result = null;
@@ -43,6 +43,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
@@ -78,6 +80,7 @@ import com.temenos.interaction.core.hypermedia.Action.TYPE;
 import com.temenos.interaction.core.hypermedia.expression.Expression;
 import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression;
 import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression.Function;
+import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpressionMemo;
 import com.temenos.interaction.core.hypermedia.expression.SimpleLogicalExpressionEvaluator;
 import com.temenos.interaction.core.hypermedia.validation.HypermediaValidator;
 import com.temenos.interaction.core.resource.CollectionResource;
@@ -974,6 +977,92 @@ public class TestResourceStateMachine {
         assertEquals("Number of states under \"/notes('{id}')\" path", 0, stateMachine.getResourceStatesForPath("/notes('{id}')").size());
     }
 
+    /*
+     * Registering a state publishes a new set of maps, anything obtained from the state
+     * machine before the registration is left untouched.
+     */
+    @Test
+    public void testRegisterDoesNotChangePreviouslyReturnedMaps() {
+        String entityName = "Note";
+        ResourceState initialState = new ResourceState(entityName, "notes", new ArrayList<Action>(), "/notes");
+        ResourceState noteState = new ResourceState(entityName, "note", new ArrayList<Action>(), "/notes('{id}')");
+
+        ResourceStateMachine stateMachine = new ResourceStateMachine(initialState);
+        Map<String, ResourceState> statesByName = stateMachine.getResourceStateByName();
+        Map<String, Set<ResourceState>> statesByPath = stateMachine.getResourceStatesByPath();
+        Set<String> interactions = stateMachine.getInteractions(initialState);
+
+        initialState.addTransition(new Transition.Builder().method("GET").target(noteState).build());
+        stateMachine.register(initialState, "POST");
+        stateMachine.register(noteState, "GET");
+
+        assertEquals(1, statesByName.size());
+        assertFalse(statesByPath.containsKey(noteState.getPath()));
+        assertEquals(1, interactions.size());
+
+        assertEquals(2, stateMachine.getResourceStateByName().size());
+        assertEquals(1, stateMachine.getResourceStatesForPath(noteState.getPath()).size());
+        assertEquals(2, stateMachine.getInteractions(initialState).size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testInteractionsAreReadOnly() {
+        ResourceState initialState = new ResourceState("Note", "notes", new ArrayList<Action>(), "/notes");
+        ResourceStateMachine stateMachine = new ResourceStateMachine(initialState);
+        stateMachine.getInteractions(initialState).add("POST");
+    }
+
+    /*
+     * Readers must always see a consistent state machine while states are being registered
+     * and unregistered concurrently.
+     */
+    @Test
+    public void testConcurrentReadsDuringRegistration() throws Exception {
+        final String entityName = "Note";
+        final ResourceState initialState = new ResourceState(entityName, "notes", new ArrayList<Action>(), "/notes");
+        final ResourceStateMachine stateMachine = new ResourceStateMachine(initialState);
+        final Event get = new Event("GET", "GET");
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (!stop.get()) {
+                            assertEquals(initialState, stateMachine.determineState(get, "/notes"));
+                            assertTrue(stateMachine.getInteractions(initialState).contains("GET"));
+                            for (ResourceState state : stateMachine.getStates()) {
+                                assertNotNull(stateMachine.getInteractionByState().get(state.getName()));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (int i = 0; i < 500; i++) {
+            ResourceState state = new ResourceState(entityName, "note" + i, new ArrayList<Action>(), "/notes('" + i + "')");
+            stateMachine.register(state, "GET");
+            if (i % 2 == 0) {
+                stateMachine.unregister(state, "GET");
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(251, stateMachine.getStates().size());
+    }
+
     /*
      * Unregistering a null state shouldn't change the state of the machine
      */
@@ -1692,6 +1781,58 @@ public class TestResourceStateMachine {
 
     }
 
+    /*
+     * Test a conditional link on each item of a collection is evaluated for the properties of that item, and the
+     * resource in its condition is only requested once for items with the same properties.
+     */
+    @Test
+    public void testGetLinksCollectionItemsConditionEvaluatedOncePerItem() {
+        String NOTE_ENTITY = "NOTE";
+        CollectionResourceState notesResource = new CollectionResourceState(NOTE_ENTITY, "collection", new ArrayList<Action>(), "/notes");
+        ResourceState noteResource = new ResourceState(NOTE_ENTITY, "item", new ArrayList<Action>(), "/notes/{noteId}", "item".split(" "));
+        List<Action> lockedActions = new ArrayList<Action>();
+        lockedActions.add(new Action("lockedNote", TYPE.VIEW));
+        ResourceState locked = new ResourceState(NOTE_ENTITY, "locked", lockedActions, "/notes/{noteId}/locked");
+        // link to each note while the note is not locked
+        List<Expression> expressions = new ArrayList<Expression>();
+        expressions.add(new ResourceGETExpression(locked, Function.NOT_FOUND));
+        notesResource.addTransition(new Transition.Builder().flags(Transition.FOR_EACH).method("GET").target(noteResource).uriParameters(new HashMap<String, String>()).evaluation(new SimpleLogicalExpressionEvaluator(expressions)).build());
+
+        List<EntityResource<Object>> entities = new ArrayList<EntityResource<Object>>();
+        entities.add(new EntityResource<Object>(createTestNote("1")));
+        entities.add(new EntityResource<Object>(createTestNote("2")));
+        entities.add(new EntityResource<Object>(createTestNote("6")));
+        entities.add(new EntityResource<Object>(createTestNote("2")));
+        CollectionResource<Object> testResponseEntity = new CollectionResource<Object>("notes", entities);
+
+        // only note '2' is locked
+        MapBasedCommandController commandController = new MapBasedCommandController();
+        commandController.getCommandMap().put("lockedNote", new InteractionCommand() {
+            public Result execute(InteractionContext ctx) {
+                if ("2".equals(ctx.getPathParameters().getFirst("noteId"))) {
+                    ctx.setResource(new EntityResource<Entity>("Note", new Entity("Note", new EntityProperties())));
+                    return Result.SUCCESS;
+                }
+                return Result.FAILURE;
+            }
+        });
+        ResourceStateMachine stateMachine = new ResourceStateMachine(notesResource, new BeanTransformer());
+        Metadata mockMetadata = mock(Metadata.class);
+        when(mockMetadata.getEntityMetadata(anyString())).thenReturn(mock(EntityMetadata.class));
+        HTTPHypermediaRIM rimHandler = new HTTPHypermediaRIM(commandController, stateMachine, mockMetadata);
+        InteractionContext ctx = createMockInteractionContext(notesResource);
+        stateMachine.injectLinks(rimHandler, ctx, testResponseEntity, mock(HttpHeaders.class), mock(Metadata.class));
+
+        assertEquals(1, entities.get(0).getLinks().size());
+        assertEquals(0, entities.get(1).getLinks().size());
+        assertEquals(1, entities.get(2).getLinks().size());
+        assertEquals(0, entities.get(3).getLinks().size());
+        ResourceGETExpressionMemo memo = ResourceGETExpressionMemo.getMemo(ctx);
+        assertEquals(3, memo.getRequestCount());
+        assertEquals(1, memo.getMemoHitCount());
+        assertFalse(memo.isOpen());
+    }
+
     /*
      * We use links (hypermedia) for controlling / describing application state. Test we return the links for items in
      * the collection.
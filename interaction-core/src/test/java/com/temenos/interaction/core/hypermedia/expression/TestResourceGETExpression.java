@@ -22,6 +22,7 @@ package com.temenos.interaction.core.hypermedia.expression;
  */
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -159,6 +160,32 @@ public class TestResourceGETExpression {
 		assertTrue("We did a GET on 'pwaiting' and it was NOT_FOUND(404), therefore NOT_FOUND link condition evaluates to 'true'", result2);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testMemoisedWhileOpen() {
+		HTTPHypermediaRIM rimHandler = mockRimHandler();
+		ResourceStateMachine rsm = rimHandler.getHypermediaEngine();
+		rsm.setCommandController(mockCommandController());
+		InteractionContext ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), mock(MultivaluedMap.class), mock(MultivaluedMap.class), rsm.getInitial(), mock(Metadata.class));
+		ResourceGETExpressionMemo memo = ResourceGETExpressionMemo.forContext(ctx);
+
+		ResourceGETExpression rgeOK = new ResourceGETExpression(rsm.getResourceStateByName("pwaiting"), Function.OK);
+		ResourceGETExpression rgeNOT_FOUND = new ResourceGETExpression(rsm.getResourceStateByName("pwaiting"), Function.NOT_FOUND);
+		memo.open();
+		assertFalse(rgeOK.evaluate(rimHandler, ctx, null));
+		assertTrue(rgeNOT_FOUND.evaluate(rimHandler, ctx, null));
+		assertTrue(rgeNOT_FOUND.evaluate(rimHandler, ctx, null));
+		memo.close();
+		assertEquals(1, memo.getRequestCount());
+		assertEquals(2, memo.getMemoHitCount());
+
+		// once closed each evaluation makes a request
+		assertTrue(rgeNOT_FOUND.evaluate(rimHandler, ctx, null));
+		assertTrue(rgeNOT_FOUND.evaluate(rimHandler, ctx, null));
+		assertEquals(3, memo.getRequestCount());
+		assertEquals(2, memo.getMemoHitCount());
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	@Ignore
@@ -0,0 +1,332 @@
+package com.temenos.interaction.core.rim;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionCommand;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.BeanTransformer;
+import com.temenos.interaction.core.hypermedia.Event;
+import com.temenos.interaction.core.hypermedia.LazyResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceStateMachine;
+import com.temenos.interaction.core.hypermedia.ResourceStateProvider;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.core.web.RequestContext;
+
+public class TestParallelResourceRequestHandler {
+
+	private static final int CHILDREN = 8;
+	private static final String REQUEST = "request";
+
+	private ParallelResourceRequestHandler handler;
+	private HTTPHypermediaRIM rimHandler;
+	private ResourceState parent;
+	// children that wait for their latch before responding
+	private final Map<String, CountDownLatch> blocked = new ConcurrentHashMap<String, CountDownLatch>();
+	// when set, children wait for each other before responding
+	private volatile CountDownLatch together;
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger maxActive = new AtomicInteger();
+	private final Map<String, RequestContext> requestContexts = new ConcurrentHashMap<String, RequestContext>();
+	private final Map<String, Object> seenRequests = new ConcurrentHashMap<String, Object>();
+	private final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	// when set, the children embed these resources in turn
+	private volatile ResourceRequestConfig nestedConfig;
+	private final Map<String, Integer> nestedStatuses = new ConcurrentHashMap<String, Integer>();
+
+	@Before
+	public void setUp() {
+		parent = new ResourceState("Entity", "parent", new ArrayList<Action>(), "/parent");
+		rimHandler = mock(HTTPHypermediaRIM.class);
+		when(rimHandler.getHypermediaEngine()).thenReturn(new ResourceStateMachine(parent, new BeanTransformer()));
+		when(rimHandler.handleRequest(any(HttpHeaders.class), any(InteractionContext.class), any(Event.class),
+				any(InteractionCommand.class), any(EntityResource.class), any(ResourceRequestConfig.class)))
+				.thenAnswer(new Answer<Response>() {
+					@Override
+					public Response answer(InvocationOnMock invocation) throws Throwable {
+						InteractionContext ctx = (InteractionContext) invocation.getArguments()[1];
+						String name = ctx.getCurrentState().getName();
+						threads.add(Thread.currentThread().getName());
+						if (RequestContext.getRequestContext() != null) {
+							requestContexts.put(name, RequestContext.getRequestContext());
+						}
+						Object seen = ctx.getAttribute(REQUEST);
+						seenRequests.put(name, seen != null ? seen : "none");
+						ctx.setAttribute(REQUEST, name);
+						ctx.setAttribute(name, Boolean.TRUE);
+
+						int running = active.incrementAndGet();
+						try {
+							synchronized (maxActive) {
+								maxActive.set(Math.max(maxActive.get(), running));
+							}
+							CountDownLatch all = together;
+							if (all != null) {
+								all.countDown();
+								if (!all.await(10, TimeUnit.SECONDS)) {
+									return Response.status(504).build();
+								}
+							}
+							CountDownLatch latch = blocked.get(name);
+							if (latch != null) {
+								latch.await();
+							}
+							ResourceRequestConfig embedded = nestedConfig;
+							if (embedded != null && name.startsWith("child")) {
+								for (Map.Entry<Transition, ResourceRequestResult> result : handler.getResources(rimHandler, null, ctx, null, embedded).entrySet()) {
+									nestedStatuses.put(name + "/" + result.getKey().getTarget().getName(), result.getValue().getStatus());
+								}
+							}
+						} finally {
+							active.decrementAndGet();
+						}
+						return Response.ok(new GenericEntity<EntityResource<String>>(new EntityResource<String>(name), EntityResource.class)).build();
+					}
+				});
+		RequestContext.setRequestContext(new RequestContext("/baseuri", "/parent", null));
+	}
+
+	@After
+	public void tearDown() {
+		for (CountDownLatch latch : blocked.values()) {
+			latch.countDown();
+		}
+		RequestContext.clearRequestContext();
+		if (handler != null) {
+			handler.shutdown();
+		}
+	}
+
+	private ResourceRequestConfig config(int children) {
+		return config("child", children);
+	}
+
+	private ResourceRequestConfig config(String prefix, int children) {
+		ResourceRequestConfig.Builder config = new ResourceRequestConfig.Builder();
+		for (int i = 0; i < children; i++) {
+			ResourceState child = new ResourceState("Entity", prefix + i, new ArrayList<Action>(), "/" + prefix + i);
+			config.transition(new Transition.Builder().source(parent).target(child).method("GET").flags(Transition.EMBEDDED).build());
+		}
+		return config.build();
+	}
+
+	private InteractionContext context() {
+		return new InteractionContext(mock(UriInfo.class), null, new MultivaluedMapImpl<String>(),
+				new MultivaluedMapImpl<String>(), parent, mock(Metadata.class));
+	}
+
+	/*
+	 * Each child only responds once all of them have started, which they
+	 * can only do at the same time.
+	 */
+	@Test
+	public void testChildrenRunAtTheSameTime() {
+		handler = new ParallelResourceRequestHandler(CHILDREN, 0);
+		together = new CountDownLatch(CHILDREN);
+		ResourceRequestConfig config = config(CHILDREN);
+		Map<Transition, ResourceRequestResult> results = handler.getResources(rimHandler, null, context(), null, config);
+
+		assertEquals(CHILDREN, results.size());
+		for (Transition t : config.getTransitions()) {
+			ResourceRequestResult result = results.get(t);
+			assertEquals(200, result.getStatus());
+			assertEquals(t.getTarget().getName(), ((EntityResource<?>) result.getResource()).getEntity());
+		}
+		assertEquals(CHILDREN, maxActive.get());
+	}
+
+	@Test
+	public void testSequentialRunsOneChildAtATime() {
+		SequentialResourceRequestHandler sequential = new SequentialResourceRequestHandler();
+		sequential.getResources(rimHandler, null, context(), null, config(3));
+		assertEquals(1, maxActive.get());
+		assertEquals(Collections.singleton(Thread.currentThread().getName()), threads);
+	}
+
+	@Test
+	public void testRequestContextIsPropagated() {
+		handler = new ParallelResourceRequestHandler(CHILDREN, 10000);
+		RequestContext requestContext = RequestContext.getRequestContext();
+		handler.getResources(rimHandler, null, context(), null, config(4));
+		assertEquals(4, requestContexts.size());
+		for (RequestContext propagated : requestContexts.values()) {
+			assertSame(requestContext, propagated);
+		}
+		assertSame(requestContext, RequestContext.getRequestContext());
+	}
+
+	@Test
+	public void testDeadline() {
+		handler = new ParallelResourceRequestHandler(CHILDREN, 1000);
+		blocked.put("child1", new CountDownLatch(1));
+		ResourceRequestConfig config = config(3);
+		InteractionContext ctx = context();
+		Map<Transition, ResourceRequestResult> results = handler.getResources(rimHandler, null, ctx, null, config);
+		assertEquals(3, results.size());
+		for (Transition t : config.getTransitions()) {
+			ResourceRequestResult result = results.get(t);
+			if (t.getTarget().getName().equals("child1")) {
+				assertEquals(503, result.getStatus());
+				assertNull(result.getResource());
+			} else {
+				assertEquals(200, result.getStatus());
+				assertNotNull(result.getResource());
+			}
+		}
+		// the cancelled request may still be running, its attributes are not merged
+		assertEquals(Boolean.TRUE, ctx.getAttribute("child0"));
+		assertNull(ctx.getAttribute("child1"));
+	}
+
+	@Test
+	public void testOnlySelectedStatesAreParallel() {
+		handler = new ParallelResourceRequestHandler(CHILDREN, 10000);
+		handler.setStates(Arrays.asList("other"));
+		handler.getResources(rimHandler, null, context(), null, config(2));
+		assertEquals(Collections.singleton(Thread.currentThread().getName()), threads);
+
+		handler.setStates(Arrays.asList("parent"));
+		threads.clear();
+		handler.getResources(rimHandler, null, context(), null, config(2));
+		assertTrue(!threads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFailurePropagates() {
+		handler = new ParallelResourceRequestHandler(CHILDREN, 10000);
+		when(rimHandler.getHypermediaEngine()).thenThrow(new IllegalStateException());
+		handler.getResources(rimHandler, null, context(), null, config(2));
+	}
+
+	/*
+	 * Children see the attributes of the parent but not those set by each
+	 * other, and the attributes they add are merged once they complete.
+	 */
+	@Test
+	public void testAttributesAreNotSharedBetweenChildren() {
+		handler = new ParallelResourceRequestHandler(CHILDREN, 10000);
+		together = new CountDownLatch(CHILDREN);
+		InteractionContext ctx = context();
+		ctx.setAttribute(REQUEST, "parent");
+		handler.getResources(rimHandler, null, ctx, null, config(CHILDREN));
+
+		assertEquals(CHILDREN, seenRequests.size());
+		for (Object seen : seenRequests.values()) {
+			assertEquals("parent", seen);
+		}
+		assertEquals("parent", ctx.getAttribute(REQUEST));
+		for (int i = 0; i < CHILDREN; i++) {
+			assertEquals(Boolean.TRUE, ctx.getAttribute("child" + i));
+		}
+	}
+
+	/*
+	 * Lazy targets are loaded by the calling thread, before the requests that
+	 * share their transitions start.
+	 */
+	@Test
+	public void testLazyTargetsResolvedBeforeRequests() {
+		final Set<String> resolvingThreads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		ResourceStateProvider provider = mock(ResourceStateProvider.class);
+		when(provider.getResourceState(anyString())).thenAnswer(new Answer<ResourceState>() {
+			@Override
+			public ResourceState answer(InvocationOnMock invocation) throws Throwable {
+				resolvingThreads.add(Thread.currentThread().getName());
+				String name = (String) invocation.getArguments()[0];
+				return new ResourceState("Entity", name, new ArrayList<Action>(), "/" + name);
+			}
+		});
+		when(rimHandler.getHypermediaEngine()).thenReturn(new ResourceStateMachine(parent, new BeanTransformer(), provider));
+		ResourceRequestConfig.Builder builder = new ResourceRequestConfig.Builder();
+		for (int i = 0; i < 3; i++) {
+			builder.transition(new Transition.Builder().source(parent).target(new LazyResourceState("child" + i)).method("GET").flags(Transition.EMBEDDED).build());
+		}
+		ResourceRequestConfig config = builder.build();
+
+		handler = new ParallelResourceRequestHandler(CHILDREN, 10000);
+		Map<Transition, ResourceRequestResult> results = handler.getResources(rimHandler, null, context(), null, config);
+		assertEquals(Collections.singleton(Thread.currentThread().getName()), resolvingThreads);
+		for (Transition t : config.getTransitions()) {
+			assertFalse(t.getTarget() instanceof LazyResourceState);
+			assertEquals(200, results.get(t).getStatus());
+		}
+	}
+
+	/*
+	 * The children embed resources of their own, more than there are threads
+	 * in the pool, which they get themselves rather than waiting on the pool.
+	 */
+	@Test
+	public void testNestedEmbeddingWithSmallPool() {
+		handler = new ParallelResourceRequestHandler(2, 5000);
+		nestedConfig = config("grandchild", 4);
+		ResourceRequestConfig config = config(4);
+		Map<Transition, ResourceRequestResult> results = handler.getResources(rimHandler, null, context(), null, config);
+
+		for (Transition t : config.getTransitions()) {
+			assertEquals(200, results.get(t).getStatus());
+		}
+		assertEquals(16, nestedStatuses.size());
+		for (Integer status : nestedStatuses.values()) {
+			assertEquals(Integer.valueOf(200), status);
+		}
+		// all on the two threads of the pool
+		assertEquals(2, threads.size());
+		assertFalse(threads.contains(Thread.currentThread().getName()));
+	}
+}
@@ -0,0 +1,254 @@
+package com.temenos.interaction.core.web;
+
+/*
+ * #%L
+ * interaction-core
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.security.Principal;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TestResponseCacheFilter {
+
+	/**
+	 * Writes a HAL body, counting how many times it is called.
+	 */
+	private static class ResourceChain implements FilterChain {
+		int calls;
+		String cacheControl = "max-age=60";
+		boolean useWriter;
+
+		@Override
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+			calls++;
+			HttpServletResponse httpResponse = (HttpServletResponse) response;
+			httpResponse.setStatus(HttpServletResponse.SC_OK);
+			httpResponse.setContentType("application/hal+json");
+			httpResponse.setHeader("ETag", "\"abc\"");
+			httpResponse.setHeader("Vary", "Accept");
+			if (cacheControl != null) {
+				httpResponse.setHeader("Cache-Control", cacheControl);
+			}
+			String body = "{\"call\":" + calls + "}";
+			if (useWriter) {
+				httpResponse.getWriter().write(body);
+			} else {
+				httpResponse.getOutputStream().write(body.getBytes("UTF-8"));
+			}
+		}
+	}
+
+	private MockHttpServletRequest request(String accept) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/example/api/Customers");
+		request.setQueryString("$top=10");
+		request.addHeader("Accept", accept);
+		return request;
+	}
+
+	@Test
+	public void testCachedBytesAreReplayed() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+
+		MockHttpServletResponse first = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json"), first, chain);
+		MockHttpServletResponse second = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json"), second, chain);
+
+		assertEquals(1, chain.calls);
+		assertEquals("{\"call\":1}", first.getContentAsString());
+		assertEquals("{\"call\":1}", second.getContentAsString());
+		assertEquals(200, second.getStatus());
+		assertEquals("application/hal+json", second.getContentType());
+		assertEquals("\"abc\"", second.getHeader("ETag"));
+		assertEquals("max-age=60", second.getHeader("Cache-Control"));
+		assertEquals(first.getContentAsByteArray().length, second.getContentLength());
+		assertEquals(1, filter.getHitCount());
+		assertEquals(1, filter.size());
+	}
+
+	@Test
+	public void testKeyIncludesNegotiationHeaders() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		filter.doFilter(request("application/atom+xml"), new MockHttpServletResponse(), chain);
+		MockHttpServletRequest french = request("application/hal+json");
+		french.addHeader("Accept-Language", "fr");
+		filter.doFilter(french, new MockHttpServletResponse(), chain);
+		assertEquals(3, chain.calls);
+		assertEquals(3, filter.size());
+	}
+
+	@Test
+	public void testWriterOutputIsCached() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+		chain.useWriter = true;
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		MockHttpServletResponse second = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json"), second, chain);
+		assertEquals(1, chain.calls);
+		assertEquals("{\"call\":1}", second.getContentAsString());
+	}
+
+	@Test
+	public void testUncacheableResponses() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+		chain.cacheControl = null;
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		chain.cacheControl = "private, max-age=60";
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		chain.cacheControl = "max-age=0";
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		assertEquals(0, filter.size());
+
+		MockHttpServletRequest post = request("application/hal+json");
+		post.setMethod("POST");
+		chain.cacheControl = "max-age=60";
+		filter.doFilter(post, new MockHttpServletResponse(), chain);
+		filter.doFilter(post, new MockHttpServletResponse(), chain);
+		assertEquals(5, chain.calls);
+		assertEquals(0, filter.size());
+	}
+
+	@Test
+	public void testLargeResponseIsNotCached() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter(100, 1000, 5);
+		ResourceChain chain = new ResourceChain();
+		MockHttpServletResponse first = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json"), first, chain);
+		assertEquals("{\"call\":1}", first.getContentAsString());
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		assertEquals(2, chain.calls);
+		assertEquals(0, filter.size());
+	}
+
+	@Test
+	public void testConditionalRequestOnCachedResponse() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		MockHttpServletRequest conditional = request("application/hal+json");
+		conditional.addHeader("If-None-Match", "\"xyz\", \"abc\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(conditional, response, chain);
+		assertEquals(1, chain.calls);
+		assertEquals(304, response.getStatus());
+		assertEquals("\"abc\"", response.getHeader("ETag"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	private MockHttpServletRequest request(String accept, final String user) {
+		MockHttpServletRequest request = request(accept);
+		request.setUserPrincipal(new Principal() {
+			@Override
+			public String getName() {
+				return user;
+			}
+		});
+		return request;
+	}
+
+	@Test
+	public void testAuthenticatedResponsesAreNotShared() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+
+		MockHttpServletResponse alice = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json", "alice"), alice, chain);
+		MockHttpServletResponse bob = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json", "bob"), bob, chain);
+		assertEquals("{\"call\":1}", alice.getContentAsString());
+		assertEquals("{\"call\":2}", bob.getContentAsString());
+		assertEquals(0, filter.size());
+
+		MockHttpServletRequest basic = request("application/hal+json");
+		basic.addHeader("Authorization", "Basic Ym9iOnNlY3JldA==");
+		filter.doFilter(basic, new MockHttpServletResponse(), chain);
+		assertEquals(3, chain.calls);
+		assertEquals(0, filter.size());
+
+		// a response cached for an anonymous request is not given to a user
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+		MockHttpServletResponse carol = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json", "carol"), carol, chain);
+		assertEquals(5, chain.calls);
+		assertEquals("{\"call\":5}", carol.getContentAsString());
+	}
+
+	@Test
+	public void testPublicResponsesAreShared() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+		chain.cacheControl = "public, max-age=60";
+		filter.doFilter(request("application/hal+json", "alice"), new MockHttpServletResponse(), chain);
+		MockHttpServletResponse bob = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json", "bob"), bob, chain);
+		assertEquals(1, chain.calls);
+		assertEquals("{\"call\":1}", bob.getContentAsString());
+
+		filter = new ResponseCacheFilter();
+		chain.cacheControl = "max-age=0, s-maxage=60";
+		MockHttpServletRequest basic = request("application/hal+json");
+		basic.addHeader("Authorization", "Basic Ym9iOnNlY3JldA==");
+		filter.doFilter(basic, new MockHttpServletResponse(), chain);
+		filter.doFilter(basic, new MockHttpServletResponse(), chain);
+		assertEquals(2, chain.calls);
+		assertEquals(1, filter.getHitCount());
+	}
+
+	@Test
+	public void testNoCacheRequest() throws Exception {
+		ResponseCacheFilter filter = new ResponseCacheFilter();
+		ResourceChain chain = new ResourceChain();
+		filter.doFilter(request("application/hal+json"), new MockHttpServletResponse(), chain);
+
+		MockHttpServletRequest noCache = request("application/hal+json");
+		noCache.addHeader("Cache-Control", "no-cache");
+		MockHttpServletResponse refreshed = new MockHttpServletResponse();
+		filter.doFilter(noCache, refreshed, chain);
+		assertEquals("{\"call\":2}", refreshed.getContentAsString());
+
+		MockHttpServletRequest pragma = request("application/hal+json");
+		pragma.addHeader("Pragma", "no-cache");
+		filter.doFilter(pragma, new MockHttpServletResponse(), chain);
+		assertEquals(3, chain.calls);
+		assertEquals(0, filter.getHitCount());
+
+		// the response to the last request replaced the cached one
+		MockHttpServletResponse cached = new MockHttpServletResponse();
+		filter.doFilter(request("application/hal+json"), cached, chain);
+		assertEquals(3, chain.calls);
+		assertEquals("{\"call\":3}", cached.getContentAsString());
+	}
+}
@@ -0,0 +1,414 @@
+package com.temenos.interaction.springdsl;
+
+/*
+ * #%L
+ * interaction-springdsl
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.CollectionResourceState;
+import com.temenos.interaction.core.hypermedia.DynamicResourceState;
+import com.temenos.interaction.core.hypermedia.LazyCollectionResourceState;
+import com.temenos.interaction.core.hypermedia.LazyResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.hypermedia.UriSpecification;
+import com.temenos.interaction.core.hypermedia.expression.Expression;
+import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression;
+import com.temenos.interaction.core.hypermedia.expression.SimpleLogicalExpressionEvaluator;
+import com.temenos.interaction.core.resource.ConfigLoader;
+
+/**
+ * A read only, memory mapped resource state snapshot written by the
+ * {@link ResourceStateSnapshotWriter}.
+ *
+ * Only the header and the index of state names are read when the snapshot is
+ * opened; a resource state is decoded from the mapped file each time it is
+ * requested. The snapshot remembers the name and a digest of the content of
+ * the PRD files it was written from, so that a snapshot older than its sources
+ * can be detected with {@link #isStale(ConfigLoader)} wherever it is deployed,
+ * whether the PRD files are read from a directory or from the classpath.
+ */
+public class ResourceStateSnapshot {
+	private final static Logger logger = LoggerFactory.getLogger(ResourceStateSnapshot.class);
+
+	static final int MAGIC = 0x49525353; // IRSS
+	static final int VERSION = 2;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	static final String DIGEST_ALGORITHM = "SHA-256";
+
+	// state kinds
+	static final byte RESOURCE = 0;
+	static final byte COLLECTION = 1;
+	static final byte LAZY = 2;
+	static final byte LAZY_COLLECTION = 3;
+	static final byte DYNAMIC = 4;
+
+	// state flags
+	static final byte INITIAL = 1;
+	static final byte EXCEPTION = 2;
+
+	// expression kinds
+	static final byte NO_EXPRESSION = 0;
+	static final byte RESOURCE_GET = 1;
+	static final byte RESOURCE_GET_BY_NAME = 2;
+	static final byte LOGICAL_AND = 3;
+
+	private final ByteBuffer buffer;
+	private final List<Source> sources;
+	private final int[] stringOffsets;
+	private final String[] strings;
+	private final Map<String, Integer> index;
+
+	private ResourceStateSnapshot(ByteBuffer buffer) {
+		this.buffer = buffer;
+		ByteBuffer in = buffer.duplicate();
+		if (in.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a resource state snapshot");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unsupported resource state snapshot version [" + version + "]");
+		}
+		int sourceCount = in.getInt();
+		List<Source> sources = new ArrayList<Source>(sourceCount);
+		for (int i = 0; i < sourceCount; i++) {
+			sources.add(new Source(readInlineString(in), readInlineString(in)));
+		}
+		this.sources = Collections.unmodifiableList(sources);
+		int stringCount = in.getInt();
+		stringOffsets = new int[stringCount];
+		for (int i = 0; i < stringCount; i++) {
+			stringOffsets[i] = in.getInt();
+		}
+		strings = new String[stringCount];
+		int stateCount = in.getInt();
+		index = new HashMap<String, Integer>(stateCount * 4 / 3 + 1);
+		for (int i = 0; i < stateCount; i++) {
+			String name = string(in.getInt());
+			index.put(name, in.getInt());
+		}
+	}
+
+	/**
+	 * Map a snapshot file into memory.
+	 * @param file the snapshot
+	 * @return the opened snapshot
+	 * @throws IOException if the file cannot be read or is not a snapshot of
+	 * 			this version
+	 */
+	public static ResourceStateSnapshot open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new ResourceStateSnapshot(buffer);
+		} catch (IllegalArgumentException | BufferUnderflowException e) {
+			throw new IOException("Failed to open resource state snapshot [" + file + "]", e);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @param configLoader loads the PRD files, from the IRIS configuration
+	 * 			directories or the classpath
+	 * @return true if the content of any of the PRD files this snapshot was
+	 * 			written from has changed, or the file disappeared, since
+	 */
+	public boolean isStale(ConfigLoader configLoader) {
+		for (Source source : sources) {
+			if (!configLoader.isExist(source.name)) {
+				logger.info("Resource state snapshot source [" + source.name + "] no longer exists");
+				return true;
+			}
+			String digest;
+			try {
+				InputStream in = configLoader.load(source.name);
+				try {
+					digest = digest(in);
+				} finally {
+					in.close();
+				}
+			} catch (Exception e) {
+				logger.warn("Failed to read resource state snapshot source [" + source.name + "]", e);
+				return true;
+			}
+			if (!digest.equals(source.digest)) {
+				logger.info("Resource state snapshot is older than [" + source.name + "]");
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public Set<String> getResourceStateNames() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	public boolean contains(String name) {
+		return index.containsKey(name);
+	}
+
+	/**
+	 * Decode a resource state. Every call returns a new instance.
+	 * @param name the bean name of the state
+	 * @return the state or null if the snapshot does not contain it
+	 */
+	public ResourceState getResourceState(String name) {
+		Integer offset = index.get(name);
+		if (offset == null) {
+			return null;
+		}
+		ByteBuffer in = buffer.duplicate();
+		in.position(offset);
+		return readState(in);
+	}
+
+	private ResourceState readState(ByteBuffer in) {
+		byte kind = in.get();
+		switch (kind) {
+		case LAZY:
+			return new LazyResourceState(readString(in));
+		case LAZY_COLLECTION:
+			return new LazyCollectionResourceState(readString(in));
+		case DYNAMIC: {
+			String entityName = readString(in);
+			String name = readString(in);
+			String locatorName = readString(in);
+			String[] locatorArgs = readStrings(in);
+			DynamicResourceState state = new DynamicResourceState(entityName, name, locatorName, locatorArgs);
+			readStateDetails(in, state);
+			return state;
+		}
+		case RESOURCE:
+		case COLLECTION: {
+			String entityName = readString(in);
+			String name = readString(in);
+			String path = readString(in);
+			String pathIdParameter = readString(in);
+			String[] rels = readStrings(in);
+			List<Action> actions = readActions(in);
+			UriSpecification uriSpec = null;
+			if (in.get() != 0) {
+				uriSpec = new UriSpecification(readString(in), readString(in));
+			}
+			ResourceState state;
+			if (kind == COLLECTION) {
+				state = new CollectionResourceState(entityName, name, actions, path, rels, uriSpec);
+			} else if (pathIdParameter != null) {
+				state = new ResourceState(entityName, name, actions, path, pathIdParameter, rels);
+			} else {
+				state = new ResourceState(entityName, name, actions, path, rels, uriSpec);
+			}
+			readStateDetails(in, state);
+			return state;
+		}
+		default:
+			throw new IllegalStateException("Unknown resource state kind [" + kind + "]");
+		}
+	}
+
+	private void readStateDetails(ByteBuffer in, ResourceState state) {
+		byte flags = in.get();
+		state.setInitial((flags & INITIAL) != 0);
+		state.setException((flags & EXCEPTION) != 0);
+		state.setMaxAge(in.getInt());
+		if (in.get() != 0) {
+			state.setErrorState(readState(in));
+		}
+		int transitionCount = in.getInt();
+		for (int i = 0; i < transitionCount; i++) {
+			state.addTransition(readTransition(in));
+		}
+	}
+
+	private Transition readTransition(ByteBuffer in) {
+		Transition.Builder builder = new Transition.Builder();
+		builder.target(readState(in));
+		builder.method(readString(in));
+		builder.flags(in.getInt());
+		builder.label(readString(in));
+		builder.linkId(readString(in));
+		builder.sourceField(readString(in));
+		builder.uriParameters(readStringMap(in));
+		builder.evaluation(readExpression(in));
+		return builder.build();
+	}
+
+	@SuppressWarnings("deprecation")
+	private Expression readExpression(ByteBuffer in) {
+		byte kind = in.get();
+		switch (kind) {
+		case NO_EXPRESSION:
+			return null;
+		case RESOURCE_GET: {
+			ResourceGETExpression.Function function = ResourceGETExpression.Function.valueOf(readString(in));
+			return new ResourceGETExpression(readState(in), function);
+		}
+		case RESOURCE_GET_BY_NAME: {
+			ResourceGETExpression.Function function = ResourceGETExpression.Function.valueOf(readString(in));
+			return new ResourceGETExpression(readString(in), function);
+		}
+		case LOGICAL_AND: {
+			int count = in.getInt();
+			List<Expression> expressions = new ArrayList<Expression>(count);
+			for (int i = 0; i < count; i++) {
+				expressions.add(readExpression(in));
+			}
+			return new SimpleLogicalExpressionEvaluator(expressions);
+		}
+		default:
+			throw new IllegalStateException("Unknown expression kind [" + kind + "]");
+		}
+	}
+
+	private List<Action> readActions(ByteBuffer in) {
+		int count = in.getInt();
+		if (count < 0) {
+			return null;
+		}
+		List<Action> actions = new ArrayList<Action>(count);
+		for (int i = 0; i < count; i++) {
+			String name = readString(in);
+			Action.TYPE type = Action.TYPE.valueOf(readString(in));
+			String method = readString(in);
+			int maxAge = in.getInt();
+			Properties properties = null;
+			Map<String, String> map = readStringMap(in);
+			if (map != null) {
+				properties = new Properties();
+				properties.putAll(map);
+			}
+			Action action = new Action(name, type, properties, method);
+			action.setMaxage(maxAge);
+			actions.add(action);
+		}
+		return actions;
+	}
+
+	private Map<String, String> readStringMap(ByteBuffer in) {
+		int count = in.getInt();
+		if (count < 0) {
+			return null;
+		}
+		Map<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			map.put(readString(in), readString(in));
+		}
+		return map;
+	}
+
+	private String[] readStrings(ByteBuffer in) {
+		int count = in.getInt();
+		if (count < 0) {
+			return null;
+		}
+		String[] result = new String[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = readString(in);
+		}
+		return result;
+	}
+
+	private String readString(ByteBuffer in) {
+		return string(in.getInt());
+	}
+
+	/*
+	 * Strings are decoded on first use. Concurrent callers may decode the same
+	 * string twice, which is harmless as strings are immutable.
+	 */
+	private String string(int i) {
+		if (i < 0) {
+			return null;
+		}
+		String result = strings[i];
+		if (result == null) {
+			ByteBuffer in = buffer.duplicate();
+			in.position(stringOffsets[i]);
+			result = readInlineString(in);
+			strings[i] = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the hex encoded digest of the content of a snapshot source
+	 */
+	static String digest(InputStream in) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported", e);
+		}
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			digest.update(buffer, 0, read);
+		}
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest()) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	private static String readInlineString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * A PRD file the snapshot was written from, by its file name.
+	 */
+	static class Source {
+		final String name;
+		final String digest;
+
+		Source(String name, String digest) {
+			this.name = name;
+			this.digest = digest;
+		}
+	}
+}
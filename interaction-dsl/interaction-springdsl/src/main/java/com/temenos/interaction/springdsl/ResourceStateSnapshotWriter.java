@@ -0,0 +1,437 @@
+package com.temenos.interaction.springdsl;
+
+/*
+ * #%L
+ * interaction-springdsl
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.AbstractXmlApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.FileSystemXmlApplicationContext;
+
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.CollectionResourceState;
+import com.temenos.interaction.core.hypermedia.DynamicResourceState;
+import com.temenos.interaction.core.hypermedia.LazyCollectionResourceState;
+import com.temenos.interaction.core.hypermedia.LazyResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.hypermedia.TransitionCommandSpec;
+import com.temenos.interaction.core.hypermedia.UriSpecification;
+import com.temenos.interaction.core.hypermedia.expression.Expression;
+import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression;
+import com.temenos.interaction.core.hypermedia.expression.SimpleLogicalExpressionEvaluator;
+
+/**
+ * Writes the resource states defined by PRD files into a binary
+ * {@link ResourceStateSnapshot}, so that they can be loaded without creating
+ * a Spring context for each of them.
+ *
+ * A transition target that is itself a named bean is written as a lazy
+ * reference to that bean. States the snapshot cannot represent (a custom
+ * state or expression class, a resource locator, a state defined in more than
+ * one file, ...) are left out and keep being loaded from their PRD file.
+ *
+ * The PRD files are remembered by file name and a digest of their content, so
+ * the snapshot can be deployed with PRD files in another directory or in a jar.
+ *
+ * Usage: ResourceStateSnapshotWriter &lt;snapshot file&gt; &lt;PRD file, directory or classpath:PRD&gt;...
+ */
+public class ResourceStateSnapshotWriter {
+	private final static Logger logger = LoggerFactory.getLogger(ResourceStateSnapshotWriter.class);
+
+	private static final String CLASSPATH_PREFIX = "classpath:";
+
+	private final Map<String, ResourceState> states = new TreeMap<String, ResourceState>();
+	private final Set<String> duplicates = new HashSet<String>();
+	private final List<ResourceStateSnapshot.Source> sources = new ArrayList<ResourceStateSnapshot.Source>();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: ResourceStateSnapshotWriter <snapshot file> <PRD file, directory or classpath:PRD>...");
+			System.exit(1);
+		}
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].startsWith(CLASSPATH_PREFIX)) {
+				writer.addResource(args[i].substring(CLASSPATH_PREFIX.length()));
+				continue;
+			}
+			File file = new File(args[i]);
+			File[] files = file.isDirectory() ? file.listFiles() : new File[] { file };
+			for (File prd : files) {
+				if (prd.getName().endsWith("-PRD.xml")) {
+					writer.addFile(prd);
+				}
+			}
+		}
+		int count = writer.write(new File(args[0]));
+		System.out.println("Wrote " + count + " resource states to " + args[0]);
+	}
+
+	/**
+	 * Add all the resource states defined in a PRD file.
+	 */
+	public void addFile(File prdFile) throws IOException {
+		addContext(new FileSystemXmlApplicationContext(new String[] { prdFile.toURI().toString() }));
+		InputStream in = new FileInputStream(prdFile);
+		try {
+			sources.add(new ResourceStateSnapshot.Source(prdFile.getName(), ResourceStateSnapshot.digest(in)));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Add all the resource states defined in a PRD file on the classpath.
+	 * @param resourceName the name of the PRD file in the root of the classpath
+	 */
+	public void addResource(String resourceName) throws IOException {
+		InputStream in = getClass().getClassLoader().getResourceAsStream(resourceName);
+		if (in == null) {
+			throw new IOException("Unable to load " + resourceName + " from classpath.");
+		}
+		try {
+			addContext(new ClassPathXmlApplicationContext(resourceName));
+			sources.add(new ResourceStateSnapshot.Source(resourceName, ResourceStateSnapshot.digest(in)));
+		} finally {
+			in.close();
+		}
+	}
+
+	private void addContext(AbstractXmlApplicationContext context) {
+		try {
+			addStates(context.getBeansOfType(ResourceState.class));
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Add resource states, the key is the bean name.
+	 */
+	public void addStates(Map<String, ResourceState> beans) {
+		for (Entry<String, ResourceState> entry : beans.entrySet()) {
+			String name = entry.getKey();
+			if (duplicates.contains(name) || states.containsKey(name)) {
+				logger.warn("Resource state [" + name + "] is defined more than once, it will not be written to the snapshot");
+				states.remove(name);
+				duplicates.add(name);
+			} else {
+				states.put(name, entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Write the snapshot.
+	 * @param snapshotFile
+	 * @return the number of resource states written
+	 * @throws IOException
+	 */
+	public int write(File snapshotFile) throws IOException {
+		Map<ResourceState, String> beanNames = new IdentityHashMap<ResourceState, String>();
+		for (Entry<String, ResourceState> entry : states.entrySet()) {
+			beanNames.put(entry.getValue(), entry.getKey());
+		}
+
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		Map<String, Integer> recordOffsets = new LinkedHashMap<String, Integer>();
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		for (Entry<String, ResourceState> entry : states.entrySet()) {
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			try {
+				new Encoder(new DataOutputStream(record), strings, beanNames).writeState(entry.getValue(), true);
+			} catch (IllegalArgumentException e) {
+				logger.warn("Resource state [" + entry.getKey() + "] will not be written to the snapshot: " + e.getMessage());
+				continue;
+			}
+			recordOffsets.put(entry.getKey(), records.size());
+			record.writeTo(records);
+		}
+		for (String name : recordOffsets.keySet()) {
+			intern(strings, name);
+		}
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(header);
+		out.writeInt(ResourceStateSnapshot.MAGIC);
+		out.writeInt(ResourceStateSnapshot.VERSION);
+		out.writeInt(sources.size());
+		for (ResourceStateSnapshot.Source source : sources) {
+			writeInlineString(out, source.name);
+			writeInlineString(out, source.digest);
+		}
+
+		ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+		List<Integer> stringOffsets = new ArrayList<Integer>(strings.size());
+		DataOutputStream stringOut = new DataOutputStream(stringData);
+		for (String string : strings.keySet()) {
+			stringOffsets.add(stringData.size());
+			writeInlineString(stringOut, string);
+		}
+
+		int stringBase = header.size() + 4 + 4 * strings.size() + 4 + 8 * recordOffsets.size();
+		int recordBase = stringBase + stringData.size();
+		out.writeInt(stringOffsets.size());
+		for (int offset : stringOffsets) {
+			out.writeInt(stringBase + offset);
+		}
+		out.writeInt(recordOffsets.size());
+		for (Entry<String, Integer> entry : recordOffsets.entrySet()) {
+			out.writeInt(strings.get(entry.getKey()));
+			out.writeInt(recordBase + entry.getValue());
+		}
+
+		OutputStream file = new FileOutputStream(snapshotFile);
+		try {
+			header.writeTo(file);
+			stringData.writeTo(file);
+			records.writeTo(file);
+		} finally {
+			file.close();
+		}
+		return recordOffsets.size();
+	}
+
+	private static int intern(Map<String, Integer> strings, String string) {
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.put(string, index);
+		}
+		return index;
+	}
+
+	private static void writeInlineString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(ResourceStateSnapshot.UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Encodes one resource state record, throws an IllegalArgumentException
+	 * for anything the snapshot cannot represent.
+	 */
+	private static class Encoder {
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings;
+		private final Map<ResourceState, String> beanNames;
+		private final Set<ResourceState> writing = Collections.newSetFromMap(new IdentityHashMap<ResourceState, Boolean>());
+
+		Encoder(DataOutputStream out, Map<String, Integer> strings, Map<ResourceState, String> beanNames) {
+			this.out = out;
+			this.strings = strings;
+			this.beanNames = beanNames;
+		}
+
+		void writeState(ResourceState state, boolean top) throws IOException {
+			Class<?> type = state.getClass();
+			if (type == LazyResourceState.class) {
+				out.writeByte(ResourceStateSnapshot.LAZY);
+				writeString(state.getName());
+				return;
+			}
+			if (type == LazyCollectionResourceState.class) {
+				out.writeByte(ResourceStateSnapshot.LAZY_COLLECTION);
+				writeString(state.getName());
+				return;
+			}
+			String beanName = top ? null : beanNames.get(state);
+			if (beanName != null) {
+				out.writeByte(state instanceof CollectionResourceState ? ResourceStateSnapshot.LAZY_COLLECTION : ResourceStateSnapshot.LAZY);
+				writeString(beanName);
+				return;
+			}
+			if (!writing.add(state)) {
+				throw new IllegalArgumentException("cyclic reference to unnamed state [" + state.getName() + "]");
+			}
+			if (state.getParent() != null) {
+				throw new IllegalArgumentException("state [" + state.getName() + "] has a parent state");
+			}
+			if (type == DynamicResourceState.class) {
+				DynamicResourceState dynamic = (DynamicResourceState) state;
+				out.writeByte(ResourceStateSnapshot.DYNAMIC);
+				writeString(state.getEntityName());
+				writeString(state.getName());
+				writeString(dynamic.getResourceLocatorName());
+				writeStrings(dynamic.getResourceLocatorArgs());
+			} else if (type == ResourceState.class || type == CollectionResourceState.class) {
+				boolean collection = type == CollectionResourceState.class;
+				UriSpecification uriSpec = state.getUriSpecification();
+				if (state.getPathIdParameter() != null && (collection || uriSpec != null)) {
+					throw new IllegalArgumentException("state [" + state.getName() + "] has both a path id parameter and a uri specification");
+				}
+				out.writeByte(collection ? ResourceStateSnapshot.COLLECTION : ResourceStateSnapshot.RESOURCE);
+				writeString(state.getEntityName());
+				writeString(state.getName());
+				writeString(state.getPath());
+				writeString(state.getPathIdParameter());
+				writeStrings(state.getRels());
+				writeActions(state.getActions());
+				out.writeBoolean(uriSpec != null);
+				if (uriSpec != null) {
+					writeString(uriSpec.getName());
+					writeString(uriSpec.getTemplate());
+				}
+			} else {
+				throw new IllegalArgumentException("unsupported resource state class [" + type.getName() + "]");
+			}
+			writeStateDetails(state);
+			writing.remove(state);
+		}
+
+		private void writeStateDetails(ResourceState state) throws IOException {
+			int flags = 0;
+			if (state.isInitial()) {
+				flags |= ResourceStateSnapshot.INITIAL;
+			}
+			if (state.isException()) {
+				flags |= ResourceStateSnapshot.EXCEPTION;
+			}
+			out.writeByte(flags);
+			out.writeInt(state.getMaxAge());
+			ResourceState errorState = state.getErrorState();
+			out.writeBoolean(errorState != null);
+			if (errorState != null) {
+				writeState(errorState, false);
+			}
+			List<Transition> transitions = state.getTransitions();
+			out.writeInt(transitions.size());
+			for (Transition transition : transitions) {
+				writeTransition(transition);
+			}
+		}
+
+		private void writeTransition(Transition transition) throws IOException {
+			if (transition.getLocator() != null) {
+				throw new IllegalArgumentException("transition [" + transition.getId() + "] has a resource locator");
+			}
+			TransitionCommandSpec command = transition.getCommand();
+			writeState(transition.getTarget(), false);
+			writeString(command.getMethod());
+			out.writeInt(command.getFlags());
+			writeString(transition.getLabel());
+			writeString(transition.getLinkId());
+			writeString(transition.getSourceField());
+			writeStringMap(command.getUriParameters());
+			writeExpression(command.getEvaluation());
+		}
+
+		private void writeExpression(Expression expression) throws IOException {
+			if (expression == null) {
+				out.writeByte(ResourceStateSnapshot.NO_EXPRESSION);
+			} else if (expression.getClass() == ResourceGETExpression.class) {
+				ResourceGETExpression get = (ResourceGETExpression) expression;
+				if (get.transition != null) {
+					out.writeByte(ResourceStateSnapshot.RESOURCE_GET);
+					writeString(get.getFunction().name());
+					writeState(get.transition.getTarget(), false);
+				} else {
+					out.writeByte(ResourceStateSnapshot.RESOURCE_GET_BY_NAME);
+					writeString(get.getFunction().name());
+					writeString(get.state);
+				}
+			} else if (expression.getClass() == SimpleLogicalExpressionEvaluator.class) {
+				List<Expression> expressions = ((SimpleLogicalExpressionEvaluator) expression).getExpressions();
+				out.writeByte(ResourceStateSnapshot.LOGICAL_AND);
+				out.writeInt(expressions.size());
+				for (Expression e : expressions) {
+					writeExpression(e);
+				}
+			} else {
+				throw new IllegalArgumentException("unsupported expression class [" + expression.getClass().getName() + "]");
+			}
+		}
+
+		private void writeActions(List<Action> actions) throws IOException {
+			if (actions == null) {
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(actions.size());
+			for (Action action : actions) {
+				writeString(action.getName());
+				writeString(action.getType().name());
+				writeString(action.getMethod());
+				out.writeInt(action.getMaxage());
+				if (action.getProperties() == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(action.getProperties().size());
+					for (Entry<Object, Object> property : action.getProperties().entrySet()) {
+						if (!(property.getKey() instanceof String) || !(property.getValue() instanceof String)) {
+							throw new IllegalArgumentException("action [" + action.getName() + "] has a property that is not a string");
+						}
+						writeString((String) property.getKey());
+						writeString((String) property.getValue());
+					}
+				}
+			}
+		}
+
+		private void writeStringMap(Map<String, String> map) throws IOException {
+			if (map == null) {
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(map.size());
+			for (Entry<String, String> entry : map.entrySet()) {
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+			}
+		}
+
+		private void writeStrings(String[] values) throws IOException {
+			if (values == null) {
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(values.length);
+			for (String value : values) {
+				writeString(value);
+			}
+		}
+
+		private void writeString(String value) throws IOException {
+			out.writeInt(value == null ? -1 : intern(strings, value));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.temenos.interaction.springdsl;
+
+/*
+ * #%L
+ * interaction-springdsl
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.core.hypermedia.ResourceState;
+
+/**
+ * A {@link SpringDSLResourceStateProvider} that reads resource states from a
+ * {@link ResourceStateSnapshot} instead of creating a Spring context per PRD
+ * file.
+ *
+ * The PRD files remain the source of truth: the whole snapshot is ignored if
+ * it is missing, unreadable or older than any of the files it was written
+ * from, and states that are not in the snapshot, or have been unloaded since,
+ * are loaded from their PRD file as usual. The PRD files are found with the
+ * {@link com.temenos.interaction.core.resource.ConfigLoader}, so the snapshot
+ * is only checked against them when the first state is requested.
+ */
+public class SnapshotResourceStateProvider extends SpringDSLResourceStateProvider {
+	private final Logger logger = LoggerFactory.getLogger(SnapshotResourceStateProvider.class);
+
+	private volatile ResourceStateSnapshot snapshot;
+	private volatile boolean checked;
+	private final ConcurrentMap<String, ResourceState> hydrated = new ConcurrentHashMap<String, ResourceState>();
+	// states unloaded since the snapshot was opened, these are loaded from their PRD file
+	private final Set<String> replaced = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final AtomicLong hydrateCount = new AtomicLong();
+
+	public SnapshotResourceStateProvider(Properties beanMap, String snapshotFile) {
+		super(beanMap);
+		this.snapshot = openSnapshot(new File(snapshotFile));
+	}
+
+	private ResourceStateSnapshot openSnapshot(File file) {
+		if (!file.exists()) {
+			logger.info("No resource state snapshot [" + file + "], loading resource states from PRD files");
+			return null;
+		}
+		try {
+			ResourceStateSnapshot result = ResourceStateSnapshot.open(file);
+			logger.info("Opened resource state snapshot [" + file + "] with " + result.getResourceStateNames().size() + " resource states");
+			return result;
+		} catch (IOException e) {
+			logger.error("Failed to open resource state snapshot [" + file + "], loading resource states from PRD files", e);
+			return null;
+		}
+	}
+
+	/*
+	 * The snapshot once it has been checked against the PRD files, or null if
+	 * it is not used.
+	 */
+	private ResourceStateSnapshot getSnapshot() {
+		if (!checked) {
+			synchronized (this) {
+				if (!checked) {
+					if (snapshot != null && snapshot.isStale(getConfigLoader())) {
+						logger.warn("Resource state snapshot is stale, loading resource states from PRD files");
+						snapshot = null;
+					}
+					checked = true;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return true if resource states are being read from the snapshot
+	 */
+	public boolean isSnapshotUsed() {
+		return getSnapshot() != null;
+	}
+
+	/**
+	 * @return the number of resource states read from the snapshot
+	 */
+	public long getHydrateCount() {
+		return hydrateCount.get();
+	}
+
+	@Override
+	public ResourceState getResourceState(String resourceStateName) {
+		ResourceStateSnapshot snapshot = getSnapshot();
+		if (snapshot != null && resourceStateName != null && !replaced.contains(resourceStateName)) {
+			ResourceState result = hydrated.get(resourceStateName);
+			if (result == null && snapshot.contains(resourceStateName)) {
+				ResourceState state = snapshot.getResourceState(resourceStateName);
+				hydrateCount.incrementAndGet();
+				result = hydrated.putIfAbsent(resourceStateName, state);
+				if (result == null) {
+					result = state;
+				}
+			}
+			if (result != null) {
+				return result;
+			}
+		}
+		return super.getResourceState(resourceStateName);
+	}
+
+	@Override
+	public boolean isLoaded(String name) {
+		return hydrated.containsKey(name) || super.isLoaded(name);
+	}
+
+	@Override
+	public void unload(String name) {
+		ResourceStateSnapshot snapshot = getSnapshot();
+		if (snapshot != null && snapshot.contains(name)) {
+			replaced.add(name);
+		}
+		hydrated.remove(name);
+		super.unload(name);
+	}
+}
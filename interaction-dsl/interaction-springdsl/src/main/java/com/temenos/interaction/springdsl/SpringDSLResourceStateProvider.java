@@ -34,12 +34,18 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -65,6 +71,26 @@ public class SpringDSLResourceStateProvider implements ResourceStateProvider, Dy
 
 	private ConcurrentMap<String, ResourceState> resources = new ConcurrentHashMap<String, ResourceState>();
 
+	/**
+	 * Loads in progress, the state name is the key. Only one thread loads a given
+	 * state, any other thread asking for it waits for the result of that load.
+	 */
+	private ConcurrentMap<String, FutureTask<ResourceState>> loading = new ConcurrentHashMap<String, FutureTask<ResourceState>>();
+
+	/**
+	 * Names of the states that could not be found, with the time (nanoTime) until
+	 * which they should not be looked up again.
+	 */
+	private ConcurrentMap<String, Long> notFound = new ConcurrentHashMap<String, Long>();
+	private int notFoundCacheSize = 1000;
+	private long notFoundTimeToLive = TimeUnit.MINUTES.toMillis(1);
+
+	// statistics
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong loadTime = new AtomicLong();
+	private final AtomicLong loadWaitCount = new AtomicLong();
+	private final AtomicLong notFoundHitCount = new AtomicLong();
+
 	protected StateRegisteration stateRegisteration;
 	
 	private ConfigLoader configLoader = new ConfigLoader();
@@ -109,6 +135,53 @@ public class SpringDSLResourceStateProvider implements ResourceStateProvider, Dy
 		this.configLoader = configLoader;
 	}
 
+	protected ConfigLoader getConfigLoader() {
+		return configLoader;
+	}
+
+	/**
+	 * @param notFoundCacheSize the maximum number of unknown state names to remember,
+	 * 			0 disables the caching of unknown state names
+	 */
+	public void setNotFoundCacheSize(int notFoundCacheSize) {
+		this.notFoundCacheSize = notFoundCacheSize;
+	}
+
+	/**
+	 * @param notFoundTimeToLive how long, in milliseconds, an unknown state name is remembered
+	 */
+	public void setNotFoundTimeToLive(long notFoundTimeToLive) {
+		this.notFoundTimeToLive = notFoundTimeToLive;
+	}
+
+	/**
+	 * @return the number of resource state loads, successful or not
+	 */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * @return the total time, in milliseconds, spent loading resource states
+	 */
+	public long getLoadTime() {
+		return TimeUnit.NANOSECONDS.toMillis(loadTime.get());
+	}
+
+	/**
+	 * @return the number of times a caller waited for a load started by another caller
+	 */
+	public long getLoadWaitCount() {
+		return loadWaitCount.get();
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache of unknown state names
+	 */
+	public long getNotFoundHitCount() {
+		return notFoundHitCount.get();
+	}
+
 	protected void initialise() {
 		if (initialised)
 			return;
@@ -188,6 +261,7 @@ public class SpringDSLResourceStateProvider implements ResourceStateProvider, Dy
 			logger.info("Attempting to register state: " + stateName + " methods: " + methods + " path: " + path);
 
 			// preemptive loading
+			notFound.remove(stateName);
 			ResourceState state = getResourceState(stateName);
 			
 			if (state != null){
@@ -204,6 +278,7 @@ public class SpringDSLResourceStateProvider implements ResourceStateProvider, Dy
 	
 	public void unload(String name) {	    
 	    resources.remove(name);
+	    notFound.remove(name);
 	}
 
 	@Override
@@ -220,22 +295,109 @@ public class SpringDSLResourceStateProvider implements ResourceStateProvider, Dy
 				// Try to retrieve the resource state
 				result = resources.get(resourceStateName);
 
-				if (result == null) {
+				if (result == null && !isNotFound(resourceStateName)) {
 					// Resource state has not already been loaded so attempt to load it
+					result = load(resourceStateName);
+				}
+			}
+		} catch (BeansException e) {
+			logger.error("Failed to load ["+resourceStateName+"]", e);
+		}
+
+		return result;
+	}
+
+	/*
+	 * Load the resource state, or wait for the load already started by another thread.
+	 */
+	private ResourceState load(final String resourceStateName) {
+		FutureTask<ResourceState> task = new FutureTask<ResourceState>(new Callable<ResourceState>() {
+			@Override
+			public ResourceState call() {
+				long start = System.nanoTime();
+				try {
 					ResourceStateLoad newState = new ResourceStateLoad(resourceStateName);
 					newState.load();
 					if ( newState.isLoaded() ) {
-						result = newState.loaded();						
-					} else {
-						logger.error( newState.toString() );
+						return newState.loaded();
 					}
+					logger.error( newState.toString() );
+					addNotFound(resourceStateName);
+					return null;
+				} finally {
+					long elapsed = System.nanoTime() - start;
+					loadCount.incrementAndGet();
+					loadTime.addAndGet(elapsed);
+					logger.debug("Loading [" + resourceStateName + "] took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
 				}
 			}
-		} catch (BeansException e) {
-			logger.error("Failed to load ["+resourceStateName+"]", e);
+		});
+
+		FutureTask<ResourceState> running = loading.putIfAbsent(resourceStateName, task);
+		if (running == null) {
+			// a load that completed since our lookup will have stored its result
+			ResourceState loaded = resources.get(resourceStateName);
+			if (loaded != null || isNotFound(resourceStateName)) {
+				loading.remove(resourceStateName, task);
+				return loaded;
+			}
+			running = task;
+			try {
+				task.run();
+			} finally {
+				loading.remove(resourceStateName, task);
+			}
+		} else {
+			loadWaitCount.incrementAndGet();
 		}
 
-		return result;
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Interrupted while loading [" + resourceStateName + "]");
+			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to load [" + resourceStateName + "]", e.getCause());
+		}
+	}
+
+	private boolean isNotFound(String resourceStateName) {
+		Long expiry = notFound.get(resourceStateName);
+		if (expiry == null) {
+			return false;
+		}
+		if (expiry - System.nanoTime() <= 0) {
+			notFound.remove(resourceStateName, expiry);
+			return false;
+		}
+		notFoundHitCount.incrementAndGet();
+		return true;
+	}
+
+	private void addNotFound(String resourceStateName) {
+		if (notFoundCacheSize <= 0) {
+			return;
+		}
+		if (notFound.size() >= notFoundCacheSize) {
+			// make room, expired entries first and then any entry
+			long now = System.nanoTime();
+			Iterator<Long> expiries = notFound.values().iterator();
+			while (expiries.hasNext()) {
+				if (expiries.next() - now <= 0) {
+					expiries.remove();
+				}
+			}
+			Iterator<String> names = notFound.keySet().iterator();
+			while (notFound.size() >= notFoundCacheSize && names.hasNext()) {
+				names.next();
+				names.remove();
+			}
+		}
+		notFound.put(resourceStateName, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(notFoundTimeToLive));
 	}
 
 	@Override
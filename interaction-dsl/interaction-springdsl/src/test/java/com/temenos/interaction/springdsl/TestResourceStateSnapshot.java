@@ -0,0 +1,296 @@
+package com.temenos.interaction.springdsl;
+
+/*
+ * #%L
+ * interaction-springdsl
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.CollectionResourceState;
+import com.temenos.interaction.core.hypermedia.LazyCollectionResourceState;
+import com.temenos.interaction.core.hypermedia.LazyResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.hypermedia.UriSpecification;
+import com.temenos.interaction.core.hypermedia.expression.Expression;
+import com.temenos.interaction.core.hypermedia.expression.ResourceGETExpression;
+import com.temenos.interaction.core.hypermedia.expression.SimpleLogicalExpressionEvaluator;
+import com.temenos.interaction.core.resource.ConfigLoader;
+
+public class TestResourceStateSnapshot {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWritePRDFile() throws Exception {
+		File prd = new File(getClass().getResource("/IRIS-SimpleModel_Home_TestTransition-PRD.xml").toURI());
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addFile(prd);
+		File file = folder.newFile("snapshot.bin");
+		assertEquals(1, writer.write(file));
+
+		ResourceStateSnapshot snapshot = ResourceStateSnapshot.open(file);
+		assertFalse(snapshot.isStale(new ConfigLoader()));
+		assertEquals(Collections.singleton("SimpleModel_Home_TestTransition"), snapshot.getResourceStateNames());
+
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("IRIS-SimpleModel_Home_TestTransition-PRD.xml");
+		try {
+			ResourceState expected = context.getBean("SimpleModel_Home_TestTransition", ResourceState.class);
+			ResourceState actual = snapshot.getResourceState("SimpleModel_Home_TestTransition");
+			assertStateEquals(expected, actual);
+			assertEquals(1, actual.getTransitions().size());
+			Transition transition = actual.getTransitions().get(0);
+			assertTrue(transition.getTarget() instanceof LazyResourceState);
+			assertEquals("SimpleModel_Home_home", transition.getTarget().getName());
+			assertEquals("link to home", transition.getLabel());
+			assertEquals("GET", transition.getCommand().getMethod());
+			assertEquals(actual, transition.getSource());
+			assertEquals(expected.getTransitions(), actual.getTransitions());
+		} finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testStaleSnapshot() throws Exception {
+		File prd = folder.newFile("IRIS-SimpleModel_Home_TestTransition-PRD.xml");
+		copy(new File(getClass().getResource("/IRIS-SimpleModel_Home_TestTransition-PRD.xml").toURI()), prd);
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addFile(prd);
+		File file = folder.newFile("snapshot.bin");
+		writer.write(file);
+		ConfigLoader configLoader = new ConfigLoader();
+		configLoader.setIrisConfigDirPath(folder.getRoot().getPath());
+		assertFalse(ResourceStateSnapshot.open(file).isStale(configLoader));
+
+		// only the content matters
+		assertTrue(prd.setLastModified(prd.lastModified() + 10000));
+		assertFalse(ResourceStateSnapshot.open(file).isStale(configLoader));
+		FileOutputStream out = new FileOutputStream(prd, true);
+		try {
+			out.write("<!-- changed -->".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		assertTrue(ResourceStateSnapshot.open(file).isStale(configLoader));
+		assertTrue(prd.delete());
+		assertTrue(ResourceStateSnapshot.open(file).isStale(configLoader));
+	}
+
+	@Test
+	public void testMovedSources() throws Exception {
+		File buildDir = folder.newFolder("build");
+		copy(new File(getClass().getResource("/IRIS-SimpleModel_Home_TestTransition-PRD.xml").toURI()),
+				new File(buildDir, "IRIS-SimpleModel_Home_TestTransition-PRD.xml"));
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addFile(new File(buildDir, "IRIS-SimpleModel_Home_TestTransition-PRD.xml"));
+		File file = folder.newFile("snapshot.bin");
+		writer.write(file);
+
+		// deployed in another directory, or in a jar
+		File deployDir = new File(folder.getRoot(), "deploy");
+		assertTrue(buildDir.renameTo(deployDir));
+		ConfigLoader configLoader = new ConfigLoader();
+		configLoader.setIrisConfigDirPath(deployDir.getPath());
+		assertFalse(ResourceStateSnapshot.open(file).isStale(configLoader));
+		assertFalse(ResourceStateSnapshot.open(file).isStale(new ConfigLoader()));
+	}
+
+	@Test
+	public void testWriteClasspathPRD() throws Exception {
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addResource("IRIS-SimpleModel_Home_TestTransition-PRD.xml");
+		File file = folder.newFile("snapshot.bin");
+		assertEquals(1, writer.write(file));
+
+		ResourceStateSnapshot snapshot = ResourceStateSnapshot.open(file);
+		assertFalse(snapshot.isStale(new ConfigLoader()));
+		assertEquals("TestTransition", snapshot.getResourceState("SimpleModel_Home_TestTransition").getName());
+
+		// a directory with another version of the PRD file takes precedence
+		File prd = folder.newFile("IRIS-SimpleModel_Home_TestTransition-PRD.xml");
+		FileOutputStream out = new FileOutputStream(prd);
+		try {
+			out.write("<beans/>".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		ConfigLoader configLoader = new ConfigLoader();
+		configLoader.setIrisConfigDirPath(folder.getRoot().getPath());
+		assertTrue(snapshot.isStale(configLoader));
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingClasspathPRD() throws Exception {
+		new ResourceStateSnapshotWriter().addResource("IRIS-Missing-PRD.xml");
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotASnapshot() throws Exception {
+		File file = folder.newFile("snapshot.bin");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("<beans/>".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		ResourceStateSnapshot.open(file);
+	}
+
+	@Test
+	public void testUnsupportedStatesAreLeftOut() throws Exception {
+		ResourceState parent = new ResourceState("ENTITY", "parent", new ArrayList<Action>(), "/parent");
+		ResourceState pseudo = new ResourceState(parent, "pseudo", new ArrayList<Action>());
+		ResourceState custom = new ResourceState("ENTITY", "custom", new ArrayList<Action>(), "/custom") {};
+		Map<String, ResourceState> beans = new HashMap<String, ResourceState>();
+		beans.put("parent", parent);
+		beans.put("pseudo", pseudo);
+		beans.put("custom", custom);
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addStates(beans);
+		writer.addStates(Collections.singletonMap("duplicate", parent));
+		writer.addStates(Collections.singletonMap("duplicate", parent));
+		File file = folder.newFile("snapshot.bin");
+		assertEquals(1, writer.write(file));
+
+		ResourceStateSnapshot snapshot = ResourceStateSnapshot.open(file);
+		assertEquals(Collections.singleton("parent"), snapshot.getResourceStateNames());
+		assertNull(snapshot.getResourceState("pseudo"));
+	}
+
+	@Test
+	public void testGeneratedModel() throws Exception {
+		int count = 10000;
+		Map<String, ResourceState> beans = new HashMap<String, ResourceState>();
+		List<ResourceState> states = new ArrayList<ResourceState>();
+		for (int i = 0; i < count; i++) {
+			Properties properties = new Properties();
+			properties.put("filter", "id eq '{id}'");
+			List<Action> actions = new ArrayList<Action>();
+			actions.add(new Action("GETEntity", Action.TYPE.VIEW, properties));
+			ResourceState state;
+			if (i % 2 == 0) {
+				state = new CollectionResourceState("Entity" + i, "entities", actions, "/entities" + i, null,
+						new UriSpecification("entities", "/entities" + i));
+			} else {
+				state = new ResourceState("Entity" + (i - 1), "entity", actions, "/entities" + (i - 1) + "('{id}')", "id", null);
+			}
+			state.setMaxAge(i);
+			states.add(state);
+			beans.put("Model_" + i, state);
+		}
+		ResourceState notFound = new ResourceState("Entity", "notFound", new ArrayList<Action>(), "/notFound");
+		for (int i = 0; i < count; i++) {
+			ResourceState target = states.get(i % 2 == 0 ? i + 1 : i - 1);
+			List<Expression> expressions = new ArrayList<Expression>();
+			expressions.add(new ResourceGETExpression(target, ResourceGETExpression.Function.OK));
+			expressions.add(new ResourceGETExpression(notFound, ResourceGETExpression.Function.NOT_FOUND));
+			Map<String, String> uriParameters = new HashMap<String, String>();
+			uriParameters.put("id", "{Id}");
+			states.get(i).addTransition(new Transition.Builder()
+					.method("GET")
+					.target(target)
+					.uriParameters(uriParameters)
+					.flags(i % 2 == 0 ? Transition.FOR_EACH : 0)
+					.evaluation(new SimpleLogicalExpressionEvaluator(expressions))
+					.label("link " + i)
+					.build());
+		}
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addStates(beans);
+		File file = folder.newFile("snapshot.bin");
+		assertEquals(count, writer.write(file));
+
+		ResourceStateSnapshot snapshot = ResourceStateSnapshot.open(file);
+		assertEquals(count, snapshot.getResourceStateNames().size());
+		for (int i = 0; i < count; i++) {
+			ResourceState expected = states.get(i);
+			ResourceState actual = snapshot.getResourceState("Model_" + i);
+			assertStateEquals(expected, actual);
+			assertEquals(expected.getClass(), actual.getClass());
+
+			Transition transition = actual.getTransitions().get(0);
+			assertEquals(i % 2 == 0 ? LazyResourceState.class : LazyCollectionResourceState.class, transition.getTarget().getClass());
+			assertEquals("Model_" + (i % 2 == 0 ? i + 1 : i - 1), transition.getTarget().getName());
+			assertEquals(expected.getTransitions().get(0).getCommand().getFlags(), transition.getCommand().getFlags());
+			assertEquals(expected.getTransitions().get(0).getCommand().getUriParameters(), transition.getCommand().getUriParameters());
+			assertEquals("link " + i, transition.getLabel());
+			List<Expression> expressions = ((SimpleLogicalExpressionEvaluator) transition.getCommand().getEvaluation()).getExpressions();
+			assertEquals(2, expressions.size());
+			assertEquals(ResourceGETExpression.Function.OK, ((ResourceGETExpression) expressions.get(0)).getFunction());
+			assertEquals("Model_" + (i % 2 == 0 ? i + 1 : i - 1), ((ResourceGETExpression) expressions.get(0)).getState());
+			assertEquals("notFound", ((ResourceGETExpression) expressions.get(1)).getState());
+		}
+		assertNotSame(snapshot.getResourceState("Model_0"), snapshot.getResourceState("Model_0"));
+	}
+
+	private void assertStateEquals(ResourceState expected, ResourceState actual) {
+		assertEquals(expected.getEntityName(), actual.getEntityName());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getPath(), actual.getPath());
+		assertEquals(expected.getPathIdParameter(), actual.getPathIdParameter());
+		assertArrayEquals(expected.getRels(), actual.getRels());
+		assertEquals(expected.isInitial(), actual.isInitial());
+		assertEquals(expected.isException(), actual.isException());
+		assertEquals(expected.getMaxAge(), actual.getMaxAge());
+		if (expected.getUriSpecification() == null) {
+			assertNull(actual.getUriSpecification());
+		} else {
+			assertEquals(expected.getUriSpecification().getName(), actual.getUriSpecification().getName());
+			assertEquals(expected.getUriSpecification().getTemplate(), actual.getUriSpecification().getTemplate());
+		}
+		assertEquals(expected.getActions().size(), actual.getActions().size());
+		for (int i = 0; i < expected.getActions().size(); i++) {
+			Action expectedAction = expected.getActions().get(i);
+			Action actualAction = actual.getActions().get(i);
+			assertEquals(expectedAction.getName(), actualAction.getName());
+			assertEquals(expectedAction.getType(), actualAction.getType());
+			assertEquals(expectedAction.getMethod(), actualAction.getMethod());
+			assertEquals(expectedAction.getProperties(), actualAction.getProperties());
+		}
+		assertEquals(expected.getTransitions().size(), actual.getTransitions().size());
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		java.nio.file.Files.copy(from.toPath(), to.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+	}
+}
@@ -0,0 +1,147 @@
+package com.temenos.interaction.springdsl;
+
+/*
+ * #%L
+ * interaction-springdsl
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.resource.ConfigLoader;
+
+public class TestSnapshotResourceStateProvider {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File prd;
+	private File snapshot;
+	private Properties beanMap;
+
+	@Before
+	public void setUp() throws Exception {
+		prd = new File(getClass().getResource("/IRIS-SimpleModel_Home_TestTransition-PRD.xml").toURI());
+		snapshot = new File(folder.getRoot(), "snapshot.bin");
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addFile(prd);
+		writer.write(snapshot);
+		beanMap = new Properties();
+		beanMap.put("SimpleModel_Home_TestTransition", "GET /transition");
+		beanMap.put("SimpleModel_Home_home", "GET,PUT /test");
+	}
+
+	@Test
+	public void testGetResourceStateFromSnapshot() {
+		SnapshotResourceStateProvider provider = new SnapshotResourceStateProvider(beanMap, snapshot.getPath());
+		assertTrue(provider.isSnapshotUsed());
+		assertFalse(provider.isLoaded("SimpleModel_Home_TestTransition"));
+
+		ResourceState state = provider.getResourceState("SimpleModel_Home_TestTransition");
+		assertEquals("TestTransition", state.getName());
+		assertEquals(1, state.getTransitions().size());
+		assertEquals("LAZY", state.getTransitions().get(0).getTarget().getPath());
+		assertTrue(provider.isLoaded("SimpleModel_Home_TestTransition"));
+		assertSame(state, provider.getResourceState("SimpleModel_Home_TestTransition"));
+		assertEquals(1, provider.getHydrateCount());
+		assertEquals(0, provider.getLoadCount());
+	}
+
+	@Test
+	public void testStatesNotInSnapshotAreLoadedFromPRD() {
+		SnapshotResourceStateProvider provider = new SnapshotResourceStateProvider(beanMap, snapshot.getPath());
+		ResourceState state = provider.getResourceState("SimpleModel_Home_home");
+		assertEquals("home", state.getName());
+		assertEquals(0, provider.getHydrateCount());
+		assertEquals(1, provider.getLoadCount());
+	}
+
+	@Test
+	public void testUnloadedStatesAreLoadedFromPRD() {
+		SnapshotResourceStateProvider provider = new SnapshotResourceStateProvider(beanMap, snapshot.getPath());
+		ResourceState hydrated = provider.getResourceState("SimpleModel_Home_TestTransition");
+		provider.unload("SimpleModel_Home_TestTransition");
+		assertFalse(provider.isLoaded("SimpleModel_Home_TestTransition"));
+
+		ResourceState loaded = provider.getResourceState("SimpleModel_Home_TestTransition");
+		assertEquals("TestTransition", loaded.getName());
+		assertNotSame(hydrated, loaded);
+		assertEquals(1, provider.getHydrateCount());
+		assertEquals(1, provider.getLoadCount());
+	}
+
+	@Test
+	public void testMissingSnapshot() {
+		SnapshotResourceStateProvider provider = new SnapshotResourceStateProvider(beanMap, new File(folder.getRoot(), "missing.bin").getPath());
+		assertFalse(provider.isSnapshotUsed());
+		assertEquals("TestTransition", provider.getResourceState("SimpleModel_Home_TestTransition").getName());
+		assertEquals(1, provider.getLoadCount());
+	}
+
+	@Test
+	public void testStaleSnapshot() throws Exception {
+		File copy = folder.newFile("IRIS-SimpleModel_Home_TestTransition-PRD.xml");
+		java.nio.file.Files.copy(prd.toPath(), copy.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addFile(copy);
+		writer.write(snapshot);
+		java.nio.file.Files.write(copy.toPath(), "<!-- changed -->".getBytes("UTF-8"), java.nio.file.StandardOpenOption.APPEND);
+
+		SnapshotResourceStateProvider provider = new SnapshotResourceStateProvider(beanMap, snapshot.getPath());
+		ConfigLoader configLoader = new ConfigLoader();
+		configLoader.setIrisConfigDirPath(folder.getRoot().getPath());
+		provider.setConfigLoader(configLoader);
+		assertFalse(provider.isSnapshotUsed());
+		assertEquals("TestTransition", provider.getResourceState("SimpleModel_Home_TestTransition").getName());
+		assertEquals(0, provider.getHydrateCount());
+	}
+
+	@Test
+	public void testSnapshotOfMovedSources() throws Exception {
+		File buildDir = folder.newFolder("build");
+		File copy = new File(buildDir, "IRIS-SimpleModel_Home_TestTransition-PRD.xml");
+		java.nio.file.Files.copy(prd.toPath(), copy.toPath());
+		ResourceStateSnapshotWriter writer = new ResourceStateSnapshotWriter();
+		writer.addFile(copy);
+		writer.write(snapshot);
+		File deployDir = new File(folder.getRoot(), "deploy");
+		assertTrue(buildDir.renameTo(deployDir));
+
+		SnapshotResourceStateProvider provider = new SnapshotResourceStateProvider(beanMap, snapshot.getPath());
+		ConfigLoader configLoader = new ConfigLoader();
+		configLoader.setIrisConfigDirPath(deployDir.getPath());
+		provider.setConfigLoader(configLoader);
+		assertTrue(provider.isSnapshotUsed());
+		assertEquals("TestTransition", provider.getResourceState("SimpleModel_Home_TestTransition").getName());
+		assertEquals(1, provider.getHydrateCount());
+		assertEquals(0, provider.getLoadCount());
+	}
+}
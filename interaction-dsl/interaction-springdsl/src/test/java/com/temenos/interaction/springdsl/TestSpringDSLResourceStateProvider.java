@@ -26,13 +26,18 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -168,6 +173,76 @@ public class TestSpringDSLResourceStateProvider {
         assertEquals("Number of resources: ", 1, rsp.getResourceMethodsByState().size());
     }
 
+    @Test
+    public void testUnknownResourceStateIsRemembered() {
+        SpringDSLResourceStateProvider rsp = (SpringDSLResourceStateProvider) resourceStateProvider;
+
+        assertNull(rsp.getResourceState("inexistentState"));
+        assertNull(rsp.getResourceState("inexistentState"));
+        assertEquals(1, rsp.getLoadCount());
+        assertEquals(1, rsp.getNotFoundHitCount());
+
+        // unloading forgets about the unknown state
+        rsp.unload("inexistentState");
+        assertNull(rsp.getResourceState("inexistentState"));
+        assertEquals(2, rsp.getLoadCount());
+    }
+
+    @Test
+    public void testUnknownResourceStateExpires() {
+        SpringDSLResourceStateProvider rsp = (SpringDSLResourceStateProvider) resourceStateProvider;
+        rsp.setNotFoundTimeToLive(0);
+
+        assertNull(rsp.getResourceState("inexistentState"));
+        assertNull(rsp.getResourceState("inexistentState"));
+        assertEquals(2, rsp.getLoadCount());
+        assertEquals(0, rsp.getNotFoundHitCount());
+    }
+
+    @Test
+    public void testUnknownResourceStateCacheIsBounded() {
+        SpringDSLResourceStateProvider rsp = (SpringDSLResourceStateProvider) resourceStateProvider;
+        rsp.setNotFoundCacheSize(1);
+
+        assertNull(rsp.getResourceState("inexistentState"));
+        assertNull(rsp.getResourceState("anotherInexistentState"));
+        assertNull(rsp.getResourceState("inexistentState"));
+        assertEquals(3, rsp.getLoadCount());
+    }
+
+    @Test
+    public void testConcurrentLoadsOfSameResourceState() throws Exception {
+        final SpringDSLResourceStateProvider rsp = (SpringDSLResourceStateProvider) resourceStateProvider;
+        final CyclicBarrier barrier = new CyclicBarrier(8);
+        final List<ResourceState> loaded = Collections.synchronizedList(new ArrayList<ResourceState>());
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        loaded.add(rsp.getResourceState("SimpleModel_Home_home"));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, rsp.getLoadCount());
+        assertEquals(8, loaded.size());
+        for (ResourceState state : loaded) {
+            assertSame(loaded.get(0), state);
+        }
+    }
+
     @Test(expected=MethodNotAllowedException.class)
     public void testMethodNotAllowedExceptionforGetResourceStateId() throws Exception {
         SpringDSLResourceStateProvider rsp = (SpringDSLResourceStateProvider) resourceStateProvider;
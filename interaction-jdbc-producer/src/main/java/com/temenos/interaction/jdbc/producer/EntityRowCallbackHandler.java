@@ -0,0 +1,91 @@
+package com.temenos.interaction.jdbc.producer;
+
+/*
+ * #%L
+ * interaction-jdbc-producer
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import com.temenos.interaction.core.entity.Entity;
+import com.temenos.interaction.core.entity.EntityProperties;
+import com.temenos.interaction.core.entity.EntityProperty;
+import com.temenos.interaction.core.resource.EntityResource;
+
+/**
+ * Converts the rows of a live result set into entities as they are read, so
+ * the result is not first copied into a disconnected row set.
+ *
+ * The column names are read from the result set metadata once, on the first
+ * row, and each value is then read by its column index.
+ */
+public class EntityRowCallbackHandler implements RowCallbackHandler {
+    private final String entityType;
+    private final List<EntityResource<Entity>> entities = new ArrayList<EntityResource<Entity>>();
+
+    // Column names, by column index - 1.
+    private String[] columnNames;
+
+    public EntityRowCallbackHandler(String entityType) {
+        this.entityType = entityType;
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        if (null == columnNames) {
+            columnNames = readColumnNames(rs.getMetaData());
+        }
+
+        // Build up properties for this row
+        EntityProperties properties = new EntityProperties();
+        for (int i = 0; i < columnNames.length; i++) {
+            Object value = JdbcUtils.getResultSetValue(rs, i + 1);
+
+            // Only return non null values
+            if (null != value) {
+                properties.setProperty(new EntityProperty(columnNames[i], value));
+            }
+        }
+
+        Entity entity = new Entity(entityType, properties);
+        entities.add(new EntityResource<Entity>(entity.getName(), entity));
+    }
+
+    /*
+     * Get the entities of all the rows processed.
+     */
+    public List<EntityResource<Entity>> getEntities() {
+        return entities;
+    }
+
+    private static String[] readColumnNames(ResultSetMetaData metaData) throws SQLException {
+        String[] names = new String[metaData.getColumnCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+        }
+        return names;
+    }
+}
@@ -53,11 +53,14 @@ import com.temenos.interaction.core.resource.CollectionResource;
 import com.temenos.interaction.core.resource.EntityResource;
 import com.temenos.interaction.jdbc.ServerMode;
 import com.temenos.interaction.jdbc.exceptions.JdbcException;
+import com.temenos.interaction.jdbc.producer.sql.ColumnTypesCache;
 import com.temenos.interaction.jdbc.producer.sql.ColumnTypesMap;
 import com.temenos.interaction.jdbc.producer.sql.SqlBuilder;
 import com.temenos.interaction.jdbc.producer.sql.SqlBuilderFactory;
+import com.temenos.interaction.jdbc.producer.sql.SqlCommand;
 import com.temenos.interaction.odataext.odataparser.ODataParser;
 import com.temenos.interaction.odataext.odataparser.ODataParser.UnsupportedQueryOperationException;
+import com.temenos.interaction.odataext.odataparser.ParsedQueryOptions;
 import com.temenos.interaction.odataext.odataparser.data.AccessProfile;
 import com.temenos.interaction.odataext.odataparser.data.FieldName;
 import com.temenos.interaction.odataext.odataparser.data.OrderBy;
@@ -71,6 +74,13 @@ public class JdbcProducer {
     private ServerMode serverMode;
     private ServerMode h2ServerMode = null;
 
+    // Column types and primary keys of the tables queried.
+    private ColumnTypesCache columnTypesCache = new ColumnTypesCache();
+
+    // Flag indicating that collections are read straight from the result set
+    // rather than through a disconnected row set.
+    private boolean streaming = false;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(JdbcProducer.class);
 
     /*
@@ -110,12 +120,24 @@ public class JdbcProducer {
         return template.queryForRowSet(command);
     }
 
+    /*
+     * Query method for SQL commands with bind parameters. These are executed
+     * as prepared statements so, if the data source caches statements, the
+     * same command is only parsed once whatever its parameter values.
+     */
+    public SqlRowSet query(SqlCommand command) {
+        return template.queryForRowSet(command.getCommand(), command.getParameters().toArray());
+    }
+
     /*
      * Query method for interaction context parameters returning collection of
      * entities.
      */
     public CollectionResource<Entity> queryEntities(String tableName, InteractionContext ctx, String returnEntityType)
             throws UnsupportedQueryOperationException, JdbcException, Exception {
+        if (streaming) {
+            return streamCollectionResource(returnEntityType, buildCommand(tableName, null, ctx));
+        }
         SqlRowSet rowSet = query(tableName, null, ctx);
         return buildCollectionResource(returnEntityType, rowSet);
     }
@@ -139,6 +161,15 @@ public class JdbcProducer {
      */
     public SqlRowSet query(String tableName, String key, InteractionContext ctx)
             throws UnsupportedQueryOperationException, JdbcException, Exception {
+        // Execute the SQL command
+        return query(buildCommand(tableName, key, ctx));
+    }
+
+    /*
+     * Build the SQL command for interaction context parameters.
+     */
+    private SqlCommand buildCommand(String tableName, String key, InteractionContext ctx)
+            throws UnsupportedQueryOperationException, JdbcException, Exception {
         // Not much point selecting from a null table
         if (null == tableName) {
             LOGGER.error("Jdbc producer cannot select from null table.");
@@ -148,7 +179,7 @@ public class JdbcProducer {
         // Get column types from Jdbc. We need these both for constructing the
         // command and processing it's result set.
         // We need the primary key for row ordering.
-        ColumnTypesMap colTypesMap = new ColumnTypesMap(this, tableName, true);
+        ColumnTypesMap colTypesMap = columnTypesCache.get(this, tableName);
 
         // Unpack the commands $filter and $select terms.
         AccessProfile accessProfile = getAccessProfile(ctx);
@@ -158,27 +189,80 @@ public class JdbcProducer {
         String top = queryParams.getFirst(ODataParser.TOP_KEY);
         String skip = queryParams.getFirst(ODataParser.SKIP_KEY);
 
-        List<OrderBy> orderBy = ODataParser.parseOrderBy(queryParams.getFirst(ODataParser.ORDERBY_KEY));
+        List<OrderBy> orderBy = ParsedQueryOptions.forContext(ctx).getOrderByList();
 
         // Build an SQL command from an appropriate builder
         SqlBuilder sqlBuilder = SqlBuilderFactory.getSqlBuilder(tableName, key, accessProfile, colTypesMap, top, skip,
                 orderBy, serverMode);
-        String sqlCommand = sqlBuilder.getCommand();
-
-        LOGGER.info("Jdbc producer about to execute \"" + sqlCommand + "\"");
+        SqlCommand sqlCommand = sqlBuilder.getPreparedCommand();
 
-        // Execute the SQL command
-        return query(sqlCommand);
+        LOGGER.info("Jdbc producer about to execute \"" + sqlCommand.getCommand() + "\" with parameters "
+                + sqlCommand.getParameters());
+        return sqlCommand;
     }
 
     public DataSource getDataSource() {
         return template.getDataSource();
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /*
+     * Read collections straight from a forward only result set, rather than
+     * copying them into a row set first. This halves the peak memory used by
+     * large collections.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getFetchSize() {
+        return template.getFetchSize();
+    }
+
+    /*
+     * Set the number of rows the driver fetches from the database at a time,
+     * or 0 to use the driver's default.
+     */
+    public void setFetchSize(int fetchSize) {
+        template.setFetchSize(fetchSize);
+    }
+
+    public ColumnTypesCache getColumnTypesCache() {
+        return columnTypesCache;
+    }
+
+    /*
+     * Replace the column types cache, for example with one shared by several
+     * producers.
+     */
+    public void setColumnTypesCache(ColumnTypesCache columnTypesCache) {
+        this.columnTypesCache = columnTypesCache;
+    }
+
+    /*
+     * Read the column types of the given tables now rather than on their first
+     * query.
+     */
+    public void warmUp(Iterable<String> tableNames) throws SQLException, JdbcException {
+        columnTypesCache.warmUp(this, tableNames);
+    }
+
+    /*
+     * Forget the cached column types of a table, for example after altering
+     * it.
+     */
+    public void invalidateColumnTypes(String tableName) {
+        columnTypesCache.invalidate(getDataSource(), tableName);
+    }
+
     /*
      * Unpack a contexts $filter and $select terms.
      */
     private AccessProfile getAccessProfile(InteractionContext ctx) throws UnsupportedQueryOperationException {
+        // Parsed once per request, any authorization has already parsed these
         EntityQueryInfo queryInfo = ODataParser.getEntityQueryInfo(ctx);
         RowFilters filters = new RowFilters(queryInfo.filter);
         Set<FieldName> selects = ODataParser.parseSelect(queryInfo.select);
@@ -244,16 +328,17 @@ public class JdbcProducer {
         while (rowSet.next()) {
             EntityProperties properties = new EntityProperties();
 
-            // For all columns in this row.
-            for (String columnName : columnNames) {
-                Object value = rowSet.getObject(columnName);
+            // For all columns in this row. Read by index, it saves looking
+            // up the column by name for every value.
+            for (int i = 0; i < columnNames.length; i++) {
+                Object value = rowSet.getObject(i + 1);
 
                 // Only return non null values
                 if (null != value) {
                     // Add object to the property. getObject() returns an object
                     // with the correct java type for each sql type. So we don't
                     // need to cast.
-                    properties.setProperty(new EntityProperty(columnName, value));
+                    properties.setProperty(new EntityProperty(columnNames[i], value));
                 }
             }
 
@@ -269,6 +354,19 @@ public class JdbcProducer {
         };
     }
 
+    /*
+     * Convert the rows of a command's result set into a collection of
+     * entities as they are read.
+     */
+    private CollectionResource<Entity> streamCollectionResource(String entityType, SqlCommand command) {
+        EntityRowCallbackHandler handler = new EntityRowCallbackHandler(entityType);
+        template.query(command.getCommand(), command.getParameters().toArray(), handler);
+
+        // Note: This line looks a bit odd but the {} at the end is required.
+        return new CollectionResource<Entity>(handler.getEntities()) {
+        };
+    }
+
     /*
      * Utility to work out the current server mode.
      * 
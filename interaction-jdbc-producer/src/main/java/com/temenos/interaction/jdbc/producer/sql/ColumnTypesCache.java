@@ -0,0 +1,191 @@
+package com.temenos.interaction.jdbc.producer.sql;
+
+/*
+ * #%L
+ * interaction-jdbc-producer
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.temenos.interaction.jdbc.exceptions.JdbcException;
+import com.temenos.interaction.jdbc.producer.JdbcProducer;
+
+/**
+ * Cache of the column types and primary key of tables, keyed by data source
+ * and table name, so that the database metadata is not read on every query.
+ *
+ * Entries expire after a time to live so that schema changes are eventually
+ * picked up, and can be invalidated explicitly when a table is known to have
+ * changed. Two threads missing the same table at the same time may both read
+ * its metadata; the last one read is kept.
+ */
+public class ColumnTypesCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColumnTypesCache.class);
+
+    // Default time to live of an entry, in milliseconds.
+    public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+    // Number of times the metadata was read from the database.
+    private final AtomicLong fetchCount = new AtomicLong();
+
+    private volatile long timeToLive;
+
+    public ColumnTypesCache() {
+        this(DEFAULT_TIME_TO_LIVE);
+    }
+
+    /*
+     * Time to live in milliseconds. Zero or less never expires entries.
+     */
+    public ColumnTypesCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /*
+     * Get the column types of a table, reading them from the producer's
+     * database if they are not cached or have expired.
+     */
+    public ColumnTypesMap get(JdbcProducer producer, String tableName) throws SQLException, JdbcException {
+        return get(producer, tableName, System.currentTimeMillis());
+    }
+
+    ColumnTypesMap get(JdbcProducer producer, String tableName, long now) throws SQLException, JdbcException {
+        Key key = new Key(producer.getDataSource(), tableName);
+        Entry entry = entries.get(key);
+        if (null != entry && !entry.isExpired(now)) {
+            return entry.columnTypes;
+        }
+
+        fetchCount.incrementAndGet();
+        ColumnTypesMap columnTypes = new ColumnTypesMap(producer, tableName, true);
+        long ttl = timeToLive;
+        entries.put(key, new Entry(columnTypes, ttl > 0 ? now + ttl : Long.MAX_VALUE));
+        LOGGER.debug("Read column types of table \"" + tableName + "\"");
+        return columnTypes;
+    }
+
+    /*
+     * Read the column types of the given tables in advance, for example at
+     * startup.
+     */
+    public void warmUp(JdbcProducer producer, Iterable<String> tableNames) throws SQLException, JdbcException {
+        for (String tableName : tableNames) {
+            invalidate(producer.getDataSource(), tableName);
+            get(producer, tableName);
+        }
+    }
+
+    /*
+     * Forget the column types of a table so that they are read again on next
+     * use.
+     */
+    public void invalidate(DataSource dataSource, String tableName) {
+        entries.remove(new Key(dataSource, tableName));
+    }
+
+    /*
+     * Forget the column types of all the tables of a data source.
+     */
+    public void invalidate(DataSource dataSource) {
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().dataSource == dataSource) {
+                keys.remove();
+            }
+        }
+    }
+
+    /*
+     * Forget everything.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /*
+     * Number of times the metadata of a table was read from the database.
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /*
+     * Data sources are compared by identity, they rarely implement equals.
+     */
+    private static final class Key {
+        private final DataSource dataSource;
+        private final String tableName;
+
+        Key(DataSource dataSource, String tableName) {
+            this.dataSource = dataSource;
+            this.tableName = tableName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) other;
+            return dataSource == otherKey.dataSource && tableName.equals(otherKey.tableName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(dataSource) + tableName.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final ColumnTypesMap columnTypes;
+        private final long expires;
+
+        Entry(ColumnTypesMap columnTypes, long expires) {
+            this.columnTypes = columnTypes;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expires;
+        }
+    }
+}
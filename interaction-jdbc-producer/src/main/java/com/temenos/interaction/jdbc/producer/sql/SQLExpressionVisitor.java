@@ -25,6 +25,8 @@ package com.temenos.interaction.jdbc.producer.sql;
  * #L%
  */
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.ws.rs.core.Response.Status;
 
@@ -37,7 +39,9 @@ import org.odata4j.expression.ConcatMethodCallExpression;
 import org.odata4j.expression.DateTimeLiteral;
 import org.odata4j.expression.DateTimeOffsetLiteral;
 import org.odata4j.expression.DayMethodCallExpression;
+import org.odata4j.expression.DecimalLiteral;
 import org.odata4j.expression.DivExpression;
+import org.odata4j.expression.DoubleLiteral;
 import org.odata4j.expression.EndsWithMethodCallExpression;
 import org.odata4j.expression.EntitySimpleProperty;
 import org.odata4j.expression.EqExpression;
@@ -46,6 +50,8 @@ import org.odata4j.expression.GeExpression;
 import org.odata4j.expression.GtExpression;
 import org.odata4j.expression.HourMethodCallExpression;
 import org.odata4j.expression.IndexOfMethodCallExpression;
+import org.odata4j.expression.Int64Literal;
+import org.odata4j.expression.IntegralLiteral;
 import org.odata4j.expression.IsofExpression;
 import org.odata4j.expression.LeExpression;
 import org.odata4j.expression.LengthMethodCallExpression;
@@ -62,6 +68,7 @@ import org.odata4j.expression.ParenExpression;
 import org.odata4j.expression.ReplaceMethodCallExpression;
 import org.odata4j.expression.RoundMethodCallExpression;
 import org.odata4j.expression.SecondMethodCallExpression;
+import org.odata4j.expression.SingleLiteral;
 import org.odata4j.expression.StartsWithMethodCallExpression;
 import org.odata4j.expression.StringLiteral;
 import org.odata4j.expression.SubExpression;
@@ -87,12 +94,67 @@ public class SQLExpressionVisitor extends PrintExpressionVisitor {
     private SQLExpressionNode rootNode = new SQLExpressionNode();
     private SQLExpressionNode currentNode = rootNode;
 
+    // Marks the position of a bound literal. Functions may reorder their
+    // arguments so the literals are only put in order once the tree is printed.
+    private static final char LITERAL_MARKER = '\uE000';
+
+    // Literal values to bind, or null if literals are printed into the SQL.
+    private final List<Object> literals;
+
+    /*
+     * Visitor printing literals into the SQL.
+     */
+    public SQLExpressionVisitor() {
+        this(false);
+    }
+
+    /*
+     * Visitor optionally replacing literals by '?' placeholders.
+     */
+    public SQLExpressionVisitor(boolean bindLiterals) {
+        literals = bindLiterals ? new ArrayList<Object>() : null;
+    }
+
     @Override
     public String toString() {
         // Print out the expression tree
         return rootNode.toSqlParameter();
     }
 
+    /*
+     * Print out the expression tree with '?' placeholders, adding the bound
+     * literals to the parameters in the order of their placeholders.
+     */
+    public String toSql(List<Object> parameters) {
+        String sql = toString();
+        if (null == literals) {
+            return sql;
+        }
+        StringBuilder sb = new StringBuilder(sql.length());
+        int start = 0;
+        int marker;
+        while ((marker = sql.indexOf(LITERAL_MARKER, start)) >= 0) {
+            int end = sql.indexOf(LITERAL_MARKER, marker + 1);
+            sb.append(sql, start, marker).append('?');
+            parameters.add(literals.get(Integer.parseInt(sql.substring(marker + 1, end))));
+            start = end + 1;
+        }
+        sb.append(sql, start, sql.length());
+        return sb.toString();
+    }
+
+    /*
+     * Append a literal, either printed or as a placeholder for its value.
+     */
+    private void appendLiteral(Object value, String printed) {
+        if (null == literals) {
+            append(printed);
+        } else {
+            append(LITERAL_MARKER + Integer.toString(literals.size()) + LITERAL_MARKER);
+            literals.add(value);
+        }
+    }
+
     /*
      * Support for formatted calls from the super class. These append the
      * argument as a simple string without formatting. Where local code requires
@@ -269,7 +331,32 @@ public class SQLExpressionVisitor extends PrintExpressionVisitor {
     // Literal strings may contain spaces or dots. So single quote.
     @Override
     public void visit(StringLiteral expr) {
-        appendFormatted("'%s'", expr.getValue());
+        appendLiteral(expr.getValue(), String.format("'%s'", expr.getValue()));
+    }
+
+    @Override
+    public void visit(IntegralLiteral expr) {
+        appendLiteral(expr.getValue(), String.valueOf(expr.getValue()));
+    }
+
+    @Override
+    public void visit(Int64Literal expr) {
+        appendLiteral(expr.getValue(), String.valueOf(expr.getValue()));
+    }
+
+    @Override
+    public void visit(DecimalLiteral expr) {
+        appendLiteral(expr.getValue(), String.valueOf(expr.getValue()));
+    }
+
+    @Override
+    public void visit(DoubleLiteral expr) {
+        appendLiteral(expr.getValue(), String.valueOf(expr.getValue()));
+    }
+
+    @Override
+    public void visit(SingleLiteral expr) {
+        appendLiteral(expr.getValue(), String.valueOf(expr.getValue()));
     }
 
     @Override
@@ -387,7 +474,7 @@ public class SQLExpressionVisitor extends PrintExpressionVisitor {
 
         // Print it out.
         String timeStampStr = timeStamp.toString();
-        appendFormatted("'%s'", timeStampStr);
+        appendLiteral(timeStamp, String.format("'%s'", timeStampStr));
     }
 
     @Override
@@ -22,6 +22,7 @@ package com.temenos.interaction.jdbc.producer.sql;
  */
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -64,6 +65,10 @@ public abstract class SqlBuilder {
     // testing.
     protected boolean serverIsEmulated;
 
+    // Values bound to the '?' placeholders of the command being built. Null
+    // when values are printed into the command.
+    protected List<Object> parameters;
+
     // Name of rownum exported form inner select.
     protected static final String INNER_RN_NAME = "rn";
 
@@ -247,12 +252,12 @@ public abstract class SqlBuilder {
         }
 
         // Create an OData4j visitor and use it to print out the filters. 
-        SQLExpressionVisitor v = new SQLExpressionVisitor();
+        SQLExpressionVisitor v = new SQLExpressionVisitor(null != parameters);
         filters.getOData4jExpression().visit(v);
-        String parameters = v.toString();
-        if (!parameters.isEmpty()) {
+        String filterTerms = null != parameters ? v.toSql(parameters) : v.toString();
+        if (!filterTerms.isEmpty()) {
             builder.append(" ");
-            builder.append(v.toString());
+            builder.append(filterTerms);
         }
     }
     
@@ -358,14 +363,32 @@ public abstract class SqlBuilder {
             } else {
                 addWhere(builder);
             }
-            builder.append(" \"" + INNER_RN_NAME + "\" <= " + maxRow);
+            builder.append(" \"" + INNER_RN_NAME + "\" <=");
+            appendValue(builder, maxRow);
         }
     }
 
     private void addSkip(StringBuilder builder) {
         if (null != skip) {
             addWhere(builder);
-            builder.append(" \"" + INNER_RN_NAME + "\" > " + skip);
+            builder.append(" \"" + INNER_RN_NAME + "\" >");
+            if (null != parameters) {
+                appendValue(builder, Integer.parseInt(skip));
+            } else {
+                builder.append(" " + skip);
+            }
+        }
+    }
+
+    /*
+     * Append a value, or a placeholder for it if the command has parameters.
+     */
+    protected void appendValue(StringBuilder builder, Object value) {
+        if (null != parameters) {
+            builder.append(" ?");
+            parameters.add(value);
+        } else {
+            builder.append(" " + value);
         }
     }
 
@@ -384,6 +407,22 @@ public abstract class SqlBuilder {
      */
     public abstract String getCommand();
 
+    /**
+     * Returns the SQL Statement with '?' placeholders for the filter values,
+     * key, $top and $skip, and the values to bind to them. Like
+     * {@link #getCommand()} this should only be called once per builder.
+     * 
+     * @return
+     */
+    public SqlCommand getPreparedCommand() {
+        parameters = new ArrayList<Object>();
+        try {
+            return new SqlCommand(getCommand(), parameters);
+        } finally {
+            parameters = null;
+        }
+    }
+
     /**
      * Sets the compatibility mode
      */
@@ -0,0 +1,59 @@
+package com.temenos.interaction.jdbc.producer.sql;
+
+/*
+ * #%L
+ * interaction-jdbc-producer
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An SQL command with '?' placeholders and the values to bind to them, in
+ * order. Commands that differ only in their values have the same SQL, so the
+ * database can reuse the parsed statement.
+ */
+public class SqlCommand {
+    private final String command;
+    private final List<Object> parameters;
+
+    public SqlCommand(String command, List<Object> parameters) {
+        this.command = command;
+        this.parameters = Collections.unmodifiableList(parameters);
+    }
+
+    /*
+     * Get the SQL, with a '?' in place of each parameter.
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /*
+     * Get the values to bind to the placeholders.
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public String toString() {
+        return command + " " + parameters;
+    }
+}
@@ -98,7 +98,9 @@ public class MSSQLBuilder extends SqlBuilder {
             skipAsInt = SKIP_ROWS_DEFAULT;
             LOGGER.warn("Invalid value provided to skip rows", nfe);
         }
-        builder.append(" OFFSET " + skipAsInt + " ROWS");
+        builder.append(" OFFSET");
+        appendValue(builder, skipAsInt);
+        builder.append(" ROWS");
     }
 
     private void addTop(StringBuilder builder) {
@@ -110,6 +112,8 @@ public class MSSQLBuilder extends SqlBuilder {
             maxRow = MAX_ROWS_DEFAULT;
             LOGGER.warn("Invalid value provided to fetch top rows", nfe);
         }
-        builder.append(" FETCH NEXT " + maxRow + " ROWS ONLY");
+        builder.append(" FETCH NEXT");
+        appendValue(builder, maxRow);
+        builder.append(" ROWS ONLY");
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.temenos.interaction.jdbc.producer;
+
+/*
+ * #%L
+ * interaction-jdbc-producer
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.sql.DataSource;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Test;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.jdbc.ServerMode;
+import com.temenos.interaction.jdbc.producer.sql.ColumnTypesMap;
+import com.temenos.interaction.jdbc.producer.sql.SqlBuilderFactory;
+import com.temenos.interaction.odataext.odataparser.data.AccessProfile;
+import com.temenos.interaction.odataext.odataparser.data.FieldName;
+import com.temenos.interaction.odataext.odataparser.data.RowFilters;
+
+/**
+ * Test that queries for different keys and pages share one SQL statement, so
+ * the database only has to parse it once.
+ */
+public class TestPreparedQueries extends AbstractJdbcProducerTest {
+
+    private static final int KEY_COUNT = 10000;
+
+    // SQL seen by the database.
+    private final Set<String> statements = new HashSet<String>();
+    private int executions;
+
+    /*
+     * Wrap the data source, recording the SQL of every statement.
+     */
+    private DataSource recordingDataSource(final DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object result = invokeTarget(dataSource, method, args);
+                        if ("getConnection".equals(method.getName())) {
+                            return recordingConnection((Connection) result);
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    private Connection recordingConnection(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("prepareStatement".equals(method.getName())) {
+                            statements.add((String) args[0]);
+                            executions++;
+                        }
+                        return invokeTarget(connection, method, args);
+                    }
+                });
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private InteractionContext createContext(String top, String skip) {
+        MultivaluedMap<String, String> queryParams = new MultivaluedMapImpl<String>();
+        if (null != top) {
+            queryParams.add("$top", top);
+            queryParams.add("$skip", skip);
+        }
+        return new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(),
+                queryParams, mock(ResourceState.class), mock(Metadata.class));
+    }
+
+    @Test
+    public void testDistinctKeysMSSQL() throws Exception {
+        setMSSQLMode();
+        testDistinctKeys(ServerMode.H2_MSSQL);
+    }
+
+    @Test
+    public void testDistinctKeysOracle() throws Exception {
+        setOracleMode();
+        testDistinctKeys(ServerMode.H2_ORACLE);
+    }
+
+    private void testDistinctKeys(ServerMode serverMode) throws Exception {
+        populateTestTable(KEY_COUNT);
+        JdbcProducer producer = new JdbcProducer(recordingDataSource(dataSource), serverMode);
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            SqlRowSet rs = producer.query(TEST_TABLE_NAME, TEST_KEY_DATA + i, createContext(null, null));
+            assertTrue(rs.next());
+            assertEquals(TEST_VARCHAR_DATA + i, rs.getString(VARCHAR_FIELD_NAME));
+            assertEquals(TEST_INTEGER_DATA + i, rs.getInt(INTEGER_FIELD_NAME));
+        }
+
+        // Every key was a new execution of the same statement.
+        assertEquals(KEY_COUNT, executions);
+        assertEquals(1, statements.size());
+
+        // The same keys as literals would have been as many statements.
+        Set<String> literalCommands = new HashSet<String>();
+        ColumnTypesMap columnTypes = producer.getColumnTypesCache().get(producer, TEST_TABLE_NAME);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            AccessProfile accessProfile = new AccessProfile(new RowFilters(), new HashSet<FieldName>());
+            literalCommands.add(SqlBuilderFactory.getSqlBuilder(TEST_TABLE_NAME, TEST_KEY_DATA + i, accessProfile,
+                    columnTypes, null, null, null, serverMode).getCommand());
+        }
+        assertEquals(KEY_COUNT, literalCommands.size());
+    }
+
+    @Test
+    public void testPagesShareStatement() throws Exception {
+        setMSSQLMode();
+        populateTestTable(100);
+        JdbcProducer producer = new JdbcProducer(recordingDataSource(dataSource), ServerMode.H2_MSSQL);
+
+        for (int page = 0; page < 10; page++) {
+            SqlRowSet rs = producer.query(TEST_TABLE_NAME, null, createContext("10", Integer.toString(page * 10)));
+            int rowCount = 0;
+            while (rs.next()) {
+                rowCount++;
+            }
+            assertEquals(10, rowCount);
+        }
+        assertEquals(1, statements.size());
+    }
+}
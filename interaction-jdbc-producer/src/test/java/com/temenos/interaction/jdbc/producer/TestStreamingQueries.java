@@ -0,0 +1,148 @@
+package com.temenos.interaction.jdbc.producer;
+
+/*
+ * #%L
+ * interaction-jdbc-producer
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Entity;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.resource.CollectionResource;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.jdbc.ServerMode;
+
+/**
+ * Test reading collections straight from the result set.
+ */
+public class TestStreamingQueries extends AbstractJdbcProducerTest {
+
+    private static final int LARGE_ROW_COUNT = 100000;
+
+    private InteractionContext createContext(int top) {
+        MultivaluedMap<String, String> queryParams = new MultivaluedMapImpl<String>();
+        queryParams.add("$top", Integer.toString(top));
+        return new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(),
+                queryParams, mock(ResourceState.class), mock(Metadata.class));
+    }
+
+    @Test
+    public void testStreamingMatchesRowSetMSSQL() throws Exception {
+        setMSSQLMode();
+        testStreamingMatchesRowSet(ServerMode.H2_MSSQL);
+    }
+
+    @Test
+    public void testStreamingMatchesRowSetOracle() throws Exception {
+        setOracleMode();
+        testStreamingMatchesRowSet(ServerMode.H2_ORACLE);
+    }
+
+    private void testStreamingMatchesRowSet(ServerMode serverMode) throws Exception {
+        populateTestTable(100);
+        JdbcProducer producer = new JdbcProducer(dataSource, serverMode);
+
+        CollectionResource<Entity> rowSetResult = producer.queryEntities(TEST_TABLE_NAME, createContext(50), "anEntity");
+        producer.setStreaming(true);
+        producer.setFetchSize(10);
+        CollectionResource<Entity> streamedResult = producer.queryEntities(TEST_TABLE_NAME, createContext(50), "anEntity");
+
+        assertEquals(50, streamedResult.getEntities().size());
+        assertEquals(rowSetResult.getEntities().size(), streamedResult.getEntities().size());
+        Iterator<EntityResource<Entity>> expected = rowSetResult.getEntities().iterator();
+        for (EntityResource<Entity> actual : streamedResult.getEntities()) {
+            Entity expectedEntity = expected.next().getEntity();
+            assertEquals("anEntity", actual.getEntity().getName());
+            for (String name : new String[] { KEY_FIELD_NAME, VARCHAR_FIELD_NAME, INTEGER_FIELD_NAME }) {
+                assertEquals(expectedEntity.getProperties().getProperty(name).getValue(),
+                        actual.getEntity().getProperties().getProperty(name).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testNullValuesAreLeftOut() throws Exception {
+        populateTestTable(1);
+        JdbcProducer producer = new JdbcProducer(dataSource, ServerMode.H2_MSSQL);
+        new JdbcTemplate(dataSource).update("UPDATE \"" + TEST_TABLE_NAME + "\" SET \"" + VARCHAR_FIELD_NAME + "\" = NULL");
+        producer.setStreaming(true);
+
+        CollectionResource<Entity> result = producer.queryEntities(TEST_TABLE_NAME, createContext(10), "anEntity");
+        Entity entity = result.getEntities().iterator().next().getEntity();
+        assertFalse(entity.getProperties().getProperties().containsKey(VARCHAR_FIELD_NAME));
+        assertEquals(TEST_INTEGER_DATA, entity.getProperties().getProperty(INTEGER_FIELD_NAME).getValue());
+    }
+
+    /**
+     * Streaming a large collection allocates less than copying it through a
+     * row set.
+     */
+    @Test
+    public void testLargeCollectionAllocation() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        setMSSQLMode();
+        populateTestTable(LARGE_ROW_COUNT);
+        JdbcProducer producer = new JdbcProducer(dataSource, ServerMode.H2_MSSQL);
+        producer.setFetchSize(1000);
+
+        // Warm up both paths.
+        producer.queryEntities(TEST_TABLE_NAME, createContext(100), "anEntity");
+        producer.setStreaming(true);
+        producer.queryEntities(TEST_TABLE_NAME, createContext(100), "anEntity");
+
+        producer.setStreaming(false);
+        long start = allocatedBytes();
+        CollectionResource<Entity> rowSetResult = producer.queryEntities(TEST_TABLE_NAME, createContext(LARGE_ROW_COUNT), "anEntity");
+        long rowSetAllocated = allocatedBytes() - start;
+        assertEquals(LARGE_ROW_COUNT, rowSetResult.getEntities().size());
+        rowSetResult = null;
+
+        producer.setStreaming(true);
+        start = allocatedBytes();
+        CollectionResource<Entity> streamedResult = producer.queryEntities(TEST_TABLE_NAME, createContext(LARGE_ROW_COUNT), "anEntity");
+        long streamedAllocated = allocatedBytes() - start;
+        assertEquals(LARGE_ROW_COUNT, streamedResult.getEntities().size());
+
+        assertTrue("streamed " + streamedAllocated + " bytes, row set " + rowSetAllocated + " bytes",
+                streamedAllocated < rowSetAllocated);
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
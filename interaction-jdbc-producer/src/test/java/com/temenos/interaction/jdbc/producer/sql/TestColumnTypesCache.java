@@ -0,0 +1,171 @@
+package com.temenos.interaction.jdbc.producer.sql;
+
+/*
+ * #%L
+ * interaction-jdbc-producer
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.UriInfo;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.jdbc.ServerMode;
+import com.temenos.interaction.jdbc.producer.AbstractJdbcProducerTest;
+import com.temenos.interaction.jdbc.producer.JdbcProducer;
+
+/**
+ * Test ColumnTypesCache class.
+ */
+public class TestColumnTypesCache extends AbstractJdbcProducerTest {
+
+    private static final int QUERY_COUNT = 1000;
+
+    private InteractionContext createContext() {
+        return new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(),
+                new MultivaluedMapImpl<String>(), mock(ResourceState.class), mock(Metadata.class));
+    }
+
+    /**
+     * Metadata is only read on the first of many queries, in MSSQL mode.
+     */
+    @Test
+    public void testRepeatedQueriesMSSQL() throws Exception {
+        setMSSQLMode();
+        testRepeatedQueries(ServerMode.H2_MSSQL);
+    }
+
+    /**
+     * Metadata is only read on the first of many queries, in Oracle mode.
+     */
+    @Test
+    public void testRepeatedQueriesOracle() throws Exception {
+        setOracleMode();
+        testRepeatedQueries(ServerMode.H2_ORACLE);
+    }
+
+    private void testRepeatedQueries(ServerMode serverMode) throws Exception {
+        populateTestTable();
+        JdbcProducer producer = new JdbcProducer(dataSource, serverMode);
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            SqlRowSet rs = producer.query(TEST_TABLE_NAME, null, createContext());
+            int rowCount = 0;
+            while (rs.next()) {
+                rowCount++;
+            }
+            assertEquals(TEST_ROW_COUNT, rowCount);
+        }
+        assertEquals(1, producer.getColumnTypesCache().getFetchCount());
+    }
+
+    @Test
+    public void testCachedColumnTypes() throws Exception {
+        populateTestTable();
+        JdbcProducer producer = new JdbcProducer(dataSource);
+        ColumnTypesCache cache = new ColumnTypesCache();
+
+        ColumnTypesMap columnTypes = cache.get(producer, TEST_TABLE_NAME);
+        assertEquals(KEY_FIELD_NAME, columnTypes.getPrimaryKeyName());
+        assertSame(columnTypes, cache.get(producer, TEST_TABLE_NAME));
+        assertEquals(1, cache.getFetchCount());
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        populateTestTable();
+        JdbcProducer producer = new JdbcProducer(dataSource);
+        ColumnTypesCache cache = new ColumnTypesCache(1000);
+
+        ColumnTypesMap columnTypes = cache.get(producer, TEST_TABLE_NAME, 0);
+        assertSame(columnTypes, cache.get(producer, TEST_TABLE_NAME, 999));
+        assertNotSame(columnTypes, cache.get(producer, TEST_TABLE_NAME, 1000));
+        assertEquals(2, cache.getFetchCount());
+
+        // never expires
+        cache.setTimeToLive(0);
+        columnTypes = cache.get(producer, TEST_TABLE_NAME, 2000);
+        assertSame(columnTypes, cache.get(producer, TEST_TABLE_NAME, Long.MAX_VALUE - 1));
+        assertEquals(3, cache.getFetchCount());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        populateTestTable();
+        JdbcProducer producer = new JdbcProducer(dataSource);
+
+        producer.query(TEST_TABLE_NAME, null, createContext());
+        producer.invalidateColumnTypes(TEST_TABLE_NAME);
+        producer.query(TEST_TABLE_NAME, null, createContext());
+        assertEquals(2, producer.getColumnTypesCache().getFetchCount());
+
+        producer.getColumnTypesCache().invalidate(dataSource);
+        assertEquals(0, producer.getColumnTypesCache().size());
+        producer.query(TEST_TABLE_NAME, null, createContext());
+        producer.getColumnTypesCache().invalidateAll();
+        assertEquals(0, producer.getColumnTypesCache().size());
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        populateTestTable();
+        JdbcProducer producer = new JdbcProducer(dataSource);
+
+        producer.warmUp(Arrays.asList(TEST_TABLE_NAME));
+        assertEquals(1, producer.getColumnTypesCache().getFetchCount());
+        producer.query(TEST_TABLE_NAME, null, createContext());
+        assertEquals(1, producer.getColumnTypesCache().getFetchCount());
+    }
+
+    @Test
+    public void testSharedBetweenDataSources() throws Exception {
+        populateTestTable();
+        JdbcDataSource otherDataSource = new JdbcDataSource();
+        otherDataSource.setUrl(H2_URL);
+        otherDataSource.setUser(H2_USER);
+        otherDataSource.setPassword(H2_PASSWORD);
+        ColumnTypesCache cache = new ColumnTypesCache();
+        JdbcProducer producer = new JdbcProducer(dataSource);
+        producer.setColumnTypesCache(cache);
+        JdbcProducer otherProducer = new JdbcProducer(otherDataSource);
+        otherProducer.setColumnTypesCache(cache);
+
+        producer.query(TEST_TABLE_NAME, null, createContext());
+        otherProducer.query(TEST_TABLE_NAME, null, createContext());
+        producer.query(TEST_TABLE_NAME, null, createContext());
+        assertEquals(2, cache.getFetchCount());
+        assertEquals(2, cache.size());
+
+        cache.invalidate(otherDataSource, TEST_TABLE_NAME);
+        assertEquals(1, cache.size());
+    }
+}
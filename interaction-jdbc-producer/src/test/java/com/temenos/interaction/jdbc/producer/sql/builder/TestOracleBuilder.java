@@ -29,6 +29,7 @@ import static org.mockito.Mockito.mock;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -46,6 +47,7 @@ import com.temenos.interaction.jdbc.SqlRelation;
 import com.temenos.interaction.jdbc.producer.sql.ColumnTypesMap;
 import com.temenos.interaction.jdbc.producer.sql.SqlBuilder;
 import com.temenos.interaction.jdbc.producer.sql.SqlBuilderFactory;
+import com.temenos.interaction.jdbc.producer.sql.SqlCommand;
 import com.temenos.interaction.odataext.odataparser.data.AccessProfile;
 import com.temenos.interaction.odataext.odataparser.data.FieldName;
 import com.temenos.interaction.odataext.odataparser.data.OrderBy;
@@ -702,4 +704,72 @@ public class TestOracleBuilder {
         assertEquals("SELECT \"col1\", \"col2\" FROM \"" + TEST_TABLE_NAME + "\""
                 + " WHERE \"col1\"='13:20:00' AND \"col2\"<>'2000-12-12 12:00:00.0' ORDER BY \"col1\"", actualCommand);
     }
+
+    /**
+     * Test a command with a key, $filter, $top and $skip bound as parameters.
+     */
+    @Test
+    public void testGetPreparedCommandComplex() {
+
+        // Build up an access profile
+        RowFilters filters = new RowFilters("col2 " + SqlRelation.GT.getoDataString() + " 7");
+        Set<FieldName> selects = new HashSet<FieldName>();
+        AccessProfile accessProfile = new AccessProfile(filters, selects);
+
+        // Build up some column metadata with a primary key
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("col1", java.sql.Types.VARCHAR);
+        map.put("col2", java.sql.Types.INTEGER);
+        ColumnTypesMap columnTypesMap = new ColumnTypesMap(map, "col1");
+
+        // Create the builder
+        OracleBuilder builder = null;
+        try {
+            builder = new OracleBuilder(TEST_TABLE_NAME, "aKeyValue", accessProfile, columnTypesMap, "2", "3", null);
+        } catch (Exception e) {
+            fail();
+        }
+
+        // Get the command.
+        SqlCommand actualCommand = builder.getPreparedCommand();
+
+        assertEquals("SELECT * FROM ( SELECT inner_tab.*, ROWNUM \"rn\" FROM (" + " SELECT * FROM \"" + TEST_TABLE_NAME
+                + "\" WHERE \"col2\">? AND \"col1\"=? ORDER BY \"col1\" ) inner_tab )"
+                + " WHERE \"rn\" > ? AND \"rn\" <= ?", actualCommand.getCommand());
+        assertEquals(Arrays.<Object>asList(7, "aKeyValue", 3, 5), actualCommand.getParameters());
+    }
+
+    /**
+     * Test that bound parameters follow the order of their placeholders when
+     * a function reorders its arguments.
+     */
+    @Test
+    public void testGetPreparedCommandReorderedArguments() {
+
+        // Build up an access profile
+        RowFilters filters = new RowFilters("indexof(col1, 'abc') " + SqlRelation.EQ.getoDataString() + " 2");
+        Set<FieldName> selects = new HashSet<FieldName>();
+        AccessProfile accessProfile = new AccessProfile(filters, selects);
+
+        // Build up some column metadata with a primary key
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("col1", java.sql.Types.VARCHAR);
+        ColumnTypesMap columnTypesMap = new ColumnTypesMap(map, "col1");
+
+        // Create the builder
+        SqlBuilder builder = null;
+        try {
+            builder = SqlBuilderFactory.getSqlBuilder(TEST_TABLE_NAME, null, accessProfile, columnTypesMap, null, null,
+                    null, ServerMode.ORACLE);
+        } catch (Exception e) {
+            fail();
+        }
+
+        // Get the command.
+        SqlCommand actualCommand = builder.getPreparedCommand();
+
+        assertEquals("SELECT * FROM \"" + TEST_TABLE_NAME + "\" WHERE CHARINDEX(?, \"col1\")=? ORDER BY \"col1\"",
+                actualCommand.getCommand());
+        assertEquals(Arrays.<Object>asList("abc", 2), actualCommand.getParameters());
+    }
 }
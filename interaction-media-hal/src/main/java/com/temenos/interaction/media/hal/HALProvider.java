@@ -22,15 +22,14 @@ package com.temenos.interaction.media.hal;
  */
 
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
@@ -76,8 +75,9 @@ import com.temenos.interaction.core.entity.Entity;
 import com.temenos.interaction.core.entity.EntityMetadata;
 import com.temenos.interaction.core.entity.EntityProperties;
 import com.temenos.interaction.core.entity.EntityProperty;
+import com.temenos.interaction.core.entity.EntityPropertyDescriptor;
 import com.temenos.interaction.core.entity.Metadata;
-import com.temenos.interaction.core.entity.vocabulary.terms.TermMandatory;
+import com.temenos.interaction.core.hypermedia.BeanPropertyAccessors;
 import com.temenos.interaction.core.hypermedia.DefaultResourceStateProvider;
 import com.temenos.interaction.core.hypermedia.Link;
 import com.temenos.interaction.core.hypermedia.MethodNotAllowedException;
@@ -162,7 +162,7 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 		return -1;
 	}
 	
-	private Representation buildHalResource(URI id, RESTResource resource, Class<?> type, Type genericType) throws URISyntaxException {
+	Representation buildHalResource(URI id, RESTResource resource, Class<?> type, Type genericType) throws URISyntaxException {
 		logger.debug("buildHalResource({})", id);
 		if (!ResourceTypeHelper.isType(type, genericType, EntityResource.class)
 				&& !ResourceTypeHelper.isType(type, genericType, CollectionResource.class))
@@ -257,12 +257,33 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
 		}
 		String baseMediaType = HALMediaType.baseMediaType( mediaType );
-		String representation = halResource.toString(baseMediaType);
 		String charset = HALMediaType.charset( mediaType, "UTF-8" );
 
-		logger.debug("Produced [" + representation + "]");
+		// render straight to the stream, rather than to a String and then a byte[]
+		Writer writer = new EntityStreamWriter(new OutputStreamWriter(entityStream, charset));
+		try {
+			halResource.toString(baseMediaType, writer);
+		} catch (RepresentationException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
+		}
+		writer.flush();
+	}
+
+	/*
+	 * The renderers close their writer when they are done, but the entity
+	 * stream belongs to the container, so closing only flushes it.
+	 */
+	private static class EntityStreamWriter extends FilterWriter {
+		EntityStreamWriter(Writer out) {
+			super(out);
+		}
 
-		entityStream.write(representation.getBytes(charset));
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
 	}
 
 	private Link findLinkByTransition(Collection<Link> links, Transition transition) {
@@ -362,8 +383,7 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 					String qualifiedName = lengthenPrefix(prefix, simpleName);
 
 					if (entityMetadata.getPropertyVocabulary(qualifiedName) != null) {					    
-					    String mandatory = entityMetadata.getTermValue(qualifiedName, TermMandatory.TERM_NAME);		                
-		                if(property.getValue() != null || (null != mandatory && "true".equals(mandatory))) {
+		                if(property.getValue() != null || entityMetadata.getPropertyDescriptor(qualifiedName).isMandatory()) {
 		                    map.put(simpleName, buildFromOObject(entityMetadata, qualifiedName, property.getValue()));
 		                }
 					} else {
@@ -389,8 +409,7 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 
 			String simpleName = simpleOPropertyName(entityMetadata, property);
 			if (entityMetadata.getPropertyVocabulary(simpleName) != null) {
-			    String mandatory = entityMetadata.getTermValue(simpleName, TermMandatory.TERM_NAME);                
-                if(property.getValue() != null || (null != mandatory && "true".equals(mandatory))) {
+                if(property.getValue() != null || entityMetadata.getPropertyDescriptor(simpleName).isMandatory()) {
 			        map.put(simpleName, buildFromOObject(entityMetadata, simpleName, property.getValue()));
 			    }
 			}
@@ -455,18 +474,15 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 			throw new IllegalStateException("Entity metadata could not be found [" + entityName + "]");
 
 		try {
-			BeanInfo beanInfo = Introspector.getBeanInfo(bean.getClass());
-			for (PropertyDescriptor propertyDesc : beanInfo.getPropertyDescriptors()) {
-			    String propertyName = propertyDesc.getName();
+			BeanPropertyAccessors accessors = BeanPropertyAccessors.forClass(bean.getClass());
+			for (String propertyName : accessors.getPropertyNames()) {
 				if (entityMetadata.getPropertyVocabulary(propertyName) != null) {
-				    Object value = propertyDesc.getReadMethod().invoke(bean);
+				    Object value = accessors.getProperty(bean, propertyName);
 					map.put(propertyName, value);				
 				}
 			}
 		} catch (IllegalArgumentException e) {
 			logger.error("Error accessing bean property", e);
-		} catch (IntrospectionException e) {
-			logger.error("Error accessing bean property", e);
 		} catch (IllegalAccessException e) {
 			logger.error("Error accessing bean property", e);
 		} catch (InvocationTargetException e) {
@@ -795,9 +811,10 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 	 * If a property is given with a null value, return it in a usable form for JSON
 	 */
 	private Object nullHalPropertyValue( EntityMetadata entityMetadata, String propertyName ) {
-		if ( entityMetadata.isPropertyText( propertyName ) )
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor( propertyName );
+		if ( descriptor.isText() )
 			return "";
-		else if ( entityMetadata.isPropertyNumber( propertyName ) )
+		else if ( descriptor.isNumber() )
 			return 0L;
 		return "";
 	}
@@ -817,11 +834,12 @@ public class HALProvider implements MessageBodyReader<RESTResource>, MessageBody
 		String stringValue = halPropertyValue.toString();
 		Object typedValue;
 		
-		if ( entityMetadata.isPropertyText( propertyName ) )
+		EntityPropertyDescriptor descriptor = entityMetadata.getPropertyDescriptor( propertyName );
+		if ( descriptor.isText() )
 		{
 			typedValue = stringValue;
 		}
-		else if ( entityMetadata.isPropertyNumber( propertyName ) )
+		else if ( descriptor.isNumber() )
 		{
 			typedValue = Long.parseLong( stringValue );
 		}
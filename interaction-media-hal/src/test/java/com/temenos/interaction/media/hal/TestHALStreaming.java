@@ -0,0 +1,249 @@
+package com.temenos.interaction.media.hal;
+
+/*
+ * #%L
+ * interaction-media-hal
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Test;
+
+import com.temenos.interaction.core.entity.Entity;
+import com.temenos.interaction.core.entity.EntityMetadata;
+import com.temenos.interaction.core.entity.EntityProperties;
+import com.temenos.interaction.core.entity.EntityProperty;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.entity.vocabulary.Vocabulary;
+import com.temenos.interaction.core.entity.vocabulary.terms.TermValueType;
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.Link;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.core.resource.CollectionResource;
+import com.temenos.interaction.core.resource.EntityResource;
+import com.temenos.interaction.core.resource.RESTResource;
+
+/**
+ * Test that the HAL representation is written straight to the entity stream,
+ * with the same output as rendering it to a String first.
+ */
+public class TestHALStreaming {
+
+	private static final int LARGE_COLLECTION_SIZE = 10000;
+
+	private HALProvider createProvider() throws Exception {
+		EntityMetadata vocs = new EntityMetadata("Children");
+		Vocabulary vocName = new Vocabulary();
+		vocName.setTerm(new TermValueType(TermValueType.TEXT));
+		vocs.setPropertyVocabulary("name", vocName);
+		Vocabulary vocAge = new Vocabulary();
+		vocAge.setTerm(new TermValueType(TermValueType.INTEGER_NUMBER));
+		vocs.setPropertyVocabulary("age", vocAge);
+		Metadata metadata = new Metadata("Family");
+		metadata.setEntityMetadata(vocs);
+
+		HALProvider hp = new HALProvider(metadata);
+		UriInfo mockUriInfo = mock(UriInfo.class);
+		when(mockUriInfo.getBaseUri()).thenReturn(new URI("http://www.temenos.com/rest.svc/"));
+		hp.setUriInfo(mockUriInfo);
+		return hp;
+	}
+
+	private EntityResource<Entity> createEntityResource(int id) {
+		EntityProperties properties = new EntityProperties();
+		properties.setProperty(new EntityProperty("name", "noah " + id));
+		properties.setProperty(new EntityProperty("age", id));
+		EntityResource<Entity> er = new EntityResource<Entity>("Children", new Entity("Children", properties));
+		List<Link> links = new ArrayList<Link>();
+		links.add(new Link("id", "self", "http://www.temenos.com/rest.svc/children/" + id, null, null));
+		links.add(new Link("id", "edit", "http://www.temenos.com/rest.svc/children/" + id + "/edit", null, null));
+		er.setLinks(links);
+		return er;
+	}
+
+	private CollectionResource<Entity> createCollection(int size) {
+		List<EntityResource<Entity>> entities = new ArrayList<EntityResource<Entity>>();
+		for (int i = 0; i < size; i++) {
+			entities.add(createEntityResource(i));
+		}
+		CollectionResource<Entity> cr = new CollectionResource<Entity>("Children", entities);
+		cr.setEntityName("Children");
+		List<Link> links = new ArrayList<Link>();
+		links.add(new Link("id", "self", "http://www.temenos.com/rest.svc/children", null, null));
+		cr.setLinks(links);
+		return cr;
+	}
+
+	/*
+	 * The bytes the provider used to write, rendered to a String first.
+	 */
+	private byte[] renderToString(HALProvider hp, RESTResource resource, Class<?> type, MediaType mediaType) throws Exception {
+		return hp.buildHalResource(new URI("http://www.temenos.com/rest.svc/"), resource, type, Entity.class)
+				.toString(HALMediaType.baseMediaType(mediaType))
+				.getBytes(HALMediaType.charset(mediaType, "UTF-8"));
+	}
+
+	private byte[] write(HALProvider hp, RESTResource resource, Class<?> type, MediaType mediaType) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		hp.writeTo(resource, type, Entity.class, null, mediaType, null, bos);
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testEntitySameAsString() throws Exception {
+		HALProvider hp = createProvider();
+		EntityResource<Entity> er = createEntityResource(1);
+		for (MediaType mediaType : new MediaType[] { HALMediaType.APPLICATION_HAL_JSON_TYPE, HALMediaType.APPLICATION_HAL_XML_TYPE }) {
+			assertArrayEquals(renderToString(hp, er, EntityResource.class, mediaType), write(hp, er, EntityResource.class, mediaType));
+		}
+	}
+
+	/*
+	 * Rendering to a String decoded the text with the platform charset, the
+	 * stream is encoded with the charset of the media type only.
+	 */
+	@Test
+	public void testEncodedWithMediaTypeCharset() throws Exception {
+		HALProvider hp = createProvider();
+		EntityResource<Entity> er = createEntityResource(1);
+		er.getEntity().getProperties().setProperty(new EntityProperty("name", "No\u00e9l"));
+		for (String charset : new String[] { "UTF-8", "ISO-8859-1" }) {
+			MediaType mediaType = new MediaType("application", "hal+json", Collections.singletonMap("charset", charset));
+			String output = new String(write(hp, er, EntityResource.class, mediaType), charset);
+			assertTrue(output, output.contains("\"name\":\"No\u00e9l\""));
+		}
+	}
+
+	@Test
+	public void testLargeCollectionSameAsString() throws Exception {
+		HALProvider hp = createProvider();
+		CollectionResource<Entity> cr = createCollection(LARGE_COLLECTION_SIZE);
+		for (MediaType mediaType : new MediaType[] { HALMediaType.APPLICATION_HAL_JSON_TYPE, HALMediaType.APPLICATION_HAL_XML_TYPE }) {
+			assertArrayEquals(renderToString(hp, cr, CollectionResource.class, mediaType), write(hp, cr, CollectionResource.class, mediaType));
+		}
+	}
+
+	@Test
+	public void testDeeplyEmbeddedSameAsString() throws Exception {
+		HALProvider hp = createProvider();
+		EntityResource<Entity> root = createEntityResource(0);
+		EntityResource<Entity> parent = root;
+		for (int i = 1; i < 10; i++) {
+			EntityResource<Entity> child = createEntityResource(i);
+			Transition t = new Transition.Builder()
+					.source(new ResourceState("Children", "child" + (i - 1), new ArrayList<Action>(), "/children/{id}"))
+					.target(new ResourceState("Children", "child" + i, new ArrayList<Action>(), "/children/{id}"))
+					.build();
+			List<Link> links = new ArrayList<Link>(parent.getLinks());
+			links.add(new Link(t, "child", "http://www.temenos.com/rest.svc/children/" + i, "GET"));
+			parent.setLinks(links);
+			Map<Transition, RESTResource> embedded = new HashMap<Transition, RESTResource>();
+			embedded.put(t, child);
+			parent.setEmbedded(embedded);
+			parent = child;
+		}
+		for (MediaType mediaType : new MediaType[] { HALMediaType.APPLICATION_HAL_JSON_TYPE, HALMediaType.APPLICATION_HAL_XML_TYPE }) {
+			assertArrayEquals(renderToString(hp, root, EntityResource.class, mediaType), write(hp, root, EntityResource.class, mediaType));
+		}
+	}
+
+	@Test
+	public void testEntityStreamNotClosed() throws Exception {
+		HALProvider hp = createProvider();
+		CountingOutputStream out = new CountingOutputStream();
+		hp.writeTo(createEntityResource(1), EntityResource.class, Entity.class, null, HALMediaType.APPLICATION_HAL_JSON_TYPE, null, out);
+		assertFalse(out.closed);
+		assertTrue(out.count > 0);
+	}
+
+	/**
+	 * Writing a large collection to the stream allocates less than rendering
+	 * it to a String and then copying that to a byte[].
+	 */
+	@Test
+	public void testLargeCollectionAllocation() throws Exception {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		HALProvider hp = createProvider();
+		CollectionResource<Entity> cr = createCollection(LARGE_COLLECTION_SIZE);
+		MediaType mediaType = HALMediaType.APPLICATION_HAL_JSON_TYPE;
+
+		// Warm up both paths.
+		renderToString(hp, cr, CollectionResource.class, mediaType);
+		hp.writeTo(cr, CollectionResource.class, Entity.class, null, mediaType, null, new CountingOutputStream());
+
+		long start = allocatedBytes();
+		new CountingOutputStream().write(renderToString(hp, cr, CollectionResource.class, mediaType));
+		long stringAllocated = allocatedBytes() - start;
+
+		start = allocatedBytes();
+		hp.writeTo(cr, CollectionResource.class, Entity.class, null, mediaType, null, new CountingOutputStream());
+		long streamedAllocated = allocatedBytes() - start;
+
+		assertTrue("streamed " + streamedAllocated + " bytes, string " + stringAllocated + " bytes",
+				streamedAllocated < stringAllocated);
+	}
+
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/*
+	 * Discards what is written, but counts it.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		long count;
+		boolean closed;
+
+		@Override
+		public void write(int b) throws IOException {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			count += len;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+}
@@ -22,8 +22,6 @@ package com.temenos.interaction.media.odata.xml.atom;
  */
 
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -31,6 +29,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
@@ -40,6 +39,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.regex.Pattern;
 
 import javax.ws.rs.Consumes;
@@ -57,7 +57,6 @@ import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 
-import org.apache.commons.io.IOUtils;
 import org.odata4j.core.OEntities;
 import org.odata4j.core.OEntity;
 import org.odata4j.core.OEntityKey;
@@ -124,6 +123,10 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 
     private ResourceStateProvider resourceStateProvider;	
 
+	// media types written straight to the entity stream, without a Content-Length
+	private final Set<MediaType> streamingMediaTypes = new CopyOnWriteArraySet<MediaType>();
+	private ResponseBufferPool bufferPool = new ResponseBufferPool();
+
 	/**
 	 * Construct the jax-rs Provider for OData media type.
 	 * @param metadataOData4j
@@ -184,7 +187,6 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 	 * @postcondition non null Atom (OData) XML document written to OutputStream
 	 * @invariant valid OutputStream
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void writeTo(RESTResource resource, Class<?> type, Type genericType,
 			Annotation[] annotations, MediaType mediaType,
@@ -193,7 +195,43 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
 			WebApplicationException {
 		assert resource != null;
 		assert uriInfo != null;
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();  		
+        boolean streaming = isStreaming(mediaType);
+        ResponseBufferPool.Buffer buffer = null;
+        if (streaming) {
+            // the headers must be set before the first byte is written
+            setResponseHeaders(httpHeaders, -1);
+        } else {
+            buffer = bufferPool.acquire();
+        }
+        try {
+            Writer writer = new OutputStreamWriter(streaming ? entityStream : buffer, UTF_8);
+            write(resource, type, genericType, writer);
+            writer.flush();
+            if (!streaming) {
+                setResponseHeaders(httpHeaders, buffer.size());
+                buffer.writeTo(entityStream);
+            }
+        } finally {
+            if (buffer != null) {
+                bufferPool.release(buffer);
+            }
+        }
+	}
+
+	/*
+	 * Set the headers for the response, with a Content-Length unless it is negative.
+	 */
+	private void setResponseHeaders(MultivaluedMap<String, Object> httpHeaders, int contentLength) {
+        if(httpHeaders != null) {
+            httpHeaders.putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_ATOM_XML);        //Workaround for https://issues.apache.org/jira/browse/WINK-374
+            if (contentLength >= 0) {
+                httpHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, Integer.toString(contentLength));
+            }
+        }
+	}
+
+	@SuppressWarnings("unchecked")
+	private void write(RESTResource resource, Class<?> type, Type genericType, Writer writer) {
         RESTResource restResource = processLinks((RESTResource) resource);
         Collection<Link> processedLinks = restResource.getLinks();
         if(ResourceTypeHelper.isType(type, genericType, EntityResource.class, OEntity.class)) {
@@ -204,14 +242,14 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
             //Write entry
             // create OEntity with our EdmEntitySet see issue https://github.com/aphethean/IRIS/issues/20
             OEntity oentity = OEntities.create(entitySet, tempEntity.getEntityKey(), tempEntity.getProperties(), null);
-            entryWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), Responses.entity(oentity), entitySet, olinks);
+            entryWriter.write(uriInfo, writer, Responses.entity(oentity), entitySet, olinks);
         } else if(ResourceTypeHelper.isType(type, genericType, EntityResource.class, Entity.class)) {
             EntityResource<Entity> entityResource = (EntityResource<Entity>) resource;
             //Write entry
             Entity entity = entityResource.getEntity();
             String entityName = entityResource.getEntityName();
             // Write Entity object with Abdera implementation
-            entityEntryWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), entityName, entity, processedLinks, entityResource.getEmbedded());
+            entityEntryWriter.write(uriInfo, writer, entityName, entity, processedLinks, entityResource.getEmbedded());
         } else if(ResourceTypeHelper.isType(type, genericType, EntityResource.class)) {
             EntityResource<Object> entityResource = (EntityResource<Object>) resource;
             //Links and entity properties
@@ -226,7 +264,7 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
                     }
                 }
             }
-            entityEntryWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), entityName, new Entity(entityName, props), processedLinks, entityResource.getEmbedded());
+            entityEntryWriter.write(uriInfo, writer, entityName, new Entity(entityName, props), processedLinks, entityResource.getEmbedded());
         } else if(ResourceTypeHelper.isType(type, genericType, CollectionResource.class, OEntity.class)) {
             CollectionResource<OEntity> collectionResource = ((CollectionResource<OEntity>) resource);
             EdmEntitySet entitySet = getEdmEntitySet(collectionResource.getEntityName());
@@ -242,33 +280,63 @@ public class AtomXMLProvider implements MessageBodyReader<RESTResource>, Message
                 entities.add(entity);
                 linkId.put(entity, links);
             }
-            // TODO implement collection properties and get transient value for skiptoken
+            // TODO implement collection properties
             Integer inlineCount = collectionResource.getInlineCount();
-            String skipToken = null;
-            feedWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), 
+            String skipToken = collectionResource.getSkipToken();
+            feedWriter.write(uriInfo, writer, 
                     processedLinks, 
                     Responses.entities(entities, entitySet, inlineCount, skipToken), 
                     metadata.getModelName(), linkId);
         } else if(ResourceTypeHelper.isType(type, genericType, CollectionResource.class, Entity.class)) {
             CollectionResource<Entity> collectionResource = ((CollectionResource<Entity>) resource);
             
-            // TODO implement collection properties and get transient value for skiptoken
+            // TODO implement collection properties
             Integer inlineCount = collectionResource.getInlineCount();
-            String skipToken = null;
+            String skipToken = collectionResource.getSkipToken();
             //Write feed
             AtomEntityFeedFormatWriter entityFeedWriter = new AtomEntityFeedFormatWriter(serviceDocument, metadata);
-            entityFeedWriter.write(uriInfo, new OutputStreamWriter(buffer, UTF_8), collectionResource, inlineCount, skipToken, metadata.getModelName());
+            entityFeedWriter.write(uriInfo, writer, collectionResource, inlineCount, skipToken, metadata.getModelName());
         } else {
             LOGGER.error("Accepted object for writing in isWriteable, but type not supported in writeTo method");
             throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
         }
-        
-        //Set response headers
-        if(httpHeaders != null) {
-            httpHeaders.putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_ATOM_XML);        //Workaround for https://issues.apache.org/jira/browse/WINK-374
-            httpHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, Integer.toString(buffer.size()));
-        }
-        IOUtils.copy(new ByteArrayInputStream(buffer.toByteArray()), entityStream);
+	}
+
+	/**
+	 * Write responses of this media type straight to the entity stream, so
+	 * the container sends them chunked, or buffer them to send a
+	 * Content-Length. Responses are buffered unless streaming is set.
+	 * @param mediaType
+	 * 		The media type, its parameters are ignored.
+	 * @param streaming
+	 * 		True to write responses of this type straight to the stream.
+	 */
+	public void setStreaming(MediaType mediaType, boolean streaming) {
+		if (streaming) {
+			streamingMediaTypes.add(baseMediaType(mediaType));
+		} else {
+			streamingMediaTypes.remove(baseMediaType(mediaType));
+		}
+	}
+
+	public boolean isStreaming(MediaType mediaType) {
+		return mediaType != null && streamingMediaTypes.contains(baseMediaType(mediaType));
+	}
+
+	/**
+	 * Set the buffers used for responses that are not streamed, for example
+	 * to share one pool between providers.
+	 */
+	public void setBufferPool(ResponseBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	public ResponseBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	private static MediaType baseMediaType(MediaType mediaType) {
+		return new MediaType(mediaType.getType(), mediaType.getSubtype());
 	}
 	
 	public RESTResource processLinks(RESTResource restResource) {
@@ -0,0 +1,94 @@
+package com.temenos.interaction.media.odata.xml.atom;
+
+/*
+ * #%L
+ * interaction-media-odata-xml
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of buffers for responses that must be written in full before their
+ * Content-Length is known. A released buffer keeps its array, so it does not
+ * have to grow again for the next response of a similar size.
+ *
+ * Buffers that grew beyond the retained size are dropped on release, so one
+ * very large response does not pin its array for the life of the pool.
+ */
+public class ResponseBufferPool {
+	public static final int DEFAULT_POOL_SIZE = 16;
+	public static final int DEFAULT_MAX_RETAINED_SIZE = 1024 * 1024;
+
+	private final BlockingQueue<Buffer> buffers;
+	private final int maxRetainedSize;
+	private final AtomicLong createdCount = new AtomicLong();
+
+	public ResponseBufferPool() {
+		this(DEFAULT_POOL_SIZE, DEFAULT_MAX_RETAINED_SIZE);
+	}
+
+	/**
+	 * @param poolSize
+	 * 		The most buffers kept for reuse.
+	 * @param maxRetainedSize
+	 * 		The largest buffer, in bytes, kept for reuse.
+	 */
+	public ResponseBufferPool(int poolSize, int maxRetainedSize) {
+		this.buffers = new ArrayBlockingQueue<Buffer>(poolSize);
+		this.maxRetainedSize = maxRetainedSize;
+	}
+
+	/**
+	 * Take an empty buffer from the pool, or a new one if the pool is empty.
+	 */
+	public Buffer acquire() {
+		Buffer buffer = buffers.poll();
+		if (buffer == null) {
+			createdCount.incrementAndGet();
+			buffer = new Buffer();
+		}
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer to the pool once its contents have been written.
+	 */
+	public void release(Buffer buffer) {
+		if (buffer.capacity() <= maxRetainedSize) {
+			buffer.reset();
+			buffers.offer(buffer);
+		}
+	}
+
+	/**
+	 * The number of buffers this pool has had to create.
+	 */
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	public static class Buffer extends ByteArrayOutputStream {
+		int capacity() {
+			return buf.length;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.temenos.interaction.media.odata.xml.edmx;
+
+/*
+ * #%L
+ * interaction-media-odata-xml
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.odata4j.edm.EdmDataServices;
+
+import com.temenos.interaction.odataext.entity.EdmDataServicesAdapter;
+
+/**
+ * Caches the EDMX document of each {@link EdmDataServices}, as UTF-8 and
+ * gzip compressed bytes, so $metadata requests do not walk the whole model.
+ *
+ * Metadata from {@link EdmDataServicesAdapter} can change, a document is
+ * rendered again when the version of its MetadataOData4j changes. Any other
+ * EdmDataServices is immutable and rendered once. Entries are weakly keyed
+ * so discarded metadata is not kept.
+ */
+public class EdmxDocumentCache {
+	private final Map<EdmDataServices, EdmxDocument> documents =
+			Collections.synchronizedMap(new WeakHashMap<EdmDataServices, EdmxDocument>());
+	private final AtomicLong renderCount = new AtomicLong();
+
+	/**
+	 * Get the document for the current version of this metadata, rendering it
+	 * if the metadata has changed.
+	 */
+	public EdmxDocument get(EdmDataServices metadata) throws IOException {
+		long version = getVersion(metadata);
+		EdmxDocument document = documents.get(metadata);
+		if (document == null || document.getVersion() != version) {
+			// render once, rather than once per waiting request
+			synchronized (this) {
+				version = getVersion(metadata);
+				document = documents.get(metadata);
+				if (document == null || document.getVersion() != version) {
+					document = render(metadata, version);
+					documents.put(metadata, document);
+				}
+			}
+		}
+		return document;
+	}
+
+	/**
+	 * Drop the document of this metadata.
+	 */
+	public void invalidate(EdmDataServices metadata) {
+		documents.remove(metadata);
+	}
+
+	public void invalidateAll() {
+		documents.clear();
+	}
+
+	/**
+	 * The number of documents rendered, a document served from the cache is
+	 * not counted.
+	 */
+	public long getRenderCount() {
+		return renderCount.get();
+	}
+
+	private static long getVersion(EdmDataServices metadata) {
+		if (metadata instanceof EdmDataServicesAdapter) {
+			return ((EdmDataServicesAdapter) metadata).getMetadataOData4j().getMetadataVersion();
+		}
+		return 0;
+	}
+
+	private EdmxDocument render(EdmDataServices metadata, long version) throws IOException {
+		renderCount.incrementAndGet();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(bytes, "UTF-8");
+		EdmxMetaDataWriter.write(metadata, writer);
+		writer.flush();
+
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+		bytes.writeTo(gzip);
+		gzip.close();
+		return new EdmxDocument(version, bytes.toByteArray(), gzipped.toByteArray());
+	}
+
+	/**
+	 * A rendered EDMX document.
+	 */
+	public static class EdmxDocument {
+		private final long version;
+		private final byte[] bytes;
+		private final byte[] gzipped;
+
+		EdmxDocument(long version, byte[] bytes, byte[] gzipped) {
+			this.version = version;
+			this.bytes = bytes;
+			this.gzipped = gzipped;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return the document, UTF-8 encoded
+		 */
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return the document, UTF-8 encoded and gzip compressed
+		 */
+		public byte[] getGzipped() {
+			return gzipped;
+		}
+	}
+}
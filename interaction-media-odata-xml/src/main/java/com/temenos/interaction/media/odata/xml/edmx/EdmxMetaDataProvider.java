@@ -25,13 +25,14 @@ package com.temenos.interaction.media.odata.xml.edmx;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.List;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
@@ -45,19 +46,54 @@ import org.odata4j.edm.EdmDataServices;
 import com.temenos.interaction.core.resource.MetaDataResource;
 import com.temenos.interaction.core.resource.RESTResource;
 import com.temenos.interaction.core.resource.ResourceTypeHelper;
+import com.temenos.interaction.media.odata.xml.edmx.EdmxDocumentCache.EdmxDocument;
 
 /**
  * JAX-RS Provider class for marshalling EDMX metadata resources.
  * 
  * EDMX representations have an xml media type but we allow atom+xml accept headers to cater
  * for OData clients which provide '* / *' accept headers.
+ * 
+ * The rendered documents are cached until their metadata changes, and sent gzip
+ * compressed to clients that accept it.
  */
 @Provider
 @Consumes({MediaType.APPLICATION_XML})
 @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_ATOM_XML, MediaType.APPLICATION_XHTML_XML, MediaType.TEXT_HTML})
 public class EdmxMetaDataProvider implements MessageBodyReader<RESTResource>, MessageBodyWriter<RESTResource> {
+	private static final String GZIP = "gzip";
+
+	@Context
+	private HttpHeaders requestHeaders;
+	private EdmxDocumentCache documentCache = new EdmxDocumentCache();
+	private boolean gzip = true;
 	
 	public EdmxMetaDataProvider() {}
+
+	/**
+	 * Send the precompressed document to clients that accept gzip, unless
+	 * the response is already being encoded.
+	 * @param gzip false to always send the document uncompressed
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	public EdmxDocumentCache getDocumentCache() {
+		return documentCache;
+	}
+
+	public void setDocumentCache(EdmxDocumentCache documentCache) {
+		this.documentCache = documentCache;
+	}
+
+	protected void setRequestHeaders(HttpHeaders requestHeaders) {
+		this.requestHeaders = requestHeaders;
+	}
 	
 	@Override
 	public boolean isWriteable(Class<?> type, Type genericType,
@@ -88,24 +124,57 @@ public class EdmxMetaDataProvider implements MessageBodyReader<RESTResource>, Me
 			WebApplicationException {
 		assert (resource != null);
 
-		final String edmxString;
+		final byte[] edmx;
 		if(ResourceTypeHelper.isType(type, genericType, MetaDataResource.class, EdmDataServices.class)) {
+			MetaDataResource<EdmDataServices> metadataResource = (MetaDataResource<EdmDataServices>) resource;
+			EdmxDocument document = documentCache.get(metadataResource.getMetadata());
+			// a content encoding has been set if the container compresses the response itself
+			boolean compress = httpHeaders != null && gzip && acceptsGzip()
+					&& !httpHeaders.containsKey(HttpHeaders.CONTENT_ENCODING);
+			edmx = compress ? document.getGzipped() : document.getBytes();
 			//Set response headers
 			if (httpHeaders != null) {
 				httpHeaders.putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML);
+				httpHeaders.putSingle(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+				if (compress) {
+					httpHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+				}
+				httpHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, Integer.toString(edmx.length));
 			}
-			MetaDataResource<EdmDataServices> metadataResource = (MetaDataResource<EdmDataServices>) resource;
-			StringWriter sw = new StringWriter();
-			EdmxMetaDataWriter.write(metadataResource.getMetadata(), sw);
-			edmxString = sw.toString();
 		}
 		else {
 			throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
 		}
-		outputStream.write(edmxString.getBytes("UTF-8"));
+		outputStream.write(edmx);
 		outputStream.flush();
 	}
 
+	private boolean acceptsGzip() {
+		if (requestHeaders == null) {
+			return false;
+		}
+		List<String> acceptEncodings = requestHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+		boolean wildcard = false;
+		if (acceptEncodings != null) {
+			for (String acceptEncoding : acceptEncodings) {
+				for (String coding : acceptEncoding.split(",")) {
+					String[] parts = coding.trim().split(";");
+					// gzip;q=0 means not acceptable
+					boolean acceptable = parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+					String name = parts[0].trim();
+					if (name.equalsIgnoreCase(GZIP)) {
+						return acceptable;
+					}
+					// * covers gzip unless gzip is listed itself
+					if (name.equals("*")) {
+						wildcard = acceptable;
+					}
+				}
+			}
+		}
+		return wildcard;
+	}
+
 	@Override
 	public boolean isReadable(Class<?> type, Type genericType,
 			Annotation[] annotations, MediaType mediaType) {
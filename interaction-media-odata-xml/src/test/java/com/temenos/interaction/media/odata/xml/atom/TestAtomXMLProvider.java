@@ -25,8 +25,10 @@ package com.temenos.interaction.media.odata.xml.atom;
 
 import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -63,6 +65,7 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Request;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
@@ -1094,6 +1097,42 @@ public class TestAtomXMLProvider {
 	    }
 	}
 
+	@Test
+	public void testCollectionEntityNextLink() throws Exception {
+        RequestContext ctx = new RequestContext("http://localhost:8080/responder/rest", "/FundsTransfers", null);
+        RequestContext.setRequestContext(ctx);
+
+        EdmDataServices edmDataServices = createMockFlightEdmDataServices();
+        Metadata metadata = createMockFlightMetadata();
+        ResourceStateMachine rsm = createCollectionToItemRSM(new EntityTransformer());
+
+		List<EntityResource<Entity>> entities = new ArrayList<EntityResource<Entity>>();
+		EntityResource<Entity> er = createMockEntityResourceEntity("Flight");
+		er.setLinks(new ArrayList<Link>());
+		entities.add(er);
+		CollectionResource<Entity> cr = new CollectionResource<Entity>("Flight", entities);
+		cr.setSkipToken("AoE123");
+		GenericEntity<CollectionResource<Entity>> ge = new GenericEntity<CollectionResource<Entity>>(cr) {};
+
+		AtomXMLProvider p = 
+				new AtomXMLProvider(createMockMetadataOData4j(edmDataServices), metadata, rsm, mock(Transformer.class));
+		UriInfo uriInfo = mock(UriInfo.class);
+		when(uriInfo.getBaseUri()).thenReturn(new URI(ctx.getBasePath()));
+		when(uriInfo.getPath()).thenReturn(ctx.getRequestUri());
+		UriBuilder requestUriBuilder = mock(UriBuilder.class);
+		when(uriInfo.getRequestUriBuilder()).thenReturn(requestUriBuilder);
+		when(requestUriBuilder.replaceQueryParam("$skiptoken", "AoE123")).thenReturn(requestUriBuilder);
+		when(requestUriBuilder.build()).thenReturn(new URI("http://localhost:8080/responder/rest/FundsTransfers?$skiptoken=AoE123"));
+		p.setUriInfo(uriInfo);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		p.writeTo(ge.getEntity(), ge.getRawType(), ge.getType(), null, MediaType.APPLICATION_ATOM_XML_TYPE, null, bos);
+		String responseString = new String(bos.toByteArray(), "UTF-8");
+
+		assertTrue(responseString, responseString.contains(
+				"<link rel=\"next\" href=\"http://localhost:8080/responder/rest/FundsTransfers?$skiptoken=AoE123\""));
+	}
+
 	@Test
 	public void testCollectionToItemOEntityBasePath() throws Exception {
 		// initialise the thread local request context with requestUri and baseUri
@@ -1531,6 +1570,69 @@ public class TestAtomXMLProvider {
 		assertThat(Integer.parseInt((String)httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH)), greaterThan(0));
 	}
 		
+	private MockAtomXMLProvider createGenericErrorProvider() throws Exception {
+		EdmEntitySet ees = createMockEdmEntitySet();
+		EdmDataServices mockEDS = createMockFlightEdmDataServices();		
+		when(mockEDS.getEdmEntitySet(anyString())).thenReturn(ees);
+		MockAtomXMLProvider p = new MockAtomXMLProvider(createMockMetadataOData4j(mockEDS), createMockFlightMetadata());
+		UriInfo uriInfo = mock(UriInfo.class);
+		when(uriInfo.getBaseUri()).thenReturn(new URI("http://localhost:8080/responder/rest/"));
+		when(uriInfo.getPath()).thenReturn("Flight(123)");
+		p.setUriInfo(uriInfo);
+		return p;
+	}
+
+	@Test
+	public void testWriteStreaming() throws Exception {
+		MockAtomXMLProvider p = createGenericErrorProvider();
+		GenericEntity<EntityResource<GenericError>> ge = new GenericEntity<EntityResource<GenericError>>(createMockEntityResourceGenericError()) {};
+
+		// buffered by default
+		MultivaluedMap<String, Object> bufferedHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+		p.writeTo(ge.getEntity(), ge.getRawType(), ge.getType(), null, MediaType.APPLICATION_ATOM_XML_TYPE, bufferedHeaders, buffered);
+		assertFalse(p.isStreaming(MediaType.APPLICATION_ATOM_XML_TYPE));
+		assertEquals(Integer.toString(buffered.size()), bufferedHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+
+		// streamed, with any parameters of the media type
+		p.setStreaming(MediaType.APPLICATION_ATOM_XML_TYPE, true);
+		MediaType atomUtf8 = MediaType.valueOf(MediaType.APPLICATION_ATOM_XML + ";charset=UTF-8");
+		assertTrue(p.isStreaming(atomUtf8));
+		assertFalse(p.isStreaming(MediaType.APPLICATION_XML_TYPE));
+		MultivaluedMap<String, Object> streamedHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		p.writeTo(ge.getEntity(), ge.getRawType(), ge.getType(), null, atomUtf8, streamedHeaders, streamed);
+		assertEquals(MediaType.APPLICATION_ATOM_XML, streamedHeaders.getFirst(HttpHeaders.CONTENT_TYPE));
+		assertNull(streamedHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+
+		// the same document, apart from its updated time
+		String bufferedXML = new String(buffered.toByteArray(), "UTF-8").replaceAll("<updated>[^<]*</updated>", "");
+		String streamedXML = new String(streamed.toByteArray(), "UTF-8").replaceAll("<updated>[^<]*</updated>", "");
+		assertEquals(bufferedXML, streamedXML);
+		// only the buffered response took a buffer
+		assertEquals(1, p.getBufferPool().getCreatedCount());
+	}
+
+	@Test
+	public void testWriteReusesBuffer() throws Exception {
+		MockAtomXMLProvider p = createGenericErrorProvider();
+		GenericEntity<EntityResource<GenericError>> ge = new GenericEntity<EntityResource<GenericError>>(createMockEntityResourceGenericError()) {};
+
+		for (int i = 0; i < 100; i++) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			p.writeTo(ge.getEntity(), ge.getRawType(), ge.getType(), null, MediaType.APPLICATION_ATOM_XML_TYPE, new MultivaluedMapImpl<Object>(), bos);
+			assertTrue(bos.size() > 0);
+		}
+		assertEquals(1, p.getBufferPool().getCreatedCount());
+
+		// a buffer that has grown too large is not kept
+		p.setBufferPool(new ResponseBufferPool(1, 16));
+		for (int i = 0; i < 2; i++) {
+			p.writeTo(ge.getEntity(), ge.getRawType(), ge.getType(), null, MediaType.APPLICATION_ATOM_XML_TYPE, new MultivaluedMapImpl<Object>(), new ByteArrayOutputStream());
+		}
+		assertEquals(2, p.getBufferPool().getCreatedCount());
+	}
+
 	@Test
 	public void testWriteEntityResourceCustomError_AtomXML() throws Exception {
 		EdmEntitySet ees = createMockEdmEntitySet();
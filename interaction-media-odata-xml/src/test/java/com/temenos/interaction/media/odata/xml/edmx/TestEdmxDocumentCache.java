@@ -0,0 +1,110 @@
+package com.temenos.interaction.media.odata.xml.edmx;
+
+/*
+ * #%L
+ * interaction-media-odata-xml
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.HttpMethod;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.odata4j.edm.EdmDataServices;
+
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.entity.MetadataParser;
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.CollectionResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceStateMachine;
+import com.temenos.interaction.core.hypermedia.Transition;
+import com.temenos.interaction.media.odata.xml.edmx.EdmxDocumentCache.EdmxDocument;
+import com.temenos.interaction.odataext.entity.MetadataOData4j;
+
+public class TestEdmxDocumentCache {
+	private final static String METADATA_AIRLINE_XML_FILE = "AirlinesMetadata.xml";
+
+	private MetadataOData4j metadataOData4j;
+	private EdmxDocumentCache cache;
+
+	@Before
+	public void setUp() {
+		MetadataParser parser = new MetadataParser();
+		InputStream is = parser.getClass().getClassLoader().getResourceAsStream(METADATA_AIRLINE_XML_FILE);
+		Metadata metadata = parser.parse(is);
+		ResourceState serviceRoot = new ResourceState("SD", "ServiceDocument", new ArrayList<Action>(), "/");
+		serviceRoot.addTransition(new Transition.Builder().method(HttpMethod.GET).target(new CollectionResourceState("Flight", "Flights", new ArrayList<Action>(), "/Flights")).build());
+		serviceRoot.addTransition(new Transition.Builder().method(HttpMethod.GET).target(new CollectionResourceState("Airport", "Airports", new ArrayList<Action>(), "/Airports")).build());
+		metadataOData4j = new MetadataOData4j(metadata, new ResourceStateMachine(serviceRoot));
+		cache = new EdmxDocumentCache();
+	}
+
+	@Test
+	public void testRenderedOnce() throws Exception {
+		EdmDataServices metadata = metadataOData4j.getMetadata();
+		EdmxDocument document = cache.get(metadata);
+		assertSame(document, cache.get(metadata));
+		assertSame(document, cache.get(metadataOData4j.getMetadata()));
+		assertEquals(1, cache.getRenderCount());
+		assertEquals(metadataOData4j.getMetadataVersion(), document.getVersion());
+	}
+
+	@Test
+	public void testGzipped() throws Exception {
+		EdmxDocument document = cache.get(metadataOData4j.getMetadata());
+		byte[] gunzipped = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(document.getGzipped())));
+		assertArrayEquals(document.getBytes(), gunzipped);
+	}
+
+	@Test
+	public void testRenderedAgainWhenMetadataUnloaded() throws Exception {
+		EdmDataServices metadata = metadataOData4j.getMetadata();
+		EdmxDocument document = cache.get(metadata);
+
+		metadataOData4j.unloadMetadata("Flight");
+		EdmxDocument reloaded = cache.get(metadata);
+		assertNotSame(document, reloaded);
+		assertEquals(2, cache.getRenderCount());
+		assertEquals(metadataOData4j.getMetadataVersion(), reloaded.getVersion());
+		assertArrayEquals(document.getBytes(), reloaded.getBytes());
+		assertSame(reloaded, cache.get(metadata));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		EdmDataServices metadata = metadataOData4j.getMetadata();
+		cache.get(metadata);
+		cache.invalidate(metadata);
+		cache.get(metadata);
+		cache.invalidateAll();
+		cache.get(metadata);
+		assertEquals(3, cache.getRenderCount());
+	}
+}
@@ -22,15 +22,24 @@ package com.temenos.interaction.media.odata.xml.edmx;
  */
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.commons.io.IOUtils;
 
 import org.custommonkey.xmlunit.XMLAssert;
 import org.junit.Test;
@@ -49,6 +58,7 @@ import org.odata4j.edm.EdmProperty;
 import org.odata4j.edm.EdmSchema;
 import org.odata4j.edm.EdmSimpleType;
 
+import com.temenos.interaction.core.MultivaluedMapImpl;
 import com.temenos.interaction.core.resource.MetaDataResource;
 
 public class TestEdmxMetaDataWriter {
@@ -152,6 +162,74 @@ public class TestEdmxMetaDataWriter {
 		XMLAssert.assertXMLEqual(expectedXML, responseString);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testWriteMetadataResourceCached() throws Exception {
+		EdmDataServices metadata = createMockFlightEdmDataServices();
+		MetaDataResource<EdmDataServices> mr = mock(MetaDataResource.class);
+		when(mr.getMetadata()).thenReturn(metadata);
+
+		EdmxMetaDataProvider p = new EdmxMetaDataProvider();
+		for (int i = 0; i < 3; i++) {
+			MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			p.writeTo(mr, MetaDataResource.class, EdmDataServices.class, null, MediaType.APPLICATION_XML_TYPE, httpHeaders, bos);
+			XMLAssert.assertXMLEqual(EXPECTED_FLIGHT_EDMX, new String(bos.toByteArray(), "UTF-8"));
+			assertEquals(Integer.toString(bos.size()), httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+			assertNull(httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		}
+		assertEquals(1, p.getDocumentCache().getRenderCount());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testWriteMetadataResourceGzip() throws Exception {
+		EdmDataServices metadata = createMockFlightEdmDataServices();
+		MetaDataResource<EdmDataServices> mr = mock(MetaDataResource.class);
+		when(mr.getMetadata()).thenReturn(metadata);
+		EdmxMetaDataProvider p = new EdmxMetaDataProvider();
+		HttpHeaders requestHeaders = mock(HttpHeaders.class);
+		when(requestHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(Arrays.asList("deflate, gzip"));
+		p.setRequestHeaders(requestHeaders);
+
+		MultivaluedMap<String, Object> httpHeaders = new MultivaluedMapImpl<Object>();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		p.writeTo(mr, MetaDataResource.class, EdmDataServices.class, null, MediaType.APPLICATION_XML_TYPE, httpHeaders, bos);
+		assertEquals("gzip", httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, httpHeaders.getFirst(HttpHeaders.VARY));
+		assertEquals(Integer.toString(bos.size()), httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+		String responseString = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())), "UTF-8");
+		XMLAssert.assertXMLEqual(EXPECTED_FLIGHT_EDMX, responseString);
+
+		// already being encoded by the container
+		httpHeaders = new MultivaluedMapImpl<Object>();
+		httpHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+		bos = new ByteArrayOutputStream();
+		p.writeTo(mr, MetaDataResource.class, EdmDataServices.class, null, MediaType.APPLICATION_XML_TYPE, httpHeaders, bos);
+		XMLAssert.assertXMLEqual(EXPECTED_FLIGHT_EDMX, new String(bos.toByteArray(), "UTF-8"));
+
+		// not acceptable
+		when(requestHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(Arrays.asList("gzip;q=0, identity"));
+		httpHeaders = new MultivaluedMapImpl<Object>();
+		bos = new ByteArrayOutputStream();
+		p.writeTo(mr, MetaDataResource.class, EdmDataServices.class, null, MediaType.APPLICATION_XML_TYPE, httpHeaders, bos);
+		assertNull(httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		XMLAssert.assertXMLEqual(EXPECTED_FLIGHT_EDMX, new String(bos.toByteArray(), "UTF-8"));
+
+		// any encoding
+		when(requestHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(Arrays.asList("*"));
+		httpHeaders = new MultivaluedMapImpl<Object>();
+		p.writeTo(mr, MetaDataResource.class, EdmDataServices.class, null, MediaType.APPLICATION_XML_TYPE, httpHeaders, new ByteArrayOutputStream());
+		assertEquals("gzip", httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+
+		// any encoding but gzip
+		when(requestHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(Arrays.asList("*, gzip;q=0"));
+		httpHeaders = new MultivaluedMapImpl<Object>();
+		p.writeTo(mr, MetaDataResource.class, EdmDataServices.class, null, MediaType.APPLICATION_XML_TYPE, httpHeaders, new ByteArrayOutputStream());
+		assertNull(httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(1, p.getDocumentCache().getRenderCount());
+	}
+
 	private EdmDataServices createMockFlightEdmDataServices() {
 		EdmDataServices mockEDS = mock(EdmDataServices.class);
 
@@ -23,6 +23,7 @@ package com.temenos.interaction.media.xhtml;
 
 
 import com.temenos.interaction.core.entity.*;
+import com.temenos.interaction.core.hypermedia.BeanPropertyAccessors;
 import com.temenos.interaction.core.hypermedia.Link;
 import com.temenos.interaction.core.resource.CollectionResource;
 import com.temenos.interaction.core.resource.EntityResource;
@@ -44,10 +45,6 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
 import java.io.*;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
@@ -313,18 +310,15 @@ public class XHTMLProvider implements MessageBodyReader<RESTResource>, MessageBo
 			throw new IllegalStateException("Entity metadata could not be found [" + entityName + "]");
 
 		try {
-			BeanInfo beanInfo = Introspector.getBeanInfo(entityResource.getEntity().getClass());
-			for (PropertyDescriptor propertyDesc : beanInfo.getPropertyDescriptors()) {
-			    String propertyName = propertyDesc.getName();
+			BeanPropertyAccessors accessors = BeanPropertyAccessors.forClass(entityResource.getEntity().getClass());
+			for (String propertyName : accessors.getPropertyNames()) {
 				if (entityMetadata.getPropertyVocabulary(propertyName) != null) {
-				    Object value = propertyDesc.getReadMethod().invoke(entityResource.getEntity());
+				    Object value = accessors.getProperty(entityResource.getEntity(), propertyName);
 					map.put(propertyName, value);				
 				}
 			}
 		} catch (IllegalArgumentException e) {
 			logger.error("Error accessing bean property", e);
-		} catch (IntrospectionException e) {
-			logger.error("Error accessing bean property", e);
 		} catch (IllegalAccessException e) {
 			logger.error("Error accessing bean property", e);
 		} catch (InvocationTargetException e) {
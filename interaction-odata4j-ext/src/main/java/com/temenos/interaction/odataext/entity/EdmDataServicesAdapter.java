@@ -55,6 +55,13 @@ public final class EdmDataServicesAdapter extends EdmDataServices {
 		
 		this.metadataOData4j = metadataOData4j;
 	}
+
+	/**
+	 * @return the metadata this adapter refreshes from
+	 */
+	public MetadataOData4j getMetadataOData4j() {
+		return metadataOData4j;
+	}
 			
 	@Override
 	public EdmComplexType findEdmComplexType(String typeName) {
@@ -27,12 +27,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ws.rs.HttpMethod;
 
@@ -106,7 +108,14 @@ public class MetadataOData4j {
 	private String SERVICE_DOCUMENT = "ServiceDocument";
 	private ODataVersion odataVersion = ODataVersion.V1;
 	private EdmDataServicesAdapter edmDataServicesAdapter;
-	private EdmDataServices edmDataServices;
+	// published once built, read without locking
+	private volatile EdmDataServices edmDataServices;
+	// held while edmDataServices is built, guards entityTypeModels
+	private final Object edmBuildLock = new Object();
+	private final Map<String, EntityTypeModel> entityTypeModels = new HashMap<String, EntityTypeModel>();
+	private final Set<String> pendingReloads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	// starts from the creation time, so a version is not reused after a restart
+	private final AtomicLong metadataVersion = new AtomicLong(System.currentTimeMillis());
 
 	/**
 	 * Construct the odata metadata ({@link EdmDataServices}) by looking up a resource 
@@ -159,26 +168,51 @@ public class MetadataOData4j {
 		return edmDataServicesAdapter;
 	}
 
+	/**
+	 * Returns the version of the service document metadata. It changes whenever
+	 * that metadata is unloaded, so anything derived from {@link #getMetadata()}
+	 * can be kept until the version changes.
+	 * @return metadata version
+	 */
+	public long getMetadataVersion() {
+		return metadataVersion.get();
+	}
+
 	/**
 	 * Returns EDM metadata ONLY - i.e. only meta data relating to resources in the service document
 	 * @return edmdataservices object
 	 */	
 	EdmDataServices getEdmMetadata() {
-		EdmDataServices result = null;
-		
-		synchronized(this) {
-			if(edmDataServices == null) {
-			    try {
-			        edmDataServices = createOData4jMetadata(metadata, hypermediaEngine, serviceDocument);
-			    } catch (Exception e) {
-			        LOGGER.error("Error creating odata4j metadata for resources in service document", e);
-			    }
+		EdmDataServices result = edmDataServices;
+		if (result == null) {
+			synchronized (edmBuildLock) {
+				result = edmDataServices;
+				if (result == null) {
+					result = buildEdmMetadata(null);
+				}
 			}
-			
-			result = edmDataServices;
 		}
-		
-		return result;		
+		return result;
+	}
+
+	/*
+	 * Build and publish the EDM metadata, only the entities to reload (and
+	 * those leading to them) are built if given. Must hold the edmBuildLock.
+	 */
+	private EdmDataServices buildEdmMetadata(Set<String> reloadEntities) {
+		EdmDataServices result = null;
+		try {
+			result = createOData4jMetadata(metadata, hypermediaEngine, serviceDocument, entityTypeModels, reloadEntities);
+		} catch (Exception e) {
+			LOGGER.error("Error creating odata4j metadata for resources in service document", e);
+			entityTypeModels.clear();
+		}
+		edmDataServices = result;
+		if (reloadEntities != null) {
+			// after publishing, so the new version never describes the old metadata
+			metadataVersion.incrementAndGet();
+		}
+		return result;
 	}
 	
 	public EdmComplexType findEdmComplexType(String typeName) {
@@ -293,16 +327,19 @@ public class MetadataOData4j {
 			// Non service document resource - Remove nonSrvDocEdmEntitySetMap entry so that it's meta data cannot be referenced
 			nonSrvDocEdmEntitySetMap.remove(entitySetName);
 		} else {
-			/* This may be a service document resource, if it is - Unload the internal reference to the real EDM data services 
-			 * so that it is completely rebuilt on the next request to it
+			/* This may be a service document resource, if it is - Rebuild the parts of the EDM data services relating
+			 * to it. Requests carry on with the current EDM data services until the new one is published
 			 */
-			synchronized (this) {
-				if (edmDataServices != null) {
-					// EDM data services has already been initialized
-
-					if (edmDataServices.findEdmEntitySet(entitySetName) != null) {
-						// EDM data services, i.e. service document, contains entity set therefore it needs to be rebuilt
-						edmDataServices = null;
+			EdmDataServices current = edmDataServices;
+			if (current != null && current.findEdmEntitySet(entitySetName) != null) {
+				// EDM data services, i.e. service document, contains entity set therefore it needs to be rebuilt
+				pendingReloads.add(entityName);
+				synchronized (edmBuildLock) {
+					// reloads requested while waiting for the lock are built together
+					if (!pendingReloads.isEmpty()) {
+						Set<String> reloadEntities = new HashSet<String>(pendingReloads);
+						pendingReloads.removeAll(reloadEntities);
+						buildEdmMetadata(reloadEntities);
 					}
 				}
 			}
@@ -396,6 +433,25 @@ public class MetadataOData4j {
 	 * @return
 	 */
 	public EdmDataServices createOData4jMetadata(Metadata metadata, ResourceStateMachine hypermediaEngine, ResourceState serviceDocument) {
+		return createOData4jMetadata(metadata, hypermediaEngine, serviceDocument, new HashMap<String, EntityTypeModel>(), null);
+	}
+
+	/*
+	 * Create EDM metadata, reusing the entity type models of previous metadata. The builders keep what they
+	 * have built, so the types of the entities not reloaded are shared with the previous metadata. An entity
+	 * with a transition leading to a reloaded entity is built again too, as its associations refer to the
+	 * reloaded type. A null reloadEntities builds everything.
+	 */
+	private EdmDataServices createOData4jMetadata(Metadata metadata, ResourceStateMachine hypermediaEngine, ResourceState serviceDocument, 
+			Map<String, EntityTypeModel> entityTypeModels, Set<String> reloadEntities) {
+		Collection<Transition> allTransitions = hypermediaEngine.getTransitionsById().values();
+		Set<String> typedEntities = new HashSet<String>(entityTypeModels.keySet());
+		if (reloadEntities == null) {
+			entityTypeModels.clear();
+		} else {
+			entityTypeModels.keySet().removeAll(getEntitiesLeadingTo(reloadEntities, allTransitions));
+		}
+
 		Builder mdBuilder = EdmDataServices.newBuilder();
 		
 		mdBuilder.setVersion(odataVersion);
@@ -412,32 +468,51 @@ public class MetadataOData4j {
 		Map<String, EdmFunctionImport.Builder> bFunctionImportMap = new HashMap<String, EdmFunctionImport.Builder>();
 		List<EdmAssociation.Builder> bAssociations = new ArrayList<EdmAssociation.Builder>();
 		
+		Set<String> builtEntities = new HashSet<String>();
+		
 		// Process meta data present in the service document
 		for (ResourceState state : hypermediaEngine.getStates()) {
 			// Skip Service Document
 			if (serviceDocument.equals(state))
 				continue;
 			
-			EntityMetadata entityMetadata = null;
-			try {
-			    entityMetadata = metadata.getEntityMetadata(state.getEntityName());
-			} catch (Exception e) {
-	             LOGGER.warn("Failed to get metadata for state name '{}' / entity name '{}'", state.getName(), state.getEntityName(), e);
-	             continue;
-			}
-			
-			if(entityMetadata == null) {
-			    LOGGER.warn("Failed to get metadata for state name '{}' / entity name '{}'", state.getName(), state.getEntityName());
-			    continue;
+			EntityTypeModel entityTypeModel = entityTypeModels.get(state.getEntityName());
+			if (entityTypeModel == null) {
+				EntityMetadata entityMetadata = null;
+				try {
+				    entityMetadata = metadata.getEntityMetadata(state.getEntityName());
+				} catch (Exception e) {
+		             LOGGER.warn("Failed to get metadata for state name '{}' / entity name '{}'", state.getName(), state.getEntityName(), e);
+		             continue;
+				}
+				
+				if(entityMetadata == null) {
+				    LOGGER.warn("Failed to get metadata for state name '{}' / entity name '{}'", state.getName(), state.getEntityName());
+				    continue;
+				}
+				
+				// Always strictKeyCheck here because we will be building EdmDataServices from this
+				Map<String, EdmComplexType.Builder> bEntityComplexTypeMap = new LinkedHashMap<String, EdmComplexType.Builder>();
+				EdmEntityType.Builder bEntityType = getEdmTypeBuilder(entityMetadata, bEntityComplexTypeMap, true);
+				if (bEntityType == null) {
+					LOGGER.warn("Entity name '{}' does not have type. entityMetadata={}", state.getEntityName(), entityMetadata);
+					continue;
+				}
+				entityTypeModel = new EntityTypeModel(bEntityType, bEntityComplexTypeMap);
+				entityTypeModels.put(state.getEntityName(), entityTypeModel);
+				builtEntities.add(state.getEntityName());
 			}
 			
-			// Always strictKeyCheck here because we will be building EdmDataServices from this
-			EdmEntityType.Builder bEntityType = getEdmTypeBuilder(entityMetadata, bComplexTypeMap, true);
-			if (bEntityType != null) {
-				bEntityTypeMap.put(state.getEntityName(), bEntityType);					
-			} else {
-				LOGGER.warn("Entity name '{}' does not have type. entityMetadata={}", state.getEntityName(), entityMetadata);
+			if (!bEntityTypeMap.containsKey(state.getEntityName())) {
+				bComplexTypeMap.putAll(entityTypeModel.complexTypes);
 			}
+			bEntityTypeMap.put(state.getEntityName(), entityTypeModel.entityType);
+		}
+		
+		if (reloadEntities != null && !typedEntities.equals(bEntityTypeMap.keySet())) {
+			// An entity gained or lost its type, which renames the navigation properties of others
+			LOGGER.debug("Entity types in service document changed, building all EDM metadata");
+			return createOData4jMetadata(metadata, hypermediaEngine, serviceDocument, entityTypeModels, null);
 		}
 		
 		//The model name is available after processing the states, i.e. the namespace should be created afterwards
@@ -446,12 +521,17 @@ public class MetadataOData4j {
 					
 		// Add Navigation Properties		
 		// build associations		
-		Map<EdmEntityType.Builder, Map<String, EdmAssociation.Builder>> entityTypeToStateAssociations = new HashMap<EdmEntityType.Builder, Map<String, EdmAssociation.Builder>>();
+		Map<String, List<Transition>> transitionsBySourceEntity = getTransitionsBySourceEntity(allTransitions);
 		
-		for (EdmEntityType.Builder bEntityType : bEntityTypeMap.values()) {
-			Map<String, EdmAssociation.Builder> bAssociationMap = buildAssociations(namespace, bEntityType, bEntityTypeMap, hypermediaEngine, serviceDocument);
-			entityTypeToStateAssociations.put(bEntityType, bAssociationMap);
-			bAssociations.addAll(bAssociationMap.values());
+		for (Map.Entry<String, EdmEntityType.Builder> bEntityTypeEntry : bEntityTypeMap.entrySet()) {
+			EntityTypeModel entityTypeModel = entityTypeModels.get(bEntityTypeEntry.getKey());
+			if (builtEntities.contains(bEntityTypeEntry.getKey())) {
+				EdmEntityType.Builder bEntityType = bEntityTypeEntry.getValue();
+				List<Transition> entityTransitions = transitionsBySourceEntity.get(bEntityType.getName());
+				entityTypeModel.associations = buildAssociations(namespace, bEntityType, bEntityTypeMap, 
+						entityTransitions != null ? entityTransitions : Collections.<Transition>emptyList(), serviceDocument);
+			}
+			bAssociations.addAll(entityTypeModel.associations.values());
 		}
 		
 		Map<String,String> multiAssociation = new HashMap<String,String>();
@@ -481,13 +561,16 @@ public class MetadataOData4j {
 							}
 							multiAssociation.put(navPropertyName, targetState.getName());
 							
-							Map<String, EdmAssociation.Builder> bAssociationMap = entityTypeToStateAssociations.get(bEntityType);
-							
-							EdmAssociation.Builder relationship = bAssociationMap.get(targetState.getName());
-							bEntityType.addNavigationProperties(EdmNavigationProperty
-									.newBuilder(navPropertyName)
-									.setRelationship(relationship)
-									.setFromTo(relationship.getEnd1(), relationship.getEnd2()));
+							// Named for every entity, so the names match building everything
+							if (builtEntities.contains(sourceState.getEntityName())) {
+								Map<String, EdmAssociation.Builder> bAssociationMap = entityTypeModels.get(sourceState.getEntityName()).associations;
+								
+								EdmAssociation.Builder relationship = bAssociationMap.get(targetState.getName());
+								bEntityType.addNavigationProperties(EdmNavigationProperty
+										.newBuilder(navPropertyName)
+										.setRelationship(relationship)
+										.setFromTo(relationship.getEnd1(), relationship.getEnd2()));
+							}
 						}
 					}
 				}
@@ -693,14 +776,13 @@ public class MetadataOData4j {
 		}
 	}
 	
-	private Map<String, EdmAssociation.Builder> buildAssociations(String namespace, EdmEntityType.Builder entityType, Map<String, EdmEntityType.Builder> bEntityTypeMap, ResourceStateMachine hypermediaEngine, ResourceState serviceDocument) {
+	private Map<String, EdmAssociation.Builder> buildAssociations(String namespace, EdmEntityType.Builder entityType, Map<String, EdmEntityType.Builder> bEntityTypeMap, Collection<Transition> entityTransitions, ResourceState serviceDocument) {
 		// Obtain the relation between entities and write navigation properties
 		Map<String, EdmAssociation.Builder> bAssociationMap = new HashMap<String, EdmAssociation.Builder>();
 		//Map<Association name, Entity relation>
 		Map<String, EdmAssociation.Builder> relations = new HashMap<String, EdmAssociation.Builder>();
 
 		String entityName = entityType.getName();
-		Collection<Transition> entityTransitions = hypermediaEngine.getTransitionsById().values();
 		if (entityTransitions != null) {
 			//Find out which target entities have more than one transition from this state
 			Set<String> targetStateNames = new HashSet<String>();
@@ -781,6 +863,55 @@ public class MetadataOData4j {
 		return bAssociationMap;
 	}
 
+	/*
+	 * Index the transitions by the entity name of their source state, keeping their order
+	 */
+	private static Map<String, List<Transition>> getTransitionsBySourceEntity(Collection<Transition> transitions) {
+		Map<String, List<Transition>> transitionsBySourceEntity = new HashMap<String, List<Transition>>();
+		for (Transition transition : transitions) {
+			String sourceEntityName = transition.getSource().getEntityName();
+			List<Transition> entityTransitions = transitionsBySourceEntity.get(sourceEntityName);
+			if (entityTransitions == null) {
+				entityTransitions = new ArrayList<Transition>();
+				transitionsBySourceEntity.put(sourceEntityName, entityTransitions);
+			}
+			entityTransitions.add(transition);
+		}
+		return transitionsBySourceEntity;
+	}
+
+	/*
+	 * The entities given and every entity with transitions leading to one of them
+	 */
+	private static Set<String> getEntitiesLeadingTo(Set<String> entityNames, Collection<Transition> transitions) {
+		Map<String, Set<String>> sourceEntitiesByTarget = new HashMap<String, Set<String>>();
+		for (Transition transition : transitions) {
+			if (transition.getTarget() != null) {
+				String targetEntityName = transition.getTarget().getEntityName();
+				Set<String> sourceEntities = sourceEntitiesByTarget.get(targetEntityName);
+				if (sourceEntities == null) {
+					sourceEntities = new HashSet<String>();
+					sourceEntitiesByTarget.put(targetEntityName, sourceEntities);
+				}
+				sourceEntities.add(transition.getSource().getEntityName());
+			}
+		}
+		
+		Set<String> result = new HashSet<String>(entityNames);
+		LinkedList<String> toVisit = new LinkedList<String>(entityNames);
+		while (!toVisit.isEmpty()) {
+			Set<String> sourceEntities = sourceEntitiesByTarget.get(toVisit.removeFirst());
+			if (sourceEntities != null) {
+				for (String sourceEntity : sourceEntities) {
+					if (result.add(sourceEntity)) {
+						toVisit.add(sourceEntity);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Convert a Metadata vocabulary TermValueType to EdmType 
 	 * @param type TermValueType
@@ -924,4 +1055,19 @@ public class MetadataOData4j {
 	private String getPropertiesAsCSV(List<String> properties) {
 		return StringUtils.join(properties.toArray(), ",");
 	}
+
+	/*
+	 * The type, complex types and associations built for an entity in the service document
+	 */
+	private static class EntityTypeModel {
+		final EdmEntityType.Builder entityType;
+		final Map<String, EdmComplexType.Builder> complexTypes;
+		// by target state name
+		Map<String, EdmAssociation.Builder> associations;
+
+		EntityTypeModel(EdmEntityType.Builder entityType, Map<String, EdmComplexType.Builder> complexTypes) {
+			this.entityType = entityType;
+			this.complexTypes = complexTypes;
+		}
+	}
 }
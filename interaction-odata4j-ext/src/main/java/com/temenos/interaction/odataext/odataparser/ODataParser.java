@@ -34,14 +34,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import javax.ws.rs.core.MultivaluedMap;
-
 import org.odata4j.expression.BoolCommonExpression;
 import org.odata4j.expression.CommonExpression;
 import org.odata4j.expression.EntitySimpleProperty;
 import org.odata4j.expression.OrderByExpression;
 import org.odata4j.producer.EntityQueryInfo;
-import org.odata4j.producer.resources.OptionsQueryParser;
 
 import com.temenos.interaction.core.command.InteractionContext;
 import com.temenos.interaction.odataext.odataparser.data.FieldName;
@@ -91,10 +88,7 @@ public class ODataParser {
     }
 
     private static List<EntitySimpleProperty> OData4jParseSelect(String selectStr) {
-        if (null == selectStr) {
-            return (null);
-        }
-        return OptionsQueryParser.parseSelect(selectStr);
+        return ParsedQueryOptions.parseSelect(selectStr);
     }
 
     // Parse an $orderby expression.
@@ -114,10 +108,7 @@ public class ODataParser {
     }
 
     private static List<OrderByExpression> OData4jParseOrderBys(String orderByStr) {
-        if (null == orderByStr) {
-            return (null);
-        }
-        return OptionsQueryParser.parseOrderBy(orderByStr);
+        return ParsedQueryOptions.parseOrderBy(orderByStr);
     }
 
     // Convert filter to an oData parameter.
@@ -252,18 +243,11 @@ public class ODataParser {
     /*
      * Obtain the odata query information from the context's query parameters.
      * This parses the incoming parameters into an oData4j EntityQueryInfo
-     * object. Further work is than required to convert this into our internal
-     * representation.
+     * object, once per request, see ParsedQueryOptions. Further work is than
+     * required to convert this into our internal representation.
      */
     public static EntityQueryInfo getEntityQueryInfo(InteractionContext ctx) {
-        MultivaluedMap<String, String> queryParams = ctx.getQueryParameters();
-
-        // Unpack parameters
-        String filter = queryParams.getFirst(FILTER_KEY);
-        String select = queryParams.getFirst(SELECT_KEY);
-
-        return new EntityQueryInfo(OptionsQueryParser.parseFilter(filter), null, null,
-                OptionsQueryParser.parseSelect(select));
+        return ParsedQueryOptions.forContext(ctx).getEntityQueryInfo();
     }
 
     // Convert an OData filter into a list of authorization framework
@@ -0,0 +1,329 @@
+package com.temenos.interaction.odataext.odataparser;
+
+/*
+ * #%L
+ * interaction-odata4j-ext
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.odata4j.expression.BoolCommonExpression;
+import org.odata4j.expression.EntitySimpleProperty;
+import org.odata4j.expression.OrderByExpression;
+import org.odata4j.producer.EntityQueryInfo;
+import org.odata4j.producer.resources.OptionsQueryParser;
+
+import com.temenos.interaction.core.cache.BoundedStore;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.odataext.odataparser.data.FieldName;
+import com.temenos.interaction.odataext.odataparser.data.OrderBy;
+import com.temenos.interaction.odataext.odataparser.data.RowFilters;
+
+/**
+ * The $filter, $select and $orderby options of a request, each parsed at most
+ * once. The options are attached to the {@link InteractionContext} so every
+ * command handling the request shares the parse, and an option is only parsed
+ * again when a command changes its query parameter. Sub requests have query
+ * parameters of their own, and so options of their own, even though they may
+ * share the attributes of the context.
+ * 
+ * Parses are also shared between requests through a bounded cache keyed by
+ * the option text, so a query repeated by many clients is not parsed at all.
+ * The odata4j expressions are immutable and shared, while the RowFilters,
+ * field names and order by lists returned are new on each call as callers
+ * edit them.
+ */
+public class ParsedQueryOptions {
+
+    public static final String ATTRIBUTE = ParsedQueryOptions.class.getName();
+
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    // Parses of option text, shared by all requests. A parse never goes stale.
+    private static final BoundedStore<Object> parsed = new BoundedStore<Object>(DEFAULT_CACHE_SIZE);
+    private static final int MAX_AGE = Integer.MAX_VALUE;
+
+    // The query parameters of the context the options belong to.
+    private final MultivaluedMap<String, String> queryParams;
+
+    // The option text this was parsed from, null if the option is absent.
+    private String filter;
+    private String select;
+    private String orderBy;
+
+    // An absent option parses to null.
+    private BoolCommonExpression filterExpression;
+    private boolean filterParsed = true;
+    private List<EntitySimpleProperty> selectProperties;
+    private boolean selectParsed = true;
+    private List<OrderByExpression> orderByExpressions;
+    private boolean orderByParsed = true;
+
+    private ParsedQueryOptions(MultivaluedMap<String, String> queryParams) {
+        this.queryParams = queryParams;
+    }
+
+    /**
+     * Get the parsed options of the current query parameters of this context,
+     * attaching them to the context if they are not yet attached or if the
+     * query parameters have been changed.
+     */
+    public static ParsedQueryOptions forContext(InteractionContext ctx) {
+        MultivaluedMap<String, String> queryParams = ctx.getQueryParameters();
+        String filter = queryParams.getFirst(ODataParser.FILTER_KEY);
+        String select = queryParams.getFirst(ODataParser.SELECT_KEY);
+        String orderBy = queryParams.getFirst(ODataParser.ORDERBY_KEY);
+
+        Object attribute = ctx.getAttribute(ATTRIBUTE);
+        ParsedQueryOptions options;
+        if (attribute instanceof ParsedQueryOptions && ((ParsedQueryOptions) attribute).queryParams == queryParams) {
+            options = (ParsedQueryOptions) attribute;
+        } else {
+            options = new ParsedQueryOptions(queryParams);
+            ctx.setAttribute(ATTRIBUTE, options);
+        }
+        options.update(filter, select, orderBy);
+        return options;
+    }
+
+    /*
+     * Forget the parse of any option whose text has changed.
+     */
+    private void update(String filter, String select, String orderBy) {
+        if (!equals(this.filter, filter)) {
+            this.filter = filter;
+            filterExpression = null;
+            filterParsed = false;
+        }
+        if (!equals(this.select, select)) {
+            this.select = select;
+            selectProperties = null;
+            selectParsed = false;
+        }
+        if (!equals(this.orderBy, orderBy)) {
+            this.orderBy = orderBy;
+            orderByExpressions = null;
+            orderByParsed = false;
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Set the $filter query parameter of this context, or remove it if the
+     * filters are empty. The filters are kept as the parse of the new
+     * parameter, so it is not parsed again.
+     */
+    public static void setFilter(InteractionContext ctx, RowFilters filters) {
+        MultivaluedMap<String, String> queryParams = ctx.getQueryParameters();
+        if (filters.isEmpty()) {
+            // No filtering, i.e. return everything.
+            queryParams.remove(ODataParser.FILTER_KEY);
+        } else {
+            queryParams.putSingle(ODataParser.FILTER_KEY, ODataParser.toFilters(filters));
+        }
+        ParsedQueryOptions options = forContext(ctx);
+        options.filterExpression = filters.getOData4jExpression();
+        options.filterParsed = true;
+    }
+
+    /**
+     * Set the $select query parameter of this context. The field names are
+     * kept as the parse of the new parameter, so it is not parsed again.
+     */
+    public static void setSelect(InteractionContext ctx, Set<FieldName> selects) {
+        ctx.getQueryParameters().putSingle(ODataParser.SELECT_KEY, ODataParser.toSelect(selects));
+        List<EntitySimpleProperty> properties = new ArrayList<EntitySimpleProperty>();
+        for (FieldName select : selects) {
+            properties.add(select.getOData4jExpression());
+        }
+        ParsedQueryOptions options = forContext(ctx);
+        options.selectProperties = Collections.unmodifiableList(properties);
+        options.selectParsed = true;
+    }
+
+    /**
+     * @return the $filter text, null if there is none
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the parsed $filter, null if there is none or it is empty
+     */
+    public BoolCommonExpression getFilterExpression() {
+        if (!filterParsed) {
+            filterExpression = parseFilter(filter);
+            filterParsed = true;
+        }
+        return filterExpression;
+    }
+
+    /**
+     * @return new, editable, row filters of the $filter
+     */
+    public RowFilters getRowFilters() {
+        return new RowFilters(getFilterExpression());
+    }
+
+    /**
+     * @return the $select text, null if there is none
+     */
+    public String getSelect() {
+        return select;
+    }
+
+    /**
+     * @return the parsed $select, null if there is none
+     */
+    public List<EntitySimpleProperty> getSelectProperties() {
+        if (!selectParsed) {
+            selectProperties = parseSelect(select);
+            selectParsed = true;
+        }
+        return selectProperties;
+    }
+
+    /**
+     * @return a new, editable, set of the $select field names, null if there
+     * 		is no $select
+     */
+    public Set<FieldName> getSelectFieldNames() {
+        return ODataParser.parseSelect(getSelectProperties());
+    }
+
+    /**
+     * @return the $orderby text, null if there is none
+     */
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * @return the parsed $orderby, null if there is none
+     */
+    public List<OrderByExpression> getOrderByExpressions() {
+        if (!orderByParsed) {
+            orderByExpressions = parseOrderBy(orderBy);
+            orderByParsed = true;
+        }
+        return orderByExpressions;
+    }
+
+    /**
+     * @return a new, editable, list of the $orderby, null if there is none
+     */
+    public List<OrderBy> getOrderByList() {
+        List<OrderByExpression> expressions = getOrderByExpressions();
+        if (null == expressions) {
+            return null;
+        }
+        List<OrderBy> orderBys = new ArrayList<OrderBy>();
+        for (OrderByExpression expression : expressions) {
+            orderBys.add(new OrderBy(expression));
+        }
+        return orderBys;
+    }
+
+    /**
+     * @return the $filter and $select as odata4j query information
+     */
+    public EntityQueryInfo getEntityQueryInfo() {
+        return new EntityQueryInfo(getFilterExpression(), null, null, getSelectProperties());
+    }
+
+    /**
+     * Parse a $filter, or take its parse from the cache.
+     * 
+     * @return the expression, null if the filter is null or empty
+     */
+    public static BoolCommonExpression parseFilter(String filter) {
+        if (null == filter || filter.isEmpty()) {
+            // OData4j parser throws on empty strings. This is an empty filter.
+            return null;
+        }
+        String key = ODataParser.FILTER_KEY + "=" + filter;
+        BoolCommonExpression expression = (BoolCommonExpression) parsed.get(key);
+        if (null == expression) {
+            expression = OptionsQueryParser.parseFilter(filter);
+            parsed.put(key, expression, MAX_AGE);
+        }
+        return expression;
+    }
+
+    /**
+     * Parse a $select, or take its parse from the cache.
+     * 
+     * @return the unmodifiable properties, null if the select is null
+     */
+    @SuppressWarnings("unchecked")
+    public static List<EntitySimpleProperty> parseSelect(String select) {
+        if (null == select) {
+            return null;
+        }
+        String key = ODataParser.SELECT_KEY + "=" + select;
+        List<EntitySimpleProperty> properties = (List<EntitySimpleProperty>) parsed.get(key);
+        if (null == properties) {
+            properties = Collections.unmodifiableList(OptionsQueryParser.parseSelect(select));
+            parsed.put(key, properties, MAX_AGE);
+        }
+        return properties;
+    }
+
+    /**
+     * Parse an $orderby, or take its parse from the cache.
+     * 
+     * @return the unmodifiable expressions, null if the order by is null
+     */
+    @SuppressWarnings("unchecked")
+    public static List<OrderByExpression> parseOrderBy(String orderBy) {
+        if (null == orderBy) {
+            return null;
+        }
+        String key = ODataParser.ORDERBY_KEY + "=" + orderBy;
+        List<OrderByExpression> expressions = (List<OrderByExpression>) parsed.get(key);
+        if (null == expressions) {
+            expressions = Collections.unmodifiableList(OptionsQueryParser.parseOrderBy(orderBy));
+            parsed.put(key, expressions, MAX_AGE);
+        }
+        return expressions;
+    }
+
+    /**
+     * @return the number of options found in the cache, rather than parsed
+     */
+    public static long getCacheHitCount() {
+        return parsed.getHitCount();
+    }
+
+    /**
+     * @return the number of options not found in the cache, and so parsed
+     */
+    public static long getCacheMissCount() {
+        return parsed.getMissCount();
+    }
+}
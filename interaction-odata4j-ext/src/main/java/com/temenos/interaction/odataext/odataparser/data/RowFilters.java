@@ -11,10 +11,10 @@ import org.odata4j.expression.EntitySimpleProperty;
 import org.odata4j.expression.Expression;
 import org.odata4j.expression.IntegralLiteral;
 import org.odata4j.expression.StringLiteral;
-import org.odata4j.producer.resources.OptionsQueryParser;
 
 import com.temenos.interaction.odataext.odataparser.ODataParser;
 import com.temenos.interaction.odataext.odataparser.ODataParser.UnsupportedQueryOperationException;
+import com.temenos.interaction.odataext.odataparser.ParsedQueryOptions;
 
 /*
  * Classes containing information about a set of row filters.
@@ -65,7 +65,7 @@ public class RowFilters {
             // empty filter.
             oData4jExpression = null;
         } else {
-            oData4jExpression = OptionsQueryParser.parseFilter(filterStr);
+            oData4jExpression = ParsedQueryOptions.parseFilter(filterStr);
         }
     }
 
@@ -93,7 +93,7 @@ public class RowFilters {
 
     // Add (and) a filter to the current filter.
     public void addFilters(String filterStr) {
-        BoolCommonExpression newExpression = OptionsQueryParser.parseFilter(filterStr);
+        BoolCommonExpression newExpression = ParsedQueryOptions.parseFilter(filterStr);
         addFilters(newExpression);
     }
 
@@ -24,6 +24,7 @@ package com.temenos.interaction.odataext.entity;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -390,6 +391,26 @@ public class TestMetadataOData4j {
 		Assert.assertEquals("FlightSchedule", entitySetFlightSchedule.getName());
 	}
 	
+	@Test
+	public void testMetadataVersion() {
+		ResourceState initial = new ResourceState("ROOT", "ServiceDocument", new ArrayList<Action>(), "/");
+		initial.addTransition(new Transition.Builder().target(new CollectionResourceState("Flight", "Flights", new ArrayList<Action>(), "/Flights")).build());
+		MetadataOData4j metadataOData4j = new MetadataOData4j(metadataAirline, new ResourceStateMachine(initial));
+		long version = metadataOData4j.getMetadataVersion();
+
+		assertNotNull(metadataOData4j.getMetadata().findEdmEntitySet("Flights"));
+		assertEquals(version, metadataOData4j.getMetadataVersion());
+
+		// not in the service document
+		metadataOData4j.unloadMetadata("Airport");
+		assertEquals(version, metadataOData4j.getMetadataVersion());
+
+		// rebuilt on the next request
+		metadataOData4j.unloadMetadata("Flight");
+		assertTrue(metadataOData4j.getMetadataVersion() > version);
+		assertNotNull(metadataOData4j.getMetadata().findEdmEntitySet("Flights"));
+	}
+
 	@Test
 	public void testManyToOneMandatoryNavProperty() {
 		// create mock resource interaction (which should result in creation of mandatory Navigation Property in EdmDataService metadata)
@@ -0,0 +1,204 @@
+package com.temenos.interaction.odataext.entity;
+
+/*
+ * #%L
+ * interaction-odata4j-ext
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.odata4j.edm.EdmDataServices;
+import org.odata4j.edm.EdmEntityType;
+import org.odata4j.format.xml.EdmxFormatWriter;
+
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.entity.MetadataParser;
+import com.temenos.interaction.core.hypermedia.Action;
+import com.temenos.interaction.core.hypermedia.CollectionResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.core.hypermedia.ResourceStateMachine;
+import com.temenos.interaction.core.hypermedia.Transition;
+
+/**
+ * Test that unloading the metadata of an entity rebuilds only the parts of
+ * the EDM metadata relating to it, while requests carry on.
+ */
+public class TestMetadataOData4jReload {
+	private static final String AIRLINE_NAMESPACE = "FlightResponderModel";
+
+	private Metadata metadataAirline;
+	private ResourceStateMachine rsm;
+	private MetadataOData4j metadataOData4j;
+
+	@Before
+	public void setUp() {
+		MetadataParser parser = new MetadataParser();
+		InputStream is = parser.getClass().getClassLoader().getResourceAsStream(TestMetadataOData4j.METADATA_AIRLINE_XML_FILE);
+		metadataAirline = parser.parse(is);
+
+		ResourceState initial = new ResourceState("ROOT", "ServiceDocument", new ArrayList<Action>(), "/");
+		CollectionResourceState flights = new CollectionResourceState("Flight", "Flights", new ArrayList<Action>(), "/Flights");
+		ResourceState flight = new ResourceState("Flight", "flight", new ArrayList<Action>(), "/Flights({id})");
+		CollectionResourceState airports = new CollectionResourceState("Airport", "Airports", new ArrayList<Action>(), "/Airports");
+		ResourceState flightDepartureAirport = new ResourceState("Airport", "departureAirport", new ArrayList<Action>(), "/Flights({id})/departureAirport");
+		CollectionResourceState flightSchedules = new CollectionResourceState("FlightSchedule", "FlightSchedules", new ArrayList<Action>(), "/FlightSchedules");
+		initial.addTransition(new Transition.Builder().target(flights).build());
+		initial.addTransition(new Transition.Builder().target(airports).build());
+		initial.addTransition(new Transition.Builder().target(flightSchedules).build());
+		flights.addTransition(new Transition.Builder().flags(Transition.FOR_EACH).method("GET").target(flight).build());
+		flight.addTransition(new Transition.Builder().target(flightDepartureAirport).build());
+		rsm = new ResourceStateMachine(initial);
+
+		metadataOData4j = new MetadataOData4j(metadataAirline, rsm);
+	}
+
+	private EdmEntityType findEntityType(String entityName) {
+		return (EdmEntityType) metadataOData4j.getEdmMetadata().findEdmEntityType(AIRLINE_NAMESPACE + "." + entityName);
+	}
+
+	private static String toEdmx(EdmDataServices edmDataServices) {
+		StringWriter writer = new StringWriter();
+		EdmxFormatWriter.write(edmDataServices, writer);
+		return writer.toString();
+	}
+
+	/*
+	 * The metadata built incrementally is the same as building everything again.
+	 */
+	private void assertSameAsFullBuild() {
+		MetadataOData4j fullBuild = new MetadataOData4j(metadataAirline, rsm);
+		assertEquals(toEdmx(fullBuild.getEdmMetadata()), toEdmx(metadataOData4j.getEdmMetadata()));
+	}
+
+	@Test
+	public void testUnloadSharesUnrelatedTypes() {
+		EdmEntityType flight = findEntityType("Flight");
+		EdmEntityType airport = findEntityType("Airport");
+		EdmEntityType flightSchedule = findEntityType("FlightSchedule");
+
+		metadataOData4j.unloadMetadata("FlightSchedule");
+		assertNotSame(flightSchedule, findEntityType("FlightSchedule"));
+		assertSame(flight, findEntityType("Flight"));
+		assertSame(airport, findEntityType("Airport"));
+		assertSameAsFullBuild();
+	}
+
+	@Test
+	public void testUnloadRebuildsTypesLeadingToEntity() {
+		EdmEntityType flight = findEntityType("Flight");
+		EdmEntityType airport = findEntityType("Airport");
+		EdmEntityType flightSchedule = findEntityType("FlightSchedule");
+
+		metadataOData4j.unloadMetadata("Airport");
+		EdmEntityType reloadedAirport = findEntityType("Airport");
+		EdmEntityType reloadedFlight = findEntityType("Flight");
+		assertNotSame(airport, reloadedAirport);
+		// the departure airport association refers to the Airport type
+		assertNotSame(flight, reloadedFlight);
+		assertSame(reloadedAirport, reloadedFlight.findNavigationProperty("departureAirport").getToRole().getType());
+		assertSame(flightSchedule, findEntityType("FlightSchedule"));
+		assertSameAsFullBuild();
+	}
+
+	/*
+	 * An entity losing its type changes the navigation properties of others,
+	 * so everything is built again.
+	 */
+	@Test
+	public void testUnloadRemovedEntity() {
+		EdmEntityType airport = findEntityType("Airport");
+		metadataAirline.unload("FlightSchedule");
+		metadataOData4j.unloadMetadata("FlightSchedule");
+		assertNull(findEntityType("FlightSchedule"));
+		assertNull(metadataOData4j.getEdmMetadata().findEdmEntitySet("FlightSchedules"));
+		assertNotSame(airport, findEntityType("Airport"));
+		assertSameAsFullBuild();
+	}
+
+	/**
+	 * Requests read the EDM metadata while it is reloaded over and over, each
+	 * lookup finds the metadata.
+	 */
+	@Test
+	public void testLookupsDuringReloads() throws Exception {
+		final int readers = 4;
+		final int reloads = 500;
+		final String[] entityNames = { "Flight", "Airport", "FlightSchedule" };
+		final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+		final AtomicBoolean reloading = new AtomicBoolean(true);
+		final AtomicLong lookups = new AtomicLong();
+		final CountDownLatch started = new CountDownLatch(readers);
+		metadataOData4j.getEdmMetadata();
+		long version = metadataOData4j.getMetadataVersion();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < readers; i++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						while (reloading.get()) {
+							for (String entityName : entityNames) {
+								assertNotNull(metadataOData4j.getEdmEntitySetByEntityName(entityName));
+								assertNotNull(metadataOData4j.getEdmEntityTypeByTypeName(AIRLINE_NAMESPACE + "." + entityName));
+								assertNotNull(metadataOData4j.getMetadata().findEdmEntitySet(entityName + "s"));
+								lookups.incrementAndGet();
+							}
+						}
+					} catch (Throwable t) {
+						failures.add(t);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		started.await();
+		for (int i = 0; i < reloads; i++) {
+			metadataOData4j.unloadMetadata(entityNames[i % entityNames.length]);
+		}
+		reloading.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertTrue(lookups.get() > 0);
+		assertEquals(version + reloads, metadataOData4j.getMetadataVersion());
+		assertSameAsFullBuild();
+	}
+}
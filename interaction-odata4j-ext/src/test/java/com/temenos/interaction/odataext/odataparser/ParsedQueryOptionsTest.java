@@ -0,0 +1,199 @@
+package com.temenos.interaction.odataext.odataparser;
+
+/*
+ * #%L
+ * interaction-odata4j-ext
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.odata4j.expression.BoolCommonExpression;
+
+import com.temenos.interaction.core.MultivaluedMapImpl;
+import com.temenos.interaction.core.command.InteractionContext;
+import com.temenos.interaction.core.entity.Metadata;
+import com.temenos.interaction.core.hypermedia.ResourceState;
+import com.temenos.interaction.odataext.odataparser.data.FieldName;
+import com.temenos.interaction.odataext.odataparser.data.RowFilters;
+
+public class ParsedQueryOptionsTest {
+
+    private MultivaluedMap<String, String> queryParams;
+    private InteractionContext ctx;
+
+    @Before
+    public void setUp() {
+        queryParams = new MultivaluedMapImpl<String>();
+        ctx = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class), new MultivaluedMapImpl<String>(),
+                queryParams, mock(ResourceState.class), mock(Metadata.class));
+    }
+
+    /*
+     * Each option is parsed once for a request, however many times it is read.
+     */
+    @Test
+    public void testParsedOncePerRequest() {
+        queryParams.add(ODataParser.FILTER_KEY, "a eq 'parsedOnce'");
+        queryParams.add(ODataParser.SELECT_KEY, "a, b");
+        queryParams.add(ODataParser.ORDERBY_KEY, "a desc");
+
+        ParsedQueryOptions options = ParsedQueryOptions.forContext(ctx);
+        long misses = ParsedQueryOptions.getCacheMissCount();
+        BoolCommonExpression filter = options.getFilterExpression();
+        options.getSelectProperties();
+        options.getOrderByExpressions();
+        assertEquals(misses + 3, ParsedQueryOptions.getCacheMissCount());
+
+        long hits = ParsedQueryOptions.getCacheHitCount();
+        assertSame(options, ParsedQueryOptions.forContext(ctx));
+        assertSame(filter, ParsedQueryOptions.forContext(ctx).getFilterExpression());
+        assertSame(filter, ODataParser.getEntityQueryInfo(ctx).filter);
+        assertEquals(2, options.getSelectFieldNames().size());
+        assertEquals("a", options.getOrderByList().get(0).getFieldName().getName());
+        assertFalse(options.getOrderByList().get(0).isAcsending());
+        assertEquals(misses + 3, ParsedQueryOptions.getCacheMissCount());
+        assertEquals(hits, ParsedQueryOptions.getCacheHitCount());
+    }
+
+    /*
+     * Requests with the same option text share the parse.
+     */
+    @Test
+    public void testParseSharedBetweenRequests() {
+        queryParams.add(ODataParser.FILTER_KEY, "a eq 'shared'");
+        BoolCommonExpression filter = ParsedQueryOptions.forContext(ctx).getFilterExpression();
+
+        MultivaluedMap<String, String> otherParams = new MultivaluedMapImpl<String>();
+        otherParams.add(ODataParser.FILTER_KEY, "a eq 'shared'");
+        InteractionContext other = new InteractionContext(mock(UriInfo.class), mock(HttpHeaders.class),
+                new MultivaluedMapImpl<String>(), otherParams, mock(ResourceState.class), mock(Metadata.class));
+        long misses = ParsedQueryOptions.getCacheMissCount();
+        assertSame(filter, ParsedQueryOptions.forContext(other).getFilterExpression());
+        assertSame(filter, new RowFilters("a eq 'shared'").getOData4jExpression());
+        assertEquals(misses, ParsedQueryOptions.getCacheMissCount());
+    }
+
+    @Test
+    public void testReparsedWhenQueryParameterChanged() {
+        queryParams.add(ODataParser.FILTER_KEY, "a eq 'before'");
+        queryParams.add(ODataParser.SELECT_KEY, "a");
+        ParsedQueryOptions options = ParsedQueryOptions.forContext(ctx);
+        BoolCommonExpression before = options.getFilterExpression();
+        Object select = options.getSelectProperties();
+
+        queryParams.putSingle(ODataParser.FILTER_KEY, "a eq 'after'");
+        options = ParsedQueryOptions.forContext(ctx);
+        assertEquals("a eq 'after'", options.getFilter());
+        assertNotSame(before, options.getFilterExpression());
+        assertEquals("a eq 'after'", ODataParser.toFilters(options.getRowFilters()));
+        assertSame(select, options.getSelectProperties());
+
+        queryParams.remove(ODataParser.FILTER_KEY);
+        assertNull(ParsedQueryOptions.forContext(ctx).getFilterExpression());
+        assertTrue(ParsedQueryOptions.forContext(ctx).getRowFilters().isEmpty());
+    }
+
+    @Test
+    public void testAbsentAndEmptyOptions() {
+        ParsedQueryOptions options = ParsedQueryOptions.forContext(ctx);
+        assertNull(options.getFilterExpression());
+        assertNull(options.getSelectProperties());
+        assertNull(options.getSelectFieldNames());
+        assertNull(options.getOrderByList());
+
+        queryParams.add(ODataParser.FILTER_KEY, "");
+        assertNull(ParsedQueryOptions.forContext(ctx).getFilterExpression());
+    }
+
+    /*
+     * A filter set by a command is kept as parsed, rather than printed and
+     * parsed again.
+     */
+    @Test
+    public void testSetFilter() {
+        queryParams.add(ODataParser.FILTER_KEY, "a eq 'old'");
+        RowFilters filters = ParsedQueryOptions.forContext(ctx).getRowFilters();
+        filters.addFilters(new RowFilters("b eq 'added'"));
+
+        long misses = ParsedQueryOptions.getCacheMissCount();
+        ParsedQueryOptions.setFilter(ctx, filters);
+        assertEquals("a eq 'old' and b eq 'added'", queryParams.getFirst(ODataParser.FILTER_KEY));
+        assertSame(filters.getOData4jExpression(), ParsedQueryOptions.forContext(ctx).getFilterExpression());
+        assertEquals(misses, ParsedQueryOptions.getCacheMissCount());
+
+        ParsedQueryOptions.setFilter(ctx, new RowFilters());
+        assertNull(queryParams.getFirst(ODataParser.FILTER_KEY));
+        assertNull(ParsedQueryOptions.forContext(ctx).getFilterExpression());
+    }
+
+    @Test
+    public void testSetSelect() {
+        Set<FieldName> selects = new HashSet<FieldName>();
+        selects.add(new FieldName("a"));
+        ParsedQueryOptions.setSelect(ctx, selects);
+        assertEquals("a", queryParams.getFirst(ODataParser.SELECT_KEY));
+        assertEquals(selects, ParsedQueryOptions.forContext(ctx).getSelectFieldNames());
+    }
+
+    /*
+     * The cached parse is not changed by callers editing what they are given.
+     */
+    @Test
+    public void testCachedParseNotEdited() {
+        queryParams.add(ODataParser.FILTER_KEY, "a eq 'notEdited'");
+        RowFilters filters = ParsedQueryOptions.forContext(ctx).getRowFilters();
+        filters.addFilters(new RowFilters("b eq 1"));
+        assertEquals("a eq 'notEdited'", ODataParser.toFilters(ParsedQueryOptions.forContext(ctx).getRowFilters()));
+        assertEquals("a eq 'notEdited'", ODataParser.toFilters(new RowFilters("a eq 'notEdited'")));
+    }
+
+    /*
+     * A sub request sharing the attributes of the context has options of its
+     * own, so requests run at the same time do not change each other's.
+     */
+    @Test
+    public void testSubRequestHasItsOwnOptions() {
+        queryParams.add(ODataParser.FILTER_KEY, "a eq 'parent'");
+        ParsedQueryOptions options = ParsedQueryOptions.forContext(ctx);
+
+        MultivaluedMap<String, String> subQueryParams = new MultivaluedMapImpl<String>();
+        subQueryParams.add(ODataParser.FILTER_KEY, "a eq 'child'");
+        InteractionContext subCtx = new InteractionContext(ctx, null, null, subQueryParams, null);
+        ParsedQueryOptions subOptions = ParsedQueryOptions.forContext(subCtx);
+        assertNotSame(options, subOptions);
+        assertEquals("a eq 'child'", subOptions.getFilter());
+        assertEquals("a eq 'parent'", options.getFilter());
+        assertEquals("a eq 'parent'", ParsedQueryOptions.forContext(ctx).getFilter());
+    }
+}
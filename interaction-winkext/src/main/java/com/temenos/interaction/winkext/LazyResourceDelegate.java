@@ -26,6 +26,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Context;
@@ -57,6 +59,12 @@ public class LazyResourceDelegate implements HTTPResourceInteractionModel, Dynam
 
 	private Map<String, Set<String>> resourceNamesToMethods = new HashMap<String, Set<String>>();
 	private String path = null;	
+
+	/**
+	 * The resource states registered with the resource state machine by this delegate,
+	 * the state name is the key.
+	 */
+	private ConcurrentMap<String, Registration> registrations = new ConcurrentHashMap<String, Registration>();
 		
 	/**
 	 * The class binding an instance of a ResourceState to a path
@@ -136,8 +144,9 @@ public class LazyResourceDelegate implements HTTPResourceInteractionModel, Dynam
 	
 	/*
 	 * This method unregisters in the resource state machine resources that are not currently loaded.
-	 * It also registers the resource of interest even if it's already loaded, since being loaded doesn't
-	 * imply it's registered, and currently there is no way of checking this.
+	 * A loaded resource state is registered once, the registration and the resource interaction
+	 * model built for it are then reused until the resource state provider loads a new version
+	 * of the state.
 	 */
 	private HTTPHypermediaRIM getResource(UriInfo uriInfo, String httpMethod) throws MethodNotAllowedException {
         String resourceStateId = resourceStateProvider.getResourceStateId(httpMethod, "/" + uriInfo.getPath(false));
@@ -147,17 +156,26 @@ public class LazyResourceDelegate implements HTTPResourceInteractionModel, Dynam
         } else {
             
             boolean loaded = resourceStateProvider.isLoaded(resourceStateId);
-            // to register the resource state we are forced to call getResourceState,
-            // which loads the resource if it wasn't
+            // getResourceState loads the resource if it wasn't
             ResourceState resourceState = resourceStateProvider.getResourceState(resourceStateId);
             // however, if it wasn't loaded we're assuming the resource has changed, see below
 
+            Registration registration = registrations.get(resourceStateId);
+            if (loaded && registration != null && registration.isRegistered(resourceState, httpMethod)) {
+                return registration.rim;
+            }
+
             Map<String, Set<String>> stateNameToHttpMethods = resourceStateProvider.getResourceMethodsByState();
             Set<String> httpMethods = stateNameToHttpMethods.get(resourceStateId);
+            Set<String> registeredMethods = new HashSet<String>();
 
             if(httpMethods == null) {
                 // here it is assumed the resource wasn't loaded, so no need to unregister
                 hypermediaEngine.register(resourceState, httpMethod);                    
+                if (loaded && registration != null && registration.state == resourceState) {
+                    registeredMethods.addAll(registration.methods);
+                }
+                registeredMethods.add(httpMethod);
             } else {
                 for (String tmpHttpMethod : httpMethods) {
                     // if the resource wasn't loaded, we assume it has changed and therefore it needs
@@ -168,12 +186,35 @@ public class LazyResourceDelegate implements HTTPResourceInteractionModel, Dynam
                     }
                     hypermediaEngine.register(resourceState, tmpHttpMethod);
                 }                    
+                registeredMethods.addAll(httpMethods);
             }
             
-            return new HTTPHypermediaRIM(null, commandController, hypermediaEngine, metadata, resourceState.getPath(), false);              
+            HTTPHypermediaRIM rim = new HTTPHypermediaRIM(null, commandController, hypermediaEngine, metadata, resourceState.getPath(), false);
+            registrations.put(resourceStateId, new Registration(resourceState, registeredMethods, rim));
+            return rim;
         }
   	}
 
+	/*
+	 * A resource state, as loaded by the resource state provider, and the methods
+	 * it has been registered with.
+	 */
+	private static class Registration {
+		private final ResourceState state;
+		private final Set<String> methods;
+		private final HTTPHypermediaRIM rim;
+
+		Registration(ResourceState state, Set<String> methods, HTTPHypermediaRIM rim) {
+			this.state = state;
+			this.methods = methods;
+			this.rim = rim;
+		}
+
+		boolean isRegistered(ResourceState resourceState, String httpMethod) {
+			return state == resourceState && methods.contains(httpMethod);
+		}
+	}
+
 	@Override
 	public Response get(HttpHeaders headers, String id, UriInfo uriInfo) {		
         try {
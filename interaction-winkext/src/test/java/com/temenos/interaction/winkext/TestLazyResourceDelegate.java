@@ -1063,6 +1063,113 @@ public class TestLazyResourceDelegate {
         }
     }
 
+    /*
+     * A loaded resource state is only registered once with the resource state machine,
+     * subsequent requests reuse the registration.
+     */
+    @Test
+    public void testGetRegistersLoadedResourceOnce() throws Exception {
+        ResourceStateProvider resourceStateProvider = mock(ResourceStateProvider.class);
+        ResourceState myResourceState = mockResourceState(resourceStateProvider);
+        when(resourceStateProvider.isLoaded("resource")).thenReturn(true);
+
+        ResourceStateMachine resourceStateMachine = mockResourceStateMachine();
+
+        final LazyResourceDelegate lazyResourceDelegate = new LazyResourceDelegate(resourceStateMachine,
+                resourceStateProvider, mock(CommandController.class), mock(Metadata.class), "test", "/", mock(HashSet.class));
+
+        final HttpHeaders headers = mock(HttpHeaders.class);
+        final UriInfo uriInfo = mockUriInfo();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 250; j++) {
+                        lazyResourceDelegate.get(headers, "123", uriInfo);
+                    }
+                }
+            });
+        }
+        lazyResourceDelegate.get(headers, "123", uriInfo);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        verify(resourceStateMachine, Mockito.times(1)).register(myResourceState, "GET");
+        verify(resourceStateMachine, Mockito.never()).unregister(any(ResourceState.class), anyString());
+    }
+
+    /*
+     * When the resource state provider loads a new version of a resource state it is
+     * unregistered and registered again.
+     */
+    @Test
+    public void testGetRegistersReloadedResource() throws MethodNotAllowedException {
+        ResourceStateProvider resourceStateProvider = mock(ResourceStateProvider.class);
+        ResourceState myResourceState = mockResourceState(resourceStateProvider);
+        when(resourceStateProvider.isLoaded("resource")).thenReturn(true);
+
+        ResourceStateMachine resourceStateMachine = mockResourceStateMachine();
+
+        LazyResourceDelegate lazyResourceDelegate = new LazyResourceDelegate(resourceStateMachine,
+                resourceStateProvider, mock(CommandController.class), mock(Metadata.class), "test", "/", mock(HashSet.class));
+
+        HttpHeaders headers = mock(HttpHeaders.class);
+        UriInfo uriInfo = mockUriInfo();
+
+        lazyResourceDelegate.get(headers, "123", uriInfo);
+        lazyResourceDelegate.get(headers, "123", uriInfo);
+        verify(resourceStateMachine, Mockito.times(1)).register(myResourceState, "GET");
+
+        // the resource state is reloaded
+        ResourceState reloadedResourceState = mockResourceState(resourceStateProvider);
+        when(resourceStateProvider.isLoaded("resource")).thenReturn(false);
+        lazyResourceDelegate.get(headers, "123", uriInfo);
+        when(resourceStateProvider.isLoaded("resource")).thenReturn(true);
+        lazyResourceDelegate.get(headers, "123", uriInfo);
+
+        verify(resourceStateMachine).unregister(reloadedResourceState, "GET");
+        verify(resourceStateMachine, Mockito.times(1)).register(reloadedResourceState, "GET");
+    }
+
+    private ResourceState mockResourceState(ResourceStateProvider resourceStateProvider) throws MethodNotAllowedException {
+        ResourceState resourceState = mock(ResourceState.class);
+        when(resourceState.getName()).thenReturn("resource");
+        when(resourceState.getPath()).thenReturn("/myResource");
+        when(resourceStateProvider.getResourceState("resource")).thenReturn(resourceState);
+        when(resourceStateProvider.getResourceStateId(eq("GET"), anyString())).thenReturn("resource");
+
+        Map<String,Set<String>> resourceMethodsByState = new HashMap<String, Set<String>>();
+        Set<String> myResourceMethods = new HashSet<String>();
+        myResourceMethods.add("GET");
+        resourceMethodsByState.put("resource", myResourceMethods);
+        when(resourceStateProvider.getResourceMethodsByState()).thenReturn(resourceMethodsByState);
+        return resourceState;
+    }
+
+    private ResourceStateMachine mockResourceStateMachine() {
+        ResourceStateMachine resourceStateMachine = mock(ResourceStateMachine.class);
+        Set<String> myResourceMethods = new HashSet<String>();
+        myResourceMethods.add("GET");
+        Map<String, Set<String>> interactionsByPath = new HashMap<String, Set<String>>();
+        interactionsByPath.put("/myResource", myResourceMethods);
+        when(resourceStateMachine.getInteractionByPath()).thenReturn(interactionsByPath);
+        return resourceStateMachine;
+    }
+
+    private UriInfo mockUriInfo() {
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getPathParameters(eq(true))).thenReturn(mock(MultivaluedMap.class));
+        when(uriInfo.getQueryParameters(eq(false))).thenReturn(mock(MultivaluedMap.class));
+        when(uriInfo.getPath(eq(false))).thenReturn("myResource");
+        return uriInfo;
+    }
+
 	private Map<String, Set<String>> parseStringMap(String strMap) {
 	    // remove curly brackets
         strMap = strMap.substring(1, strMap.length() - 1);
@@ -0,0 +1,153 @@
+package com.temenos.useragent.generic;
+
+/*
+ * #%L
+ * useragent-generic-java
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.Closeable;
+
+import com.temenos.useragent.generic.http.HttpClient;
+import com.temenos.useragent.generic.internal.EntityWrapper;
+
+/**
+ * Defines a session through which interactions to an IRIS service are
+ * performed without waiting for their responses, so that a user agent can
+ * have several of them in flight, for instance following many {@link Links
+ * links} at once.
+ * <p>
+ * The header and the {@link Entity entity} of the session are taken when an
+ * interaction is started, changing them afterwards does not affect the
+ * interactions in flight.
+ * </p>
+ * 
+ * @author ssethupathi
+ *
+ */
+public interface AsyncInteractionSession extends Closeable {
+
+	/**
+	 * Sets a header name-values pair to this session.
+	 * 
+	 * @param name
+	 *            of the header property
+	 * @param values
+	 *            to the header property
+	 * @return this session
+	 */
+	AsyncInteractionSession header(String name, String... values);
+
+	/**
+	 * Registers a {@link PayloadHandler payload handler} to handle the payload
+	 * for a media type.
+	 * 
+	 * @param mediaType
+	 *            of the payload
+	 * @param handler
+	 *            to handle the payload of the media type
+	 * @return this session
+	 */
+	AsyncInteractionSession registerHandler(String mediaType,
+			Class<? extends PayloadHandler> handler);
+
+	/**
+	 * Sets the value to the property in the {@link Entity entity} associated to
+	 * this session.
+	 * 
+	 * @param propertyName
+	 * @param propertyValue
+	 * @return this session
+	 */
+	AsyncInteractionSession set(String propertyName, String propertyValue);
+
+	/**
+	 * Removes the value for the property in the {@link Entity entity}
+	 * associated to this session.
+	 * 
+	 * @param propertyName
+	 * @return this session
+	 */
+	AsyncInteractionSession remove(String propertyName);
+
+	/**
+	 * Returns a {@link AsyncUrl url} instance associated to this session with
+	 * any pre-configuration applied.
+	 * 
+	 * @return a {@link AsyncUrl url} instance
+	 */
+	AsyncUrl url();
+
+	/**
+	 * Returns a {@link AsyncUrl url} instance associated to this session with
+	 * the set url string.
+	 * 
+	 * @param completeUrl
+	 * @return a {@link AsyncUrl url} instance
+	 */
+	AsyncUrl url(String completeUrl);
+
+	/**
+	 * Returns a {@link AsyncUrl url} instance associated to this session for
+	 * the target of the {@link Link link}.
+	 * 
+	 * @param link
+	 * @return a {@link AsyncUrl url} instance
+	 */
+	AsyncUrl follow(Link link);
+
+	/**
+	 * Uses the given {@link Entity entity} for future interactions in this
+	 * session.
+	 * 
+	 * @param {@link Entity entity} to be used in future interactions
+	 * @return this session
+	 */
+	AsyncInteractionSession use(EntityWrapper entity);
+
+	/**
+	 * Clears this session to reset to it's creation state.
+	 * 
+	 * @return this session
+	 */
+	AsyncInteractionSession clear();
+
+	/**
+	 * Sets user name for the Http Basic Authentication.
+	 * 
+	 * @param username
+	 * @return this session
+	 */
+	AsyncInteractionSession basicAuth(String username, String password);
+
+	/**
+	 * Sets a {@link HttpClient http client} instance to be used by this
+	 * session.
+	 * 
+	 * @param httpClient
+	 *            http client
+	 */
+	void useHttpClient(HttpClient httpClient);
+
+	/**
+	 * Stops the threads of this session once the interactions in flight are
+	 * done. The shared {@link HttpClient http client} is left open.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,102 @@
+package com.temenos.useragent.generic;
+
+/*
+ * #%L
+ * useragent-generic-java
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Defines a Http URL of an {@link AsyncInteractionSession asynchronous
+ * interaction session}, whose Http actions return without waiting for the
+ * response.
+ * 
+ * @author ssethupathi
+ *
+ */
+public interface AsyncUrl {
+
+	/**
+	 * Returns the string representation of the URL.
+	 * 
+	 * @return URL.
+	 */
+	String url();
+
+	/**
+	 * Sets the base URI section of the URL which points up to the service root.
+	 * 
+	 * @param baseUri
+	 * @return this {@link AsyncUrl url}
+	 */
+	AsyncUrl baseuri(String baseUri);
+
+	/**
+	 * Sets the path section of the URL.
+	 * 
+	 * @param path
+	 * @return this {@link AsyncUrl url}
+	 */
+	AsyncUrl path(String path);
+
+	/**
+	 * Sets the encoded query parameters to be part of the URL.
+	 * 
+	 * @param queryParam
+	 * @return this {@link AsyncUrl url}
+	 */
+	AsyncUrl queryParam(String queryParam);
+
+	/**
+	 * Defines that this {@link AsyncUrl url} does not contain any request
+	 * payload.
+	 * 
+	 * @return this {@link AsyncUrl url}
+	 */
+	AsyncUrl noPayload();
+
+	/**
+	 * Executes Http GET operation.
+	 * 
+	 * @return the {@link Response response} to come
+	 */
+	CompletableFuture<Response> get();
+
+	/**
+	 * Executes Http POST operation.
+	 * 
+	 * @return the {@link Response response} to come
+	 */
+	CompletableFuture<Response> post();
+
+	/**
+	 * Executes Http PUT operation.
+	 * 
+	 * @return the {@link Response response} to come
+	 */
+	CompletableFuture<Response> put();
+
+	/**
+	 * Executes Http DELETE operation.
+	 * 
+	 * @return the {@link Response response} to come
+	 */
+	CompletableFuture<Response> delete();
+}
@@ -0,0 +1,405 @@
+package com.temenos.useragent.generic;
+
+/*
+ * #%L
+ * useragent-generic-java
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.IOUtils;
+
+import com.temenos.useragent.generic.context.ConnectionConfig;
+import com.temenos.useragent.generic.context.ContextFactory;
+import com.temenos.useragent.generic.http.DefaultHttpExecutor;
+import com.temenos.useragent.generic.http.HttpClient;
+import com.temenos.useragent.generic.http.HttpHeader;
+import com.temenos.useragent.generic.http.HttpMethod;
+import com.temenos.useragent.generic.internal.DefaultEntityWrapper;
+import com.temenos.useragent.generic.internal.EntityWrapper;
+import com.temenos.useragent.generic.internal.NullEntityWrapper;
+import com.temenos.useragent.generic.internal.Payload;
+import com.temenos.useragent.generic.internal.RequestDataImpl;
+import com.temenos.useragent.generic.internal.ResponseData;
+import com.temenos.useragent.generic.internal.SessionContext;
+import com.temenos.useragent.generic.mediatype.PlainTextEntityHandler;
+
+/**
+ * Implements an {@link AsyncInteractionSession asynchronous interaction
+ * session} running the interactions on threads of its own over the pooled
+ * connections of the shared {@link HttpClient http client}.
+ * <p>
+ * At most <i>maxInFlight</i> interactions are run at once, the others wait
+ * for their turn without blocking the caller. The shared client keeps
+ * {@link ConnectionConfig#MAX_CONNECTIONS_PER_ROUTE} connections to a
+ * server, more interactions in flight than that wait for a connection.
+ * </p>
+ * 
+ * @author ssethupathi
+ *
+ */
+public class DefaultAsyncInteractionSession implements AsyncInteractionSession {
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 20;
+
+	private final ContextFactory contextFactory;
+	private final ExecutorService executor;
+	private HttpHeader header;
+	private EntityWrapper entity;
+	private HttpClient httpClient;
+
+	@Override
+	public AsyncUrl url(String url) {
+		return new AsyncUrlImpl(url);
+	}
+
+	@Override
+	public AsyncUrl url() {
+		return new AsyncUrlImpl("");
+	}
+
+	@Override
+	public AsyncUrl follow(Link link) {
+		return new AsyncUrlImpl(link.baseUrl() + link.href());
+	}
+
+	@Override
+	public AsyncInteractionSession registerHandler(String contentType,
+			Class<? extends PayloadHandler> handler) {
+		contextFactory.getContext().entityHandlersRegistry()
+				.registerForPayload(contentType, handler);
+		return this;
+	}
+
+	@Override
+	public AsyncInteractionSession header(String name, String... values) {
+		header.set(name, values[0]);
+		return this;
+	}
+
+	@Override
+	public AsyncInteractionSession set(String propertyName,
+			String propertyValue) {
+		entity.set(propertyName, propertyValue);
+		return this;
+	}
+
+	@Override
+	public AsyncInteractionSession remove(String propertyName) {
+		entity.remove(propertyName);
+		return this;
+	}
+
+	@Override
+	public AsyncInteractionSession clear() {
+		initialiseToDefaults();
+		return this;
+	}
+
+	@Override
+	public AsyncInteractionSession basicAuth(String username, String password) {
+		contextFactory.setConnectionProperty(ConnectionConfig.USER_NAME,
+				username);
+		contextFactory.setConnectionProperty(ConnectionConfig.PASS_WORD,
+				password);
+		return this;
+	}
+
+	@Override
+	public AsyncInteractionSession use(EntityWrapper entity) {
+		this.entity = entity;
+		return this;
+	}
+
+	@Override
+	public void useHttpClient(HttpClient httpClient) {
+		if (httpClient == null) {
+			throw new IllegalArgumentException("HttpClient is null");
+		}
+		this.httpClient = httpClient;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Creates and returns a new {@link AsyncInteractionSession asynchronous
+	 * interaction session} instance running up to
+	 * {@link #DEFAULT_MAX_IN_FLIGHT} interactions at once.
+	 * 
+	 * @return asynchronous interaction session
+	 */
+	public static AsyncInteractionSession newSession() {
+		return newSession(DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Creates and returns a new {@link AsyncInteractionSession asynchronous
+	 * interaction session} instance.
+	 * 
+	 * @param maxInFlight
+	 *            the most interactions run at once
+	 * @return asynchronous interaction session
+	 */
+	public static AsyncInteractionSession newSession(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException(
+					"At least one interaction must be allowed in flight");
+		}
+		return new DefaultAsyncInteractionSession(maxInFlight);
+	}
+
+	private DefaultAsyncInteractionSession(int maxInFlight) {
+		// the connection settings and handlers of the thread creating the
+		// session are used by the threads running its interactions
+		contextFactory = ContextFactory.get();
+		executor = Executors.newFixedThreadPool(maxInFlight,
+				new SessionThreadFactory(contextFactory));
+		initialiseToDefaults();
+	}
+
+	private void initialiseToDefaults() {
+		header = new HttpHeader();
+		entity = new NullEntityWrapper();
+		httpClient = contextFactory.getHttpClient();
+	}
+
+	private CompletableFuture<Response> execute(String url,
+			final HttpMethod method, boolean withEntity) {
+		final HttpClient client = httpClient;
+		final HttpHeader requestHeader = copyHeader();
+		final EntityWrapper requestEntity = withEntity ? copyEntity() : null;
+		final String requestUrl = url;
+		return CompletableFuture.supplyAsync(new Supplier<Response>() {
+			@Override
+			public Response get() {
+				ResponseData output = new DefaultHttpExecutor(client,
+						requestUrl, new RequestDataImpl(requestHeader,
+								requestEntity)).execute(method);
+				return new ResponseImpl(output, requestHeader, client);
+			}
+		}, executor);
+	}
+
+	private HttpHeader copyHeader() {
+		HttpHeader copy = new HttpHeader();
+		for (String name : header.names()) {
+			copy.set(name, header.get(name));
+		}
+		return copy;
+	}
+
+	// the content is taken now, the entity can be changed for the next
+	// interaction before this one runs
+	private EntityWrapper copyEntity() {
+		try {
+			EntityWrapper copy = new DefaultEntityWrapper();
+			copy.setHandler(new PlainTextEntityHandler(IOUtils
+					.toString(entity.getContent())));
+			return copy;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private class AsyncUrlImpl implements AsyncUrl {
+
+		private String url;
+		private String baseuri = "";
+		private String path = "";
+		private String queryParam = "";
+		private boolean noBody;
+
+		private AsyncUrlImpl(String url) {
+			this.url = url;
+		}
+
+		@Override
+		public AsyncUrl baseuri(String baseuri) {
+			this.baseuri = baseuri;
+			return this;
+		}
+
+		@Override
+		public AsyncUrl path(String path) {
+			this.path = path;
+			return this;
+		}
+
+		@Override
+		public AsyncUrl queryParam(String queryParam) {
+			this.queryParam = queryParam;
+			return this;
+		}
+
+		@Override
+		public AsyncUrl noPayload() {
+			noBody = true;
+			return this;
+		}
+
+		@Override
+		public CompletableFuture<Response> get() {
+			return execute(url(), HttpMethod.GET, false);
+		}
+
+		@Override
+		public CompletableFuture<Response> post() {
+			return execute(url(), HttpMethod.POST, !noBody);
+		}
+
+		@Override
+		public CompletableFuture<Response> put() {
+			return execute(url(), HttpMethod.PUT, !noBody);
+		}
+
+		@Override
+		public CompletableFuture<Response> delete() {
+			return execute(url(), HttpMethod.DELETE, false);
+		}
+
+		@Override
+		public String url() {
+			String completeUrl = url.isEmpty() ? baseuri + "/" + path : url;
+			if (queryParam.isEmpty()) {
+				return completeUrl;
+			}
+			return completeUrl + "?" + queryParam;
+		}
+	}
+
+	/*
+	 * The response of one interaction, also the session context of its links
+	 * and entities. Following those with their blocking url() sends the header
+	 * this was requested with and replaces the response.
+	 */
+	private static class ResponseImpl implements Response, SessionContext {
+
+		private ResponseData output;
+		private HttpHeader requestHeader;
+		private HttpClient httpClient;
+
+		private ResponseImpl(ResponseData output, HttpHeader requestHeader,
+				HttpClient httpClient) {
+			this.output = output;
+			this.requestHeader = requestHeader;
+			this.httpClient = httpClient;
+		}
+
+		@Override
+		public int code() {
+			return output.result().code();
+		}
+
+		@Override
+		public String reason() {
+			return output.result().reason();
+		}
+
+		@Override
+		public String header(String name) {
+			return output.header().get(name);
+		}
+
+		@Override
+		public Links links() {
+			return Links.create(output.body().links(), this);
+		}
+
+		@Override
+		public Entities entities() {
+			Payload response = output.body();
+			if (response.isCollection()) {
+				List<EntityWrapper> entitiesWithSessionContext = new ArrayList<EntityWrapper>();
+				for (EntityWrapper entity : response.entities()) {
+					entity.setSessionContext(this);
+					entitiesWithSessionContext.add(entity);
+				}
+				return new Entities(entitiesWithSessionContext);
+			} else {
+				EntityWrapper entity = response.entity();
+				entity.setSessionContext(this);
+				return new Entities(entity);
+			}
+		}
+
+		@Override
+		public void setResponse(ResponseData output) {
+			this.output = output;
+		}
+
+		@Override
+		public ResponseData getResponse() {
+			return output;
+		}
+
+		@Override
+		public HttpHeader getRequestHeader() {
+			return requestHeader;
+		}
+
+		@Override
+		public EntityWrapper getRequestEntity() {
+			return new NullEntityWrapper();
+		}
+
+		@Override
+		public HttpClient getHttpClient() {
+			return httpClient;
+		}
+	}
+
+	private static class SessionThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger sessionCount = new AtomicInteger();
+		private final AtomicInteger threadCount = new AtomicInteger();
+		private final String namePrefix;
+		private final ContextFactory contextFactory;
+
+		private SessionThreadFactory(ContextFactory contextFactory) {
+			this.contextFactory = contextFactory;
+			this.namePrefix = "async-interaction-session-"
+					+ sessionCount.incrementAndGet() + "-";
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					ContextFactory.set(contextFactory);
+					runnable.run();
+				}
+			}, namePrefix + threadCount.incrementAndGet());
+			// an unclosed session does not keep the user agent running
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -27,7 +27,6 @@ import java.util.List;
 import com.temenos.useragent.generic.context.ConnectionConfig;
 import com.temenos.useragent.generic.context.ContextFactory;
 import com.temenos.useragent.generic.http.HttpClient;
-import com.temenos.useragent.generic.http.HttpClientFactory;
 import com.temenos.useragent.generic.http.HttpHeader;
 import com.temenos.useragent.generic.internal.EntityWrapper;
 import com.temenos.useragent.generic.internal.NullEntityWrapper;
@@ -161,7 +160,7 @@ public class DefaultInteractionSession implements InteractionSession {
 		header = new HttpHeader();
 		entity = new NullEntityWrapper();
 		sessionContext = new SessionContextImpl(this);
-		httpClient = HttpClientFactory.newClient();
+		httpClient = ContextFactory.get().getHttpClient();
 	}
 
 	private static class SessionContextImpl implements SessionContext {
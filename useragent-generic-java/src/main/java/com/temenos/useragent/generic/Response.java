@@ -0,0 +1,55 @@
+package com.temenos.useragent.generic;
+
+/*
+ * #%L
+ * useragent-generic-java
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+/**
+ * Defines the {@link Result result} of an asynchronous interaction together
+ * with the response it got, as several interactions of a session can be in
+ * flight at once.
+ * 
+ * @author ssethupathi
+ *
+ */
+public interface Response extends Result {
+
+	/**
+	 * Returns the value of the header in the response.
+	 * 
+	 * @param name
+	 * @return header value
+	 */
+	String header(String name);
+
+	/**
+	 * Returns the {@link Links links} in the response.
+	 * 
+	 * @return links
+	 */
+	Links links();
+
+	/**
+	 * Returns the {@link Entities entities} in the response.
+	 * 
+	 * @return entities
+	 */
+	Entities entities();
+}
@@ -51,6 +51,8 @@ public class BaseConnectionConfig implements ConnectionConfig {
 		baseConnprops.setProperty(ConnectionConfig.SERVICE_ROOT, "GB0010001");
 		baseConnprops.setProperty(ConnectionConfig.USER_NAME, "INPUTT");
 		baseConnprops.setProperty(ConnectionConfig.PASS_WORD, "123456");
+		baseConnprops.setProperty(ConnectionConfig.MAX_TOTAL_CONNECTIONS, "200");
+		baseConnprops.setProperty(ConnectionConfig.MAX_CONNECTIONS_PER_ROUTE, "20");
 		return baseConnprops;
 	}
 }
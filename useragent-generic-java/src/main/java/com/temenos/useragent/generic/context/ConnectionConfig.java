@@ -34,6 +34,8 @@ public interface ConnectionConfig {
 	public static final String USER_NAME = "USERNAME";
 	public static final String PASS_WORD = "PASSWORD";
 	public static final String SERVICE_ROOT = "COMPANY";
+	public static final String MAX_TOTAL_CONNECTIONS = "MAXTOTALCONNECTIONS";
+	public static final String MAX_CONNECTIONS_PER_ROUTE = "MAXCONNECTIONSPERROUTE";
 
 	/**
 	 * Gets the value for a given property name.
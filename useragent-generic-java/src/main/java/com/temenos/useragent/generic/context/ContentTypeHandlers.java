@@ -22,8 +22,8 @@ package com.temenos.useragent.generic.context;
  */
 
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.temenos.useragent.generic.PayloadHandler;
 import com.temenos.useragent.generic.internal.PayloadHandlerFactory;
@@ -39,7 +39,7 @@ public class ContentTypeHandlers {
 	private Map<String, PayloadHandlerFactory<? extends PayloadHandler>> payloadHandlersFactory;
 
 	public ContentTypeHandlers() {
-		this.payloadHandlersFactory = new HashMap<String, PayloadHandlerFactory<? extends PayloadHandler>>();
+		this.payloadHandlersFactory = new ConcurrentHashMap<String, PayloadHandlerFactory<? extends PayloadHandler>>();
 	}
 
 	public void registerForPayload(String contentType,
@@ -22,6 +22,9 @@ package com.temenos.useragent.generic.context;
  */
 
 
+import com.temenos.useragent.generic.http.DefaultHttpClient;
+import com.temenos.useragent.generic.http.HttpClient;
+import com.temenos.useragent.generic.http.HttpClientFactory;
 import com.temenos.useragent.generic.mediatype.AtomPayloadHandler;
 import com.temenos.useragent.generic.mediatype.HalJsonPayloadHandler;
 import com.temenos.useragent.generic.mediatype.PlainTextPayloadHandler;
@@ -41,6 +44,9 @@ public class ContextFactory {
 		}
 	};
 
+	// shared by the sessions of all threads
+	private static DefaultHttpClient httpClient;
+
 	private ContextImpl context;
 
 	private ContextFactory() {
@@ -60,6 +66,16 @@ public class ContextFactory {
 		return currentContextFactory.get();
 	}
 
+	/**
+	 * Associates the {@link ContextFactory context factory} of another thread
+	 * to the current thread, for threads doing the work of that thread.
+	 * 
+	 * @param contextFactory
+	 */
+	public static void set(ContextFactory contextFactory) {
+		currentContextFactory.set(contextFactory);
+	}
+
 	/**
 	 * Sets the connection property for the session.
 	 * 
@@ -70,6 +86,34 @@ public class ContextFactory {
 		context.setSessionProperty(name, value);
 	}
 
+	/**
+	 * Returns the {@link HttpClient http client} shared by all the sessions,
+	 * creating it with the connection limits of this context if needed.
+	 * 
+	 * @return http client
+	 */
+	public HttpClient getHttpClient() {
+		synchronized (ContextFactory.class) {
+			if (httpClient == null) {
+				httpClient = HttpClientFactory.newClient();
+			}
+			return httpClient;
+		}
+	}
+
+	/**
+	 * Closes the connections of the shared {@link HttpClient http client}. A
+	 * new client is created for the sessions started afterwards.
+	 */
+	public static void closeHttpClient() {
+		synchronized (ContextFactory.class) {
+			if (httpClient != null) {
+				httpClient.close();
+				httpClient = null;
+			}
+		}
+	}
+
 	/**
 	 * Returns the execution {@link Context context}.
 	 * 
@@ -22,6 +22,7 @@ package com.temenos.useragent.generic.http;
  */
 
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -32,106 +33,134 @@ import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This class implements {@link HttpClient http client} using Apache
  * HttpComponents {@linkplain https://hc.apache.org/}
+ * <p>
+ * Connections are pooled and kept alive between requests, so one instance
+ * should be shared by the sessions and {@link #close() closed} once they are
+ * done. The credentials are taken from the connection configuration of the
+ * calling thread on each request.
+ * </p>
  * 
  * @author ssethupathi
  *
  */
-public class DefaultHttpClient implements HttpClient {
+public class DefaultHttpClient implements HttpClient, Closeable {
+
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 200;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
 
 	private Logger logger = LoggerFactory.getLogger(DefaultHttpClient.class);
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient client;
+
+	public DefaultHttpClient() {
+		this(DEFAULT_MAX_TOTAL_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+	}
+
+	/**
+	 * @param maxTotalConnections
+	 *            the most connections open at once
+	 * @param maxConnectionsPerRoute
+	 *            the most connections open at once to one host
+	 */
+	public DefaultHttpClient(int maxTotalConnections, int maxConnectionsPerRoute) {
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxTotalConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		client = HttpClientBuilder.create()
+				.setConnectionManager(connectionManager)
+				.build();
+	}
 
 	@Override
 	public HttpResponse get(String url, HttpRequest request) {
 		logHttpRequest(url, request);
-		CloseableHttpClient client = HttpClientBuilder
-				.create()
-				.setDefaultCredentialsProvider(
-						DefaultHttpClientHelper.getBasicCredentialProvider())
-				.build();
 		HttpGet getRequest = new HttpGet(url);
 		DefaultHttpClientHelper.buildRequestHeaders(request, getRequest);
-		try {
-		    CloseableHttpResponse httpResponse = client.execute(getRequest);
-            HttpEntity responseEntity = httpResponse.getEntity();
-            return handleResponse(httpResponse, responseEntity);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		return execute(getRequest);
 	}
 
 	@Override
 	public HttpResponse post(String url, HttpRequest request) {
 		logHttpRequest(url, request);
-		CloseableHttpClient client = HttpClientBuilder
-				.create()
-				.setDefaultCredentialsProvider(
-						DefaultHttpClientHelper.getBasicCredentialProvider())
-				.build();
 		HttpPost postRequest = new HttpPost(url);
 		DefaultHttpClientHelper.buildRequestHeaders(request, postRequest);
 		postRequest.setEntity(new StringEntity(request.payload(), "UTF-8"));
-		try {
-		    CloseableHttpResponse httpResponse = client.execute(postRequest);
-            HttpEntity responseEntity = httpResponse.getEntity();
-            return handleResponse(httpResponse, responseEntity);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		return execute(postRequest);
 	}
 
 	@Override
 	public HttpResponse put(String url, HttpRequest request) {
 		logHttpRequest(url, request);
-		CloseableHttpClient client = HttpClientBuilder
-				.create()
-				.setDefaultCredentialsProvider(
-						DefaultHttpClientHelper.getBasicCredentialProvider())
-				.build();
 		HttpPut putRequest = new HttpPut(url);
 		DefaultHttpClientHelper.buildRequestHeaders(request, putRequest);
 		putRequest.setEntity(new StringEntity(request.payload(), "UTF-8"));
-		try {
-		    CloseableHttpResponse httpResponse = client.execute(putRequest);
-            HttpEntity responseEntity = httpResponse.getEntity();
-            return handleResponse(httpResponse, responseEntity);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		return execute(putRequest);
 	}
 	
 	@Override
 	public HttpResponse delete(String url, HttpRequest request) {
-	    logHttpRequest(url, request);
-        CloseableHttpClient client = HttpClientBuilder
-                .create()
-                .setDefaultCredentialsProvider(
-                        DefaultHttpClientHelper.getBasicCredentialProvider())
-                .build();
-        HttpDelete deleteRequest = new HttpDelete(url);
-        DefaultHttpClientHelper.buildRequestHeaders(request, deleteRequest);
-        try {
-            CloseableHttpResponse httpResponse = client.execute(deleteRequest);
-            HttpEntity responseEntity = httpResponse.getEntity();
-            return handleResponse(httpResponse, responseEntity);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+		logHttpRequest(url, request);
+		HttpDelete deleteRequest = new HttpDelete(url);
+		DefaultHttpClientHelper.buildRequestHeaders(request, deleteRequest);
+		return execute(deleteRequest);
+	}
+
+	/**
+	 * Closes the pooled connections, the client cannot be used afterwards.
+	 */
+	@Override
+	public void close() {
+		try {
+			client.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close http client", e);
+		}
+	}
+
+	/**
+	 * Returns the pool of connections of this client.
+	 * 
+	 * @return connection manager
+	 */
+	PoolingHttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	private HttpResponse execute(HttpRequestBase httpRequest) {
+		HttpClientContext context = HttpClientContext.create();
+		context.setCredentialsProvider(DefaultHttpClientHelper.getBasicCredentialProvider());
+		try {
+			CloseableHttpResponse httpResponse = client.execute(httpRequest, context);
+			try {
+				return handleResponse(httpResponse, httpResponse.getEntity());
+			} finally {
+				// the connection goes back to the pool once the entity is consumed
+				EntityUtils.consumeQuietly(httpResponse.getEntity());
+				httpResponse.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
     private HttpResponse handleResponse(CloseableHttpResponse httpResponse, HttpEntity responseEntity)
             throws IOException {
         HttpResponse response;
         if(responseEntity != null){ 
-            InputStream contentStream = httpResponse.getEntity().getContent();
+            InputStream contentStream = responseEntity.getContent();
             response = new HttpResponseImpl(
                     DefaultHttpClientHelper.buildResponseHeaders(httpResponse),
                     IOUtils.toString(contentStream, "UTF-8"),
@@ -22,6 +22,9 @@ package com.temenos.useragent.generic.http;
  */
 
 
+import com.temenos.useragent.generic.context.ConnectionConfig;
+import com.temenos.useragent.generic.context.ContextFactory;
+
 /**
  * Factory creating {@link HttpClient http client} instances.
  * 
@@ -30,7 +33,29 @@ package com.temenos.useragent.generic.http;
  */
 public class HttpClientFactory {
 
-	public static HttpClient newClient() {
-		return new DefaultHttpClient();
+	/**
+	 * Creates a new client with its own pool of connections, limited as set in
+	 * the connection configuration. Sessions share the client of the
+	 * {@link ContextFactory#getHttpClient() context factory} instead.
+	 * 
+	 * @return http client
+	 */
+	public static DefaultHttpClient newClient() {
+		ConnectionConfig config = ContextFactory.get().getContext()
+				.connectionCongfig();
+		return new DefaultHttpClient(
+				getIntValue(config, ConnectionConfig.MAX_TOTAL_CONNECTIONS,
+						DefaultHttpClient.DEFAULT_MAX_TOTAL_CONNECTIONS),
+				getIntValue(config, ConnectionConfig.MAX_CONNECTIONS_PER_ROUTE,
+						DefaultHttpClient.DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+	}
+
+	private static int getIntValue(ConnectionConfig config, String name,
+			int defaultValue) {
+		String value = config.getValue(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
 	}
 }
@@ -23,12 +23,13 @@ package com.temenos.useragent.generic.http;
 
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class HttpHeader {
 
-	private Map<String, String> headers = new HashMap<String, String>();
+	// header names are case insensitive
+	private Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
 
 	public Collection<String> names() {
 		return headers.keySet();
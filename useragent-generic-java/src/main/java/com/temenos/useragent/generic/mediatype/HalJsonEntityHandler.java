@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.IOUtils;
 import org.json.JSONArray;
@@ -69,9 +70,29 @@ import com.theoryinpractise.halbuilder.api.RepresentationFactory;
 public class HalJsonEntityHandler implements EntityHandler {
 
 	private ReadableRepresentation representation;
+	// reads the representation the first time links or embedded resources
+	// are needed
+	private Supplier<ReadableRepresentation> representationReader;
 	private JSONObject jsonObject;
 	private Payload embeddedPayload;
 
+	public HalJsonEntityHandler() {
+	}
+
+	/**
+	 * Creates a handler over a part of an already parsed payload.
+	 * 
+	 * @param jsonObject
+	 *            of the entity
+	 * @param representationReader
+	 *            reads the representation of the entity
+	 */
+	HalJsonEntityHandler(JSONObject jsonObject,
+			Supplier<ReadableRepresentation> representationReader) {
+		this.jsonObject = jsonObject;
+		this.representationReader = representationReader;
+	}
+
 	@Override
 	public String getId() {
 		return "";
@@ -79,7 +100,7 @@ public class HalJsonEntityHandler implements EntityHandler {
 
 	@Override
 	public List<Link> getLinks() {
-		return HalJsonUtil.extractLinks(representation);
+		return HalJsonUtil.extractLinks(representation());
 	}
 
 	@Override
@@ -159,10 +180,18 @@ public class HalJsonEntityHandler implements EntityHandler {
 		} catch (IOException e) {
 			throw new IllegalArgumentException(e);
 		}
-		RepresentationFactory factory = initRepresentationFactory();
-		representation = factory.readRepresentation(
-				RepresentationFactory.HAL_JSON, new StringReader(content));
 		jsonObject = new JSONObject(content);
+		final String representationContent = content;
+		representation = null;
+		representationReader = new Supplier<ReadableRepresentation>() {
+			@Override
+			public ReadableRepresentation get() {
+				return initRepresentationFactory().readRepresentation(
+						RepresentationFactory.HAL_JSON,
+						new StringReader(representationContent));
+			}
+		};
+		embeddedPayload = null;
 	}
 
 	@Override
@@ -323,10 +352,17 @@ public class HalJsonEntityHandler implements EntityHandler {
 		}
 	}
 	
+	private ReadableRepresentation representation() {
+		if (representation == null && representationReader != null) {
+			representation = representationReader.get();
+		}
+		return representation;
+	}
+
 	private ReadableRepresentation getFirstEmbedded() {
-		if (!representation.getResources().isEmpty()) {
+		if (!representation().getResources().isEmpty()) {
 			return new ArrayList<Entry<String, ReadableRepresentation>>(
-					representation.getResources()).get(0).getValue();
+					representation().getResources()).get(0).getValue();
 		} else {
 			return null;
 		}
@@ -22,11 +22,13 @@ package com.temenos.useragent.generic.mediatype;
  */
 
 
-import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
-import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import com.temenos.useragent.generic.Link;
 import com.temenos.useragent.generic.PayloadHandler;
@@ -38,21 +40,30 @@ import com.theoryinpractise.halbuilder.api.RepresentationFactory;
 
 /**
  * A payload handler for <i>application/hal+json</i> media type.
+ * <p>
+ * The payload is parsed once, its entities are views over the parsed JSON
+ * rather than copies of it. The links are read from the HAL representation
+ * of the payload, which is only built the first time links are needed.
+ * </p>
  * 
  * @author ssethupathi
  *
  */
 public class HalJsonPayloadHandler implements PayloadHandler {
 
+	private static final String LINKS = "_links";
+	private static final String EMBEDDED = "_embedded";
+	private static final String ITEM = "item";
+
 	private RepresentationFactory representationFactory = HalJsonUtil
 			.initRepresentationFactory();
-	private ReadableRepresentation representation = representationFactory
-			.newRepresentation();
+	private String payload;
+	private JSONObject jsonObject = new JSONObject();
+	private ReadableRepresentation representation;
 
 	@Override
 	public boolean isCollection() {
-		if (!representation.getProperties().isEmpty()
-				&& representation.getResourcesByRel("item").isEmpty()) {
+		if (hasProperties() && items().isEmpty()) {
 			return false;
 		}
 		return true;
@@ -60,33 +71,37 @@ public class HalJsonPayloadHandler implements PayloadHandler {
 
 	@Override
 	public List<Link> links() {
-		return HalJsonUtil.extractLinks(representation);
+		return HalJsonUtil.extractLinks(representation());
 	}
 
 	@Override
 	public List<EntityWrapper> entities() {
 		List<EntityWrapper> entityWrappers = new ArrayList<EntityWrapper>();
-		for (ReadableRepresentation itemRepresentation : representation
-				.getResourcesByRel("item")) {
-			EntityWrapper entityWrapper = new DefaultEntityWrapper();
-			HalJsonEntityHandler entityHandler = new HalJsonEntityHandler();
-			entityHandler.setContent(IOUtils.toInputStream(itemRepresentation
-					.toString(RepresentationFactory.HAL_JSON)));
-			entityWrapper.setHandler(entityHandler);
-			entityWrappers.add(entityWrapper);
+		List<JSONObject> items = items();
+		for (int index = 0; index < items.size(); index++) {
+			final int itemIndex = index;
+			entityWrappers.add(newEntityWrapper(items.get(index),
+					new Supplier<ReadableRepresentation>() {
+						@Override
+						public ReadableRepresentation get() {
+							return representation().getResourcesByRel(ITEM)
+									.get(itemIndex);
+						}
+					}));
 		}
 		return entityWrappers;
 	}
 
 	@Override
 	public EntityWrapper entity() {
-		if (!isCollection() || representation.getProperties().isEmpty()) {
-			EntityWrapper wrapper = new DefaultEntityWrapper();
-			HalJsonEntityHandler entityHandler = new HalJsonEntityHandler();
-			entityHandler.setContent(IOUtils.toInputStream(representation
-					.toString(RepresentationFactory.HAL_JSON)));
-			wrapper.setHandler(entityHandler);
-			return wrapper;
+		if (!isCollection() || !hasProperties()) {
+			return newEntityWrapper(jsonObject,
+					new Supplier<ReadableRepresentation>() {
+						@Override
+						public ReadableRepresentation get() {
+							return representation();
+						}
+					});
 		}
 		return new NullEntityWrapper();
 	}
@@ -96,14 +111,74 @@ public class HalJsonPayloadHandler implements PayloadHandler {
 		if (payload == null) {
 			throw new IllegalArgumentException("Payload is null");
 		}
-		ReadableRepresentation jsonRepresentation = representationFactory
-				.readRepresentation(RepresentationFactory.HAL_JSON,
-						new InputStreamReader(IOUtils.toInputStream(payload)));
-		representation = jsonRepresentation;
+		jsonObject = new JSONObject(payload);
+		this.payload = payload;
+		representation = null;
 	}
 
 	@Override
 	public void setParameter(String parameter) {
 		// not used yet
 	}
+
+	/**
+	 * Returns whether the HAL representation of the payload has been built.
+	 * 
+	 * @return true if built
+	 */
+	boolean isRepresentationRead() {
+		return representation != null;
+	}
+
+	private ReadableRepresentation representation() {
+		if (representation == null) {
+			if (payload == null) {
+				representation = representationFactory.newRepresentation();
+			} else {
+				representation = representationFactory.readRepresentation(
+						RepresentationFactory.HAL_JSON, new StringReader(
+								payload));
+			}
+		}
+		return representation;
+	}
+
+	private EntityWrapper newEntityWrapper(JSONObject entityObject,
+			Supplier<ReadableRepresentation> entityRepresentation) {
+		EntityWrapper wrapper = new DefaultEntityWrapper();
+		wrapper.setHandler(new HalJsonEntityHandler(entityObject,
+				entityRepresentation));
+		return wrapper;
+	}
+
+	// whether there is any property other than the links and embedded
+	// resources
+	private boolean hasProperties() {
+		for (String name : jsonObject.keySet()) {
+			if (!LINKS.equals(name) && !EMBEDDED.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<JSONObject> items() {
+		List<JSONObject> items = new ArrayList<JSONObject>();
+		JSONObject embedded = jsonObject.optJSONObject(EMBEDDED);
+		if (embedded == null) {
+			return items;
+		}
+		JSONArray itemArray = embedded.optJSONArray(ITEM);
+		if (itemArray != null) {
+			// the HAL representation has an item for every entry, so an
+			// entry which is not an object keeps its slot as an empty item
+			for (int index = 0; index < itemArray.length(); index++) {
+				JSONObject item = itemArray.optJSONObject(index);
+				items.add(item != null ? item : new JSONObject());
+			}
+		} else if (embedded.optJSONObject(ITEM) != null) {
+			items.add(embedded.optJSONObject(ITEM));
+		}
+		return items;
+	}
 }
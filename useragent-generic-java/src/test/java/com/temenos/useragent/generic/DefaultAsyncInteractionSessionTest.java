@@ -0,0 +1,199 @@
+package com.temenos.useragent.generic;
+
+/*
+ * #%L
+ * useragent-generic-java
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.temenos.useragent.generic.context.ContextFactory;
+import com.temenos.useragent.generic.internal.ActionableLink;
+import com.temenos.useragent.generic.mediatype.HalJsonPayloadHandler;
+
+public class DefaultAsyncInteractionSessionTest {
+
+	private static final int ITEMS = 10;
+
+	private HttpServer server;
+	private String url;
+	private AsyncInteractionSession session;
+	// requests being served, and the most served at once
+	private AtomicInteger serving = new AtomicInteger();
+	private AtomicInteger maxServing = new AtomicInteger();
+	private volatile CountDownLatch release = new CountDownLatch(0);
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/items", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int now = serving.incrementAndGet();
+				try {
+					while (now > maxServing.get()) {
+						maxServing.compareAndSet(maxServing.get(), now);
+					}
+					release.await(10, TimeUnit.SECONDS);
+					String path = exchange.getRequestURI().getPath();
+					String request = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+					send(exchange, "application/hal+json", halItem(path, exchange.getRequestMethod(), request,
+							exchange.getRequestHeaders().getFirst("Accept")));
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} finally {
+					serving.decrementAndGet();
+				}
+			}
+		});
+		server.createContext("/root", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				StringBuilder links = new StringBuilder();
+				for (int i = 0; i < ITEMS; i++) {
+					links.append(i == 0 ? "" : ",").append("{\"href\":\"").append(url).append("/items/").append(i)
+							.append("\"}");
+				}
+				send(exchange, "application/hal+json", "{\"_links\":{\"self\":{\"href\":\"" + url
+						+ "/root\"},\"item\":[" + links + "]}}");
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort();
+		session = DefaultAsyncInteractionSession.newSession(3);
+	}
+
+	@After
+	public void tearDown() {
+		session.close();
+		server.stop(0);
+		ContextFactory.closeHttpClient();
+	}
+
+	private static String halItem(String path, String method, String request, String accept) {
+		return "{\"_links\":{\"self\":{\"href\":\"" + path + "\"}},\"path\":\"" + path + "\",\"method\":\""
+				+ method + "\",\"accept\":\"" + accept + "\",\"request\":\""
+				+ request.replace("\"", "\\\"").replaceAll("\\s+", " ") + "\"}";
+	}
+
+	private static void send(HttpExchange exchange, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		exchange.close();
+	}
+
+	@Test
+	public void testFollowLinksConcurrently() throws Exception {
+		Response root = session.url(url + "/root").get().get(10, TimeUnit.SECONDS);
+		assertEquals(200, root.code());
+		assertEquals("application/hal+json", root.header("Content-Type"));
+
+		List<CompletableFuture<Response>> items = new ArrayList<CompletableFuture<Response>>();
+		for (ActionableLink link : root.links().allByRel("item")) {
+			items.add(session.follow(link).get());
+		}
+		assertEquals(ITEMS, items.size());
+		Set<String> paths = new HashSet<String>();
+		for (CompletableFuture<Response> item : items) {
+			Response response = item.get(10, TimeUnit.SECONDS);
+			assertEquals(200, response.code());
+			assertEquals("GET", response.entities().item().get("method"));
+			paths.add(response.entities().item().get("path"));
+		}
+		assertEquals(ITEMS, paths.size());
+		assertTrue(paths.contains("/items/0"));
+	}
+
+	@Test
+	public void testInFlightBounded() throws Exception {
+		release = new CountDownLatch(1);
+		List<CompletableFuture<Response>> items = new ArrayList<CompletableFuture<Response>>();
+		for (int i = 0; i < ITEMS; i++) {
+			// the caller is not held up by the requests waiting their turn
+			items.add(session.url(url + "/items/" + i).get());
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (serving.get() < 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		assertEquals(3, serving.get());
+		release.countDown();
+		CompletableFuture.allOf(items.toArray(new CompletableFuture<?>[items.size()])).get(10, TimeUnit.SECONDS);
+		assertEquals(3, maxServing.get());
+	}
+
+	@Test
+	public void testRequestTakenWhenStarted() throws Exception {
+		release = new CountDownLatch(1);
+		session.use(new HalJsonPayloadHandler().entity()).header("Accept", "application/hal+json").set("name", "first");
+		CompletableFuture<Response> first = session.url(url + "/items/first").post();
+		session.header("Accept", "application/json").set("name", "second");
+		CompletableFuture<Response> second = session.url(url + "/items/second").put();
+		release.countDown();
+
+		Entity firstItem = first.get(10, TimeUnit.SECONDS).entities().item();
+		assertEquals("POST", firstItem.get("method"));
+		assertEquals("application/hal+json", firstItem.get("accept"));
+		assertTrue(firstItem.get("request").contains("\"name\" : \"first\""));
+		Entity secondItem = second.get(10, TimeUnit.SECONDS).entities().item();
+		assertEquals("PUT", secondItem.get("method"));
+		assertEquals("application/json", secondItem.get("accept"));
+		assertTrue(secondItem.get("request").contains("\"name\" : \"second\""));
+	}
+
+	@Test
+	public void testFailedInteraction() throws Exception {
+		CompletableFuture<Response> response = session.url("http://localhost:1/none").get();
+		try {
+			response.get(10, TimeUnit.SECONDS);
+			fail("interaction should fail");
+		} catch (ExecutionException e) {
+			assertTrue(response.isCompletedExceptionally());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.temenos.useragent.generic.http;
+
+/*
+ * #%L
+ * useragent-generic-java
+ * %%
+ * Copyright (C) 2012 - 2017 Temenos Holdings N.V.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.temenos.useragent.generic.context.ConnectionConfig;
+import com.temenos.useragent.generic.context.ContextFactory;
+
+public class DefaultHttpClientTest {
+
+	private HttpServer server;
+	private String url;
+	// the client address of each connection the server accepted
+	private Set<InetSocketAddress> connections = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/test", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				connections.add(exchange.getRemoteAddress());
+				String request = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+				if ("DELETE".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(204, -1);
+				} else {
+					byte[] body = (exchange.getRequestMethod() + request).getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type", "text/plain");
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/test";
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		ContextFactory.closeHttpClient();
+	}
+
+	@Test
+	public void testConnectionReused() {
+		DefaultHttpClient client = new DefaultHttpClient(10, 2);
+		try {
+			for (int i = 0; i < 20; i++) {
+				HttpResponse response = client.get(url, new HttpRequestImpl(new HttpHeader()));
+				assertEquals(200, response.result().code());
+				assertEquals("GET", response.payload());
+			}
+			assertEquals(1, connections.size());
+			assertEquals(1, client.getConnectionManager().getTotalStats().getAvailable());
+			assertEquals(0, client.getConnectionManager().getTotalStats().getLeased());
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testMethods() {
+		DefaultHttpClient client = new DefaultHttpClient();
+		try {
+			HttpHeader header = new HttpHeader();
+			header.set("Content-Type", "text/plain");
+			assertEquals("POSTposted", client.post(url, new HttpRequestImpl(header, "posted")).payload());
+			assertEquals("PUTput", client.put(url, new HttpRequestImpl(header, "put")).payload());
+			HttpResponse response = client.delete(url, new HttpRequestImpl(new HttpHeader()));
+			assertEquals(204, response.result().code());
+			assertEquals("", response.payload());
+			assertEquals(1, connections.size());
+			assertEquals(0, client.getConnectionManager().getTotalStats().getLeased());
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testConnectionLimits() {
+		ContextFactory.get().setConnectionProperty(ConnectionConfig.MAX_TOTAL_CONNECTIONS, "7");
+		ContextFactory.get().setConnectionProperty(ConnectionConfig.MAX_CONNECTIONS_PER_ROUTE, "3");
+		try {
+			DefaultHttpClient client = HttpClientFactory.newClient();
+			assertEquals(7, client.getConnectionManager().getMaxTotal());
+			assertEquals(3, client.getConnectionManager().getDefaultMaxPerRoute());
+			client.close();
+		} finally {
+			ContextFactory.get().setConnectionProperty(ConnectionConfig.MAX_TOTAL_CONNECTIONS, "");
+			ContextFactory.get().setConnectionProperty(ConnectionConfig.MAX_CONNECTIONS_PER_ROUTE, "");
+		}
+	}
+
+	@Test
+	public void testSharedClientClosedThroughContextFactory() {
+		HttpClient shared = ContextFactory.get().getHttpClient();
+		assertSame(shared, ContextFactory.get().getHttpClient());
+		shared.get(url, new HttpRequestImpl(new HttpHeader()));
+
+		ContextFactory.closeHttpClient();
+		try {
+			shared.get(url, new HttpRequestImpl(new HttpHeader()));
+			fail("client should be closed");
+		} catch (IllegalStateException e) {
+			// the connection pool is shut down
+		}
+		HttpClient newClient = ContextFactory.get().getHttpClient();
+		assertNotSame(shared, newClient);
+		assertEquals(200, newClient.get(url, new HttpRequestImpl(new HttpHeader())).result().code());
+	}
+}
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
 
 import java.io.IOException;
 import java.util.List;
@@ -38,6 +39,7 @@ import com.temenos.useragent.generic.Entity;
 import com.temenos.useragent.generic.Link;
 import com.temenos.useragent.generic.internal.DefaultEntityWrapper;
 import com.temenos.useragent.generic.internal.EntityWrapper;
+import com.temenos.useragent.generic.internal.SessionContext;
 import com.temenos.useragent.generic.internal.NullEntityWrapper;
 
 public class HalJsonPayloadHandlerTest {
@@ -122,6 +124,70 @@ public class HalJsonPayloadHandlerTest {
 		assertEquals("2002", payloadHandler.entity().get("AccountOfficer"));
 	}
 
+	@Test
+	public void testEntitiesOfLargeCollection() {
+		int size = 1000;
+		StringBuilder items = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			items.append(i == 0 ? "" : ",").append("{\"_links\":{\"self\":{\"href\":\"http://mybank/Customers('")
+					.append(i).append("')\"}},\"AccountOfficer\":\"").append(i)
+					.append("\",\"OverrideGroup\":[{\"Override\":\"OVERRIDE ").append(i).append("\"}]}");
+		}
+		payloadHandler = new HalJsonPayloadHandler();
+		payloadHandler.setPayload("{\"_links\":{\"self\":{\"href\":\"http://mybank/Customers()\"}},"
+				+ "\"_embedded\":{\"item\":[" + items + "]}}");
+		assertTrue(payloadHandler.isCollection());
+
+		List<EntityWrapper> entities = payloadHandler.entities();
+		assertEquals(size, entities.size());
+		for (int i = 0; i < size; i++) {
+			Entity entity = entities.get(i);
+			assertEquals(String.valueOf(i), entity.get("AccountOfficer"));
+			assertEquals("OVERRIDE " + i, entity.get("OverrideGroup(0)/Override"));
+		}
+		// reading the properties of the items does not need the links
+		assertFalse(payloadHandler.isRepresentationRead());
+
+		SessionContext sessionContext = mock(SessionContext.class);
+		for (int i = 0; i < size; i++) {
+			EntityWrapper entity = entities.get(i);
+			entity.setSessionContext(sessionContext);
+			assertEquals("http://mybank/Customers('" + i + "')", entity.links().byRel("self").href());
+		}
+		assertTrue(payloadHandler.isRepresentationRead());
+	}
+
+	@Test
+	public void testEntitiesOfMixedItems() {
+		payloadHandler = new HalJsonPayloadHandler();
+		payloadHandler.setPayload("{\"_embedded\":{\"item\":["
+				+ "{\"_links\":{\"self\":{\"href\":\"http://mybank/Customers('0')\"}},\"AccountOfficer\":\"0\"},"
+				+ "\"not an item\",null,"
+				+ "{\"_links\":{\"self\":{\"href\":\"http://mybank/Customers('3')\"}},\"AccountOfficer\":\"3\"}]}}");
+
+		List<EntityWrapper> entities = payloadHandler.entities();
+		assertEquals(4, entities.size());
+		assertEquals("0", entities.get(0).get("AccountOfficer"));
+		assertEquals("3", entities.get(3).get("AccountOfficer"));
+
+		// the links of an item are those of the item at the same index
+		SessionContext sessionContext = mock(SessionContext.class);
+		for (EntityWrapper entity : entities) {
+			entity.setSessionContext(sessionContext);
+		}
+		assertEquals("http://mybank/Customers('0')", entities.get(0).links().byRel("self").href());
+		assertEquals("http://mybank/Customers('3')", entities.get(3).links().byRel("self").href());
+		assertTrue(entities.get(1).links().all().isEmpty());
+	}
+
+	@Test
+	public void testEntitiesAreViewsOfPayload() {
+		initPayloadHandler("/haljson_collection_with_two_items.json");
+		payloadHandler.entities().get(0).set("AccountOfficer", "9999");
+		assertEquals("9999", payloadHandler.entities().get(0).get("AccountOfficer"));
+		assertEquals("2001", payloadHandler.entities().get(1).get("AccountOfficer"));
+	}
+
 	@Test
 	public void testSetPayload() {
 		initPayloadHandler("/haljson_collection_with_two_items.json");